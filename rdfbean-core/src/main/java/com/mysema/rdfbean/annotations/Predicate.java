@@ -51,6 +51,16 @@ public @interface Predicate {
      */
     boolean inv() default false;
 
+    /**
+     * True if referenced beans should be loaded on first access instead of
+     * together with the owning bean.
+     * <p>
+     * NOTE : Lazy loading is supported for reference properties of type
+     * Collection, List, Set or SortedSet and for single references of
+     * interface type. Other properties are loaded eagerly.
+     */
+    boolean lazy() default false;
+
     /**
      * Local name of the mapped resource. Uses property's name as default.
      */
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
+import com.mysema.query.QueryMetadata;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.Operation;
+import com.mysema.query.types.Operator;
+import com.mysema.query.types.Ops;
+
+/**
+ * Aggregator groups rows by the group by expressions of a query and evaluates
+ * the aggregate expressions of the projection, order and having clauses
+ *
+ * <p>
+ * The rows are consumed in one pass and only the accumulators of each group
+ * are kept, so counts, sums and grouped reports don't materialize the rows.
+ * Distinct counts keep the distinct values of their group. The results are
+ * bound to slots named after the aggregate expressions, as resolved by
+ * {@link FilterCompiler#compileValue(Expression, Bindings)}.
+ * </p>
+ *
+ * <p>
+ * Sums and averages are computed over numeric literals with the datatype of
+ * the widest argument, a non-numeric argument leaves the result unbound.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+final class Aggregator implements Iterable<Bindings> {
+
+    private static final NODEComparator nodeComparator = new NODEComparator();
+
+    private static final int INTEGER = 0, DECIMAL = 1, DOUBLE = 2, NONE = 3;
+
+    private static final Set<UID> integerTypes = new HashSet<UID>(Arrays.asList(
+            XSD.integerType, XSD.longType, XSD.intType, XSD.shortType, XSD.byteType));
+
+    private static final UID[] numericTypes = { XSD.integerType, XSD.decimalType, XSD.doubleType };
+
+    /**
+     * Collect the aggregate expressions contained in the given expression
+     *
+     * @param expr
+     * @param aggregates
+     */
+    public static void collect(@Nullable Expression<?> expr, Set<Operation<?>> aggregates) {
+        if (expr instanceof Operation<?>) {
+            Operation<?> operation = (Operation<?>) expr;
+            if (FilterCompiler.isAggregate(operation.getOperator())) {
+                aggregates.add(operation);
+            } else {
+                for (Expression<?> arg : operation.getArgs()) {
+                    collect(arg, aggregates);
+                }
+            }
+        }
+    }
+
+    private final Iterable<Bindings> iterable;
+
+    private final Bindings scope;
+
+    /**
+     * Amount of slots of the aggregated rows
+     */
+    private final int rowSlots;
+
+    private final Function<Bindings, NODE>[] keys;
+
+    private final int[] keySlots;
+
+    private final Operator<?>[] ops;
+
+    private final Function<Bindings, NODE>[] args;
+
+    private final int[] slots;
+
+    @Nullable
+    private final Predicate<Bindings> having;
+
+    /**
+     * Create a new Aggregator
+     *
+     * @param md
+     *            query metadata
+     * @param iterable
+     *            rows to aggregate
+     * @param scope
+     *            bindings of the rows, the result rows are created as its
+     *            children
+     * @param compiler
+     */
+    @SuppressWarnings("unchecked")
+    public Aggregator(QueryMetadata md, Iterable<Bindings> iterable, Bindings scope, FilterCompiler compiler) {
+        this.iterable = iterable;
+        this.scope = scope;
+        this.rowSlots = scope.getSlotCount();
+
+        List<Expression<?>> groupBy = md.getGroupBy();
+        keys = new Function[groupBy.size()];
+        keySlots = new int[groupBy.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Expression<?> expr = groupBy.get(i);
+            keys[i] = compiler.compileValue(expr, scope);
+            keySlots[i] = scope.getSlot(FilterCompiler.getName(expr));
+        }
+
+        Set<Operation<?>> aggregates = new HashSet<Operation<?>>();
+        for (Expression<?> expr : md.getProjection()) {
+            collect(expr, aggregates);
+        }
+        for (int i = 0; i < md.getOrderBy().size(); i++) {
+            collect(md.getOrderBy().get(i).getTarget(), aggregates);
+        }
+        collect(md.getHaving(), aggregates);
+
+        ops = new Operator[aggregates.size()];
+        args = new Function[aggregates.size()];
+        slots = new int[aggregates.size()];
+        int i = 0;
+        for (Operation<?> aggregate : aggregates) {
+            ops[i] = aggregate.getOperator();
+            if (!aggregate.getArgs().isEmpty() && ops[i] != Ops.AggOps.COUNT_ALL_AGG
+                    && ops[i] != Ops.AggOps.COUNT_DISTINCT_ALL_AGG) {
+                args[i] = compiler.compileValue(aggregate.getArg(0), scope);
+            }
+            slots[i++] = scope.getSlot(aggregate.toString());
+        }
+        having = md.getHaving() != null ? compiler.compilePredicate(md.getHaving(), scope) : null;
+    }
+
+    @Override
+    public Iterator<Bindings> iterator() {
+        Map<List<NODE>, Accumulator[]> groups = new LinkedHashMap<List<NODE>, Accumulator[]>();
+        for (Bindings row : iterable) {
+            NODE[] key = new NODE[keys.length];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = keys[i].apply(row);
+            }
+            List<NODE> groupKey = Arrays.asList(key);
+            Accumulator[] accumulators = groups.get(groupKey);
+            if (accumulators == null) {
+                accumulators = new Accumulator[ops.length];
+                for (int i = 0; i < accumulators.length; i++) {
+                    accumulators[i] = new Accumulator(ops[i]);
+                }
+                groups.put(groupKey, accumulators);
+            }
+            List<NODE> rowKey = null;
+            for (int i = 0; i < accumulators.length; i++) {
+                if (args[i] != null) {
+                    accumulators[i].add(args[i].apply(row));
+                } else if (ops[i] == Ops.AggOps.COUNT_DISTINCT_ALL_AGG) {
+                    if (rowKey == null) {
+                        rowKey = getRowKey(row);
+                    }
+                    accumulators[i].add(rowKey);
+                } else {
+                    accumulators[i].count++;
+                }
+            }
+        }
+
+        // aggregates without grouping have a result also for no rows
+        if (groups.isEmpty() && keys.length == 0) {
+            Accumulator[] accumulators = new Accumulator[ops.length];
+            for (int i = 0; i < accumulators.length; i++) {
+                accumulators[i] = new Accumulator(ops[i]);
+            }
+            groups.put(Arrays.<NODE> asList(), accumulators);
+        }
+
+        List<Bindings> rows = new ArrayList<Bindings>(groups.size());
+        for (Map.Entry<List<NODE>, Accumulator[]> entry : groups.entrySet()) {
+            Bindings row = new Bindings(scope);
+            for (int i = 0; i < keySlots.length; i++) {
+                if (entry.getKey().get(i) != null) {
+                    row.put(keySlots[i], entry.getKey().get(i));
+                }
+            }
+            Accumulator[] accumulators = entry.getValue();
+            for (int i = 0; i < accumulators.length; i++) {
+                NODE value = accumulators[i].getResult();
+                if (value != null) {
+                    row.put(slots[i], value);
+                }
+            }
+            rows.add(row);
+        }
+        if (having != null) {
+            return Iterators.filter(rows.iterator(), having);
+        } else {
+            return rows.iterator();
+        }
+    }
+
+    private List<NODE> getRowKey(Bindings row) {
+        NODE[] key = new NODE[rowSlots];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = row.get(i);
+        }
+        return Arrays.asList(key);
+    }
+
+    private static int getNumericType(NODE node) {
+        if (!node.isLiteral()) {
+            return NONE;
+        }
+        UID datatype = ((LIT) node).getDatatype();
+        if (integerTypes.contains(datatype)) {
+            return INTEGER;
+        } else if (datatype.equals(XSD.decimalType)) {
+            return DECIMAL;
+        } else if (datatype.equals(XSD.doubleType) || datatype.equals(XSD.floatType)) {
+            return DOUBLE;
+        } else {
+            return NONE;
+        }
+    }
+
+    /**
+     * Accumulated state of an aggregate for one group
+     */
+    private static final class Accumulator {
+
+        private final Operator<?> op;
+
+        private long count;
+
+        @Nullable
+        private Set<Object> distinct;
+
+        @Nullable
+        private NODE extreme;
+
+        private BigDecimal decimalSum = BigDecimal.ZERO;
+
+        private double doubleSum;
+
+        private int type = INTEGER;
+
+        Accumulator(Operator<?> op) {
+            this.op = op;
+            if (op == Ops.AggOps.COUNT_DISTINCT_AGG || op == Ops.AggOps.COUNT_DISTINCT_ALL_AGG) {
+                distinct = new HashSet<Object>();
+            }
+        }
+
+        void add(Object value) {
+            distinct.add(value);
+        }
+
+        void add(@Nullable NODE value) {
+            if (value == null) {
+                return;
+            }
+            if (distinct != null) {
+                distinct.add(value);
+            } else if (op == Ops.AggOps.MIN_AGG) {
+                if (extreme == null || nodeComparator.compare(value, extreme) < 0) {
+                    extreme = value;
+                }
+            } else if (op == Ops.AggOps.MAX_AGG) {
+                if (extreme == null || nodeComparator.compare(value, extreme) > 0) {
+                    extreme = value;
+                }
+            } else if (op == Ops.AggOps.SUM_AGG || op == Ops.AggOps.AVG_AGG) {
+                addNumber(value);
+            }
+            count++;
+        }
+
+        private void addNumber(NODE value) {
+            if (type == NONE) {
+                return;
+            }
+            int valueType = getNumericType(value);
+            Object key = valueType != NONE ? value.asLiteral().getKey() : null;
+            if (!(key instanceof Number)) {
+                type = NONE;
+            } else if (valueType == DOUBLE || type == DOUBLE) {
+                if (type != DOUBLE) {
+                    doubleSum = decimalSum.doubleValue();
+                    type = DOUBLE;
+                }
+                doubleSum += ((Number) key).doubleValue();
+            } else {
+                BigDecimal number = key instanceof Long ? BigDecimal.valueOf((Long) key) : (BigDecimal) key;
+                decimalSum = decimalSum.add(number);
+                type = Math.max(type, valueType);
+            }
+        }
+
+        @Nullable
+        NODE getResult() {
+            if (distinct != null) {
+                return new LIT(String.valueOf(distinct.size()), XSD.longType);
+            } else if (op == Ops.AggOps.COUNT_AGG || op == Ops.AggOps.COUNT_ALL_AGG) {
+                return new LIT(String.valueOf(count), XSD.longType);
+            } else if (op == Ops.AggOps.MIN_AGG || op == Ops.AggOps.MAX_AGG) {
+                return extreme;
+            } else if (type == NONE) {
+                return null;
+            } else if (op == Ops.AggOps.SUM_AGG) {
+                return type == DOUBLE ? new LIT(String.valueOf(doubleSum), XSD.doubleType)
+                        : new LIT(decimalSum.toPlainString(), numericTypes[type]);
+            } else if (op == Ops.AggOps.AVG_AGG) {
+                if (count == 0) {
+                    return new LIT("0", XSD.integerType);
+                } else if (type == DOUBLE) {
+                    return new LIT(String.valueOf(doubleSum / count), XSD.doubleType);
+                } else {
+                    BigDecimal avg = decimalSum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL64);
+                    return new LIT(avg.stripTrailingZeros().toPlainString(), XSD.decimalType);
+                }
+            } else {
+                throw new IllegalArgumentException(op.toString());
+            }
+        }
+
+    }
+
+}
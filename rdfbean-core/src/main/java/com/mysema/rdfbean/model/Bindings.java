@@ -1,80 +1,292 @@
 package com.mysema.rdfbean.model;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
 /**
+ * Bindings is a row of variable bindings with an optional parent row
+ *
+ * <p>
+ * Variables are resolved to integer slots shared by all rows created from the
+ * same root, and each row keeps its values in a NODE array indexed by slot.
+ * Evaluators should resolve the slots once via {@link #getSlot(String)} and
+ * use the slot based accessors per row.
+ * </p>
+ *
  * @author tiwe
- * 
+ *
  */
 public class Bindings {
 
-    private final Map<String, NODE> bindings = new HashMap<String, NODE>();
+    private static final NODE[] EMPTY = new NODE[0];
+
+    /**
+     * Variable to slot mapping shared by a tree of rows
+     */
+    private static final class Slots {
+
+        private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+        private final List<String> names = new ArrayList<String>();
+
+        int getSlot(String key) {
+            Integer slot = slots.get(key);
+            if (slot == null) {
+                slot = names.size();
+                slots.put(key, slot);
+                names.add(key);
+            }
+            return slot.intValue();
+        }
+
+        int lookup(String key) {
+            Integer slot = slots.get(key);
+            return slot != null ? slot.intValue() : -1;
+        }
+
+    }
+
+    private final Slots slots;
+
+    private NODE[] values = EMPTY;
 
     @Nullable
     private final Bindings parent;
 
     public Bindings() {
+        this.slots = new Slots();
         this.parent = null;
     }
 
     public Bindings(Bindings parent) {
+        this.slots = parent.slots;
         this.parent = parent;
     }
 
     public void clear() {
-        bindings.clear();
+        Arrays.fill(values, null);
     }
 
     public Bindings getParent() {
         return parent;
     }
 
+    /**
+     * Get the slot of the given variable, the slot is allocated if the
+     * variable is not yet known
+     *
+     * @param key
+     * @return
+     */
+    public int getSlot(String key) {
+        return slots.getSlot(key);
+    }
+
+    /**
+     * Get the amount of allocated slots
+     *
+     * @return
+     */
+    public int getSlotCount() {
+        return slots.names.size();
+    }
+
     @Nullable
     public NODE get(String key) {
-        if (bindings.containsKey(key)) {
-            return bindings.get(key);
-        } else if (parent != null) {
-            return parent.get(key);
-        } else {
-            return null;
+        int slot = slots.lookup(key);
+        return slot != -1 ? get(slot) : null;
+    }
+
+    @Nullable
+    public NODE get(int slot) {
+        Bindings bindings = this;
+        while (bindings != null) {
+            if (slot < bindings.values.length && bindings.values[slot] != null) {
+                return bindings.values[slot];
+            }
+            bindings = bindings.parent;
         }
+        return null;
     }
 
     @Nullable
     public NODE put(String key, NODE node) {
-        return bindings.put(key, node);
+        return put(slots.getSlot(key), node);
+    }
+
+    @Nullable
+    public NODE put(int slot, NODE node) {
+        if (slot >= values.length) {
+            values = Arrays.copyOf(values, Math.max(slot + 1, slots.names.size()));
+        }
+        NODE rv = values[slot];
+        values[slot] = node;
+        return rv;
+    }
+
+    /**
+     * Create a detached copy of the values of this row and its parents
+     *
+     * @return
+     */
+    public Bindings copy() {
+        Bindings rv = new Bindings(slots);
+        rv.values = new NODE[slots.names.size()];
+        for (int i = 0; i < rv.values.length; i++) {
+            rv.values[i] = get(i);
+        }
+        return rv;
+    }
+
+    private Bindings(Slots slots) {
+        this.slots = slots;
+        this.parent = null;
     }
 
     public Map<String, NODE> toMap() {
-        Map<String, NODE> rv = new HashMap<String, NODE>(bindings);
-        if (parent != null) {
-            rv.putAll(parent.toMap());
+        Map<String, NODE> rv = new HashMap<String, NODE>();
+        for (int i = 0; i < slots.names.size(); i++) {
+            NODE node = get(i);
+            if (node != null) {
+                rv.put(slots.names.get(i), node);
+            }
         }
         return rv;
     }
 
     public Map<String, NODE> toMap(Collection<String> vars) {
-        Map<String, NODE> rv = new HashMap<String, NODE>(vars.size());
-        for (String var : vars) {
-            NODE node = get(var);
+        List<String> keys = new ArrayList<String>(vars);
+        int[] varSlots = new int[keys.size()];
+        for (int i = 0; i < varSlots.length; i++) {
+            varSlots[i] = slots.lookup(keys.get(i));
+        }
+        return toMap(keys, varSlots);
+    }
+
+    /**
+     * Create a map of the bound values of the given variables
+     *
+     * @param keys
+     *            variable names
+     * @param varSlots
+     *            slots of the variables
+     * @return
+     */
+    public Map<String, NODE> toMap(List<String> keys, int[] varSlots) {
+        String[] names = new String[varSlots.length];
+        NODE[] nodes = new NODE[varSlots.length];
+        int size = 0;
+        for (int i = 0; i < varSlots.length; i++) {
+            NODE node = varSlots[i] != -1 ? get(varSlots[i]) : null;
             if (node != null) {
-                rv.put(var, node);
+                names[size] = keys.get(i);
+                nodes[size++] = node;
             }
         }
-        return rv;
+        return new RowMap(names, nodes, size);
     }
 
     @Override
     public String toString() {
+        Map<String, NODE> local = new LinkedHashMap<String, NODE>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                local.put(slots.names.get(i), values[i]);
+            }
+        }
         if (parent != null) {
-            return parent + " " + bindings;
+            return parent + " " + local;
         } else {
-            return bindings.toString();
+            return local.toString();
+        }
+    }
+
+    /**
+     * Read-only map view of the projected values of a row
+     */
+    private static final class RowMap extends AbstractMap<String, NODE> {
+
+        private final String[] names;
+
+        private final NODE[] nodes;
+
+        private final int size;
+
+        RowMap(String[] names, NODE[] nodes, int size) {
+            this.names = names;
+            this.nodes = nodes;
+            this.size = size;
+        }
+
+        @Override
+        public NODE get(Object key) {
+            for (int i = 0; i < size; i++) {
+                if (names[i].equals(key)) {
+                    return nodes[i];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Set<Map.Entry<String, NODE>> entrySet() {
+            return new AbstractSet<Map.Entry<String, NODE>>() {
+                @Override
+                public Iterator<Map.Entry<String, NODE>> iterator() {
+                    return new Iterator<Map.Entry<String, NODE>>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < size;
+                        }
+
+                        @Override
+                        public Map.Entry<String, NODE> next() {
+                            if (index >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            Map.Entry<String, NODE> entry = new SimpleImmutableEntry<String, NODE>(names[index], nodes[index]);
+                            index++;
+                            return entry;
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
         }
 
     }
+
 }
@@ -0,0 +1,24 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+/**
+ * Cancellable is implemented by queries whose evaluation can be aborted via a
+ * {@link CancellationToken}
+ *
+ * @author tiwe
+ *
+ */
+public interface Cancellable {
+
+    /**
+     * Set the token which is checked during the evaluation of the query
+     *
+     * @param token
+     */
+    void setCancellationToken(CancellationToken token);
+
+}
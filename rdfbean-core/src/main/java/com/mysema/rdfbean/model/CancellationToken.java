@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CancellationToken signals the cancellation of queries, either explicitly via
+ * {@link #cancel()} or by an optional deadline
+ *
+ * <p>
+ * Query evaluators check the token periodically and abort the evaluation with
+ * a {@link QueryCancelledException}. The same token can be shared by several
+ * queries and cancelled from any thread.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public final class CancellationToken {
+
+    /**
+     * Create a token which expires after the given time
+     *
+     * @param duration
+     * @param unit
+     * @return
+     */
+    public static CancellationToken withTimeout(long duration, TimeUnit unit) {
+        return new CancellationToken(unit.toNanos(duration));
+    }
+
+    private final boolean hasDeadline;
+
+    private final long deadline;
+
+    private final long timeout;
+
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this.hasDeadline = false;
+        this.deadline = 0;
+        this.timeout = 0;
+    }
+
+    private CancellationToken(long timeout) {
+        this.hasDeadline = true;
+        this.deadline = System.nanoTime() + timeout;
+        this.timeout = timeout;
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (hasDeadline && System.nanoTime() - deadline >= 0);
+    }
+
+    /**
+     * Get the remaining time until the deadline or Long.MAX_VALUE if the
+     * token has no deadline
+     *
+     * @param unit
+     * @return
+     */
+    public long getRemaining(TimeUnit unit) {
+        if (hasDeadline) {
+            return unit.convert(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } else {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Throw a QueryCancelledException if the token has been cancelled or
+     * the deadline has passed
+     *
+     * @throws QueryCancelledException
+     */
+    public void check() {
+        if (cancelled) {
+            throw new QueryCancelledException("Query was cancelled");
+        } else if (hasDeadline && System.nanoTime() - deadline >= 0) {
+            throw new QueryCancelledException("Query exceeded its time limit of "
+                    + TimeUnit.NANOSECONDS.toMillis(timeout) + " ms");
+        }
+    }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import javax.annotation.Nullable;
+
+/**
+ * CardinalityEstimator provides statement counts for query planning
+ *
+ * @author tiwe
+ *
+ */
+public interface CardinalityEstimator {
+
+    /**
+     * Estimate the amount of statements matching the given pattern. The
+     * estimate may ignore some of the given terms, so it is an upper bound of
+     * the actual amount.
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param context
+     * @return estimated amount of statements or -1, if no estimate is available
+     */
+    long estimate(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context);
+
+}
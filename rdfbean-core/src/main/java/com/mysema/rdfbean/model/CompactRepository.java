@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.Namespaces;
+import com.mysema.rdfbean.model.io.NTriplesParser;
+import com.mysema.rdfbean.model.io.RDFWriter;
+import com.mysema.rdfbean.model.io.WriterUtils;
+
+/**
+ * CompactRepository is a dictionary encoded in-memory implementation of the
+ * Repository interface. Nodes are mapped to int ids via a {@link NodeDictionary}
+ * and statements are kept as int quads in sorted SPO, POS and OSP
+ * {@link QuadIndex} instances, which makes it a memory efficient alternative to
+ * {@link MiniRepository} for large statement caches.
+ *
+ * <p>
+ * The contents can be written to a binary snapshot file via
+ * {@link #writeSnapshot(File)}. {@link #openSnapshot(File)} memory maps such a
+ * file, so the repository is usable without parsing or indexing and terms are
+ * only decoded when accessed. Updates of an opened snapshot are kept on the
+ * heap, the file itself is never modified.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public final class CompactRepository implements Repository, CardinalityEstimator {
+
+    private static final int INFERRED = 1;
+
+    private static final int BATCH_SIZE = 10000;
+
+    private final MiniDialect dialect = new MiniDialect();
+
+    private final NodeDictionary dictionary;
+
+    private final QuadIndex spo, pos, osp;
+
+    private long localId = 0;
+
+    public CompactRepository() {
+        this(1024);
+    }
+
+    public CompactRepository(int initialCapacity) {
+        dictionary = new NodeDictionary(initialCapacity);
+        spo = new QuadIndex(QuadIndex.SUBJECT, QuadIndex.PREDICATE, QuadIndex.OBJECT);
+        pos = new QuadIndex(QuadIndex.PREDICATE, QuadIndex.OBJECT, QuadIndex.SUBJECT);
+        osp = new QuadIndex(QuadIndex.OBJECT, QuadIndex.SUBJECT, QuadIndex.PREDICATE);
+    }
+
+    public CompactRepository(STMT... stmts) {
+        this(stmts.length);
+        add(stmts);
+    }
+
+    CompactRepository(NodeDictionary dictionary, QuadIndex spo, QuadIndex pos, QuadIndex osp, long localId) {
+        this.dictionary = dictionary;
+        this.spo = spo;
+        this.pos = pos;
+        this.osp = osp;
+        this.localId = localId;
+    }
+
+    /**
+     * Open the given snapshot file
+     *
+     * @param file
+     *            file written via {@link #writeSnapshot(File)}
+     * @return
+     */
+    public static CompactRepository openSnapshot(File file) {
+        try {
+            return CompactSnapshot.open(file);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    public void add(STMT... stmts) {
+        int[] quad = new int[QuadIndex.ROW];
+        for (STMT stmt : stmts) {
+            quad[QuadIndex.SUBJECT] = dictionary.getOrCreateId(stmt.getSubject());
+            quad[QuadIndex.PREDICATE] = dictionary.getOrCreateId(stmt.getPredicate());
+            quad[QuadIndex.OBJECT] = dictionary.getOrCreateId(stmt.getObject());
+            int context = stmt.getContext() != null ? dictionary.getOrCreateId(stmt.getContext()) : NodeDictionary.NONE;
+            quad[QuadIndex.CONTEXT] = encodeContext(context, stmt.isAsserted());
+            spo.add(quad);
+            pos.add(quad);
+            osp.add(quad);
+        }
+    }
+
+    public void clear() {
+        dictionary.clear();
+        spo.clear();
+        pos.clear();
+        osp.clear();
+    }
+
+    @Override
+    public void close() {
+
+    }
+
+    @Override
+    public void load(Format format, InputStream is, @Nullable UID context, boolean replace) {
+        if (format != Format.NTRIPLES && format != Format.NQUADS) {
+            throw new UnsupportedOperationException("Unsupported format " + format);
+        }
+        if (context != null) {
+            if (!replace && exists(null, null, null, context)) {
+                return;
+            } else if (replace) {
+                remove(null, null, null, context);
+            }
+        }
+        NTriplesParser parser = new NTriplesParser(is, format == Format.NQUADS, context);
+        STMT[] batch = new STMT[BATCH_SIZE];
+        int count;
+        while ((count = parser.read(batch)) > 0) {
+            add(count == batch.length ? batch : Arrays.copyOf(batch, count));
+        }
+    }
+
+    @Override
+    public void export(Format format, Map<String, String> ns2prefix, UID context, OutputStream out) {
+        RDFWriter writer = WriterUtils.createWriter(format, out, ns2prefix);
+        CloseableIterator<STMT> stmts = findStatements(null, null, null, context, false);
+        try {
+            writer.begin();
+            while (stmts.hasNext()) {
+                writer.handle(stmts.next());
+            }
+            writer.end();
+        } finally {
+            stmts.close();
+        }
+    }
+
+    @Override
+    public void export(Format format, UID context, OutputStream out) {
+        export(format, Namespaces.DEFAULT, context, out);
+    }
+
+    public CloseableIterator<STMT> findStatements(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context, boolean includeInferred) {
+        QuadIterator iterator = iterator(subject, predicate, object, context, includeInferred);
+        if (iterator != null) {
+            return iterator;
+        } else {
+            return new IteratorAdapter<STMT>(Collections.<STMT> emptyList().iterator());
+        }
+    }
+
+    @Nullable
+    private QuadIterator iterator(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context, boolean includeInferred) {
+        int s = NodeDictionary.NONE, p = NodeDictionary.NONE, o = NodeDictionary.NONE, c = NodeDictionary.NONE;
+        if ((subject != null && (s = dictionary.getId(subject)) == NodeDictionary.NONE)
+                || (predicate != null && (p = dictionary.getId(predicate)) == NodeDictionary.NONE)
+                || (object != null && (o = dictionary.getId(object)) == NodeDictionary.NONE)
+                || (context != null && (c = dictionary.getId(context)) == NodeDictionary.NONE)) {
+            return null;
+        }
+
+        QuadIndex index;
+        int[] key;
+        if (s != NodeDictionary.NONE) {
+            if (p == NodeDictionary.NONE && o != NodeDictionary.NONE) {
+                index = osp;
+                key = new int[] { o, s };
+            } else {
+                index = spo;
+                if (p == NodeDictionary.NONE) {
+                    key = new int[] { s };
+                } else if (o == NodeDictionary.NONE) {
+                    key = new int[] { s, p };
+                } else {
+                    key = new int[] { s, p, o };
+                }
+            }
+        } else if (p != NodeDictionary.NONE) {
+            index = pos;
+            key = o != NodeDictionary.NONE ? new int[] { p, o } : new int[] { p };
+        } else if (o != NodeDictionary.NONE) {
+            index = osp;
+            key = new int[] { o };
+        } else {
+            index = spo;
+            key = new int[0];
+        }
+        return new QuadIterator(index, key, c, includeInferred);
+    }
+
+    public boolean exists(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        return findStatements(subject, predicate, object, context, false).hasNext();
+    }
+
+    @Override
+    public long estimate(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        QuadIterator iterator = iterator(subject, predicate, object, context, true);
+        return iterator != null ? iterator.cursor.size() : 0;
+    }
+
+    public MiniDialect getDialect() {
+        return dialect;
+    }
+
+    public NodeDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public synchronized long getNextLocalId() {
+        return ++localId;
+    }
+
+    @Override
+    public void initialize() {
+    }
+
+    public CompactConnection openConnection() {
+        return new CompactConnection(this);
+    }
+
+    public void remove(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        if (subject == null && predicate == null && object == null && context == null) {
+            clear();
+        } else {
+            QuadIterator quads = iterator(subject, predicate, object, context, true);
+            if (quads != null) {
+                int[] quad = new int[QuadIndex.ROW];
+                while (quads.nextQuad(quad)) {
+                    removeQuad(quad);
+                }
+            }
+        }
+    }
+
+    public void removeStatements(Collection<STMT> stmts) {
+        int[] quad = new int[QuadIndex.ROW];
+        for (STMT stmt : stmts) {
+            int context = NodeDictionary.NONE;
+            if ((quad[QuadIndex.SUBJECT] = dictionary.getId(stmt.getSubject())) == NodeDictionary.NONE
+                    || (quad[QuadIndex.PREDICATE] = dictionary.getId(stmt.getPredicate())) == NodeDictionary.NONE
+                    || (quad[QuadIndex.OBJECT] = dictionary.getId(stmt.getObject())) == NodeDictionary.NONE
+                    || (stmt.getContext() != null && (context = dictionary.getId(stmt.getContext())) == NodeDictionary.NONE)) {
+                continue;
+            }
+            quad[QuadIndex.CONTEXT] = encodeContext(context, stmt.isAsserted());
+            removeQuad(quad);
+        }
+    }
+
+    private void removeQuad(int[] quad) {
+        spo.remove(quad);
+        pos.remove(quad);
+        osp.remove(quad);
+    }
+
+    /**
+     * Write the contents of this repository to the given snapshot file
+     *
+     * @param file
+     */
+    public synchronized void writeSnapshot(File file) {
+        writeSnapshot(file, localId);
+    }
+
+    synchronized void writeSnapshot(File file, long localId) {
+        try {
+            CompactSnapshot.write(file, dictionary, spo, pos, osp, localId);
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    /**
+     * Get the amount of statements in this repository
+     *
+     * @return
+     */
+    public int size() {
+        return spo.size();
+    }
+
+    @Override
+    public <RT> RT execute(RDFConnectionCallback<RT> operation) {
+        RDFConnection connection = openConnection();
+        try {
+            try {
+                return operation.doInConnection(connection);
+            } finally {
+                connection.close();
+            }
+        } catch (IOException io) {
+            throw new RepositoryException(io);
+        }
+    }
+
+    private static int encodeContext(int context, boolean asserted) {
+        return (context << 1) | (asserted ? 0 : INFERRED);
+    }
+
+    /**
+     * Iterator over a key prefix range of a QuadIndex
+     */
+    private final class QuadIterator implements CloseableIterator<STMT> {
+
+        private final QuadIndex.Cursor cursor;
+
+        private final int[] order;
+
+        private final int[] row = new int[QuadIndex.ROW];
+
+        private final int[] quad = new int[QuadIndex.ROW];
+
+        private final int context;
+
+        private final boolean includeInferred;
+
+        private boolean ready;
+
+        QuadIterator(QuadIndex index, int[] key, int context, boolean includeInferred) {
+            this.cursor = index.getCursor(key);
+            this.order = new int[QuadIndex.ROW];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = index.getOrder(i);
+            }
+            this.context = context;
+            this.includeInferred = includeInferred;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!ready) {
+                while (cursor.next(row)) {
+                    int encoded = row[QuadIndex.CONTEXT];
+                    if ((context == NodeDictionary.NONE || (encoded >>> 1) == context)
+                            && (includeInferred || (encoded & INFERRED) == 0)) {
+                        ready = true;
+                        break;
+                    }
+                }
+            }
+            return ready;
+        }
+
+        boolean nextQuad(int[] quad) {
+            if (hasNext()) {
+                for (int i = 0; i < QuadIndex.ROW; i++) {
+                    quad[order[i]] = row[i];
+                }
+                ready = false;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public STMT next() {
+            if (!nextQuad(quad)) {
+                throw new NoSuchElementException();
+            }
+            int context = quad[QuadIndex.CONTEXT] >>> 1;
+            return new STMT(
+                    (ID) dictionary.getNode(quad[QuadIndex.SUBJECT]),
+                    (UID) dictionary.getNode(quad[QuadIndex.PREDICATE]),
+                    dictionary.getNode(quad[QuadIndex.OBJECT]),
+                    context != NodeDictionary.NONE ? (UID) dictionary.getNode(context) : null,
+                    (quad[QuadIndex.CONTEXT] & INFERRED) == 0);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * CompactSnapshot reads and writes the binary snapshot format of
+ * {@link CompactRepository}
+ *
+ * <p>
+ * The file consists of a fixed size header followed by the encoded terms, the
+ * term offsets, the term hash table and the SPO, POS and OSP rows. All sections
+ * except the terms are int arrays, so they can be used directly as memory
+ * mapped buffers when the snapshot is opened.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+final class CompactSnapshot {
+
+    private static final int MAGIC = 0x52444642;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER = 64;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int QUAD_BYTES = QuadIndex.ROW * 4;
+
+    private CompactSnapshot() {
+    }
+
+    static void write(File file, NodeDictionary dictionary, QuadIndex spo, QuadIndex pos, QuadIndex osp,
+            long localId) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            channel.position(HEADER);
+
+            // terms
+            int termCount = dictionary.size();
+            int[] offsets = new int[termCount];
+            long termsLength = 0;
+            for (int id = 1; id <= termCount; id++) {
+                byte[] bytes = dictionary.encode(id);
+                if (termsLength + bytes.length > Integer.MAX_VALUE) {
+                    throw new RepositoryException("Encoded terms exceed " + Integer.MAX_VALUE + " bytes");
+                }
+                offsets[id - 1] = (int) termsLength;
+                termsLength += bytes.length;
+                if (buffer.remaining() < bytes.length) {
+                    flush(channel, buffer);
+                }
+                if (bytes.length > buffer.capacity()) {
+                    channel.write(ByteBuffer.wrap(bytes));
+                } else {
+                    buffer.put(bytes);
+                }
+            }
+            for (long i = termsLength; i < align(termsLength); i++) {
+                buffer.put((byte) 0);
+                if (!buffer.hasRemaining()) {
+                    flush(channel, buffer);
+                }
+            }
+
+            // dictionary
+            writeInts(channel, buffer, IntBuffer.wrap(offsets));
+            int[] table = dictionary.createTable();
+            writeInts(channel, buffer, IntBuffer.wrap(table));
+
+            // indexes
+            int quadCount = spo.size();
+            writeInts(channel, buffer, spo.getRows());
+            writeInts(channel, buffer, pos.getRows());
+            writeInts(channel, buffer, osp.getRows());
+            flush(channel, buffer);
+
+            // header
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(termCount);
+            buffer.putInt(table.length);
+            buffer.putInt(quadCount);
+            buffer.putLong(termsLength);
+            buffer.putLong(localId);
+            buffer.flip();
+            channel.write(buffer, 0);
+            channel.force(true);
+        } finally {
+            raf.close();
+        }
+    }
+
+    static CompactRepository open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                // read until the header is complete
+            }
+            header.flip();
+            if (header.remaining() < HEADER || header.getInt() != MAGIC) {
+                throw new RepositoryException("Not a snapshot file : " + file.getPath());
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new RepositoryException("Unsupported snapshot version " + version + " : " + file.getPath());
+            }
+            int termCount = header.getInt();
+            int tableLength = header.getInt();
+            int quadCount = header.getInt();
+            long termsLength = header.getLong();
+            long localId = header.getLong();
+
+            long position = HEADER;
+            ByteBuffer terms = map(channel, position, termsLength);
+            position += align(termsLength);
+            IntBuffer offsets = map(channel, position, 4l * termCount).asIntBuffer();
+            position += 4l * termCount;
+            IntBuffer table = map(channel, position, 4l * tableLength).asIntBuffer();
+            position += 4l * tableLength;
+            IntBuffer spo = map(channel, position, (long) QUAD_BYTES * quadCount).asIntBuffer();
+            position += (long) QUAD_BYTES * quadCount;
+            IntBuffer pos = map(channel, position, (long) QUAD_BYTES * quadCount).asIntBuffer();
+            position += (long) QUAD_BYTES * quadCount;
+            IntBuffer osp = map(channel, position, (long) QUAD_BYTES * quadCount).asIntBuffer();
+
+            return new CompactRepository(
+                    new NodeDictionary(terms, offsets, table, termCount),
+                    new QuadIndex(QuadIndex.SUBJECT, QuadIndex.PREDICATE, QuadIndex.OBJECT, spo),
+                    new QuadIndex(QuadIndex.PREDICATE, QuadIndex.OBJECT, QuadIndex.SUBJECT, pos),
+                    new QuadIndex(QuadIndex.OBJECT, QuadIndex.SUBJECT, QuadIndex.PREDICATE, osp),
+                    localId);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static long align(long length) {
+        return (length + 3) & ~3l;
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new RepositoryException("Snapshot segment exceeds " + Integer.MAX_VALUE + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, IntBuffer ints) throws IOException {
+        for (int i = 0; i < ints.limit(); i++) {
+            if (buffer.remaining() < 4) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(ints.get(i));
+        }
+    }
+
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.l10n.support.LocaleUtil;
+import com.mysema.commons.lang.CloseableIterator;
+
+/**
+ * DistinctIterable removes rows with duplicate values of the given slots
+ *
+ * <p>
+ * The distinct values are kept in a hash set of at most the given amount of
+ * entries. While the set is below the limit the first occurrences are
+ * returned as they are read. When the limit is exceeded, the set is written
+ * as a sorted run to a temporary file and the remaining rows are collected
+ * into further runs, which are merged at the end. Values already returned
+ * are marked in the merge, so each distinct row is returned once. The runs
+ * are deleted when the iterator is exhausted, closed or fails.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+final class DistinctIterable implements Iterable<Bindings> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte NULL = 0, URI = 1, BNODE = 2, LITERAL = 3, TEXT = 4;
+
+    private static final NODEComparator nodeComparator = new NODEComparator();
+
+    private static final Comparator<List<NODE>> keyComparator = new Comparator<List<NODE>>() {
+        @Override
+        public int compare(List<NODE> k1, List<NODE> k2) {
+            for (int i = 0; i < k1.size(); i++) {
+                int rv = nodeComparator.compare(k1.get(i), k2.get(i));
+                if (rv != 0) {
+                    return rv;
+                }
+            }
+            return 0;
+        }
+    };
+
+    private final Iterable<Bindings> iterable;
+
+    private final int[] slots;
+
+    private final Bindings scope;
+
+    private final int limit;
+
+    /**
+     * Create a new DistinctIterable
+     *
+     * @param iterable
+     *            rows
+     * @param slots
+     *            slots of the distinct values
+     * @param scope
+     *            parent of the rows read from runs
+     * @param limit
+     *            maximum amount of distinct values kept in memory
+     */
+    public DistinctIterable(Iterable<Bindings> iterable, int[] slots, Bindings scope, int limit) {
+        this.iterable = iterable;
+        this.slots = slots;
+        this.scope = scope;
+        this.limit = Math.max(limit, 1);
+    }
+
+    @Override
+    public CloseableIterator<Bindings> iterator() {
+        return new DistinctIterator(iterable.iterator());
+    }
+
+    private List<NODE> getKey(Bindings row) {
+        NODE[] key = new NODE[slots.length];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = slots[i] != -1 ? row.get(slots[i]) : null;
+        }
+        return Arrays.asList(key);
+    }
+
+    private static void writeNode(DataOutputStream out, @Nullable NODE node) throws IOException {
+        if (node == null) {
+            out.writeByte(NULL);
+        } else if (node.isURI()) {
+            out.writeByte(URI);
+            writeString(out, node.getValue());
+        } else if (node.isBNode()) {
+            out.writeByte(BNODE);
+            writeString(out, node.getValue());
+        } else if (node.asLiteral().isText()) {
+            out.writeByte(TEXT);
+            writeString(out, node.getValue());
+            writeString(out, LocaleUtil.toLang(node.asLiteral().getLang()));
+        } else {
+            out.writeByte(LITERAL);
+            writeString(out, node.getValue());
+            writeString(out, node.asLiteral().getDatatype().getId());
+        }
+    }
+
+    @Nullable
+    private static NODE readNode(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL:
+            return null;
+        case URI:
+            return new UID(readString(in));
+        case BNODE:
+            return new BID(readString(in));
+        case TEXT:
+            return new LIT(readString(in), LocaleUtil.parseLocale(readString(in)));
+        case LITERAL:
+            return new LIT(readString(in), new UID(readString(in)));
+        default:
+            throw new IllegalStateException("Unknown node type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * Sorted run of distinct values in a temporary file
+     */
+    private final class Run {
+
+        private final File file;
+
+        private final int size;
+
+        private final boolean returned;
+
+        @Nullable
+        private DataInputStream in;
+
+        private int read;
+
+        @Nullable
+        private List<NODE> head;
+
+        Run(Set<List<NODE>> keys, boolean returned) throws IOException {
+            List<List<NODE>> sorted = new ArrayList<List<NODE>>(keys);
+            Collections.sort(sorted, keyComparator);
+            this.file = File.createTempFile("distinct", ".run");
+            this.size = sorted.size();
+            this.returned = returned;
+            try {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+                try {
+                    for (List<NODE> key : sorted) {
+                        for (NODE node : key) {
+                            writeNode(out, node);
+                        }
+                    }
+                } finally {
+                    out.close();
+                }
+            } catch (IOException e) {
+                file.delete();
+                throw e;
+            }
+        }
+
+        boolean advance() throws IOException {
+            if (in == null) {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            }
+            if (read < size) {
+                NODE[] key = new NODE[slots.length];
+                for (int i = 0; i < key.length; i++) {
+                    key[i] = readNode(in);
+                }
+                head = Arrays.asList(key);
+                read++;
+                return true;
+            } else {
+                close();
+                return false;
+            }
+        }
+
+        void close() {
+            head = null;
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // the file is deleted anyway
+                }
+                in = null;
+            }
+            file.delete();
+        }
+
+    }
+
+    private final class DistinctIterator implements CloseableIterator<Bindings> {
+
+        private final Iterator<Bindings> input;
+
+        private Set<List<NODE>> seen = new HashSet<List<NODE>>();
+
+        @Nullable
+        private List<Run> runs;
+
+        @Nullable
+        private PriorityQueue<Run> merge;
+
+        @Nullable
+        private Bindings next;
+
+        private boolean closed;
+
+        DistinctIterator(Iterator<Bindings> input) {
+            this.input = input;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            } else if (closed) {
+                return false;
+            }
+            try {
+                if (runs == null) {
+                    while (input.hasNext()) {
+                        Bindings row = input.next();
+                        List<NODE> key = getKey(row);
+                        if (!seen.contains(key)) {
+                            if (seen.size() >= limit) {
+                                spill(key);
+                                break;
+                            }
+                            seen.add(key);
+                            next = row;
+                            return true;
+                        }
+                    }
+                    if (runs == null) {
+                        return false;
+                    }
+                }
+                if (merge == null) {
+                    startMerge();
+                }
+                next = nextMerged();
+                return next != null;
+            } catch (IOException e) {
+                close();
+                throw new RepositoryException(e);
+            } catch (RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        /**
+         * Write the returned keys into a run and collect the remaining keys
+         * into further runs
+         */
+        private void spill(List<NODE> first) throws IOException {
+            runs = new ArrayList<Run>();
+            runs.add(new Run(seen, true));
+            seen = new HashSet<List<NODE>>();
+            seen.add(first);
+            while (input.hasNext()) {
+                seen.add(getKey(input.next()));
+                if (seen.size() >= limit) {
+                    runs.add(new Run(seen, false));
+                    seen = new HashSet<List<NODE>>();
+                }
+            }
+        }
+
+        private void startMerge() throws IOException {
+            if (!seen.isEmpty()) {
+                runs.add(new Run(seen, false));
+            }
+            seen = null;
+            merge = new PriorityQueue<Run>(runs.size() + 1, new Comparator<Run>() {
+                @Override
+                public int compare(Run r1, Run r2) {
+                    return keyComparator.compare(r1.head, r2.head);
+                }
+            });
+            for (Run run : runs) {
+                if (run.advance()) {
+                    merge.add(run);
+                }
+            }
+        }
+
+        @Nullable
+        private Bindings nextMerged() throws IOException {
+            while (!merge.isEmpty()) {
+                List<NODE> key = merge.peek().head;
+                boolean returned = false;
+                while (!merge.isEmpty() && keyComparator.compare(merge.peek().head, key) == 0) {
+                    Run run = merge.poll();
+                    returned |= run.returned;
+                    if (run.advance()) {
+                        merge.add(run);
+                    }
+                }
+                if (!returned) {
+                    Bindings row = new Bindings(scope);
+                    for (int i = 0; i < slots.length; i++) {
+                        if (slots[i] != -1 && key.get(i) != null) {
+                            row.put(slots[i], key.get(i));
+                        }
+                    }
+                    return row;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Bindings next() {
+            if (hasNext()) {
+                Bindings rv = next;
+                next = null;
+                return rv;
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            next = null;
+            seen = null;
+            merge = null;
+            if (runs != null) {
+                for (Run run : runs) {
+                    run.close();
+                }
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
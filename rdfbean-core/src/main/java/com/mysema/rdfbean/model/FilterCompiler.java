@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.mysema.query.types.Constant;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.Operation;
+import com.mysema.query.types.Operator;
+import com.mysema.query.types.Ops;
+import com.mysema.query.types.ParamExpression;
+import com.mysema.query.types.Path;
+import com.mysema.rdfbean.xsd.ConverterRegistryImpl;
+import com.mysema.util.PatternCache;
+
+/**
+ * FilterCompiler compiles filter expressions into predicates and value
+ * functions over bindings
+ *
+ * <p>
+ * Constants are converted into nodes, variables into their binding slots and
+ * constant patterns into compiled regular expressions (via
+ * {@link PatternCache}) when the expression is compiled, so that filtering a
+ * row only looks up bindings and compares values. Only the string functions
+ * (concat, lower, substring etc) create new literals per row.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+final class FilterCompiler {
+
+    private static final NODEComparator nodeComparator = new NODEComparator();
+
+    private static final Set<Operator<?>> predicateOps = new HashSet<Operator<?>>();
+
+    static {
+        Operator<?>[] ops = { Ops.EQ, Ops.NE, Ops.AND, Ops.OR, Ops.NOT, Ops.IN, Ops.IS_NULL, Ops.IS_NOT_NULL,
+                Ops.LT, Ops.GT, Ops.LOE, Ops.GOE, Ops.MATCHES, Ops.MATCHES_IC, Ops.LIKE,
+                Ops.STARTS_WITH, Ops.ENDS_WITH, Ops.STRING_CONTAINS,
+                Ops.STARTS_WITH_IC, Ops.ENDS_WITH_IC, Ops.STRING_CONTAINS_IC,
+                Ops.EQ_IGNORE_CASE, Ops.STRING_IS_EMPTY };
+        for (Operator<?> op : ops) {
+            predicateOps.add(op);
+        }
+    }
+
+    private static final Set<Operator<?>> aggregateOps = new HashSet<Operator<?>>();
+
+    static {
+        Operator<?>[] ops = { Ops.AggOps.COUNT_AGG, Ops.AggOps.COUNT_ALL_AGG, Ops.AggOps.COUNT_DISTINCT_AGG,
+                Ops.AggOps.COUNT_DISTINCT_ALL_AGG, Ops.AggOps.SUM_AGG, Ops.AggOps.AVG_AGG,
+                Ops.AggOps.MIN_AGG, Ops.AggOps.MAX_AGG };
+        for (Operator<?> op : ops) {
+            aggregateOps.add(op);
+        }
+    }
+
+    public static boolean isPredicate(Operator<?> op) {
+        return predicateOps.contains(op);
+    }
+
+    public static boolean isAggregate(Operator<?> op) {
+        return aggregateOps.contains(op);
+    }
+
+    /**
+     * Get the name of the slot of the given variable or aggregate expression
+     *
+     * @param expr
+     * @return
+     */
+    public static String getName(Expression<?> expr) {
+        if (expr instanceof Path<?>) {
+            return ((Path<?>) expr).getMetadata().getElement().toString();
+        } else if (expr instanceof ParamExpression<?>) {
+            return ((ParamExpression<?>) expr).getName();
+        } else {
+            return expr.toString();
+        }
+    }
+
+    public static NODE toNode(Class<?> type, Object constant) {
+        if (type.equals(String.class)) {
+            return new LIT(constant.toString());
+        } else if (NODE.class.isAssignableFrom(type)) {
+            return (NODE) constant;
+        } else {
+            UID datatype = ConverterRegistryImpl.DEFAULT.getDatatype(type);
+            String value = ConverterRegistryImpl.DEFAULT.toString(constant);
+            return new LIT(value, datatype);
+        }
+    }
+
+    /**
+     * Compile the given boolean expression
+     *
+     * @param expr
+     * @param scope
+     *            bindings used to resolve variable slots
+     * @return
+     */
+    public Predicate<Bindings> compilePredicate(Expression<?> expr, Bindings scope) {
+        if (!(expr instanceof Operation<?>)) {
+            throw new IllegalArgumentException(expr.toString());
+        }
+        Operation<?> operation = (Operation<?>) expr;
+        Operator<?> op = operation.getOperator();
+        if (op == Ops.AND) {
+            return new And(compilePredicate(operation.getArg(0), scope), compilePredicate(operation.getArg(1), scope));
+
+        } else if (op == Ops.OR) {
+            return new Or(compilePredicate(operation.getArg(0), scope), compilePredicate(operation.getArg(1), scope));
+
+        } else if (op == Ops.NOT) {
+            final Predicate<Bindings> predicate = compilePredicate(operation.getArg(0), scope);
+            return new Predicate<Bindings>() {
+                @Override
+                public boolean apply(Bindings bindings) {
+                    return !predicate.apply(bindings);
+                }
+            };
+
+        } else if (op == Ops.EQ || op == Ops.NE) {
+            return createEqPredicate(operation, op == Ops.NE, scope);
+
+        } else if (op == Ops.IN) {
+            return createInPredicate(operation, scope);
+
+        } else if (op == Ops.IS_NULL || op == Ops.IS_NOT_NULL) {
+            final Function<Bindings, NODE> arg = compileValue(operation.getArg(0), scope);
+            final boolean notNull = op == Ops.IS_NOT_NULL;
+            return new Predicate<Bindings>() {
+                @Override
+                public boolean apply(Bindings bindings) {
+                    return (arg.apply(bindings) != null) == notNull;
+                }
+            };
+
+        } else if (op == Ops.LT || op == Ops.GT || op == Ops.LOE || op == Ops.GOE) {
+            return createComparePredicate(operation, op, scope);
+
+        } else if (op == Ops.MATCHES || op == Ops.MATCHES_IC || op == Ops.LIKE) {
+            return createMatchesPredicate(operation, op, scope);
+
+        } else if (op == Ops.STARTS_WITH || op == Ops.ENDS_WITH || op == Ops.STRING_CONTAINS
+                || op == Ops.STARTS_WITH_IC || op == Ops.ENDS_WITH_IC || op == Ops.STRING_CONTAINS_IC
+                || op == Ops.EQ_IGNORE_CASE) {
+            return createStringMatchPredicate(operation, op, scope);
+
+        } else if (op == Ops.STRING_IS_EMPTY) {
+            final Function<Bindings, NODE> arg = compileValue(operation.getArg(0), scope);
+            return new Predicate<Bindings>() {
+                @Override
+                public boolean apply(Bindings bindings) {
+                    NODE node = arg.apply(bindings);
+                    return node != null ? node.getValue().isEmpty() : false;
+                }
+            };
+
+        } else {
+            throw new IllegalArgumentException(expr.toString());
+        }
+    }
+
+    /**
+     * Compile the given value expression
+     *
+     * @param expr
+     * @param scope
+     *            bindings used to resolve variable slots
+     * @return
+     */
+    public Function<Bindings, NODE> compileValue(Expression<?> expr, Bindings scope) {
+        if (expr instanceof Constant<?>) {
+            Constant<?> constant = (Constant<?>) expr;
+            final NODE node = toNode(constant.getType(), constant.getConstant());
+            return new Function<Bindings, NODE>() {
+                @Override
+                public NODE apply(Bindings bindings) {
+                    return node;
+                }
+            };
+
+        } else if (expr instanceof Path<?> || expr instanceof ParamExpression<?>
+                || (expr instanceof Operation<?> && isAggregate(((Operation<?>) expr).getOperator()))) {
+            // aggregates are bound by Aggregator
+            final int slot = scope.getSlot(getName(expr));
+            return new Function<Bindings, NODE>() {
+                @Override
+                public NODE apply(Bindings bindings) {
+                    return bindings.get(slot);
+                }
+            };
+
+        } else if (expr instanceof Operation<?>) {
+            return createStringFunction((Operation<?>) expr, scope);
+
+        } else {
+            throw new IllegalArgumentException(expr.toString());
+        }
+    }
+
+    private Predicate<Bindings> createEqPredicate(Operation<?> expr, final boolean negated, Bindings scope) {
+        final Function<Bindings, NODE> lhs = compileValue(expr.getArg(0), scope);
+        final Function<Bindings, NODE> rhs = compileValue(expr.getArg(1), scope);
+        return new Predicate<Bindings>() {
+            @Override
+            public boolean apply(Bindings bindings) {
+                return Objects.equal(lhs.apply(bindings), rhs.apply(bindings)) != negated;
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private Predicate<Bindings> createInPredicate(Operation<?> expr, Bindings scope) {
+        final Function<Bindings, NODE> arg = compileValue(expr.getArg(0), scope);
+        final Set<NODE> values = new HashSet<NODE>();
+        for (Object o : ((Constant<Collection<?>>) expr.getArg(1)).getConstant()) {
+            values.add(toNode(o.getClass(), o));
+        }
+        return new Predicate<Bindings>() {
+            @Override
+            public boolean apply(Bindings bindings) {
+                NODE node = arg.apply(bindings);
+                return node != null && values.contains(node);
+            }
+        };
+    }
+
+    private Predicate<Bindings> createComparePredicate(Operation<?> expr, Operator<?> op, Bindings scope) {
+        final Function<Bindings, NODE> lhs = compileValue(expr.getArg(0), scope);
+        final Function<Bindings, NODE> rhs = compileValue(expr.getArg(1), scope);
+        final boolean lt = op == Ops.LT || op == Ops.LOE;
+        final boolean eq = op == Ops.LOE || op == Ops.GOE;
+        final boolean gt = op == Ops.GT || op == Ops.GOE;
+        return new Predicate<Bindings>() {
+            @Override
+            public boolean apply(Bindings bindings) {
+                int rv = nodeComparator.compare(lhs.apply(bindings), rhs.apply(bindings));
+                return rv < 0 ? lt : (rv == 0 ? eq : gt);
+            }
+        };
+    }
+
+    private Predicate<Bindings> createMatchesPredicate(Operation<?> expr, final Operator<?> op, Bindings scope) {
+        final Function<Bindings, NODE> lhs = compileValue(expr.getArg(0), scope);
+        if (expr.getArg(1) instanceof Constant<?>) {
+            final Pattern pattern = getPattern(op, compileValue(expr.getArg(1), scope).apply(null).getValue());
+            return new Predicate<Bindings>() {
+                @Override
+                public boolean apply(Bindings bindings) {
+                    NODE node = lhs.apply(bindings);
+                    return node != null && pattern.matcher(node.getValue()).matches();
+                }
+            };
+        } else {
+            final Function<Bindings, NODE> rhs = compileValue(expr.getArg(1), scope);
+            return new Predicate<Bindings>() {
+                @Override
+                public boolean apply(Bindings bindings) {
+                    NODE node = lhs.apply(bindings);
+                    NODE regex = rhs.apply(bindings);
+                    return node != null && regex != null
+                            && getPattern(op, regex.getValue()).matcher(node.getValue()).matches();
+                }
+            };
+        }
+    }
+
+    private static Pattern getPattern(Operator<?> op, String value) {
+        if (op == Ops.LIKE) {
+            return PatternCache.DEFAULT.getLike(value);
+        } else {
+            return PatternCache.DEFAULT.getRegex(value, op == Ops.MATCHES_IC);
+        }
+    }
+
+    private Predicate<Bindings> createStringMatchPredicate(Operation<?> expr, final Operator<?> op, Bindings scope) {
+        final Function<Bindings, NODE> lhs = compileValue(expr.getArg(0), scope);
+        final Function<Bindings, NODE> rhs = compileValue(expr.getArg(1), scope);
+        return new Predicate<Bindings>() {
+            @Override
+            public boolean apply(Bindings bindings) {
+                NODE l = lhs.apply(bindings);
+                NODE r = rhs.apply(bindings);
+                if (l == null || r == null) {
+                    return op == Ops.EQ_IGNORE_CASE && l == r;
+                }
+                String str = l.getValue(), other = r.getValue();
+                if (op == Ops.STARTS_WITH) {
+                    return str.startsWith(other);
+                } else if (op == Ops.STARTS_WITH_IC) {
+                    return str.regionMatches(true, 0, other, 0, other.length());
+                } else if (op == Ops.ENDS_WITH) {
+                    return str.endsWith(other);
+                } else if (op == Ops.ENDS_WITH_IC) {
+                    return str.regionMatches(true, str.length() - other.length(), other, 0, other.length());
+                } else if (op == Ops.STRING_CONTAINS) {
+                    return str.contains(other);
+                } else if (op == Ops.STRING_CONTAINS_IC) {
+                    for (int i = 0; i <= str.length() - other.length(); i++) {
+                        if (str.regionMatches(true, i, other, 0, other.length())) {
+                            return true;
+                        }
+                    }
+                    return false;
+                } else {
+                    return str.equalsIgnoreCase(other);
+                }
+            }
+        };
+    }
+
+    private Function<Bindings, NODE> createStringFunction(Operation<?> expr, Bindings scope) {
+        final Operator<?> op = expr.getOperator();
+        final Function<Bindings, NODE> arg0 = compileValue(expr.getArg(0), scope);
+        final Function<Bindings, NODE> arg1 = expr.getArgs().size() > 1 ? compileValue(expr.getArg(1), scope) : null;
+        final Function<Bindings, NODE> arg2 = expr.getArgs().size() > 2 ? compileValue(expr.getArg(2), scope) : null;
+        if (op != Ops.CONCAT && op != Ops.LOWER && op != Ops.UPPER && op != Ops.TRIM
+                && op != Ops.SUBSTR_1ARG && op != Ops.SUBSTR_2ARGS && op != Ops.CHAR_AT
+                && op != Ops.STRING_CAST) {
+            throw new IllegalArgumentException(expr.toString());
+        }
+        return new Function<Bindings, NODE>() {
+            @Override
+            public NODE apply(Bindings bindings) {
+                NODE lhs = arg0.apply(bindings);
+                if (op == Ops.CONCAT) {
+                    return new LIT(lhs.getValue() + arg1.apply(bindings).getValue());
+                } else if (op == Ops.LOWER) {
+                    return new LIT(lhs.getValue().toLowerCase());
+                } else if (op == Ops.UPPER) {
+                    return new LIT(lhs.getValue().toUpperCase());
+                } else if (op == Ops.TRIM) {
+                    return new LIT(lhs.getValue().trim());
+                } else if (op == Ops.SUBSTR_1ARG) {
+                    return new LIT(lhs.getValue().substring(toInt(arg1.apply(bindings))));
+                } else if (op == Ops.SUBSTR_2ARGS) {
+                    return new LIT(lhs.getValue().substring(toInt(arg1.apply(bindings)), toInt(arg2.apply(bindings))));
+                } else if (op == Ops.CHAR_AT) {
+                    return new LIT(String.valueOf(lhs.getValue().charAt(toInt(arg1.apply(bindings)))));
+                } else {
+                    return lhs.isResource() ? new LIT(lhs.getValue()) : lhs;
+                }
+            }
+        };
+    }
+
+    private static int toInt(NODE node) {
+        return Integer.parseInt(node.getValue());
+    }
+
+    private static final class And implements Predicate<Bindings> {
+
+        private final Predicate<Bindings> lhs, rhs;
+
+        And(Predicate<Bindings> lhs, Predicate<Bindings> rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        public boolean apply(@Nullable Bindings bindings) {
+            return lhs.apply(bindings) && rhs.apply(bindings);
+        }
+
+    }
+
+    private static final class Or implements Predicate<Bindings> {
+
+        private final Predicate<Bindings> lhs, rhs;
+
+        Or(Predicate<Bindings> lhs, Predicate<Bindings> rhs) {
+            this.lhs = lhs;
+            this.rhs = rhs;
+        }
+
+        @Override
+        public boolean apply(@Nullable Bindings bindings) {
+            return lhs.apply(bindings) || rhs.apply(bindings);
+        }
+
+    }
+
+}
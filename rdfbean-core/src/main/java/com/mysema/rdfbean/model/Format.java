@@ -17,6 +17,12 @@ public enum Format {
      * 
      */
     NTRIPLES("text/plain"),
+    /**
+     * N-Quads, supported by the Mini, Compact, Sesame 2 and Jena repositories.
+     * The Sesame 3 repository rejects it, since Sesame 3 has no N-Quads
+     * support.
+     */
+    NQUADS("text/x-nquads"),
     /**
      * 
      */
@@ -18,7 +18,7 @@ public abstract class ID extends NODE implements Identifier {
 
     private static final long serialVersionUID = 7020057962794085303L;
 
-    protected final String id; // has text, interned for URI
+    protected final String id; // has text, interned for URI via TermDictionary
 
     ID(String id) {
         this.id = id;
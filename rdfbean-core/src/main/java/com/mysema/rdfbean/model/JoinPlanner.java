@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.mysema.query.types.Constant;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.ParamExpression;
+import com.mysema.query.types.Path;
+
+/**
+ * JoinPlanner orders the pattern blocks of a group by their estimated result
+ * sizes, so that the most selective pattern drives the join
+ *
+ * <p>
+ * Consecutive pattern blocks are ordered greedily: the next pattern is the
+ * cheapest one sharing a variable with the already ordered blocks. The cost
+ * of a pattern is the statement count given by the {@link CardinalityEstimator}
+ * for its constant terms, or a fixed default weight when no estimate is
+ * available, reduced by a fixed selectivity for each variable bound by the
+ * preceding blocks. Other blocks keep their positions.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+final class JoinPlanner {
+
+    private static final double UNKNOWN = 1000000.0;
+
+    /**
+     * Selectivity of bound subject, predicate, object and context terms
+     */
+    private static final double[] SELECTIVITY = { 0.001, 0.1, 0.01, 0.1 };
+
+    private static final double LITERAL_SELECTIVITY = 0.001;
+
+    private static final int OBJECT = 2;
+
+    @Nullable
+    private final CardinalityEstimator estimator;
+
+    private final RDFVisitor<Object, Bindings> visitor;
+
+    JoinPlanner(@Nullable CardinalityEstimator estimator, RDFVisitor<Object, Bindings> visitor) {
+        this.estimator = estimator;
+        this.visitor = visitor;
+    }
+
+    /**
+     * Order the given blocks
+     *
+     * @param blocks
+     *            blocks of a container block
+     * @param context
+     *            context of the enclosing graph block or null
+     * @param bindings
+     *            bindings for constant terms and parameters
+     * @param constraints
+     *            values of filter constrained variables
+     * @return
+     */
+    public List<Block> order(List<Block> blocks, @Nullable Expression<UID> context, Bindings bindings,
+            Map<String, List<NODE>> constraints) {
+        if (blocks.size() < 2) {
+            return blocks;
+        }
+        List<Block> rv = new ArrayList<Block>(blocks.size());
+        List<PatternBlock> patterns = new ArrayList<PatternBlock>();
+        Set<String> bound = new HashSet<String>();
+        for (Block block : blocks) {
+            if (block instanceof PatternBlock) {
+                patterns.add((PatternBlock) block);
+            } else {
+                order(patterns, context, bindings, constraints, bound, rv);
+                rv.add(block);
+                addVariables(block, bound);
+            }
+        }
+        order(patterns, context, bindings, constraints, bound, rv);
+        return rv;
+    }
+
+    private void order(List<PatternBlock> patterns, @Nullable Expression<UID> context, Bindings bindings,
+            Map<String, List<NODE>> constraints, Set<String> bound, List<Block> rv) {
+        while (!patterns.isEmpty()) {
+            int best = -1;
+            boolean bestConnected = false;
+            double bestCost = 0.0;
+            for (int i = 0; i < patterns.size(); i++) {
+                PatternBlock pattern = patterns.get(i);
+                boolean connected = isConnected(pattern, bound);
+                double cost = getCost(pattern, context, bindings, constraints, bound);
+                if (best == -1 || (connected && !bestConnected)
+                        || (connected == bestConnected && cost < bestCost)) {
+                    best = i;
+                    bestConnected = connected;
+                    bestCost = cost;
+                }
+            }
+            PatternBlock pattern = patterns.remove(best);
+            rv.add(pattern);
+            addVariables(pattern, bound);
+        }
+    }
+
+    double getCost(PatternBlock pattern, @Nullable Expression<UID> context, Bindings bindings,
+            Map<String, List<NODE>> constraints, Set<String> bound) {
+        Expression<?>[] terms = getTerms(pattern, context);
+        NODE[] values = new NODE[terms.length];
+        double selectivity = 1.0;
+        for (int i = 0; i < terms.length; i++) {
+            if (terms[i] instanceof Constant<?> || terms[i] instanceof ParamExpression<?>) {
+                values[i] = (NODE) terms[i].accept(visitor, bindings);
+            }
+            String key = getKey(terms[i]);
+            if (values[i] == null && bound.contains(key)) {
+                selectivity *= SELECTIVITY[i];
+            } else if (values[i] == null && constraints.containsKey(key)) {
+                // estimate via the first value
+                List<NODE> candidates = constraints.get(key);
+                if (candidates.isEmpty()) {
+                    return 0.0;
+                }
+                values[i] = candidates.get(0);
+                selectivity *= candidates.size();
+            }
+        }
+
+        long count = -1;
+        if (estimator != null) {
+            count = estimator.estimate((ID) values[0], (UID) values[1], values[2], (UID) values[3]);
+        }
+        if (count >= 0) {
+            return count * selectivity;
+        } else {
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    selectivity *= i == OBJECT && values[i].isLiteral() ? LITERAL_SELECTIVITY : SELECTIVITY[i];
+                }
+            }
+            return UNKNOWN * selectivity;
+        }
+    }
+
+    private boolean isConnected(PatternBlock pattern, Set<String> bound) {
+        if (bound.isEmpty()) {
+            return true;
+        }
+        for (Expression<?> term : getTerms(pattern, null)) {
+            if (bound.contains(getKey(term))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addVariables(Block block, Set<String> variables) {
+        if (block instanceof PatternBlock) {
+            for (Expression<?> term : getTerms((PatternBlock) block, null)) {
+                String key = getKey(term);
+                if (key != null) {
+                    variables.add(key);
+                }
+            }
+        } else if (block instanceof ContainerBlock) {
+            for (Block child : ((ContainerBlock) block).getBlocks()) {
+                addVariables(child, variables);
+            }
+        } else if (block instanceof UnionBlock) {
+            for (Block child : ((UnionBlock) block).getBlocks()) {
+                addVariables(child, variables);
+            }
+        }
+    }
+
+    private static Expression<?>[] getTerms(PatternBlock pattern, @Nullable Expression<UID> context) {
+        return new Expression<?>[] {
+                pattern.getSubject(),
+                pattern.getPredicate(),
+                pattern.getObject(),
+                pattern.getContext() != null ? pattern.getContext() : context };
+    }
+
+    @Nullable
+    private static String getKey(@Nullable Expression<?> expr) {
+        if (expr instanceof Path<?>) {
+            return expr.toString();
+        } else if (expr instanceof ParamExpression<?>) {
+            return ((ParamExpression<?>) expr).getName();
+        } else {
+            return null;
+        }
+    }
+
+}
@@ -5,11 +5,20 @@
  */
 package com.mysema.rdfbean.model;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
+import org.joda.time.DateTimeZone;
+import org.joda.time.Instant;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
 import com.mysema.commons.l10n.support.LocaleUtil;
 import com.mysema.commons.lang.Assert;
 
@@ -24,6 +33,17 @@ public final class LIT extends NODE {
 
     private static final long serialVersionUID = 4279040868676951911L;
 
+    private static final Set<UID> integerTypes = new HashSet<UID>(Arrays.asList(
+            XSD.integerType, XSD.longType, XSD.intType, XSD.shortType, XSD.byteType));
+
+    private static final Set<UID> doubleTypes = new HashSet<UID>(Arrays.asList(XSD.doubleType, XSD.floatType));
+
+    private static final Set<UID> dateTypes = new HashSet<UID>(Arrays.asList(XSD.date, XSD.dateTime));
+
+    private static final DateTimeFormatter dateTimeParser = ISODateTimeFormat.dateTimeParser().withZone(DateTimeZone.UTC);
+
+    private static final Object NO_KEY = new Object();
+
     private final String value;
 
     @Nullable
@@ -31,6 +51,9 @@ public final class LIT extends NODE {
 
     private final UID datatype;
 
+    @Nullable
+    private transient Object key;
+
     public LIT(String value, UID datatype) {
         this.value = Assert.notNull(value, "value");
         this.datatype = Assert.notNull(datatype, "datatype");
@@ -64,6 +87,59 @@ public final class LIT extends NODE {
         return datatype;
     }
 
+    /**
+     * Get the typed value of the literal for comparisons. Integer literals
+     * have Long keys, unless they exceed the long range, decimal literals have
+     * BigDecimal keys, double and float literals have Double keys and date
+     * and dateTime literals have Instant keys. The key is parsed on first
+     * access and cached.
+     *
+     * @return typed key or null, if the datatype has no typed keys or the
+     *         lexical form is invalid
+     */
+    @Nullable
+    public Comparable<?> getKey() {
+        Object k = key;
+        if (k == null) {
+            k = parseKey();
+            key = k;
+        }
+        return k != NO_KEY ? (Comparable<?>) k : null;
+    }
+
+    private Object parseKey() {
+        if (lang != null) {
+            return NO_KEY;
+        }
+        try {
+            if (integerTypes.contains(datatype)) {
+                String str = value.startsWith("+") ? value.substring(1) : value;
+                if (str.length() < 19) {
+                    return Long.valueOf(str);
+                } else {
+                    return new BigDecimal(str);
+                }
+            } else if (datatype.equals(XSD.decimalType)) {
+                return new BigDecimal(value);
+            } else if (doubleTypes.contains(datatype)) {
+                if (value.equals("INF")) {
+                    return Double.POSITIVE_INFINITY;
+                } else if (value.equals("-INF")) {
+                    return Double.NEGATIVE_INFINITY;
+                } else {
+                    return Double.valueOf(value);
+                }
+            } else if (dateTypes.contains(datatype)) {
+                return new Instant(dateTimeParser.parseMillis(value));
+            } else {
+                return NO_KEY;
+            }
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            return NO_KEY;
+        }
+    }
+
     @Override
     public NodeType getNodeType() {
         return NodeType.LITERAL;
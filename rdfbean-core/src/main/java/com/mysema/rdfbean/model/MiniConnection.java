@@ -7,6 +7,8 @@ package com.mysema.rdfbean.model;
 
 import java.util.Collection;
 
+import javax.annotation.Nullable;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,21 +18,32 @@ import com.mysema.query.QueryMetadata;
 /**
  * MiniConnection is an RDFConnection implementation for the MiniRepository
  * 
+ * <p>
+ * For copy-on-write repositories the connection reads from the snapshot which
+ * was current when the connection was opened, cleared or last used for an
+ * update.
+ * </p>
+ * 
  * @author sasa
  * 
  */
-public class MiniConnection implements RDFConnection {
+public class MiniConnection implements RDFConnection, CardinalityEstimator, PartitionedScan {
 
     private static final Logger logger = LoggerFactory.getLogger(MiniConnection.class);
 
     private final MiniRepository repository;
 
+    @Nullable
+    private MiniRepository.Snapshot snapshot;
+
     public MiniConnection(MiniRepository repository) {
         this.repository = repository;
+        refresh();
     }
 
     public void addStatements(STMT... stmts) {
         this.repository.add(stmts);
+        refresh();
     }
 
     @Override
@@ -40,6 +53,7 @@ public class MiniConnection implements RDFConnection {
 
     @Override
     public void clear() {
+        refresh();
     }
 
     @Override
@@ -66,7 +80,9 @@ public class MiniConnection implements RDFConnection {
                 QueryMetadata metadata = (QueryMetadata) definition;
                 logger.debug(queryLanguage + " : " + metadata.getWhere().toString());
             }
-            QueryRDFVisitor visitor = new QueryRDFVisitor(this);
+            QueryRDFVisitor visitor = new QueryRDFVisitor(this, QueryRDFVisitor.DEFAULT_HASH_JOIN_LIMIT,
+                    repository.getQueryExecutor(), repository.getParallelism());
+            visitor.setDistinctLimit(repository.getDistinctLimit());
             return (Q) visitor.visit((QueryMetadata) definition, queryLanguage);
 
         } else {
@@ -79,7 +95,7 @@ public class MiniConnection implements RDFConnection {
         if (logger.isDebugEnabled()) {
             logger.debug("exists " + subject + " " + predicate + " " + object + " " + context);
         }
-        return repository.exists(subject, predicate, object, context);
+        return snapshot().findStatements(subject, predicate, object, context, false).hasNext();
     }
 
     @Override
@@ -88,7 +104,18 @@ public class MiniConnection implements RDFConnection {
         if (logger.isDebugEnabled()) {
             logger.debug("find " + subject + " " + predicate + " " + object + " " + context);
         }
-        return repository.findStatements(subject, predicate, object, context, includeInferred);
+        return snapshot().findStatements(subject, predicate, object, context, includeInferred);
+    }
+
+    @Override
+    public CloseableIterator<STMT> findStatements(ID subject, UID predicate, NODE object, UID context,
+            boolean includeInferred, int partition, int partitions) {
+        return snapshot().findStatements(subject, predicate, object, context, includeInferred, partition, partitions);
+    }
+
+    @Override
+    public long estimate(ID subject, UID predicate, NODE object, UID context) {
+        return snapshot().estimate(subject, predicate, object, context);
     }
 
     @Override
@@ -103,21 +130,28 @@ public class MiniConnection implements RDFConnection {
     @Override
     public void remove(ID subject, UID predicate, NODE object, UID context) {
         repository.remove(subject, predicate, object, context);
+        refresh();
     }
 
     @Override
     public void update(Collection<STMT> removedStatements, Collection<STMT> addedStatements) {
-        if (removedStatements != null) {
-            repository.removeStatements(removedStatements);
-        }
-        if (addedStatements != null) {
-            repository.add(addedStatements.toArray(new STMT[addedStatements.size()]));
+        repository.update(removedStatements, addedStatements);
+        refresh();
+    }
+
+    private void refresh() {
+        if (repository.isCopyOnWrite()) {
+            snapshot = repository.getSnapshot();
         }
     }
 
+    private MiniRepository.Snapshot snapshot() {
+        return snapshot != null ? snapshot : repository.getSnapshot();
+    }
+
     @Override
     public QueryOptions getQueryOptions() {
-        return QueryOptions.PRESERVE_STRING_OPS;
+        return QueryOptions.ALL;
     }
 
     @Override
@@ -1,47 +1,99 @@
 /*
  * Copyright (c) 2010 Mysema Ltd.
  * All rights reserved.
- * 
+ *
  */
 package com.mysema.rdfbean.model;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.annotation.Nullable;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.commons.lang.IteratorAdapter;
 import com.mysema.rdfbean.Namespaces;
+import com.mysema.rdfbean.model.io.NTriplesParser;
 import com.mysema.rdfbean.model.io.RDFWriter;
 import com.mysema.rdfbean.model.io.WriterUtils;
 
 /**
  * MiniRepository is a lightweight implementation of the Repository interface
  * for use in local cacheing of statements and tests
- * 
+ *
+ * <p>
+ * Statements are always indexed by subject. Optional indexes by resource
+ * object, predicate and context make lookups without a bound subject
+ * proportional to the result size instead of the store size.
+ * </p>
+ *
+ * <p>
+ * In copy-on-write mode the statement indexes are published as immutable
+ * snapshots. Writers are serialized and publish a new snapshot per update,
+ * which shares its structure with the previous one and copies only the
+ * touched index entries, and each {@link MiniConnection} reads from the
+ * snapshot it last saw without locking.
+ * </p>
+ *
+ * <p>
+ * The contents can be saved in the binary snapshot format of
+ * {@link CompactRepository} via {@link #writeSnapshot(File)} and restored via
+ * {@link #loadSnapshot(File)}. For the fastest startup the snapshot file can
+ * also be opened directly via {@link CompactRepository#openSnapshot(File)}.
+ * </p>
+ *
+ * <p>
+ * {@link #load(Format, InputStream, UID, boolean)} supports the N-Triples and
+ * N-Quads formats.
+ * </p>
+ *
+ * <p>
+ * Queries are evaluated on the calling thread unless an executor is set via
+ * {@link #setQueryExecutor(ExecutorService)}, in which case union branches and
+ * subject partitions of the queries are evaluated concurrently on it.
+ * </p>
+ *
  * @author sasa
- * 
+ *
  */
-public final class MiniRepository implements Repository {
+public final class MiniRepository implements Repository, CardinalityEstimator, PartitionedScan {
+
+    private static final int BATCH_SIZE = 10000;
 
     private final MiniDialect dialect = new MiniDialect();
 
+    private final int initialCapacity;
+
+    private final boolean inverseIndex, predicateIndex, contextIndex;
+
+    private final boolean copyOnWrite;
+
     private long localId = 0;
 
+    private volatile Snapshot snapshot;
+
     @Nullable
-    private final Map<ID, PredicateCache> objects;
+    private ExecutorService queryExecutor;
+
+    private int parallelism = Runtime.getRuntime().availableProcessors();
 
-    private final Map<ID, PredicateCache> subjects;
+    private int distinctLimit = QueryRDFVisitor.DEFAULT_DISTINCT_LIMIT;
 
     public MiniRepository() {
         this(1024);
@@ -52,12 +104,35 @@ public final class MiniRepository implements Repository {
     }
 
     public MiniRepository(int initialCapacity, boolean inverseIndex) {
-        subjects = new HashMap<ID, PredicateCache>(initialCapacity);
-        if (inverseIndex) {
-            objects = new HashMap<ID, PredicateCache>(initialCapacity);
-        } else {
-            objects = null;
-        }
+        this(initialCapacity, inverseIndex, false);
+    }
+
+    public MiniRepository(int initialCapacity, boolean inverseIndex, boolean copyOnWrite) {
+        this(initialCapacity, inverseIndex, false, false, copyOnWrite);
+    }
+
+    /**
+     * Create a new MiniRepository instance
+     *
+     * @param initialCapacity
+     *            expected amount of terms, used when writing snapshots
+     * @param inverseIndex
+     *            whether resource objects are indexed
+     * @param predicateIndex
+     *            whether predicates are indexed
+     * @param contextIndex
+     *            whether contexts are indexed
+     * @param copyOnWrite
+     *            whether updates are published as new snapshots
+     */
+    public MiniRepository(int initialCapacity, boolean inverseIndex, boolean predicateIndex, boolean contextIndex,
+            boolean copyOnWrite) {
+        this.initialCapacity = initialCapacity;
+        this.inverseIndex = inverseIndex;
+        this.predicateIndex = predicateIndex;
+        this.contextIndex = contextIndex;
+        this.copyOnWrite = copyOnWrite;
+        this.snapshot = createSnapshot(!copyOnWrite);
     }
 
     public MiniRepository(STMT... stmts) {
@@ -66,18 +141,16 @@ public final class MiniRepository implements Repository {
     }
 
     public void add(STMT... stmts) {
-        for (STMT stmt : stmts) {
-            index(stmt.getSubject(), stmt, subjects);
-            if (objects != null && stmt.getObject().isResource()) {
-                index((ID) stmt.getObject(), stmt, objects);
-            }
-        }
+        update(null, Arrays.asList(stmts));
     }
 
     public void clear() {
-        subjects.clear();
-        if (objects != null) {
-            objects.clear();
+        if (copyOnWrite) {
+            synchronized (this) {
+                snapshot = createSnapshot(false);
+            }
+        } else {
+            snapshot.clear();
         }
     }
 
@@ -88,7 +161,22 @@ public final class MiniRepository implements Repository {
 
     @Override
     public void load(Format format, InputStream is, @Nullable UID context, boolean replace) {
-        throw new UnsupportedOperationException();
+        if (format != Format.NTRIPLES && format != Format.NQUADS) {
+            throw new UnsupportedOperationException("Unsupported format " + format);
+        }
+        if (context != null) {
+            if (!replace && exists(null, null, null, context)) {
+                return;
+            } else if (replace) {
+                remove(null, null, null, context);
+            }
+        }
+        NTriplesParser parser = new NTriplesParser(is, format == Format.NQUADS, context);
+        STMT[] batch = new STMT[BATCH_SIZE];
+        int count;
+        while ((count = parser.read(batch)) > 0) {
+            add(count == batch.length ? batch : Arrays.copyOf(batch, count));
+        }
     }
 
     @Override
@@ -117,57 +205,145 @@ public final class MiniRepository implements Repository {
         export(format, Namespaces.DEFAULT, context, out);
     }
 
-    @SuppressWarnings("unchecked")
     public CloseableIterator<STMT> findStatements(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context, boolean includeInferred) {
-        Iterator<STMT> iterator = null;
-        if (subject != null) {
-            iterator = getIndexed(subject, predicate, subjects);
-        } else if (objects != null && object != null && object.isResource()) {
-            iterator = getIndexed(object.asResource(), predicate, objects);
-        } else {
-            List<Iterator<STMT>> iterators = Lists.newArrayList();
-            for (PredicateCache stmtCache : subjects.values()) {
-                iterators.add(stmtCache.iterator(predicate));
-            }
-            iterator = Iterators.concat(iterators.toArray(new Iterator[iterators.size()]));
-        }
-        return new ResultIterator(iterator, subject, predicate, object, context, includeInferred);
+        return snapshot.findStatements(subject, predicate, object, context, includeInferred);
+    }
+
+    @Override
+    public CloseableIterator<STMT> findStatements(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object,
+            @Nullable UID context, boolean includeInferred, int partition, int partitions) {
+        return snapshot.findStatements(subject, predicate, object, context, includeInferred, partition, partitions);
     }
 
     public boolean exists(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
         return findStatements(subject, predicate, object, context, false).hasNext();
     }
 
-    public MiniDialect getDialect() {
-        return dialect;
+    @Override
+    public long estimate(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        return snapshot.estimate(subject, predicate, object, context);
     }
 
-    private Iterator<STMT> getIndexed(ID key, UID predicate, Map<ID, PredicateCache> index) {
-        PredicateCache stmtCache = index.get(key);
-        if (stmtCache != null) {
-            return stmtCache.iterator(predicate);
-        } else {
-            return Collections.<STMT> emptyList().iterator();
+    private Snapshot createSnapshot(boolean mutable) {
+        return new Snapshot(inverseIndex, predicateIndex, contextIndex, mutable);
+    }
+
+    /**
+     * Add the statements of the given snapshot file
+     *
+     * @param file
+     *            file written via {@link #writeSnapshot(File)}
+     */
+    public void loadSnapshot(File file) {
+        CompactRepository source = CompactRepository.openSnapshot(file);
+        List<STMT> batch = new ArrayList<STMT>(BATCH_SIZE);
+        CloseableIterator<STMT> stmts = source.findStatements(null, null, null, null, true);
+        try {
+            while (stmts.hasNext()) {
+                batch.add(stmts.next());
+                if (batch.size() == BATCH_SIZE) {
+                    update(null, batch);
+                    batch.clear();
+                }
+            }
+            update(null, batch);
+        } finally {
+            stmts.close();
+        }
+        long snapshotLocalId = source.getNextLocalId() - 1;
+        synchronized (this) {
+            localId = Math.max(localId, snapshotLocalId);
+        }
+    }
+
+    /**
+     * Write the statements of this repository to the given snapshot file
+     *
+     * @param file
+     */
+    public void writeSnapshot(File file) {
+        CompactRepository target = new CompactRepository(initialCapacity);
+        CloseableIterator<STMT> stmts = findStatements(null, null, null, null, true);
+        try {
+            while (stmts.hasNext()) {
+                target.add(stmts.next());
+            }
+        } finally {
+            stmts.close();
+        }
+        synchronized (this) {
+            target.writeSnapshot(file, localId);
         }
     }
 
+    @Nullable
+    public ExecutorService getQueryExecutor() {
+        return queryExecutor;
+    }
+
+    /**
+     * Set the executor for parallel query evaluation, null for evaluation on
+     * the calling thread
+     *
+     * @param queryExecutor
+     */
+    public void setQueryExecutor(@Nullable ExecutorService queryExecutor) {
+        this.queryExecutor = queryExecutor;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the amount of subject partitions of parallel queries, defaults to
+     * the amount of processors
+     *
+     * @param parallelism
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getDistinctLimit() {
+        return distinctLimit;
+    }
+
+    /**
+     * Set the maximum amount of distinct rows of a query kept in memory,
+     * further rows are spilled to temporary files
+     *
+     * @param distinctLimit
+     */
+    public void setDistinctLimit(int distinctLimit) {
+        this.distinctLimit = distinctLimit;
+    }
+
+    public MiniDialect getDialect() {
+        return dialect;
+    }
+
     public synchronized long getNextLocalId() {
         return ++localId;
     }
 
-    public void index(ID key, STMT stmt, Map<ID, PredicateCache> index) {
-        PredicateCache stmtCache = index.get(key);
-        if (stmtCache == null) {
-            stmtCache = new PredicateCache();
-            index.put(key, stmtCache);
-        }
-        stmtCache.add(stmt);
+    /**
+     * Get the current statement indexes
+     *
+     * @return
+     */
+    Snapshot getSnapshot() {
+        return snapshot;
     }
 
     @Override
     public void initialize() {
     }
 
+    public boolean isCopyOnWrite() {
+        return copyOnWrite;
+    }
+
     public MiniConnection openConnection() {
         return new MiniConnection(this);
     }
@@ -175,54 +351,38 @@ public final class MiniRepository implements Repository {
     public void remove(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
         // remove all
         if (subject == null && predicate == null && object == null && context == null) {
-            subjects.clear();
-            if (objects != null) {
-                objects.clear();
-            }
-
-            // subject given
-        } else if (subject != null) {
-            PredicateCache cache = subjects.get(subject);
-            if (cache != null) {
-                Iterator<STMT> stmts = cache.iterator(predicate);
-                removeStatements(IteratorAdapter.asList(stmts));
-
-            }
-
-            // object given
-        } else if (object != null && object.isResource() && objects != null) {
-            PredicateCache cache = objects.get(object.asResource());
-            if (cache != null) {
-                Iterator<STMT> stmts = cache.iterator(predicate);
-                removeStatements(IteratorAdapter.asList(stmts));
+            clear();
+        } else if (copyOnWrite) {
+            synchronized (this) {
+                Snapshot next = snapshot.copy();
+                next.remove(subject, predicate, object, context);
+                snapshot = next;
             }
-
-            // predicate or context given
         } else {
-            for (Map.Entry<ID, PredicateCache> entry : subjects.entrySet()) {
-                PredicateCache cache = entry.getValue();
-                Iterator<STMT> stmts = cache.iterator(predicate);
-                removeStatements(IteratorAdapter.asList(stmts));
-            }
+            snapshot.remove(subject, predicate, object, context);
         }
     }
 
-    private boolean removeIndexed(ID key, STMT stmt, Map<ID, PredicateCache> index) {
-        PredicateCache stmtMap = index.get(key);
-        if (stmtMap != null) {
-            return stmtMap.remove(stmt);
-        } else {
-            return false;
-        }
+    public void removeStatements(Collection<STMT> stmts) {
+        update(stmts, null);
     }
 
-    public void removeStatements(Collection<STMT> stmts) {
-        for (STMT stmt : stmts) {
-            if (removeIndexed(stmt.getSubject(), stmt, subjects)) {
-                if (objects != null && stmt.getObject().isResource()) {
-                    removeIndexed((ID) stmt.getObject(), stmt, objects);
-                }
+    /**
+     * Remove and add the given statements in one step. In copy-on-write mode
+     * the changes are published as one new snapshot.
+     *
+     * @param removedStatements
+     * @param addedStatements
+     */
+    public void update(@Nullable Collection<STMT> removedStatements, @Nullable Collection<STMT> addedStatements) {
+        if (copyOnWrite) {
+            synchronized (this) {
+                Snapshot next = snapshot.copy();
+                next.update(removedStatements, addedStatements);
+                snapshot = next;
             }
+        } else {
+            snapshot.update(removedStatements, addedStatements);
         }
     }
 
@@ -240,4 +400,261 @@ public final class MiniRepository implements Repository {
         }
     }
 
+    /**
+     * Snapshot holds the statement indexes of a MiniRepository. A mutable
+     * snapshot is modified in place, otherwise only the index entries copied
+     * into this snapshot are modified and the snapshot must not be changed
+     * after it has been published.
+     */
+    static final class Snapshot {
+
+        @Nullable
+        private final TrieMap<ID, PredicateCache> objects;
+
+        private final TrieMap<ID, PredicateCache> subjects;
+
+        @Nullable
+        private final Map<UID, STMTCache> predicates;
+
+        @Nullable
+        private final TrieMap<UID, PredicateCache> contexts;
+
+        @Nullable
+        private final Set<Object> owned;
+
+        Snapshot(boolean inverseIndex, boolean predicateIndex, boolean contextIndex, boolean mutable) {
+            subjects = new TrieMap<ID, PredicateCache>();
+            objects = inverseIndex ? new TrieMap<ID, PredicateCache>() : null;
+            predicates = predicateIndex ? new HashMap<UID, STMTCache>() : null;
+            contexts = contextIndex ? new TrieMap<UID, PredicateCache>() : null;
+            owned = mutable ? null : Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        }
+
+        private Snapshot(Snapshot base) {
+            // the trie maps share their nodes with the base, only the small
+            // predicate map is copied
+            subjects = base.subjects.copy();
+            objects = base.objects != null ? base.objects.copy() : null;
+            predicates = base.predicates != null ? new HashMap<UID, STMTCache>(base.predicates) : null;
+            contexts = base.contexts != null ? base.contexts.copy() : null;
+            owned = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        }
+
+        Snapshot copy() {
+            return new Snapshot(this);
+        }
+
+        void clear() {
+            subjects.clear();
+            if (objects != null) {
+                objects.clear();
+            }
+            if (predicates != null) {
+                predicates.clear();
+            }
+            if (contexts != null) {
+                contexts.clear();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        CloseableIterator<STMT> findStatements(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context, boolean includeInferred) {
+            Iterator<STMT> iterator = null;
+            if (subject != null) {
+                iterator = getIndexed(subject, predicate, subjects);
+            } else if (objects != null && object != null && object.isResource()) {
+                iterator = getIndexed(object.asResource(), predicate, objects);
+            } else if (contexts != null && context != null) {
+                iterator = getIndexed(context, predicate, contexts);
+            } else if (predicates != null && predicate != null) {
+                STMTCache stmts = predicates.get(predicate);
+                iterator = stmts != null ? stmts.iterator() : Collections.<STMT> emptyList().iterator();
+            } else {
+                List<Iterator<STMT>> iterators = Lists.newArrayList();
+                for (Map.Entry<ID, PredicateCache> entry : subjects) {
+                    iterators.add(entry.getValue().iterator(predicate));
+                }
+                iterator = Iterators.concat(iterators.toArray(new Iterator[iterators.size()]));
+            }
+            return new ResultIterator(iterator, subject, predicate, object, context, includeInferred);
+        }
+
+        @SuppressWarnings("unchecked")
+        CloseableIterator<STMT> findStatements(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object,
+                @Nullable UID context, boolean includeInferred, final int partition, final int partitions) {
+            if (subject != null) {
+                if (getPartition(subject, partitions) == partition) {
+                    return findStatements(subject, predicate, object, context, includeInferred);
+                } else {
+                    return new IteratorAdapter<STMT>(Collections.<STMT> emptyList().iterator());
+                }
+            } else if ((objects != null && object != null && object.isResource())
+                    || (contexts != null && context != null)
+                    || (predicates != null && predicate != null)) {
+                // filter the indexed matches
+                Iterator<STMT> stmts = findStatements(subject, predicate, object, context, includeInferred);
+                return new IteratorAdapter<STMT>(Iterators.filter(stmts, new Predicate<STMT>() {
+                    @Override
+                    public boolean apply(STMT stmt) {
+                        return getPartition(stmt.getSubject(), partitions) == partition;
+                    }
+                }));
+            } else {
+                // scan the subjects of the partition
+                List<Iterator<STMT>> iterators = Lists.newArrayList();
+                for (Map.Entry<ID, PredicateCache> entry : subjects) {
+                    if (getPartition(entry.getKey(), partitions) == partition) {
+                        iterators.add(entry.getValue().iterator(predicate));
+                    }
+                }
+                Iterator<STMT> iterator = Iterators.concat(iterators.toArray(new Iterator[iterators.size()]));
+                return new ResultIterator(iterator, subject, predicate, object, context, includeInferred);
+            }
+        }
+
+        private static int getPartition(ID subject, int partitions) {
+            return (subject.hashCode() & Integer.MAX_VALUE) % partitions;
+        }
+
+        long estimate(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+            long rv = -1;
+            if (subject != null) {
+                rv = min(rv, getCount(subject, predicate, subjects));
+            }
+            if (objects != null && object != null && object.isResource()) {
+                rv = min(rv, getCount(object.asResource(), predicate, objects));
+            }
+            if (contexts != null && context != null) {
+                rv = min(rv, getCount(context, predicate, contexts));
+            }
+            if (predicates != null && predicate != null && !RDF.isContainerMembershipProperty(predicate)) {
+                STMTCache stmts = predicates.get(predicate);
+                rv = min(rv, stmts != null ? stmts.size() : 0);
+            }
+            return rv;
+        }
+
+        private static long min(long estimate, long count) {
+            return estimate < 0 ? count : Math.min(estimate, count);
+        }
+
+        private <K> int getCount(K key, UID predicate, TrieMap<K, PredicateCache> index) {
+            PredicateCache stmtCache = index.get(key);
+            return stmtCache != null ? stmtCache.size(predicate) : 0;
+        }
+
+        private <K> Iterator<STMT> getIndexed(K key, UID predicate, TrieMap<K, PredicateCache> index) {
+            PredicateCache stmtCache = index.get(key);
+            if (stmtCache != null) {
+                return stmtCache.iterator(predicate);
+            } else {
+                return Collections.<STMT> emptyList().iterator();
+            }
+        }
+
+        private void index(STMT stmt) {
+            index(stmt.getSubject(), stmt, subjects);
+            if (objects != null && stmt.getObject().isResource()) {
+                index((ID) stmt.getObject(), stmt, objects);
+            }
+            if (predicates != null) {
+                STMTCache stmts = predicates.get(stmt.getPredicate());
+                if (stmts == null) {
+                    stmts = new STMTCache(stmt);
+                    predicates.put(stmt.getPredicate(), stmts);
+                    own(stmts);
+                } else {
+                    writable(stmt.getPredicate(), stmts, predicates).add(stmt);
+                }
+            }
+            if (contexts != null && stmt.getContext() != null) {
+                index(stmt.getContext(), stmt, contexts);
+            }
+        }
+
+        private <K> void index(K key, STMT stmt, TrieMap<K, PredicateCache> index) {
+            PredicateCache stmtCache = index.get(key);
+            if (stmtCache == null) {
+                stmtCache = new PredicateCache();
+                index.put(key, stmtCache);
+                own(stmtCache);
+            } else {
+                stmtCache = writable(key, stmtCache, index);
+            }
+            stmtCache.add(stmt);
+        }
+
+        private void own(Object entry) {
+            if (owned != null) {
+                owned.add(entry);
+            }
+        }
+
+        void remove(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+            removeStatements(IteratorAdapter.asList(findStatements(subject, predicate, object, context, true)));
+        }
+
+        private <K> boolean removeIndexed(K key, STMT stmt, TrieMap<K, PredicateCache> index) {
+            PredicateCache stmtMap = index.get(key);
+            if (stmtMap != null) {
+                return writable(key, stmtMap, index).remove(stmt);
+            } else {
+                return false;
+            }
+        }
+
+        private void removeStatements(Collection<STMT> stmts) {
+            for (STMT stmt : stmts) {
+                if (removeIndexed(stmt.getSubject(), stmt, subjects)) {
+                    if (objects != null && stmt.getObject().isResource()) {
+                        removeIndexed((ID) stmt.getObject(), stmt, objects);
+                    }
+                    if (predicates != null) {
+                        STMTCache cache = predicates.get(stmt.getPredicate());
+                        if (cache != null) {
+                            writable(stmt.getPredicate(), cache, predicates).remove(stmt);
+                        }
+                    }
+                    if (contexts != null && stmt.getContext() != null) {
+                        removeIndexed(stmt.getContext(), stmt, contexts);
+                    }
+                }
+            }
+        }
+
+        void update(@Nullable Collection<STMT> removedStatements, @Nullable Collection<STMT> addedStatements) {
+            if (removedStatements != null) {
+                removeStatements(removedStatements);
+            }
+            if (addedStatements != null) {
+                for (STMT stmt : addedStatements) {
+                    index(stmt);
+                }
+            }
+        }
+
+        private <K> PredicateCache writable(K key, PredicateCache stmtCache, TrieMap<K, PredicateCache> index) {
+            if (owned == null || owned.contains(stmtCache)) {
+                return stmtCache;
+            } else {
+                PredicateCache copy = new PredicateCache(stmtCache);
+                index.put(key, copy);
+                owned.add(copy);
+                return copy;
+            }
+        }
+
+        private STMTCache writable(UID key, STMTCache stmts, Map<UID, STMTCache> index) {
+            if (owned == null || owned.contains(stmts)) {
+                return stmts;
+            } else {
+                STMTCache copy = new STMTCache(stmts);
+                index.put(key, copy);
+                owned.add(copy);
+                return copy;
+            }
+        }
+
+    }
+
 }
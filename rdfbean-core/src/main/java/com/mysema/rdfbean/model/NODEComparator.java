@@ -1,10 +1,24 @@
 package com.mysema.rdfbean.model;
 
 import java.io.Serializable;
+import java.math.BigDecimal;
 import java.util.Comparator;
 import java.util.Locale;
 
+import javax.annotation.Nullable;
+
+import org.joda.time.Instant;
+
 /**
+ * NODEComparator orders nodes by node type and value
+ *
+ * <p>
+ * Literals with typed keys are ordered by their keys via
+ * {@link LIT#getKey()}, numeric literals before date literals and both before
+ * other literals. Nodes with equal keys are ordered by their lexical form,
+ * datatype and locale.
+ * </p>
+ *
  * @author tiwe
  * 
  */
@@ -12,6 +26,8 @@ public class NODEComparator implements Comparator<NODE>, Serializable {
 
     private static final long serialVersionUID = -7774408184956942211L;
 
+    private static final int NUMERIC = 0, TEMPORAL = 1, OTHER = 2;
+
     @Override
     public int compare(NODE o1, NODE o2) {
         if (o1 == null) {
@@ -25,6 +41,14 @@ public class NODEComparator implements Comparator<NODE>, Serializable {
             return o1.getNodeType().compareTo(o2.getNodeType());
         }
 
+        // typed key
+        if (o1.isLiteral()) {
+            int rv = compareKeys(o1.asLiteral().getKey(), o2.asLiteral().getKey());
+            if (rv != 0) {
+                return rv;
+            }
+        }
+
         // value
         if (!o1.getValue().equals(o2.getValue())) {
             return o1.getValue().compareTo(o2.getValue());
@@ -44,4 +68,62 @@ public class NODEComparator implements Comparator<NODE>, Serializable {
         return 0;
     }
 
+    private static int getCategory(@Nullable Object key) {
+        if (key instanceof Number) {
+            return NUMERIC;
+        } else if (key instanceof Instant) {
+            return TEMPORAL;
+        } else {
+            return OTHER;
+        }
+    }
+
+    /**
+     * Compare the given typed keys of literals
+     *
+     * @param k1
+     * @param k2
+     * @return
+     */
+    static int compareKeys(@Nullable Object k1, @Nullable Object k2) {
+        int c1 = getCategory(k1), c2 = getCategory(k2);
+        if (c1 != c2) {
+            return c1 < c2 ? -1 : 1;
+        } else if (c1 == NUMERIC) {
+            return compareNumbers((Number) k1, (Number) k2);
+        } else if (c1 == TEMPORAL) {
+            return ((Instant) k1).compareTo((Instant) k2);
+        } else {
+            return 0;
+        }
+    }
+
+    private static int compareNumbers(Number n1, Number n2) {
+        if (n1 instanceof Long && n2 instanceof Long) {
+            long l1 = n1.longValue(), l2 = n2.longValue();
+            return l1 < l2 ? -1 : (l1 == l2 ? 0 : 1);
+        } else if (n1 instanceof Double && n2 instanceof Double) {
+            return Double.compare(n1.doubleValue(), n2.doubleValue());
+        } else if (isSpecial(n1) || isSpecial(n2)) {
+            // NaN and infinities are out of the range of BigDecimal
+            return Double.compare(n1.doubleValue(), n2.doubleValue());
+        } else {
+            return toBigDecimal(n1).compareTo(toBigDecimal(n2));
+        }
+    }
+
+    private static boolean isSpecial(Number n) {
+        return n instanceof Double && (((Double) n).isNaN() || ((Double) n).isInfinite());
+    }
+
+    private static BigDecimal toBigDecimal(Number n) {
+        if (n instanceof BigDecimal) {
+            return (BigDecimal) n;
+        } else if (n instanceof Long) {
+            return BigDecimal.valueOf(n.longValue());
+        } else {
+            return new BigDecimal(n.doubleValue());
+        }
+    }
+
 }
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.l10n.support.LocaleUtil;
+
+/**
+ * NodeDictionary maps RDF nodes to dense positive int ids and back. Ids are
+ * allocated in insertion order starting from 1, 0 is reserved for absent
+ * nodes.
+ *
+ * <p>
+ * The lookup table is an open addressing hash table of ids, so each term costs
+ * one reference and two table slots on the heap. A dictionary can also be
+ * based on encoded terms in buffers, e.g. memory mapped file segments, in which
+ * case base terms are decoded on first access and new terms are kept on the
+ * heap.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public final class NodeDictionary {
+
+    public static final int NONE = 0;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte URI = 0, BNODE = 1, LITERAL = 2, TEXT = 3;
+
+    @Nullable
+    private ByteBuffer baseTerms;
+
+    @Nullable
+    private IntBuffer baseOffsets, baseTable;
+
+    @Nullable
+    private NODE[] baseNodes;
+
+    private int baseSize;
+
+    private NODE[] nodes;
+
+    private int[] table;
+
+    private int size;
+
+    public NodeDictionary() {
+        this(1024);
+    }
+
+    public NodeDictionary(int initialCapacity) {
+        nodes = new NODE[Math.max(initialCapacity, 16) + 1];
+        table = new int[tableSize(initialCapacity)];
+    }
+
+    /**
+     * Create a NodeDictionary based on encoded terms
+     *
+     * @param terms
+     *            encoded terms
+     * @param offsets
+     *            offsets of the encoded terms, ordered by id
+     * @param table
+     *            open addressing hash table of the ids
+     * @param size
+     *            amount of terms
+     */
+    NodeDictionary(ByteBuffer terms, IntBuffer offsets, IntBuffer table, int size) {
+        this(1024);
+        this.baseTerms = terms;
+        this.baseOffsets = offsets;
+        this.baseTable = table;
+        this.baseNodes = new NODE[size + 1];
+        this.baseSize = size;
+    }
+
+    public void clear() {
+        baseTerms = null;
+        baseOffsets = null;
+        baseTable = null;
+        baseNodes = null;
+        baseSize = 0;
+        nodes = new NODE[nodes.length];
+        table = new int[table.length];
+        size = 0;
+    }
+
+    /**
+     * Get the id of the given node
+     *
+     * @param node
+     * @return id or NONE, if the node has not been registered
+     */
+    public int getId(NODE node) {
+        int id = getBaseId(node);
+        if (id != NONE) {
+            return id;
+        }
+        int[] t = table;
+        NODE[] n = nodes;
+        int mask = t.length - 1;
+        int i = hash(node) & mask;
+        while ((id = t[i]) != NONE) {
+            if (n[id].equals(node)) {
+                return baseSize + id;
+            }
+            i = (i + 1) & mask;
+        }
+        return NONE;
+    }
+
+    /**
+     * Get the id of the given node and register the node, if it hasn't been
+     * registered yet
+     *
+     * @param node
+     * @return
+     */
+    public int getOrCreateId(NODE node) {
+        int id = getBaseId(node);
+        if (id != NONE) {
+            return id;
+        }
+        int mask = table.length - 1;
+        int i = hash(node) & mask;
+        while ((id = table[i]) != NONE) {
+            if (nodes[id].equals(node)) {
+                return baseSize + id;
+            }
+            i = (i + 1) & mask;
+        }
+        id = ++size;
+        if (id >= nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        nodes[id] = node;
+        table[i] = id;
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return baseSize + id;
+    }
+
+    private int getBaseId(NODE node) {
+        if (baseSize > 0) {
+            int mask = baseTable.limit() - 1;
+            int i = hash(node) & mask;
+            int id;
+            while ((id = baseTable.get(i)) != NONE) {
+                if (getBaseNode(id).equals(node)) {
+                    return id;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+        return NONE;
+    }
+
+    public NODE getNode(int id) {
+        if (id <= baseSize) {
+            return getBaseNode(id);
+        } else {
+            return nodes[id - baseSize];
+        }
+    }
+
+    private NODE getBaseNode(int id) {
+        NODE node = baseNodes[id];
+        if (node == null) {
+            ByteBuffer buffer = baseTerms.duplicate();
+            buffer.position(baseOffsets.get(id - 1));
+            byte type = buffer.get();
+            String value = readString(buffer);
+            if (type == URI) {
+                node = new UID(value);
+            } else if (type == BNODE) {
+                node = new BID(value);
+            } else if (type == LITERAL) {
+                node = new LIT(value, new UID(readString(buffer)));
+            } else if (type == TEXT) {
+                node = new LIT(value, readString(buffer));
+            } else {
+                throw new IllegalStateException("Illegal term type " + type);
+            }
+            baseNodes[id] = node;
+        }
+        return node;
+    }
+
+    public int size() {
+        return baseSize + size;
+    }
+
+    /**
+     * Encode the node of the given id
+     *
+     * @param id
+     * @return
+     */
+    byte[] encode(int id) {
+        NODE node = getNode(id);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            if (node.isURI()) {
+                out.writeByte(URI);
+                writeString(out, node.getValue());
+            } else if (node.isBNode()) {
+                out.writeByte(BNODE);
+                writeString(out, node.getValue());
+            } else if (node.asLiteral().isText()) {
+                out.writeByte(TEXT);
+                writeString(out, node.getValue());
+                writeString(out, LocaleUtil.toLang(node.asLiteral().getLang()));
+            } else {
+                out.writeByte(LITERAL);
+                writeString(out, node.getValue());
+                writeString(out, node.asLiteral().getDatatype().getId());
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Create an open addressing hash table of all ids of this dictionary
+     *
+     * @return
+     */
+    int[] createTable() {
+        int[] t = new int[tableSize(size())];
+        int mask = t.length - 1;
+        for (int id = 1; id <= size(); id++) {
+            int i = hash(getNode(id)) & mask;
+            while (t[i] != NONE) {
+                i = (i + 1) & mask;
+            }
+            t[i] = id;
+        }
+        return t;
+    }
+
+    private void rehash(int length) {
+        int[] t = new int[length];
+        int mask = length - 1;
+        for (int id = 1; id <= size; id++) {
+            int i = hash(nodes[id]) & mask;
+            while (t[i] != NONE) {
+                i = (i + 1) & mask;
+            }
+            t[i] = id;
+        }
+        table = t;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int hash(NODE node) {
+        int h = node.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int tableSize(int capacity) {
+        int length = 16;
+        while (length < capacity * 2) {
+            length <<= 1;
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.lang.CloseableIterator;
+
+/**
+ * PartitionedScan is implemented by connections which can split the matches
+ * of a statement pattern into disjoint partitions by subject, so that the
+ * partitions can be evaluated concurrently
+ *
+ * @author tiwe
+ *
+ */
+public interface PartitionedScan {
+
+    /**
+     * Find the statements matching the given pattern whose subjects belong to
+     * the given partition. The union of all partitions equals the result of the
+     * unpartitioned query.
+     *
+     * @param subject
+     * @param predicate
+     * @param object
+     * @param context
+     * @param includeInferred
+     * @param partition
+     *            index of the partition, starting from 0
+     * @param partitions
+     *            amount of partitions
+     * @return
+     */
+    CloseableIterator<STMT> findStatements(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object,
+            @Nullable UID context, boolean includeInferred, int partition, int partitions);
+
+}
@@ -28,6 +28,21 @@ public final class PredicateCache {
     @Nullable
     private Map<UID, STMTCache> predicates;
 
+    public PredicateCache() {
+    }
+
+    public PredicateCache(PredicateCache cache) {
+        if (cache.containerProperties != null) {
+            containerProperties = new ArrayList<STMT>(cache.containerProperties);
+        }
+        if (cache.predicates != null) {
+            predicates = new LinkedHashMap<UID, STMTCache>(cache.predicates.size());
+            for (Map.Entry<UID, STMTCache> entry : cache.predicates.entrySet()) {
+                predicates.put(entry.getKey(), new STMTCache(entry.getValue()));
+            }
+        }
+    }
+
     public void add(STMT stmt) {
         if (RDF.isContainerMembershipProperty(stmt.getPredicate())) {
             if (containerProperties == null) {
@@ -65,7 +80,7 @@ public final class PredicateCache {
             if (containerProperties != null) {
                 return containerProperties.iterator();
             }
-        } else {
+        } else if (predicates != null) {
             STMTCache stmts = predicates.get(predicate);
             if (stmts != null) {
                 return stmts.iterator();
@@ -74,6 +89,24 @@ public final class PredicateCache {
         return Collections.<STMT> emptyList().iterator();
     }
 
+    public int size(@Nullable UID predicate) {
+        int size = 0;
+        if (predicate == null || RDF.isContainerMembershipProperty(predicate)) {
+            size += containerProperties != null ? containerProperties.size() : 0;
+        }
+        if (predicates != null) {
+            if (predicate == null) {
+                for (STMTCache stmts : predicates.values()) {
+                    size += stmts.size();
+                }
+            } else {
+                STMTCache stmts = predicates.get(predicate);
+                size += stmts != null ? stmts.size() : 0;
+            }
+        }
+        return size;
+    }
+
     public boolean remove(STMT stmt) {
         if (RDF.isContainerMembershipProperty(stmt.getPredicate())) {
             if (containerProperties != null) {
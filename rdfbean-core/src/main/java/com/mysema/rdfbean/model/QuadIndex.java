@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * QuadIndex is a sorted primitive index of dictionary encoded quads. Each quad
+ * is stored as a row of four ints in the key order of the index, e.g. subject,
+ * predicate, object and context for a SPO index.
+ *
+ * <p>
+ * The rows consist of a sorted base and two small sorted delta segments, the
+ * inserted rows which are not in the base and the removed rows of the base.
+ * Additions and removals are buffered and applied to the delta segments on
+ * the next read. The delta segments are merged into the base only when they
+ * grow beyond the square root of the base size, so small updates don't copy
+ * the base. Segments are never modified once created, so a {@link Cursor}
+ * stays valid while the index is updated. The initial rows can also be given
+ * as a buffer, e.g. a memory mapped file segment.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public final class QuadIndex {
+
+    public static final int SUBJECT = 0, PREDICATE = 1, OBJECT = 2, CONTEXT = 3;
+
+    public static final int ROW = 4;
+
+    private static final int MIN_DELTA_SIZE = 1024;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final int[] order;
+
+    private IntBuffer rows = IntBuffer.wrap(EMPTY);
+
+    private int[] inserted = EMPTY;
+
+    private int[] deleted = EMPTY;
+
+    private int[] added = EMPTY;
+
+    private int addedSize;
+
+    private int[] removed = EMPTY;
+
+    private int removedSize;
+
+    public QuadIndex(int first, int second, int third) {
+        this.order = new int[] { first, second, third, CONTEXT };
+    }
+
+    /**
+     * Create a new QuadIndex with the given sorted rows
+     *
+     * @param first
+     * @param second
+     * @param third
+     * @param rows
+     *            rows in the key order of this index without duplicates
+     */
+    public QuadIndex(int first, int second, int third, IntBuffer rows) {
+        this(first, second, third);
+        this.rows = rows;
+    }
+
+    public void add(int[] quad) {
+        if (removedSize > 0) {
+            commit();
+        }
+        added = append(added, addedSize++, quad);
+    }
+
+    public void remove(int[] quad) {
+        if (addedSize > 0) {
+            commit();
+        }
+        removed = append(removed, removedSize++, quad);
+    }
+
+    public void clear() {
+        rows = IntBuffer.wrap(EMPTY);
+        inserted = EMPTY;
+        deleted = EMPTY;
+        added = EMPTY;
+        removed = EMPTY;
+        addedSize = 0;
+        removedSize = 0;
+    }
+
+    /**
+     * Get a cursor over the rows starting with the given key prefix
+     *
+     * @param key
+     * @return
+     */
+    public Cursor getCursor(int[] key) {
+        commit();
+        return new Cursor(rows, inserted, deleted, key);
+    }
+
+    /**
+     * Get the sorted rows of this index with the delta segments merged into
+     * the base. The returned buffer must only be read via absolute gets.
+     *
+     * @return
+     */
+    public IntBuffer getRows() {
+        commit();
+        fold();
+        return rows;
+    }
+
+    /**
+     * Get the quad position of the given key position
+     *
+     * @param position
+     * @return
+     */
+    public int getOrder(int position) {
+        return order[position];
+    }
+
+    public int size() {
+        commit();
+        return (rows.limit() + inserted.length - deleted.length) / ROW;
+    }
+
+    private int[] append(int[] buffer, int size, int[] quad) {
+        int offset = size * ROW;
+        if (offset == buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, 64 * ROW));
+        }
+        for (int i = 0; i < ROW; i++) {
+            buffer[offset + i] = quad[order[i]];
+        }
+        return buffer;
+    }
+
+    private void commit() {
+        if (addedSize > 0) {
+            sort(added, new int[addedSize * ROW], 0, addedSize);
+            if (isLarge(addedSize)) {
+                fold();
+                rows = merge(rows, added, addedSize);
+            } else {
+                // re-added base rows are restored, other new rows are inserted
+                int[] restored = intersect(deleted, added, addedSize);
+                deleted = subtract(deleted, restored);
+                inserted = merge(inserted, filter(added, addedSize, restored, false));
+            }
+            added = EMPTY;
+            addedSize = 0;
+        }
+        if (removedSize > 0) {
+            sort(removed, new int[removedSize * ROW], 0, removedSize);
+            if (isLarge(removedSize)) {
+                fold();
+                rows = subtract(rows, removed, removedSize);
+            } else {
+                inserted = subtract(inserted, trim(removed, removedSize));
+                deleted = merge(deleted, filter(removed, removedSize, EMPTY, true));
+            }
+            removed = EMPTY;
+            removedSize = 0;
+        }
+    }
+
+    private boolean isLarge(int pending) {
+        int limit = Math.max(MIN_DELTA_SIZE, (int) Math.sqrt(rows.limit() / ROW));
+        return (inserted.length + deleted.length) / ROW + pending > limit;
+    }
+
+    /**
+     * Merge the delta segments into the base rows
+     */
+    private void fold() {
+        if (deleted.length > 0) {
+            rows = subtract(rows, deleted, deleted.length / ROW);
+            deleted = EMPTY;
+        }
+        if (inserted.length > 0) {
+            rows = merge(rows, inserted, inserted.length / ROW);
+            inserted = EMPTY;
+        }
+    }
+
+    /**
+     * Get the distinct sorted rows which are not in the given exclusions and
+     * whose presence in the base equals the given flag
+     */
+    private int[] filter(int[] sorted, int sortedSize, int[] excluded, boolean inBase) {
+        IntBuffer exclusions = IntBuffer.wrap(excluded);
+        int[] result = new int[sortedSize * ROW];
+        int n = 0;
+        for (int j = 0; j < sortedSize; j++) {
+            if ((n > 0 && compare(result, n - 1, sorted, j, ROW) == 0)
+                    || contains(exclusions, sorted, j)
+                    || contains(rows, sorted, j) != inBase) {
+                continue;
+            }
+            System.arraycopy(sorted, j * ROW, result, n * ROW, ROW);
+            n++;
+        }
+        return Arrays.copyOf(result, n * ROW);
+    }
+
+    private static int[] intersect(int[] segment, int[] sorted, int sortedSize) {
+        IntBuffer rows = IntBuffer.wrap(sorted, 0, sortedSize * ROW).slice();
+        int[] result = new int[segment.length];
+        int n = 0;
+        for (int i = 0; i < segment.length / ROW; i++) {
+            if (contains(rows, segment, i)) {
+                System.arraycopy(segment, i * ROW, result, n * ROW, ROW);
+                n++;
+            }
+        }
+        return Arrays.copyOf(result, n * ROW);
+    }
+
+    private static int[] trim(int[] buffer, int size) {
+        return Arrays.copyOf(buffer, size * ROW);
+    }
+
+    private static int[] merge(int[] segment, int[] sorted) {
+        if (sorted.length == 0) {
+            return segment;
+        }
+        return merge(IntBuffer.wrap(segment), sorted, sorted.length / ROW).array();
+    }
+
+    private static int[] subtract(int[] segment, int[] sorted) {
+        if (sorted.length == 0 || segment.length == 0) {
+            return segment;
+        }
+        return subtract(IntBuffer.wrap(segment), sorted, sorted.length / ROW).array();
+    }
+
+    private static boolean contains(IntBuffer rows, int[] b, int j) {
+        int lo = 0, hi = rows.limit() / ROW;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(rows, mid, b, j);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static IntBuffer merge(IntBuffer base, int[] sorted, int sortedSize) {
+        int baseSize = base.limit() / ROW;
+        int[] merged = new int[(baseSize + sortedSize) * ROW];
+        int i = 0, j = 0, n = 0;
+        while (i < baseSize || j < sortedSize) {
+            int c;
+            if (i == baseSize) {
+                c = 1;
+            } else if (j == sortedSize) {
+                c = -1;
+            } else {
+                c = compare(base, i, sorted, j);
+            }
+            if (c <= 0) {
+                for (int k = 0; k < ROW; k++) {
+                    merged[n * ROW + k] = base.get(i * ROW + k);
+                }
+                i++;
+                if (c == 0) {
+                    j++;
+                }
+            } else {
+                System.arraycopy(sorted, j * ROW, merged, n * ROW, ROW);
+                j++;
+            }
+            if (n == 0 || compare(merged, n - 1, merged, n, ROW) != 0) {
+                n++;
+            }
+        }
+        return IntBuffer.wrap(n * ROW == merged.length ? merged : Arrays.copyOf(merged, n * ROW));
+    }
+
+    private static IntBuffer subtract(IntBuffer base, int[] sorted, int sortedSize) {
+        int baseSize = base.limit() / ROW;
+        int[] result = new int[base.limit()];
+        int j = 0, n = 0;
+        for (int i = 0; i < baseSize; i++) {
+            while (j < sortedSize && compare(base, i, sorted, j) > 0) {
+                j++;
+            }
+            if (j == sortedSize || compare(base, i, sorted, j) != 0) {
+                for (int k = 0; k < ROW; k++) {
+                    result[n * ROW + k] = base.get(i * ROW + k);
+                }
+                n++;
+            }
+        }
+        return IntBuffer.wrap(n * ROW == result.length ? result : Arrays.copyOf(result, n * ROW));
+    }
+
+    private static void sort(int[] rows, int[] tmp, int from, int to) {
+        if (to - from <= 8) {
+            for (int i = from + 1; i < to; i++) {
+                for (int j = i; j > from && compare(rows, j - 1, rows, j, ROW) > 0; j--) {
+                    swap(rows, j - 1, j);
+                }
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        sort(rows, tmp, from, mid);
+        sort(rows, tmp, mid, to);
+        if (compare(rows, mid - 1, rows, mid, ROW) <= 0) {
+            return;
+        }
+        System.arraycopy(rows, from * ROW, tmp, from * ROW, (to - from) * ROW);
+        int i = from, j = mid, n = from;
+        while (i < mid || j < to) {
+            int row;
+            if (j == to || (i < mid && compare(tmp, i, tmp, j, ROW) <= 0)) {
+                row = i++;
+            } else {
+                row = j++;
+            }
+            System.arraycopy(tmp, row * ROW, rows, n * ROW, ROW);
+            n++;
+        }
+    }
+
+    private static void swap(int[] rows, int i, int j) {
+        for (int k = 0; k < ROW; k++) {
+            int tmp = rows[i * ROW + k];
+            rows[i * ROW + k] = rows[j * ROW + k];
+            rows[j * ROW + k] = tmp;
+        }
+    }
+
+    private static int compare(IntBuffer a, int i, int[] b, int j) {
+        for (int k = 0; k < ROW; k++) {
+            int x = a.get(i * ROW + k), y = b[j * ROW + k];
+            if (x != y) {
+                return x < y ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Compare the first length keys of the given rows
+     */
+    private static int compare(int[] a, int i, int[] b, int j, int length) {
+        for (int k = 0; k < length; k++) {
+            int x = a[i * ROW + k], y = b[j * ROW + k];
+            if (x != y) {
+                return x < y ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Get the index of the first row which is not less than the given key
+     * prefix
+     *
+     * @param rows
+     * @param key
+     * @return
+     */
+    public static int lowerBound(IntBuffer rows, int[] key) {
+        int lo = 0, hi = rows.limit() / ROW;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(rows, mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Get the index of the first row which is greater than the given key prefix
+     *
+     * @param rows
+     * @param key
+     * @return
+     */
+    public static int upperBound(IntBuffer rows, int[] key) {
+        int lo = 0, hi = rows.limit() / ROW;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(rows, mid, key) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int comparePrefix(IntBuffer rows, int row, int[] key) {
+        for (int k = 0; k < key.length; k++) {
+            int x = rows.get(row * ROW + k);
+            if (x != key[k]) {
+                return x < key[k] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Cursor iterates over a key prefix range of the base rows and the
+     * inserted rows in key order and skips the deleted rows
+     */
+    public static final class Cursor {
+
+        private final IntBuffer base, inserted, deleted;
+
+        private int b, i, d;
+
+        private final int baseEnd, insertedEnd, deletedEnd;
+
+        private final int size;
+
+        Cursor(IntBuffer base, int[] inserted, int[] deleted, int[] key) {
+            this.base = base;
+            this.inserted = IntBuffer.wrap(inserted);
+            this.deleted = IntBuffer.wrap(deleted);
+            b = lowerBound(base, key);
+            baseEnd = upperBound(base, key);
+            i = lowerBound(this.inserted, key);
+            insertedEnd = upperBound(this.inserted, key);
+            d = lowerBound(this.deleted, key);
+            deletedEnd = upperBound(this.deleted, key);
+            size = (baseEnd - b) + (insertedEnd - i) - (deletedEnd - d);
+        }
+
+        /**
+         * Get the amount of rows of this cursor
+         *
+         * @return
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Copy the next row in key order into the given array
+         *
+         * @param row
+         * @return false, if there are no more rows
+         */
+        public boolean next(int[] row) {
+            // deleted rows are a subset of the base rows
+            while (b < baseEnd && d < deletedEnd) {
+                int c = compareRows(base, b, deleted, d);
+                if (c > 0) {
+                    d++;
+                } else if (c == 0) {
+                    b++;
+                    d++;
+                } else {
+                    break;
+                }
+            }
+            if (b < baseEnd && (i == insertedEnd || compareRows(base, b, inserted, i) < 0)) {
+                copy(base, b++, row);
+                return true;
+            } else if (i < insertedEnd) {
+                copy(inserted, i++, row);
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        private static int compareRows(IntBuffer a, int i, IntBuffer b, int j) {
+            for (int k = 0; k < ROW; k++) {
+                int x = a.get(i * ROW + k), y = b.get(j * ROW + k);
+                if (x != y) {
+                    return x < y ? -1 : 1;
+                }
+            }
+            return 0;
+        }
+
+        private static void copy(IntBuffer rows, int index, int[] row) {
+            for (int k = 0; k < ROW; k++) {
+                row[k] = rows.get(index * ROW + k);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+/**
+ * QueryCancelledException is thrown when the evaluation of a query is
+ * cancelled or exceeds its time budget
+ *
+ * @author tiwe
+ *
+ */
+public class QueryCancelledException extends RepositoryException {
+
+    private static final long serialVersionUID = -3960612398357407731L;
+
+    public QueryCancelledException(String msg) {
+        super(msg);
+    }
+
+}
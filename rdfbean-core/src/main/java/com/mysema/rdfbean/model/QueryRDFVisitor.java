@@ -1,192 +1,524 @@
 package com.mysema.rdfbean.model;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 import javax.annotation.Nullable;
 
 import com.google.common.base.Function;
-import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
 import com.mysema.commons.lang.CloseableIterator;
-import com.mysema.commons.lang.IteratorAdapter;
 import com.mysema.commons.lang.Pair;
 import com.mysema.query.BooleanBuilder;
 import com.mysema.query.JoinExpression;
 import com.mysema.query.QueryMetadata;
+import com.mysema.query.QueryModifiers;
 import com.mysema.query.types.Constant;
 import com.mysema.query.types.Expression;
-import com.mysema.query.types.ExpressionUtils;
 import com.mysema.query.types.FactoryExpression;
 import com.mysema.query.types.Operation;
 import com.mysema.query.types.Operator;
+import com.mysema.query.types.OrderSpecifier;
 import com.mysema.query.types.Ops;
 import com.mysema.query.types.ParamExpression;
 import com.mysema.query.types.Path;
 import com.mysema.query.types.SubQueryExpression;
 import com.mysema.query.types.TemplateExpression;
-import com.mysema.rdfbean.xsd.ConverterRegistryImpl;
 import com.mysema.util.LimitingIterable;
 import com.mysema.util.PairIterator;
+import com.mysema.util.ParallelIterator;
 
 /**
+ * QueryRDFVisitor evaluates queries against the statements of an
+ * RDFConnection
+ *
+ * <p>
+ * Pattern blocks are joined to the preceding blocks of the same group with
+ * index probes, one findStatements call per row. When the preceding blocks
+ * produce more than a few rows, the statements of the pattern are instead
+ * loaded into a hash table keyed by the values of the join variables, unless
+ * the pattern matches more statements than the hash join limit.
+ * </p>
+ *
+ * <p>
+ * Pattern blocks are evaluated in the order given by {@link JoinPlanner},
+ * which uses the statement counts of the connection, if it is a
+ * {@link CardinalityEstimator}.
+ * </p>
+ *
+ * <p>
+ * Equality and IN filters on pattern variables are pushed into the first
+ * pattern binding the variable, which then probes the index once per value
+ * instead of enumerating all candidates. The filters are still evaluated on
+ * the results.
+ * </p>
+ *
+ * <p>
+ * If an executor is given, the branches of union blocks which are not
+ * followed by other blocks are evaluated concurrently, and for connections implementing {@link PartitionedScan} the
+ * where block is evaluated once per subject partition of its first pattern,
+ * with the partitions running concurrently. The rows of concurrent branches
+ * are copied and merged in arrival order. Blocks nested in a concurrently
+ * evaluated block are evaluated sequentially.
+ * </p>
+ *
+ * <p>
+ * Tuple queries with group by expressions or aggregates in the projection are
+ * aggregated in one pass over the rows by {@link Aggregator}.
+ * </p>
+ *
+ * <p>
+ * Distinct tuple queries keep at most the distinct limit of rows in memory
+ * and spill the rest to temporary files, see {@link DistinctIterable}.
+ * </p>
+ *
+ * <p>
+ * The created queries are {@link Cancellable}, the cancellation token is
+ * checked once per 1024 produced rows and index probes.
+ * </p>
+ *
  * @author tiwe
- * 
+ *
  */
 public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
 
-    private static final Map<String, Pattern> patterns = new HashMap<String, Pattern>();
-
-    private static final Map<String, Pattern> caseInsensitivePatterns = new HashMap<String, Pattern>();
+    /**
+     * Default maximum amount of statements in hash join tables
+     */
+    public static final int DEFAULT_HASH_JOIN_LIMIT = 100000;
+
+    /**
+     * Default maximum amount of distinct rows kept in memory
+     */
+    public static final int DEFAULT_DISTINCT_LIMIT = 100000;
+
+    /**
+     * Amount of produced rows and index probes between cancellation checks,
+     * minus one
+     */
+    private static final int CHECK_MASK = 1023;
+
+    /**
+     * Amount of rows joined via index probes before a hash table is built
+     */
+    private static final int INDEX_JOIN_ROWS = 16;
+
+    /**
+     * Maximum amount of index probes per pattern for pushed down filters
+     */
+    private static final int MAX_PROBES = 1024;
+
+    /**
+     * Positions of pattern terms in the order constraints are applied
+     */
+    private static final int[] PROBE_ORDER = { 0, 2, 1, 3 };
 
     private static final NODEComparator nodeComparator = new NODEComparator();
 
+    private static final Function<Bindings, Bindings> COPY = new Function<Bindings, Bindings>() {
+        @Override
+        public Bindings apply(Bindings input) {
+            return input.copy();
+        }
+    };
+
     private final RDFConnection connection;
 
+    private final int hashJoinLimit;
+
+    @Nullable
+    private final CardinalityEstimator estimator;
+
+    private final JoinPlanner planner;
+
+    private final FilterCompiler compiler = new FilterCompiler();
+
+    @Nullable
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    private int distinctLimit = DEFAULT_DISTINCT_LIMIT;
+
+    @Nullable
+    private volatile CancellationToken cancellation;
+
+    /**
+     * Counter of query evaluations, hash join tables are valid for one
+     * evaluation
+     */
+    private volatile int evaluation;
+
+    /**
+     * Open iterators of the current evaluation
+     */
+    @Nullable
+    private volatile Resources resources;
+
     @Nullable
     private Expression<UID> context;
 
+    /**
+     * Whether the visited blocks are evaluated in a concurrent branch
+     */
+    private boolean parallel;
+
+    /**
+     * Whether no blocks read the rows of the visited block after it
+     */
+    private boolean terminal;
+
+    /**
+     * Subject partition of the first pattern of the next container block or -1
+     */
+    private int scanPartition = -1;
+
+    private boolean scanPartitionUsed;
+
     public QueryRDFVisitor(RDFConnection connection) {
+        this(connection, DEFAULT_HASH_JOIN_LIMIT);
+    }
+
+    /**
+     * Create a new QueryRDFVisitor
+     *
+     * @param connection
+     * @param hashJoinLimit
+     *            maximum amount of statements in hash join tables, 0 to use
+     *            only index probes in joins
+     */
+    public QueryRDFVisitor(RDFConnection connection, int hashJoinLimit) {
+        this(connection, hashJoinLimit, null, 1);
+    }
+
+    /**
+     * Create a new QueryRDFVisitor
+     *
+     * @param connection
+     * @param hashJoinLimit
+     *            maximum amount of statements in hash join tables, 0 to use
+     *            only index probes in joins
+     * @param executor
+     *            executor for concurrent evaluation or null
+     * @param parallelism
+     *            amount of subject partitions for partitioned scans
+     */
+    public QueryRDFVisitor(RDFConnection connection, int hashJoinLimit, @Nullable ExecutorService executor,
+            int parallelism) {
         this.connection = connection;
+        this.hashJoinLimit = hashJoinLimit;
+        this.executor = executor;
+        this.parallelism = parallelism;
+        this.estimator = connection instanceof CardinalityEstimator ? (CardinalityEstimator) connection : null;
+        this.planner = new JoinPlanner(estimator, this);
+    }
+
+    /**
+     * Set the maximum amount of distinct rows kept in memory, further rows of
+     * distinct queries are spilled to temporary files
+     *
+     * @param distinctLimit
+     */
+    public void setDistinctLimit(int distinctLimit) {
+        this.distinctLimit = distinctLimit;
+    }
+
+    /**
+     * Check the cancellation token every CHECK_MASK + 1 calls. The counters
+     * are kept by the callers, which are confined to one evaluating thread.
+     *
+     * @param checks
+     *            incremented counter of the caller
+     */
+    private void checkpoint(int checks) {
+        CancellationToken token = cancellation;
+        if (token != null && (checks & CHECK_MASK) == 0) {
+            token.check();
+        }
+    }
+
+    private Resources startEvaluation() {
+        CancellationToken token = cancellation;
+        if (token != null) {
+            token.check();
+        }
+        evaluation++;
+        Resources rv = new Resources();
+        resources = rv;
+        return rv;
     }
 
-    private void bind(Bindings bindings, String key, NODE value) {
-        if (key != null && bindings.get(key) == null) {
-            bindings.put(key, value);
+    /**
+     * Register the given iterator in the current evaluation, it is closed
+     * when the query result is closed or the iterator is exhausted
+     */
+    private <T> CloseableIterator<T> open(CloseableIterator<T> iterator) {
+        Resources r = resources;
+        if (r == null) {
+            return iterator;
         }
+        ResourceIterator<T> rv = new ResourceIterator<T>(iterator, r);
+        if (!r.add(rv)) {
+            rv.close();
+        }
+        return rv;
+    }
+
+    /**
+     * Create an iterable whose iterators close the current evaluation
+     */
+    private Iterable<Bindings> createClosingIterable(final Iterable<Bindings> iterable) {
+        return new Iterable<Bindings>() {
+            @Override
+            public Iterator<Bindings> iterator() {
+                Resources r = resources;
+                Iterator<Bindings> iterator = iterable.iterator();
+                return r != null ? new EvaluationIterator<Bindings>(iterator, r) : iterator;
+            }
+        };
+    }
+
+    private void bind(Bindings bindings, int slot, NODE value) {
+        if (slot != -1 && bindings.get(slot) == null) {
+            bindings.put(slot, value);
+        }
+    }
+
+    private int getSlot(@Nullable Expression<?> expr, Bindings bindings) {
+        String key = expr != null ? getKey(expr) : null;
+        return key != null ? bindings.getSlot(key) : -1;
     }
 
     @SuppressWarnings("unchecked")
-    private Predicate<Bindings> createAndPredicate(final Operation<?> expr, Bindings bindings) {
-        return Predicates.and(
-                (Predicate) expr.getArg(0).accept(this, bindings),
-                (Predicate) expr.getArg(1).accept(this, bindings));
+    private Function<Bindings, NODE>[] compileTerms(Expression<?>[] terms, Bindings bindings) {
+        Function<Bindings, NODE>[] rv = new Function[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            rv[i] = terms[i] != null ? compiler.compileValue(terms[i], bindings) : null;
+        }
+        return rv;
+    }
+
+    private static void evaluate(Function<Bindings, NODE>[] terms, Bindings bindings, NODE[] values) {
+        for (int i = 0; i < terms.length; i++) {
+            values[i] = terms[i] != null ? terms[i].apply(bindings) : null;
+        }
     }
 
     private Function<STMT, Bindings> createBindingsFunction(PatternBlock expr, @Nullable Expression<UID> context, final Bindings bindings) {
-        final String s = getKey(expr.getSubject());
-        final String p = getKey(expr.getPredicate());
-        final String o = getKey(expr.getObject());
-        final String c = getKey(expr.getContext() != null ? expr.getContext() : context);
+        final int s = getSlot(expr.getSubject(), bindings);
+        final int p = getSlot(expr.getPredicate(), bindings);
+        final int o = getSlot(expr.getObject(), bindings);
+        final int c = getSlot(expr.getContext() != null ? expr.getContext() : context, bindings);
 
         return new Function<STMT, Bindings>() {
+            private int checks;
+
             @Override
             public Bindings apply(STMT input) {
+                checkpoint(++checks);
                 bindings.clear();
                 bind(bindings, s, input.getSubject());
                 bind(bindings, p, input.getPredicate());
                 bind(bindings, o, input.getObject());
                 bind(bindings, c, input.getContext());
-                // System.err.println(bindings);
                 return bindings;
             }
         };
     }
 
-    private BooleanQuery createBooleanQuery(final Iterable<Bindings> iterable) {
-        return new BooleanQuery() {
+    private Iterator<STMT> find(NODE[] values, int partition) {
+        if (partition != -1) {
+            return ((PartitionedScan) connection).findStatements(
+                    (ID) values[0], (UID) values[1], values[2], (UID) values[3], false, partition, parallelism);
+        } else {
+            return connection.findStatements((ID) values[0], (UID) values[1], values[2], (UID) values[3], false);
+        }
+    }
+
+    /**
+     * Find the statements matching the given values and the constraints of
+     * unbound variables, with one probe per combination of constraint values
+     */
+    private Iterator<STMT> find(Expression<?>[] terms, NODE[] values, Map<String, List<NODE>> constraints,
+            final int partition) {
+        List<NODE[]> probes = Collections.singletonList(values);
+        for (int i : PROBE_ORDER) {
+            List<NODE> candidates = terms[i] != null ? constraints.get(getKey(terms[i])) : null;
+            if (candidates == null) {
+                continue;
+            } else if (values[i] != null) {
+                if (!candidates.contains(values[i])) {
+                    return Iterators.emptyIterator();
+                }
+            } else if (probes.size() * candidates.size() <= MAX_PROBES) {
+                List<NODE[]> expanded = new ArrayList<NODE[]>(probes.size() * candidates.size());
+                for (NODE candidate : candidates) {
+                    if (i == 2 || candidate.isURI() || (i == 0 && candidate.isBNode())) {
+                        for (NODE[] probe : probes) {
+                            NODE[] copy = probe.clone();
+                            copy[i] = candidate;
+                            expanded.add(copy);
+                        }
+                    }
+                }
+                probes = expanded;
+            }
+        }
+        return Iterators.concat(Iterators.transform(probes.iterator(), new Function<NODE[], Iterator<STMT>>() {
             @Override
-            public boolean getBoolean() {
-                return iterable.iterator().hasNext();
+            public Iterator<STMT> apply(NODE[] probe) {
+                return find(probe, partition);
             }
-        };
+        }));
     }
 
-    private Predicate<Bindings> createBoundPredicate(final Operation<?> expr, final Operator<?> op) {
-        final String key = getKey(expr.getArg(0));
-        return new Predicate<Bindings>() {
+    /**
+     * Create a sorted copy of the given rows. With a limit only the first
+     * offset + limit rows are kept in a bounded priority queue.
+     */
+    @SuppressWarnings("unchecked")
+    private Iterable<Bindings> createSortedIterable(List<OrderSpecifier<?>> orderBy, final QueryModifiers modifiers,
+            final Iterable<Bindings> iterable, Bindings bindings) {
+        Expression<?>[] expressions = new Expression<?>[orderBy.size()];
+        final Comparator<NODE>[] comparators = new Comparator[orderBy.size()];
+        for (int i = 0; i < expressions.length; i++) {
+            OrderSpecifier<?> os = orderBy.get(i);
+            expressions[i] = os.getTarget();
+            Comparator<NODE> comparator = nodeComparator;
+            if (!os.isAscending()) {
+                comparator = Collections.reverseOrder(comparator);
+            }
+            if (os.getNullHandling() == OrderSpecifier.NullHandling.NullsFirst) {
+                comparator = Ordering.from(comparator).nullsFirst();
+            } else if (os.getNullHandling() == OrderSpecifier.NullHandling.NullsLast) {
+                comparator = Ordering.from(comparator).nullsLast();
+            }
+            comparators[i] = comparator;
+        }
+        final Function<Bindings, NODE>[] targets = compileTerms(expressions, bindings);
+        final Comparator<SortRow> rowComparator = new Comparator<SortRow>() {
             @Override
-            public boolean apply(Bindings bindings) {
-                boolean rv = bindings.get(key) != null;
-                return op == Ops.IS_NOT_NULL ? rv : !rv;
+            public int compare(SortRow r1, SortRow r2) {
+                for (int i = 0; i < comparators.length; i++) {
+                    int rv = comparators[i].compare(r1.keys[i], r2.keys[i]);
+                    if (rv != 0) {
+                        return rv;
+                    }
+                }
+                return 0;
             }
         };
-    }
 
-    private Predicate<Bindings> createComparePredicate(final Operation<?> expr, final Operator<?> op) {
-        return new Predicate<Bindings>() {
+        return new Iterable<Bindings>() {
             @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                int rv = nodeComparator.compare(lhs, rhs);
-                if (rv < 0) {
-                    return op == Ops.LT || op == Ops.LOE;
-                } else if (rv == 0) {
-                    return op == Ops.LOE || op == Ops.GOE;
+            public Iterator<Bindings> iterator() {
+                List<SortRow> rows;
+                if (modifiers.getLimit() != null) {
+                    long size = modifiers.getLimit() + (modifiers.getOffset() != null ? modifiers.getOffset() : 0);
+                    int k = (int) Math.min(size, Integer.MAX_VALUE - 1);
+                    if (k == 0) {
+                        return Collections.<Bindings> emptyList().iterator();
+                    }
+                    PriorityQueue<SortRow> queue = new PriorityQueue<SortRow>(Math.min(k, 1024), Collections.reverseOrder(rowComparator));
+                    SortRow candidate = new SortRow(targets.length);
+                    for (Bindings row : iterable) {
+                        candidate.setKeys(targets, row);
+                        if (queue.size() < k) {
+                            queue.add(candidate.copy(row));
+                        } else if (rowComparator.compare(candidate, queue.peek()) < 0) {
+                            queue.poll();
+                            queue.add(candidate.copy(row));
+                        }
+                    }
+                    rows = new ArrayList<SortRow>(queue);
                 } else {
-                    return op == Ops.GT || op == Ops.GOE;
+                    rows = new ArrayList<SortRow>();
+                    SortRow candidate = new SortRow(targets.length);
+                    for (Bindings row : iterable) {
+                        candidate.setKeys(targets, row);
+                        rows.add(candidate.copy(row));
+                    }
                 }
+                Collections.sort(rows, rowComparator);
+                return Iterators.transform(rows.iterator(), new Function<SortRow, Bindings>() {
+                    @Override
+                    public Bindings apply(SortRow input) {
+                        return input.bindings;
+                    }
+                });
             }
         };
     }
 
-    private Predicate<Bindings> createEqPredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                return Objects.equal(
-                        expr.getArg(0).accept(QueryRDFVisitor.this, bindings),
-                        expr.getArg(1).accept(QueryRDFVisitor.this, bindings));
+    /**
+     * Plan the given block once per subject partition of its first pattern and
+     * evaluate the partitions concurrently. If the block doesn't start with a
+     * pattern, it is planned for sequential evaluation.
+     */
+    @SuppressWarnings("unchecked")
+    private Iterable<Bindings> createPartitionedIterable(Block block, Bindings bindings) {
+        List<Iterable<Bindings>> partitions = new ArrayList<Iterable<Bindings>>(parallelism);
+        parallel = true;
+        try {
+            for (int i = 0; i < parallelism; i++) {
+                scanPartition = i;
+                scanPartitionUsed = false;
+                Pair<Iterable<Bindings>, Bindings> pair = (Pair) block.accept(this, new Bindings(bindings));
+                if (!scanPartitionUsed) {
+                    break;
+                }
+                partitions.add(pair.getFirst());
             }
-        };
+        } finally {
+            parallel = false;
+            scanPartition = -1;
+        }
+        if (partitions.size() == parallelism) {
+            return createParallelIterable(partitions);
+        } else {
+            return (Iterable<Bindings>) ((Pair) block.accept(this, bindings)).getFirst();
+        }
     }
 
-    private Predicate<Bindings> createLikePredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
+    private Iterable<Bindings> createParallelIterable(final List<Iterable<Bindings>> iterables) {
+        return new Iterable<Bindings>() {
             @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                if (lhs != null && rhs != null) {
-                    Pattern pattern;
-                    Map<String, Pattern> cache = patterns;
-                    pattern = cache.get(rhs.getValue());
-                    if (pattern == null) {
-                        String regex = rhs.getValue().replace("%", ".*").replaceAll("_", ".");
-                        pattern = Pattern.compile(regex);
-                        cache.put(rhs.getValue(), pattern);
-                    }
-                    return pattern.matcher(lhs.getValue()).matches();
-                } else {
-                    return false;
-                }
+            public Iterator<Bindings> iterator() {
+                return open(new ParallelIterator<Bindings, Bindings>(executor, iterables, COPY));
             }
         };
     }
 
-    private Predicate<Bindings> createMatchesPredicate(final Operation<?> expr, final Operator<?> op) {
-        return new Predicate<Bindings>() {
+    private BooleanQuery createBooleanQuery(final Iterable<Bindings> iterable) {
+        return new CancellableBooleanQuery() {
             @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                if (lhs != null && rhs != null) {
-                    Pattern pattern;
-                    Map<String, Pattern> cache = op == Ops.MATCHES ? patterns : caseInsensitivePatterns;
-                    pattern = cache.get(rhs.getValue());
-                    if (pattern == null) {
-                        pattern = Pattern.compile(rhs.getValue(), op == Ops.MATCHES ? 0 : Pattern.CASE_INSENSITIVE);
-                        cache.put(rhs.getValue(), pattern);
-                    }
-                    return pattern.matcher(lhs.getValue()).matches();
-                } else {
-                    return false;
+            public boolean getBoolean() {
+                Resources r = startEvaluation();
+                try {
+                    return iterable.iterator().hasNext();
+                } finally {
+                    r.close();
                 }
             }
         };
     }
 
-    private GraphQuery createGraphQuery(QueryMetadata md, final Iterable<Bindings> iterable) {
+    private GraphQuery createGraphQuery(QueryMetadata md, final Iterable<Bindings> iterable, Bindings bindings) {
         List<PatternBlock> patternBlocks = new ArrayList<PatternBlock>();
         for (Expression<?> e : md.getProjection()) {
             if (e instanceof PatternBlock) {
@@ -200,79 +532,58 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
 
         final List<Function<Bindings, STMT>> transformers = new ArrayList<Function<Bindings, STMT>>(patternBlocks.size());
         for (PatternBlock pb : patternBlocks) {
-            transformers.add(createStatementFunction(pb));
+            transformers.add(createStatementFunction(pb, bindings));
         }
 
-        return new GraphQuery() {
+        return new CancellableGraphQuery() {
             @SuppressWarnings("unchecked")
             @Override
             public CloseableIterator<STMT> getTriples() {
+                Resources r = startEvaluation();
                 List<Iterator<STMT>> iterators = new ArrayList<Iterator<STMT>>(transformers.size());
                 for (Function<Bindings, STMT> transformer : transformers) {
                     iterators.add(Iterators.transform(iterable.iterator(), transformer));
                 }
-                return new IteratorAdapter<STMT>(Iterators.concat(iterators.toArray(new Iterator[iterators.size()])));
-            }
-        };
-    }
-
-    private Predicate<Bindings> createNePredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                return !Objects.equal(
-                        expr.getArg(0).accept(QueryRDFVisitor.this, bindings),
-                        expr.getArg(1).accept(QueryRDFVisitor.this, bindings));
+                return new EvaluationIterator<STMT>(Iterators.concat(iterators.toArray(new Iterator[iterators.size()])), r);
             }
         };
     }
 
-    @SuppressWarnings("unchecked")
-    private Predicate<Bindings> createOrPredicate(final Operation<?> expr, Bindings bindings) {
-        return Predicates.or(
-                (Predicate) expr.getArg(0).accept(this, bindings),
-                (Predicate) expr.getArg(1).accept(this, bindings));
-    }
-
-    private Function<Bindings, STMT> createQuadFunction(final PatternBlock expr) {
+    private Function<Bindings, STMT> createStatementFunction(PatternBlock expr, Bindings bindings) {
+        final Function<Bindings, NODE>[] terms = compileTerms(new Expression<?>[] {
+                expr.getSubject(), expr.getPredicate(), expr.getObject(), expr.getContext() }, bindings);
         return new Function<Bindings, STMT>() {
             @Override
             public STMT apply(Bindings input) {
                 return new STMT(
-                        (ID) expr.getSubject().accept(QueryRDFVisitor.this, input),
-                        (UID) expr.getPredicate().accept(QueryRDFVisitor.this, input),
-                        (NODE) expr.getObject().accept(QueryRDFVisitor.this, input),
-                        (UID) expr.getContext().accept(QueryRDFVisitor.this, input));
+                        (ID) terms[0].apply(input),
+                        (UID) terms[1].apply(input),
+                        terms[2].apply(input),
+                        terms[3] != null ? (UID) terms[3].apply(input) : null);
             }
         };
     }
 
-    private Function<Bindings, STMT> createStatementFunction(final PatternBlock expr) {
-        if (expr.getContext() != null) {
-            return createQuadFunction(expr);
-        } else {
-            return createTripleFunction(expr);
+    private List<String> getVariables(QueryMetadata md) {
+        List<String> variables = new ArrayList<String>(md.getProjection().size());
+        for (Expression<?> expr : md.getProjection()) {
+            String key = getKey(expr);
+            variables.add(key != null ? key : expr.toString());
         }
+        return variables;
     }
 
-    private Function<Bindings, STMT> createTripleFunction(final PatternBlock expr) {
-        return new Function<Bindings, STMT>() {
-            @Override
-            public STMT apply(Bindings input) {
-                return new STMT(
-                        (ID) expr.getSubject().accept(QueryRDFVisitor.this, input),
-                        (UID) expr.getPredicate().accept(QueryRDFVisitor.this, input),
-                        (NODE) expr.getObject().accept(QueryRDFVisitor.this, input));
-            }
-        };
+    private static int[] getSlots(List<String> variables, Bindings bindings) {
+        int[] slots = new int[variables.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = bindings.getSlot(variables.get(i));
+        }
+        return slots;
     }
 
-    private TupleQuery createTupleQuery(QueryMetadata md, final Iterable<Bindings> iterable) {
-        final List<String> variables = new ArrayList<String>(md.getProjection().size());
-        for (Expression<?> expr : md.getProjection()) {
-            String key = getKey(expr);
-            variables.add(key != null ? key : expr.toString());
-        }
+    private TupleQuery createTupleQuery(QueryMetadata md, final Iterable<Bindings> iterable, Bindings bindings) {
+        final List<String> variables = getVariables(md);
+        final int[] slots = getSlots(variables, bindings);
 
         final Function<Bindings, Map<String, NODE>> bindingsToMap = new Function<Bindings, Map<String, NODE>>() {
             @Override
@@ -280,16 +591,17 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
                 if (variables.isEmpty()) {
                     return input.toMap();
                 } else {
-                    return input.toMap(variables);
+                    return input.toMap(variables, slots);
                 }
             }
         };
 
-        return new TupleQuery() {
+        return new CancellableTupleQuery() {
             @Override
             public CloseableIterator<Map<String, NODE>> getTuples() {
+                Resources r = startEvaluation();
                 Iterator<Map<String, NODE>> it = Iterators.transform(iterable.iterator(), bindingsToMap);
-                return new IteratorAdapter<Map<String, NODE>>(it);
+                return new EvaluationIterator<Map<String, NODE>>(it, r);
             }
 
             @Override
@@ -299,6 +611,17 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
         };
     }
 
+    private boolean isAggregating(QueryMetadata md) {
+        if (!md.getGroupBy().isEmpty() || md.getHaving() != null) {
+            return true;
+        }
+        Set<Operation<?>> aggregates = new HashSet<Operation<?>>();
+        for (Expression<?> expr : md.getProjection()) {
+            Aggregator.collect(expr, aggregates);
+        }
+        return !aggregates.isEmpty();
+    }
+
     @Nullable
     private String getKey(Expression<?> expr) {
         if (expr instanceof Path<?>) {
@@ -312,28 +635,117 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
 
     @Override
     public NODE visit(Constant<?> expr, Bindings bindings) {
-        if (expr.getType().equals(String.class)) {
-            return new LIT(expr.getConstant().toString());
-        } else if (NODE.class.isAssignableFrom(expr.getType())) {
-            return (NODE) expr.getConstant();
+        return FilterCompiler.toNode(expr.getType(), expr.getConstant());
+    }
+
+    /**
+     * Get the value of the given constant or bound parameter
+     */
+    @Nullable
+    private NODE getValue(Expression<?> expr, Bindings bindings) {
+        if (expr instanceof Constant<?>) {
+            return visit((Constant<?>) expr, bindings);
+        } else if (expr instanceof ParamExpression<?>) {
+            return bindings.get(((ParamExpression<?>) expr).getName());
         } else {
-            UID datatype = ConverterRegistryImpl.DEFAULT.getDatatype(expr.getType());
-            String value = ConverterRegistryImpl.DEFAULT.toString(expr.getConstant());
-            return new LIT(value, datatype);
+            return null;
+        }
+    }
+
+    /**
+     * Collect the values of equality and IN constraints on variables from the
+     * conjuncts of the given filter. Parameters bound in the given bindings
+     * are treated as constants.
+     */
+    @SuppressWarnings("unchecked")
+    private void addConstraints(@Nullable Expression<?> filter, Map<String, List<NODE>> constraints, Bindings bindings) {
+        if (!(filter instanceof Operation<?>)) {
+            return;
+        }
+        Operation<?> operation = (Operation<?>) filter;
+        Operator<?> op = operation.getOperator();
+        if (op == Ops.AND) {
+            addConstraints(operation.getArg(0), constraints, bindings);
+            addConstraints(operation.getArg(1), constraints, bindings);
+            return;
         }
+        String key = null;
+        List<NODE> values = null;
+        if (op == Ops.EQ) {
+            Expression<?> lhs = operation.getArg(0), rhs = operation.getArg(1);
+            NODE lhsValue = getValue(lhs, bindings), rhsValue = getValue(rhs, bindings);
+            if (rhsValue != null && lhsValue == null && getKey(lhs) != null) {
+                key = getKey(lhs);
+                values = Collections.singletonList(rhsValue);
+            } else if (lhsValue != null && rhsValue == null && getKey(rhs) != null) {
+                key = getKey(rhs);
+                values = Collections.singletonList(lhsValue);
+            }
+        } else if (op == Ops.IN && operation.getArg(1) instanceof Constant<?> && getKey(operation.getArg(0)) != null) {
+            key = getKey(operation.getArg(0));
+            values = new ArrayList<NODE>();
+            for (Object o : ((Constant<Collection>) operation.getArg(1)).getConstant()) {
+                values.add(FilterCompiler.toNode(o.getClass(), o));
+            }
+        }
+        if (key != null) {
+            List<NODE> existing = constraints.get(key);
+            if (existing != null) {
+                values = new ArrayList<NODE>(values);
+                values.retainAll(existing);
+            }
+            constraints.put(key, values);
+        }
+    }
 
+    /**
+     * Remove the constraints on the variables of the given pattern
+     */
+    private Map<String, List<NODE>> removeConstraints(PatternBlock pattern, Map<String, List<NODE>> constraints) {
+        Map<String, List<NODE>> rv = new HashMap<String, List<NODE>>();
+        Expression<?>[] terms = { pattern.getSubject(), pattern.getPredicate(), pattern.getObject(), pattern.getContext() };
+        for (Expression<?> term : terms) {
+            String key = term != null ? getKey(term) : null;
+            if (key != null && constraints.containsKey(key)) {
+                rv.put(key, constraints.remove(key));
+            }
+        }
+        return rv;
     }
 
     @SuppressWarnings("unchecked")
     private Pair<Iterable<Bindings>, Bindings> visit(ContainerBlock expr, Bindings bindings) {
-        final List<Iterable<Bindings>> iterables = new ArrayList<Iterable<Bindings>>(expr.getBlocks().size());
+        int partition = scanPartition;
+        scanPartition = -1;
+        Map<String, List<NODE>> constraints = new HashMap<String, List<NODE>>();
+        addConstraints(expr.getFilters(), constraints, bindings);
+        List<Block> blocks = planner.order(expr.getBlocks(), context, bindings, constraints);
+        final List<Iterable<Bindings>> iterables = new ArrayList<Iterable<Bindings>>(blocks.size());
+        final List<Bindings> inputs = new ArrayList<Bindings>(blocks.size());
+        final List<Boolean> constrained = new ArrayList<Boolean>(blocks.size());
         Bindings previous = null;
-        for (Block block : expr.getBlocks()) {
+        boolean outerTerminal = terminal;
+        for (Block block : blocks) {
+            terminal = outerTerminal && iterables.size() == blocks.size() - 1;
             Bindings input = previous != null ? new Bindings(previous) : bindings;
-            Pair<Iterable<Bindings>, Bindings> iterableAndBindings = (Pair) block.accept(this, input);
+            Pair<Iterable<Bindings>, Bindings> iterableAndBindings;
+            Map<String, List<NODE>> patternConstraints = Collections.emptyMap();
+            int blockPartition = iterables.isEmpty() ? partition : -1;
+            if (block instanceof PatternBlock && (!constraints.isEmpty() || blockPartition != -1)) {
+                if (!constraints.isEmpty()) {
+                    patternConstraints = removeConstraints((PatternBlock) block, constraints);
+                }
+                scanPartitionUsed |= blockPartition != -1;
+                iterableAndBindings = visit((PatternBlock) block, input, patternConstraints, blockPartition);
+            } else {
+                iterableAndBindings = (Pair) block.accept(this, input);
+            }
             iterables.add(iterableAndBindings.getFirst());
+            inputs.add(input);
+            constrained.add(!patternConstraints.isEmpty());
             previous = iterableAndBindings.getSecond();
         }
+        terminal = outerTerminal;
 
         // merge
         Iterable<Bindings> iterable;
@@ -343,18 +755,29 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
             iterable = iterables.get(0);
             for (int i = 1; i < iterables.size(); i++) {
                 final Iterable<Bindings> pr = iterable, next = iterables.get(i);
-                iterable = new Iterable<Bindings>() {
-                    @Override
-                    public Iterator<Bindings> iterator() {
-                        return new PairIterator<Bindings>(pr, next);
-                    }
-                };
+                Block block = blocks.get(i);
+                if (hashJoinLimit > 0 && block instanceof PatternBlock && !constrained.get(i)) {
+                    final HashJoin join = new HashJoin(next, (PatternBlock) block, context, inputs.get(i));
+                    iterable = new Iterable<Bindings>() {
+                        @Override
+                        public Iterator<Bindings> iterator() {
+                            return new HashJoinIterator(pr.iterator(), join);
+                        }
+                    };
+                } else {
+                    iterable = new Iterable<Bindings>() {
+                        @Override
+                        public Iterator<Bindings> iterator() {
+                            return new PairIterator<Bindings>(pr, next);
+                        }
+                    };
+                }
             }
         }
 
         // filter
         if (expr.getFilters() != null) {
-            Predicate<Bindings> predicate = (Predicate) expr.getFilters().accept(this, previous);
+            Predicate<Bindings> predicate = compiler.compilePredicate(expr.getFilters(), previous);
             iterable = Iterables.filter(iterable, predicate);
         }
 
@@ -381,152 +804,15 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
         return visit((ContainerBlock) expr, bindings);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
-    public Object visit(final Operation<?> expr, Bindings bindings) {
-        final Operator<?> op = expr.getOperator();
-        if (op == Ops.EQ) {
-            return createEqPredicate(expr);
-
-        } else if (op == Ops.NE) {
-            return createNePredicate(expr);
-
-        } else if (op == Ops.AND) {
-            return createAndPredicate(expr, bindings);
-
-        } else if (op == Ops.IN) {
-            // expand IN to OR/EQ
-            BooleanBuilder builder = new BooleanBuilder();
-            for (Object o : ((Constant<Collection>) expr.getArg(1)).getConstant()) {
-                builder.or(ExpressionUtils.eqConst((Expression) expr.getArg(0), o));
-            }
-            return builder.getValue().accept(this, bindings);
-
-        } else if (op == Ops.OR) {
-            return createOrPredicate(expr, bindings);
-
-        } else if (op == Ops.NOT) {
-            return Predicates.not((Predicate) expr.getArg(0).accept(this, bindings));
-
-        } else if (op == Ops.IS_NULL || op == Ops.IS_NOT_NULL) {
-            return createBoundPredicate(expr, op);
-
-        } else if (op == Ops.LT || op == Ops.GT || op == Ops.LOE || op == Ops.GOE) {
-            return createComparePredicate(expr, op);
-
-        } else if (op == Ops.MATCHES || op == Ops.MATCHES_IC) {
-            return createMatchesPredicate(expr, op);
-
-        } else if (op == Ops.STARTS_WITH || op == Ops.ENDS_WITH || op == Ops.STRING_CONTAINS
-                || op == Ops.STARTS_WITH_IC || op == Ops.ENDS_WITH_IC || op == Ops.STRING_CONTAINS_IC) {
-            return createStringMatchPredicate(expr, op);
-
-        } else if (op == Ops.LIKE) {
-            return createLikePredicate(expr);
-
-        } else if (op == Ops.EQ_IGNORE_CASE) {
-            return createEqIgnoreCasePredicate(expr);
-
-        } else if (op == Ops.STRING_IS_EMPTY) {
-            return createStringIsEmptyPredicate(expr);
-
-        } else if (op == Ops.CONCAT) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            NODE rhs = (NODE) expr.getArg(1).accept(this, bindings);
-            return new LIT(lhs.getValue() + rhs.getValue());
-
-        } else if (op == Ops.LOWER) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            return new LIT(lhs.getValue().toLowerCase());
-
-        } else if (op == Ops.UPPER) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            return new LIT(lhs.getValue().toUpperCase());
-
-        } else if (op == Ops.TRIM) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            return new LIT(lhs.getValue().trim());
-
-        } else if (op == Ops.SUBSTR_1ARG) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            NODE rhs = (NODE) expr.getArg(1).accept(this, bindings);
-            return new LIT(lhs.getValue().substring(Integer.parseInt(rhs.getValue())));
-
-        } else if (op == Ops.SUBSTR_2ARGS) {
-            NODE arg0 = (NODE) expr.getArg(0).accept(this, bindings);
-            NODE arg1 = (NODE) expr.getArg(1).accept(this, bindings);
-            NODE arg2 = (NODE) expr.getArg(2).accept(this, bindings);
-            return new LIT(arg0.getValue().substring(
-                    Integer.parseInt(arg1.getValue()),
-                    Integer.parseInt(arg2.getValue())));
-
-        } else if (op == Ops.CHAR_AT) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            NODE rhs = (NODE) expr.getArg(1).accept(this, bindings);
-            return new LIT(String.valueOf(lhs.getValue().charAt(Integer.parseInt(rhs.getValue()))));
-
-        } else if (op == Ops.STRING_CAST) {
-            NODE lhs = (NODE) expr.getArg(0).accept(this, bindings);
-            return (lhs.isResource()) ? new LIT(lhs.getValue()) : lhs;
-
+    public Object visit(Operation<?> expr, Bindings bindings) {
+        if (FilterCompiler.isPredicate(expr.getOperator())) {
+            return compiler.compilePredicate(expr, bindings);
         } else {
-            throw new IllegalArgumentException(expr.toString());
+            return compiler.compileValue(expr, bindings).apply(bindings);
         }
     }
 
-    private Predicate<Bindings> createStringMatchPredicate(final Operation<?> expr, final Operator<?> op) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                if (lhs == null || rhs == null) {
-                    return false;
-                } else if (op == Ops.STARTS_WITH) {
-                    return lhs.getValue().startsWith(rhs.getValue());
-                } else if (op == Ops.STARTS_WITH_IC) {
-                    return lhs.getValue().toLowerCase().startsWith(rhs.getValue().toLowerCase());
-                } else if (op == Ops.ENDS_WITH) {
-                    return lhs.getValue().endsWith(rhs.getValue());
-                } else if (op == Ops.ENDS_WITH_IC) {
-                    return lhs.getValue().toLowerCase().endsWith(rhs.getValue().toLowerCase());
-                } else if (op == Ops.STRING_CONTAINS) {
-                    return lhs.getValue().contains(rhs.getValue());
-                } else if (op == Ops.STRING_CONTAINS_IC) {
-                    return lhs.getValue().toLowerCase().contains(rhs.getValue().toLowerCase());
-                } else {
-                    throw new IllegalArgumentException(op.toString());
-                }
-            }
-        };
-    }
-
-    private Predicate<Bindings> createEqIgnoreCasePredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                NODE rhs = (NODE) expr.getArg(1).accept(QueryRDFVisitor.this, bindings);
-                if (lhs != null && rhs != null) {
-                    return lhs.getValue().equalsIgnoreCase(rhs.getValue());
-                } else {
-                    return lhs == rhs;
-                }
-
-            }
-        };
-    }
-
-    private Predicate<Bindings> createStringIsEmptyPredicate(final Operation<?> expr) {
-        return new Predicate<Bindings>() {
-            @Override
-            public boolean apply(Bindings bindings) {
-                NODE lhs = (NODE) expr.getArg(0).accept(QueryRDFVisitor.this, bindings);
-                return lhs != null ? lhs.getValue().isEmpty() : false;
-            }
-        };
-    }
-
     @Override
     public Pair<Iterable<Bindings>, Bindings> visit(OptionalBlock expr, final Bindings bindings) {
         // FIXME
@@ -560,23 +846,30 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
 
     @Override
     public Pair<Iterable<Bindings>, Bindings> visit(final PatternBlock expr, final Bindings bindings) {
+        return visit(expr, bindings, Collections.<String, List<NODE>> emptyMap(), -1);
+    }
+
+    private Pair<Iterable<Bindings>, Bindings> visit(final PatternBlock expr, final Bindings bindings,
+            final Map<String, List<NODE>> constraints, final int partition) {
         final Function<STMT, Bindings> transformer = createBindingsFunction(expr, context, bindings);
         final Expression<UID> _context = context;
+        final Expression<?>[] terms = { expr.getSubject(), expr.getPredicate(), expr.getObject(),
+                expr.getContext() != null ? expr.getContext() : _context };
+        final Function<Bindings, NODE>[] termValues = compileTerms(terms, bindings);
         Iterable<Bindings> iterable = new Iterable<Bindings>() {
+            private int checks;
+
             @Override
             public Iterator<Bindings> iterator() {
-                Bindings parent = bindings.getParent();
-                ID s = (ID) expr.getSubject().accept(QueryRDFVisitor.this, parent);
-                UID p = (UID) expr.getPredicate().accept(QueryRDFVisitor.this, parent);
-                NODE o = (NODE) expr.getObject().accept(QueryRDFVisitor.this, parent);
-                UID c = null;
-                if (expr.getContext() != null) {
-                    c = (UID) expr.getContext().accept(QueryRDFVisitor.this, parent);
-                } else if (_context != null) {
-                    c = (UID) _context.accept(QueryRDFVisitor.this, parent);
-                }
+                checkpoint(++checks);
+                NODE[] values = new NODE[terms.length];
+                evaluate(termValues, bindings.getParent(), values);
                 bindings.clear();
-                return Iterators.transform(connection.findStatements(s, p, o, c, false), transformer);
+                if (constraints.isEmpty()) {
+                    return Iterators.transform(find(values, partition), transformer);
+                } else {
+                    return Iterators.transform(find(terms, values, constraints, partition), transformer);
+                }
             }
 
             @Override
@@ -613,20 +906,55 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
         }
 
         Bindings whereBindings = new Bindings(initialBindings);
-        Iterable<Bindings> iterable = (Iterable<Bindings>) ((Pair) where.accept(this, whereBindings)).getFirst();
+        Iterable<Bindings> iterable;
+        terminal = true;
+        if (executor != null && parallelism > 1 && connection instanceof PartitionedScan
+                && where instanceof ContainerBlock && !(where instanceof OptionalBlock)) {
+            iterable = createPartitionedIterable((Block) where, whereBindings);
+        } else {
+            iterable = (Iterable<Bindings>) ((Pair) where.accept(this, whereBindings)).getFirst();
+        }
+
+        // group by and aggregation
+        if (queryType == QueryLanguage.TUPLE && isAggregating(md)) {
+            iterable = new Aggregator(md, iterable, whereBindings, compiler);
+        }
+
+        // distinct
+        if (queryType == QueryLanguage.TUPLE && md.isDistinct()) {
+            int[] slots;
+            if (md.getProjection().isEmpty()) {
+                slots = new int[whereBindings.getSlotCount()];
+                for (int i = 0; i < slots.length; i++) {
+                    slots[i] = i;
+                }
+            } else {
+                slots = getSlots(getVariables(md), whereBindings);
+            }
+            final DistinctIterable distinct = new DistinctIterable(iterable, slots, whereBindings, distinctLimit);
+            iterable = new Iterable<Bindings>() {
+                @Override
+                public Iterator<Bindings> iterator() {
+                    return open(distinct.iterator());
+                }
+            };
+        }
 
-        // TODO : sort
+        // sort
+        if (!md.getOrderBy().isEmpty()) {
+            iterable = createSortedIterable(md.getOrderBy(), md.getModifiers(), iterable, whereBindings);
+        }
 
         // paging
         if (md.getModifiers().isRestricting()) {
-            iterable = new LimitingIterable<Bindings>(iterable, md.getModifiers());
+            iterable = new LimitingIterable<Bindings>(createClosingIterable(iterable), md.getModifiers());
         }
 
         if (queryType == QueryLanguage.GRAPH) {
-            return createGraphQuery(md, iterable);
+            return createGraphQuery(md, iterable, whereBindings);
 
         } else if (queryType == QueryLanguage.TUPLE) {
-            return createTupleQuery(md, iterable);
+            return createTupleQuery(md, iterable, whereBindings);
 
         } else if (queryType == QueryLanguage.BOOLEAN) {
             return createBooleanQuery(iterable);
@@ -651,6 +979,19 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
     public Pair<? extends Iterable<Bindings>, Bindings> visit(UnionBlock expr, Bindings bindings) {
         // TODO : make sure this works
         List<Iterable<Bindings>> iterables = new ArrayList<Iterable<Bindings>>();
+        if (executor != null && !parallel && terminal && expr.getBlocks().size() > 1) {
+            parallel = true;
+            try {
+                for (Block block : expr.getBlocks()) {
+                    // separate rows for concurrent branches
+                    Pair<Iterable<Bindings>, Bindings> iterableAndBindings = (Pair) block.accept(this, new Bindings(bindings));
+                    iterables.add(iterableAndBindings.getFirst());
+                }
+            } finally {
+                parallel = false;
+            }
+            return Pair.of(createParallelIterable(iterables), bindings);
+        }
         for (Block block : expr.getBlocks()) {
             Pair<Iterable<Bindings>, Bindings> iterableAndBindings = (Pair) block.accept(this, bindings);
             iterables.add(iterableAndBindings.getFirst());
@@ -658,4 +999,393 @@ public class QueryRDFVisitor implements RDFVisitor<Object, Bindings> {
         return Pair.<Iterable<Bindings>, Bindings> of(Iterables.<Bindings> concat(iterables.toArray(new Iterable[iterables.size()])), bindings);
     }
 
+    /**
+     * CancellableQuery sets the cancellation token of the visitor
+     */
+    private abstract class CancellableQuery implements Cancellable {
+
+        @Override
+        public void setCancellationToken(CancellationToken token) {
+            cancellation = token;
+        }
+
+    }
+
+    private abstract class CancellableBooleanQuery extends CancellableQuery implements BooleanQuery {
+    }
+
+    private abstract class CancellableGraphQuery extends CancellableQuery implements GraphQuery {
+    }
+
+    private abstract class CancellableTupleQuery extends CancellableQuery implements TupleQuery {
+    }
+
+    /**
+     * HashJoin holds the compiled terms of a pattern joined by hash and the
+     * hash table of the pattern statements. The table is built at most once
+     * per query evaluation and shared by the iterators of the join.
+     */
+    private final class HashJoin {
+
+        private final Iterable<Bindings> probes;
+
+        private final Expression<?>[] terms;
+
+        private final Function<Bindings, NODE>[] termValues;
+
+        private final Bindings bindings;
+
+        private final Function<STMT, Bindings> transformer;
+
+        private int evaluation = -1;
+
+        @Nullable
+        private boolean[] keys;
+
+        @Nullable
+        private Map<Object, List<STMT>> table;
+
+        HashJoin(Iterable<Bindings> probes, PatternBlock pattern, @Nullable Expression<UID> context,
+                Bindings bindings) {
+            this.probes = probes;
+            this.terms = new Expression<?>[] {
+                    pattern.getSubject(),
+                    pattern.getPredicate(),
+                    pattern.getObject(),
+                    pattern.getContext() != null ? pattern.getContext() : context };
+            this.termValues = compileTerms(terms, bindings);
+            this.bindings = bindings;
+            this.transformer = createBindingsFunction(pattern, context, bindings);
+        }
+
+        boolean isBuilt() {
+            return evaluation == QueryRDFVisitor.this.evaluation;
+        }
+
+        /**
+         * Get the hash table for the given bound positions, build it on first
+         * use in the current evaluation
+         *
+         * @param keys
+         * @param values
+         * @return table or null, if the pattern is too large or the table was
+         *         built for other bound positions
+         */
+        @Nullable
+        Map<Object, List<STMT>> getTable(boolean[] keys, NODE[] values) {
+            if (!isBuilt()) {
+                this.keys = keys;
+                this.table = createTable(values);
+                this.evaluation = QueryRDFVisitor.this.evaluation;
+            }
+            return Arrays.equals(this.keys, keys) ? table : null;
+        }
+
+        @Nullable
+        private Map<Object, List<STMT>> createTable(NODE[] values) {
+            NODE[] constants = new NODE[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                constants[i] = keys[i] ? null : values[i];
+            }
+            if (estimator != null) {
+                long estimate = estimator.estimate(
+                        (ID) constants[0], (UID) constants[1], constants[2], (UID) constants[3]);
+                if (estimate > hashJoinLimit) {
+                    return null;
+                }
+            }
+            Map<Object, List<STMT>> rv = new HashMap<Object, List<STMT>>();
+            NODE[] stmtValues = new NODE[terms.length];
+            int size = 0;
+            CloseableIterator<STMT> stmts = connection.findStatements(
+                    (ID) constants[0], (UID) constants[1], constants[2], (UID) constants[3], false);
+            try {
+                while (stmts.hasNext()) {
+                    if (++size > hashJoinLimit) {
+                        return null;
+                    }
+                    STMT stmt = stmts.next();
+                    stmtValues[0] = stmt.getSubject();
+                    stmtValues[1] = stmt.getPredicate();
+                    stmtValues[2] = stmt.getObject();
+                    stmtValues[3] = stmt.getContext();
+                    Object key = getJoinKey(keys, stmtValues);
+                    List<STMT> list = rv.get(key);
+                    if (list == null) {
+                        list = new ArrayList<STMT>(2);
+                        rv.put(key, list);
+                    }
+                    list.add(stmt);
+                }
+            } finally {
+                stmts.close();
+            }
+            return rv;
+        }
+
+    }
+
+    /**
+     * HashJoinIterator joins the rows of the preceding blocks with the
+     * statements of a pattern. The first rows are joined via index probes,
+     * unless the hash table of the pattern has already been built in this
+     * evaluation, after that the rows are joined via the hash table keyed by
+     * the bound positions of the pattern. Rows with different bound positions
+     * and patterns matching more statements than the hash join limit fall
+     * back to index probes.
+     */
+    private final class HashJoinIterator implements Iterator<Bindings> {
+
+        private final Iterator<Bindings> left;
+
+        private final HashJoin join;
+
+        private final NODE[] values = new NODE[4];
+
+        private Iterator<Bindings> current = Iterators.emptyIterator();
+
+        private int rows;
+
+        private int checks;
+
+        @Nullable
+        private boolean[] keys;
+
+        @Nullable
+        private Map<Object, List<STMT>> table;
+
+        HashJoinIterator(Iterator<Bindings> left, HashJoin join) {
+            this.left = left;
+            this.join = join;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!current.hasNext()) {
+                if (!left.hasNext()) {
+                    return false;
+                }
+                left.next();
+                current = join();
+            }
+            return true;
+        }
+
+        @Override
+        public Bindings next() {
+            if (hasNext()) {
+                return current.next();
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        private Iterator<Bindings> join() {
+            checkpoint(++checks);
+            if (keys == null && rows++ < INDEX_JOIN_ROWS && !join.isBuilt()) {
+                return join.probes.iterator();
+            }
+            evaluate(join.termValues, join.bindings.getParent(), values);
+            if (keys == null) {
+                keys = new boolean[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    keys[i] = isKey(i);
+                }
+                table = join.getTable(keys, values);
+            }
+            if (table != null && matchesKeys()) {
+                List<STMT> stmts = table.get(getJoinKey(keys, values));
+                if (stmts != null) {
+                    join.bindings.clear();
+                    return Iterators.transform(stmts.iterator(), join.transformer);
+                } else {
+                    return Iterators.emptyIterator();
+                }
+            } else {
+                return join.probes.iterator();
+            }
+        }
+
+        private boolean isKey(int i) {
+            return values[i] != null && !(join.terms[i] instanceof Constant<?>);
+        }
+
+        private boolean matchesKeys() {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != isKey(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    private static Object getJoinKey(boolean[] keys, NODE[] nodes) {
+        List<NODE> key = new ArrayList<NODE>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            if (keys[i]) {
+                key.add(nodes[i]);
+            }
+        }
+        return key.size() == 1 ? key.get(0) : key;
+    }
+
+    /**
+     * Resources holds the open iterators of a query evaluation
+     */
+    private static final class Resources {
+
+        private final Set<CloseableIterator<?>> iterators = new HashSet<CloseableIterator<?>>();
+
+        private boolean closed;
+
+        synchronized boolean add(CloseableIterator<?> iterator) {
+            if (closed) {
+                return false;
+            }
+            iterators.add(iterator);
+            return true;
+        }
+
+        synchronized void remove(CloseableIterator<?> iterator) {
+            iterators.remove(iterator);
+        }
+
+        void close() {
+            List<CloseableIterator<?>> open;
+            synchronized (this) {
+                closed = true;
+                open = new ArrayList<CloseableIterator<?>>(iterators);
+                iterators.clear();
+            }
+            for (CloseableIterator<?> iterator : open) {
+                iterator.close();
+            }
+        }
+
+    }
+
+    /**
+     * ResourceIterator is a registered iterator which is closed once it is
+     * exhausted
+     */
+    private static final class ResourceIterator<T> implements CloseableIterator<T> {
+
+        private final CloseableIterator<T> iterator;
+
+        private final Resources resources;
+
+        private volatile boolean closed;
+
+        ResourceIterator(CloseableIterator<T> iterator, Resources resources) {
+            this.iterator = iterator;
+            this.resources = resources;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                return false;
+            } else if (iterator.hasNext()) {
+                return true;
+            } else {
+                close();
+                return false;
+            }
+        }
+
+        @Override
+        public T next() {
+            if (hasNext()) {
+                return iterator.next();
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                resources.remove(this);
+                iterator.close();
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * EvaluationIterator closes the open iterators of a query evaluation
+     */
+    private static final class EvaluationIterator<T> implements CloseableIterator<T> {
+
+        private final Iterator<T> iterator;
+
+        private final Resources resources;
+
+        EvaluationIterator(Iterator<T> iterator, Resources resources) {
+            this.iterator = iterator;
+            this.resources = resources;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public T next() {
+            return iterator.next();
+        }
+
+        @Override
+        public void close() {
+            resources.close();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+    /**
+     * Row of a sorted result with the evaluated order keys
+     */
+    private static final class SortRow {
+
+        private final NODE[] keys;
+
+        @Nullable
+        private Bindings bindings;
+
+        SortRow(int size) {
+            this.keys = new NODE[size];
+        }
+
+        void setKeys(Function<Bindings, NODE>[] targets, Bindings row) {
+            evaluate(targets, row, keys);
+        }
+
+        SortRow copy(Bindings row) {
+            SortRow rv = new SortRow(keys.length);
+            System.arraycopy(keys, 0, rv.keys, 0, keys.length);
+            rv.bindings = row.copy();
+            return rv;
+        }
+
+    }
+
 }
@@ -1,6 +1,7 @@
 package com.mysema.rdfbean.model;
 
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 
@@ -19,6 +20,23 @@ public interface RDFQuery extends Query<RDFQuery> {
 
     RDFQuery from(UID... graphs);
 
+    /**
+     * Set the token which aborts the evaluation of this query when cancelled
+     * 
+     * @param token
+     * @return
+     */
+    RDFQuery cancellation(CancellationToken token);
+
+    /**
+     * Set the maximum evaluation time of this query, measured from this call
+     * 
+     * @param duration
+     * @param unit
+     * @return
+     */
+    RDFQuery timeout(long duration, TimeUnit unit);
+
     boolean ask();
 
     CloseableIterator<Map<String, NODE>> select(Expression<?>... exprs);
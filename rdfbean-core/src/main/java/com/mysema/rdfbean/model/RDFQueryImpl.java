@@ -3,6 +3,9 @@ package com.mysema.rdfbean.model;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
 
 import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.query.BooleanBuilder;
@@ -28,6 +31,9 @@ public class RDFQueryImpl extends QueryBase<RDFQueryImpl> implements RDFQuery {
 
     private BooleanBuilder filters = new BooleanBuilder();
 
+    @Nullable
+    private CancellationToken cancellation;
+
     public RDFQueryImpl(RDFConnection connection) {
         super(new QueryMixin<RDFQueryImpl>(new DefaultQueryMetadata().noValidate()));
         queryMixin.setSelf(this);
@@ -47,6 +53,17 @@ public class RDFQueryImpl extends QueryBase<RDFQueryImpl> implements RDFQuery {
         return this;
     }
 
+    @Override
+    public RDFQuery cancellation(CancellationToken token) {
+        this.cancellation = token;
+        return this;
+    }
+
+    @Override
+    public RDFQuery timeout(long duration, TimeUnit unit) {
+        return cancellation(CancellationToken.withTimeout(duration, unit));
+    }
+
     @Override
     public boolean ask() {
         return createBooleanQuery().getBoolean();
@@ -93,21 +110,52 @@ public class RDFQueryImpl extends QueryBase<RDFQueryImpl> implements RDFQuery {
     @Override
     public BooleanQuery createBooleanQuery() {
         aggregateFilters();
-        return connection.createQuery(QueryLanguage.BOOLEAN, queryMixin.getMetadata());
+        return prepare(connection.createQuery(QueryLanguage.BOOLEAN, queryMixin.getMetadata()));
     }
 
     @Override
     public TupleQuery createTupleQuery(Expression<?>... exprs) {
         aggregateFilters();
         queryMixin.addProjection(exprs);
-        return connection.createQuery(QueryLanguage.TUPLE, queryMixin.getMetadata());
+        return prepare(connection.createQuery(QueryLanguage.TUPLE, queryMixin.getMetadata()));
+    }
+
+    /**
+     * Get the metadata of the tuple query with the given projection, as
+     * passed to the connection
+     *
+     * @param exprs
+     * @return
+     */
+    public QueryMetadata getTupleQueryMetadata(Expression<?>... exprs) {
+        aggregateFilters();
+        queryMixin.addProjection(exprs);
+        return queryMixin.getMetadata();
     }
 
     @Override
     public GraphQuery createGraphQuery(Block... exprs) {
         aggregateFilters();
         queryMixin.addProjection(exprs);
-        return connection.createQuery(QueryLanguage.GRAPH, queryMixin.getMetadata());
+        return prepare(connection.createQuery(QueryLanguage.GRAPH, queryMixin.getMetadata()));
+    }
+
+    /**
+     * Pass the cancellation token to the given query, SPARQL queries get the
+     * remaining time as maximum query time
+     */
+    private <Q> Q prepare(Q query) {
+        if (cancellation != null) {
+            if (query instanceof Cancellable) {
+                ((Cancellable) query).setCancellationToken(cancellation);
+            } else if (query instanceof SPARQLQuery) {
+                long remaining = cancellation.getRemaining(TimeUnit.MILLISECONDS);
+                if (remaining != Long.MAX_VALUE) {
+                    ((SPARQLQuery) query).setMaxQueryTime((int) Math.min(Integer.MAX_VALUE, Math.max(1, (remaining + 999) / 1000)));
+                }
+            }
+        }
+        return query;
     }
 
     protected void aggregateFilters() {
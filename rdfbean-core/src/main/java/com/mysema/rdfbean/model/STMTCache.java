@@ -7,18 +7,19 @@ package com.mysema.rdfbean.model;
 
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Set;
 
 import javax.annotation.Nullable;
 
 /**
+ * STMTCache holds the statements of an index entry. Copies share their
+ * structure, so copying a large entry before modifying it is cheap.
+ *
  * @author tiwe
  */
 public final class STMTCache {
 
     @Nullable
-    private Set<STMT> multi;
+    private TrieMap<STMT, STMT> multi;
 
     @Nullable
     private STMT single;
@@ -27,17 +28,24 @@ public final class STMTCache {
         this.single = single;
     }
 
+    public STMTCache(STMTCache cache) {
+        this.single = cache.single;
+        if (cache.multi != null) {
+            this.multi = cache.multi.copy();
+        }
+    }
+
     public void add(STMT stmt) {
         if (multi == null) {
             if (single == null) {
                 single = stmt;
             } else if (!stmt.equals(single)) {
-                multi = new LinkedHashSet<STMT>();
-                multi.add(single);
-                multi.add(stmt);
+                multi = new TrieMap<STMT, STMT>();
+                multi.put(single, single);
+                multi.put(stmt, stmt);
             }
         } else {
-            multi.add(stmt);
+            multi.put(stmt, stmt);
         }
     }
 
@@ -50,7 +58,15 @@ public final class STMTCache {
                 return Collections.singleton(single).iterator();
             }
         } else {
-            return multi.iterator();
+            return multi.keyIterator();
+        }
+    }
+
+    public int size() {
+        if (multi != null) {
+            return multi.size();
+        } else {
+            return single != null ? 1 : 0;
         }
     }
 
@@ -63,7 +79,7 @@ public final class STMTCache {
                 return false;
             }
         } else {
-            return multi.remove(stmt);
+            return multi.remove(stmt) != null;
         }
     }
 
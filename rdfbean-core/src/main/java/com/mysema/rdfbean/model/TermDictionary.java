@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.MapMaker;
+
+/**
+ * TermDictionary is a global concurrent dictionary of URI terms
+ *
+ * <p>
+ * The URI strings of {@link UID} instances are interned via a weak interner,
+ * which replaces {@link String#intern()}, so UIDs can still be compared by the
+ * identity of their URI strings. Canonical UID instances are kept in a weak
+ * valued map, so terms which are no longer used are released.
+ * </p>
+ *
+ * <p>
+ * Stable positive int ids are assigned on demand via {@link #getId(UID)},
+ * starting from 1 like in {@link NodeDictionary}. Terms with an id are kept
+ * for the lifetime of the dictionary.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public final class TermDictionary {
+
+    private static final Interner<String> uris = Interners.newWeakInterner();
+
+    private static final ConcurrentMap<String, UID> uids = new MapMaker().weakValues().makeMap();
+
+    private static final ConcurrentMap<UID, Integer> ids = new ConcurrentHashMap<UID, Integer>();
+
+    private static final List<UID> terms = new ArrayList<UID>();
+
+    /**
+     * Get the canonical instance of the given URI string
+     *
+     * @param uri
+     * @return
+     */
+    static String intern(String uri) {
+        return uris.intern(uri);
+    }
+
+    /**
+     * Get the canonical UID for the given URI
+     *
+     * @param uri
+     * @return
+     */
+    public static UID getUID(String uri) {
+        UID uid = uids.get(uri);
+        if (uid == null) {
+            uid = putIfAbsent(new UID(uri));
+        }
+        return uid;
+    }
+
+    /**
+     * Get the canonical UID for the given namespace and local name
+     *
+     * @param ns
+     * @param ln
+     * @return
+     */
+    public static UID getUID(String ns, String ln) {
+        UID uid = uids.get(ns + ln);
+        if (uid == null) {
+            uid = putIfAbsent(new UID(ns, ln));
+        }
+        return uid;
+    }
+
+    /**
+     * Get the canonical instance of the given UID
+     *
+     * @param uid
+     * @return
+     */
+    public static UID getUID(UID uid) {
+        UID canonical = uids.get(uid.getId());
+        return canonical != null ? canonical : putIfAbsent(uid);
+    }
+
+    private static UID putIfAbsent(UID uid) {
+        UID existing = uids.putIfAbsent(uid.getId(), uid);
+        return existing != null ? existing : uid;
+    }
+
+    /**
+     * Get the stable id of the given UID, assigning a new id if the UID has
+     * none
+     *
+     * @param uid
+     * @return
+     */
+    public static int getId(UID uid) {
+        Integer id = ids.get(uid);
+        if (id == null) {
+            synchronized (terms) {
+                id = ids.get(uid);
+                if (id == null) {
+                    uid = getUID(uid);
+                    terms.add(uid);
+                    id = terms.size();
+                    ids.put(uid, id);
+                }
+            }
+        }
+        return id.intValue();
+    }
+
+    /**
+     * Get the UID of the given stable id
+     *
+     * @param id
+     * @return the UID or null, if the id has not been assigned
+     */
+    @Nullable
+    public static UID getUID(int id) {
+        synchronized (terms) {
+            return id > 0 && id <= terms.size() ? terms.get(id - 1) : null;
+        }
+    }
+
+    private TermDictionary() {
+    }
+
+}
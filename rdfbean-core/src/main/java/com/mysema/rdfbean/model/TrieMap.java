@@ -0,0 +1,393 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
+
+/**
+ * TrieMap is a hash array mapped trie with structural sharing between copies
+ *
+ * <p>
+ * {@link #copy()} takes constant time. Afterwards both maps copy the nodes on
+ * the path of an update before modifying them, so an update copies at most
+ * one small node per level instead of the whole map. Nodes created by a map
+ * are modified in place until the map is copied again. Null keys and values
+ * are not supported.
+ * </p>
+ *
+ * @author tiwe
+ *
+ * @param <K>
+ * @param <V>
+ */
+final class TrieMap<K, V> implements Iterable<Map.Entry<K, V>> {
+
+    private static final int BITS = 5, MASK = (1 << BITS) - 1;
+
+    private static final Object[] EMPTY = new Object[0];
+
+    private Node root;
+
+    private int size;
+
+    private Object edit = new Object();
+
+    TrieMap() {
+        root = new Node(edit, 0, EMPTY);
+    }
+
+    private TrieMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Create a copy which shares the nodes of this map
+     *
+     * @return
+     */
+    TrieMap<K, V> copy() {
+        // neither map may modify the shared nodes in place anymore
+        edit = new Object();
+        return new TrieMap<K, V>(root, size);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V get(Object key) {
+        return (V) root.get(0, hash(key), key);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V put(K key, V value) {
+        Box box = new Box();
+        root = root.put(edit, 0, hash(key), key, value, box);
+        if (box.added) {
+            size++;
+        }
+        return (V) box.old;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V remove(Object key) {
+        Box box = new Box();
+        Node node = root.remove(edit, 0, hash(key), key, box);
+        root = node != null ? node : new Node(edit, 0, EMPTY);
+        if (box.old != null) {
+            size--;
+        }
+        return (V) box.old;
+    }
+
+    void clear() {
+        root = new Node(edit, 0, EMPTY);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+        return new EntryIterator<K, V>(root);
+    }
+
+    Iterator<K> keyIterator() {
+        return Iterators.transform(iterator(), new Function<Map.Entry<K, V>, K>() {
+            @Override
+            public K apply(Map.Entry<K, V> entry) {
+                return entry.getKey();
+            }
+        });
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("{");
+        for (Map.Entry<K, V> entry : this) {
+            if (builder.length() > 1) {
+                builder.append(", ");
+            }
+            builder.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return builder.append('}').toString();
+    }
+
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+
+    private static Object[] insertPair(Object[] array, int index, Object key, Object value) {
+        Object[] result = new Object[array.length + 2];
+        System.arraycopy(array, 0, result, 0, index);
+        result[index] = key;
+        result[index + 1] = value;
+        System.arraycopy(array, index, result, index + 2, array.length - index);
+        return result;
+    }
+
+    private static Object[] removePair(Object[] array, int index) {
+        Object[] result = new Object[array.length - 2];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 2, result, index, array.length - index - 2);
+        return result;
+    }
+
+    private static Node createNode(Object edit, int shift, Object key1, Object value1, int hash2, Object key2,
+            Object value2) {
+        int hash1 = hash(key1);
+        if (hash1 == hash2 || shift >= 32) {
+            return new Node(edit, hash1, new Object[] { key1, value1, key2, value2 }, true);
+        }
+        Box box = new Box();
+        return new Node(edit, 0, EMPTY)
+                .put(edit, shift, hash1, key1, value1, box)
+                .put(edit, shift, hash2, key2, value2, box);
+    }
+
+    /**
+     * Holds the previous value of an update
+     */
+    private static final class Box {
+
+        @Nullable
+        Object old;
+
+        boolean added;
+
+    }
+
+    /**
+     * Node holds key/value pairs and child nodes of the present hash chunks.
+     * Child nodes are stored with a null key. Collision nodes hold key/value
+     * pairs with the same hash.
+     */
+    private static final class Node {
+
+        private final Object edit;
+
+        private final boolean collision;
+
+        // hash of a collision node, bitmap of the present chunks otherwise
+        private int bitmap;
+
+        private Object[] array;
+
+        Node(Object edit, int bitmap, Object[] array) {
+            this(edit, bitmap, array, false);
+        }
+
+        Node(Object edit, int bitmap, Object[] array, boolean collision) {
+            this.edit = edit;
+            this.bitmap = bitmap;
+            this.array = array;
+            this.collision = collision;
+        }
+
+        private Node editable(Object edit) {
+            return this.edit == edit ? this : new Node(edit, bitmap, array.clone(), collision);
+        }
+
+        @Nullable
+        Object get(int shift, int hash, Object key) {
+            if (collision) {
+                int index = indexOf(key);
+                return index >= 0 ? array[index + 1] : null;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[index];
+            if (k == null) {
+                return ((Node) array[index + 1]).get(shift + BITS, hash, key);
+            } else {
+                return key.equals(k) ? array[index + 1] : null;
+            }
+        }
+
+        Node put(Object edit, int shift, int hash, Object key, Object value, Box box) {
+            if (collision) {
+                if (hash == bitmap) {
+                    int index = indexOf(key);
+                    Node node = editable(edit);
+                    if (index >= 0) {
+                        box.old = array[index + 1];
+                        node.array[index + 1] = value;
+                    } else {
+                        box.added = true;
+                        node.array = insertPair(array, array.length, key, value);
+                    }
+                    return node;
+                } else {
+                    // nest this node under a regular node
+                    Node parent = new Node(edit, 1 << ((bitmap >>> shift) & MASK), new Object[] { null, this });
+                    return parent.put(edit, shift, hash, key, value, box);
+                }
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0) {
+                box.added = true;
+                Node node = editable(edit);
+                node.array = insertPair(array, index, key, value);
+                node.bitmap |= bit;
+                return node;
+            }
+            Object k = array[index], v = array[index + 1];
+            if (k == null) {
+                Node child = ((Node) v).put(edit, shift + BITS, hash, key, value, box);
+                if (child == v) {
+                    return this;
+                }
+                Node node = editable(edit);
+                node.array[index + 1] = child;
+                return node;
+            } else if (key.equals(k)) {
+                box.old = v;
+                if (v == value) {
+                    return this;
+                }
+                Node node = editable(edit);
+                node.array[index + 1] = value;
+                return node;
+            } else {
+                box.added = true;
+                Node node = editable(edit);
+                node.array[index] = null;
+                node.array[index + 1] = createNode(edit, shift + BITS, k, v, hash, key, value);
+                return node;
+            }
+        }
+
+        @Nullable
+        Node remove(Object edit, int shift, int hash, Object key, Box box) {
+            if (collision) {
+                int index = indexOf(key);
+                if (index < 0) {
+                    return this;
+                }
+                box.old = array[index + 1];
+                if (array.length == 2) {
+                    return null;
+                }
+                Node node = editable(edit);
+                node.array = removePair(array, index);
+                return node;
+            }
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object k = array[index], v = array[index + 1];
+            if (k == null) {
+                Node child = ((Node) v).remove(edit, shift + BITS, hash, key, box);
+                if (child == v) {
+                    return this;
+                } else if (child != null) {
+                    Node node = editable(edit);
+                    node.array[index + 1] = child;
+                    return node;
+                }
+            } else if (key.equals(k)) {
+                box.old = v;
+            } else {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            Node node = editable(edit);
+            node.array = removePair(array, index);
+            node.bitmap ^= bit;
+            return node;
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+    }
+
+    private static final class EntryIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+        private final Object[][] arrays = new Object[8][];
+
+        private final int[] indexes = new int[8];
+
+        private int depth;
+
+        @Nullable
+        private Map.Entry<K, V> next;
+
+        EntryIterator(Node root) {
+            arrays[0] = root.array;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            while (next == null && depth >= 0) {
+                Object[] array = arrays[depth];
+                int index = indexes[depth];
+                if (index == array.length) {
+                    depth--;
+                } else {
+                    indexes[depth] += 2;
+                    if (array[index] != null) {
+                        next = new AbstractMap.SimpleImmutableEntry<K, V>((K) array[index], (V) array[index + 1]);
+                    } else {
+                        depth++;
+                        arrays[depth] = ((Node) array[index + 1]).array;
+                        indexes[depth] = 0;
+                    }
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> rv = next;
+            next = null;
+            return rv;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
+}
@@ -44,7 +44,7 @@ public final class UID extends ID {
     }
 
     public UID(String uri) {
-        super(Assert.hasText(uri, "uri").intern());
+        super(TermDictionary.intern(Assert.hasText(uri, "uri")));
         int tmp = uri.lastIndexOf('#');
         if (tmp < 0) {
             tmp = uri.lastIndexOf('/');
@@ -60,7 +60,7 @@ public final class UID extends ID {
     }
 
     public UID(String namespace, String localeName) {
-        super((Assert.hasText(namespace, "ns") + Assert.notNull(localeName, "ln")).intern());
+        super(TermDictionary.intern(Assert.hasText(namespace, "ns") + Assert.notNull(localeName, "ln")));
         i = namespace.length();
         this.ns = namespace;
         this.ln = localeName;
@@ -132,7 +132,7 @@ public final class UID extends ID {
         if (this == obj) {
             return true;
         } else if (obj instanceof UID) {
-            // id is interned!
+            // id is interned via TermDictionary
             return this.id == ((UID) obj).id;
         } else {
             return false;
@@ -144,6 +144,10 @@ public final class UID extends ID {
         return this;
     }
 
+    private Object readResolve() {
+        return TermDictionary.getUID(ns(), ln());
+    }
+
     private static boolean isBlank(String s) {
         return s == null || s.trim().isEmpty();
     }
@@ -0,0 +1,244 @@
+package com.mysema.rdfbean.model.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.l10n.support.LocaleUtil;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+
+/**
+ * BufferedNTriplesWriter is a streaming N-Triples writer, which escapes terms
+ * directly into a reusable byte buffer and writes the buffer to a channel
+ *
+ * <p>
+ * The output is the same as that of {@link NTriplesWriter}, but no strings are
+ * created per statement. The encoded forms of predicates and datatypes are
+ * cached, since they are usually drawn from a small vocabulary.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public class BufferedNTriplesWriter implements RDFWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final int MAX_CACHED_TERMS = 1024;
+
+    // longest escape sequence
+    private static final int MAX_CHAR_LENGTH = 10;
+
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    private final WritableByteChannel channel;
+
+    @Nullable
+    private final Flushable flushable;
+
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+
+    private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+    private final Map<UID, byte[]> uriCache = new HashMap<UID, byte[]>();
+
+    private final Map<Locale, byte[]> langCache = new HashMap<Locale, byte[]>();
+
+    private int pos;
+
+    public BufferedNTriplesWriter(WritableByteChannel channel) {
+        this.channel = channel;
+        this.flushable = null;
+    }
+
+    public BufferedNTriplesWriter(OutputStream out) {
+        this.channel = Channels.newChannel(out);
+        this.flushable = out;
+    }
+
+    @Override
+    public void begin() {
+    }
+
+    @Override
+    public void end() {
+        try {
+            flushBuffer();
+            if (flushable != null) {
+                flushable.flush();
+            }
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    @Override
+    public void handle(STMT stmt) {
+        try {
+            writeNode(stmt.getSubject());
+            writeByte(' ');
+            writeCached(stmt.getPredicate());
+            writeByte(' ');
+            writeNode(stmt.getObject());
+            writeContext(stmt.getContext());
+            writeByte(' ');
+            writeByte('.');
+            writeByte('\n');
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    /**
+     * Write the context of a statement, N-Triples has no contexts
+     *
+     * @param context
+     * @throws IOException
+     */
+    protected void writeContext(@Nullable UID context) throws IOException {
+    }
+
+    protected final void writeNode(NODE node) throws IOException {
+        if (node.isURI()) {
+            writeURI(node.asURI());
+        } else if (node.isLiteral()) {
+            writeLiteral(node.asLiteral());
+        } else {
+            writeBNode(node.asBNode());
+        }
+    }
+
+    protected final void writeURI(UID uid) throws IOException {
+        writeByte('<');
+        writeEscaped(uid.getValue());
+        writeByte('>');
+    }
+
+    private void writeLiteral(LIT lit) throws IOException {
+        writeByte('"');
+        writeEscaped(lit.getValue());
+        writeByte('"');
+        if (lit.getLang() != null) {
+            byte[] lang = langCache.get(lit.getLang());
+            if (lang == null) {
+                lang = ("@" + LocaleUtil.toLang(lit.getLang())).getBytes("US-ASCII");
+                langCache.put(lit.getLang(), lang);
+            }
+            writeBytes(lang);
+        } else {
+            writeByte('^');
+            writeByte('^');
+            writeCached(lit.getDatatype());
+        }
+    }
+
+    private void writeBNode(ID bid) throws IOException {
+        writeByte('_');
+        writeByte(':');
+        String value = bid.getValue();
+        for (int i = 0; i < value.length(); i++) {
+            if (pos == bytes.length) {
+                flushBuffer();
+            }
+            char c = value.charAt(i);
+            // unmappable characters are replaced like in US-ASCII encoding
+            bytes[pos++] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+    }
+
+    protected final void writeCached(UID uid) throws IOException {
+        byte[] encoded = uriCache.get(uid);
+        if (encoded != null) {
+            writeBytes(encoded);
+        } else if (uriCache.size() < MAX_CACHED_TERMS && getMaxLength(uid) <= bytes.length) {
+            // reserve space, so that the encoded form stays in the buffer
+            if (bytes.length - pos < getMaxLength(uid)) {
+                flushBuffer();
+            }
+            int start = pos;
+            writeURI(uid);
+            encoded = new byte[pos - start];
+            System.arraycopy(bytes, start, encoded, 0, encoded.length);
+            uriCache.put(uid, encoded);
+        } else {
+            writeURI(uid);
+        }
+    }
+
+    private static int getMaxLength(UID uid) {
+        return (uid.getValue().length() + 2) * MAX_CHAR_LENGTH;
+    }
+
+    private void writeEscaped(String str) throws IOException {
+        for (int i = 0; i < str.length(); i++) {
+            if (bytes.length - pos < MAX_CHAR_LENGTH) {
+                flushBuffer();
+            }
+            char c = str.charAt(i);
+            if (c == '\\') {
+                bytes[pos++] = '\\';
+                bytes[pos++] = '\\';
+            } else if (c == '"') {
+                bytes[pos++] = '\\';
+                bytes[pos++] = '"';
+            } else if (c == '\n') {
+                bytes[pos++] = '\\';
+                bytes[pos++] = 'n';
+            } else if (c == '\r') {
+                bytes[pos++] = '\\';
+                bytes[pos++] = 'r';
+            } else if (c == '\t') {
+                bytes[pos++] = '\\';
+                bytes[pos++] = 't';
+            } else if (c <= 0x8 || c == 0xB || c == 0xC || c >= 0xE && c <= 0x1F || c >= 0x7F) {
+                bytes[pos++] = '\\';
+                bytes[pos++] = 'u';
+                bytes[pos++] = HEX[(c >> 12) & 0xF];
+                bytes[pos++] = HEX[(c >> 8) & 0xF];
+                bytes[pos++] = HEX[(c >> 4) & 0xF];
+                bytes[pos++] = HEX[c & 0xF];
+            } else {
+                bytes[pos++] = (byte) c;
+            }
+        }
+    }
+
+    private void writeBytes(byte[] b) throws IOException {
+        // cached encodings are shorter than the buffer
+        if (bytes.length - pos < b.length) {
+            flushBuffer();
+        }
+        System.arraycopy(b, 0, bytes, pos, b.length);
+        pos += b.length;
+    }
+
+    protected final void writeByte(char c) throws IOException {
+        if (pos == bytes.length) {
+            flushBuffer();
+        }
+        bytes[pos++] = (byte) c;
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.clear();
+        buffer.limit(pos);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        pos = 0;
+    }
+
+}
@@ -0,0 +1,36 @@
+package com.mysema.rdfbean.model.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+
+import javax.annotation.Nullable;
+
+import com.mysema.rdfbean.model.UID;
+
+/**
+ * NQuadsWriter is a streaming N-Quads writer, which writes the contexts of
+ * statements after their objects
+ *
+ * @author tiwe
+ *
+ */
+public class NQuadsWriter extends BufferedNTriplesWriter {
+
+    public NQuadsWriter(WritableByteChannel channel) {
+        super(channel);
+    }
+
+    public NQuadsWriter(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    protected void writeContext(@Nullable UID context) throws IOException {
+        if (context != null) {
+            writeByte(' ');
+            writeCached(context);
+        }
+    }
+
+}
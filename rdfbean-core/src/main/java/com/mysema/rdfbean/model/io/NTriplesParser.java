@@ -0,0 +1,456 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+import javax.annotation.Nullable;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+
+/**
+ * NTriplesParser is a streaming parser for N-Triples and N-Quads documents.
+ * Statements are parsed on demand, either one by one via the iterator methods
+ * or into a reusable batch array via {@link #read(STMT[])}.
+ *
+ * <p>
+ * Statements without a graph label get the default context given in the
+ * constructor. Blank node graph labels are not supported, since contexts are
+ * URIs in RDFBean.
+ * </p>
+ *
+ * <p>
+ * Blank node labels are scoped to the document. By default each parser
+ * prefixes them with a unique prefix, so loading several documents or loading
+ * into a non-empty store doesn't merge unrelated blank nodes.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public final class NTriplesParser implements CloseableIterator<STMT> {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int EOF = -1;
+
+    private final Reader reader;
+
+    private final boolean quads;
+
+    @Nullable
+    private final UID context;
+
+    private final String bnodePrefix;
+
+    private final char[] buffer = new char[8192];
+
+    private final StringBuilder token = new StringBuilder();
+
+    private int position, limit;
+
+    private int line = 1;
+
+    @Nullable
+    private STMT next;
+
+    @Nullable
+    private UID lastPredicate, lastDatatype;
+
+    public NTriplesParser(InputStream in) {
+        this(in, false, null);
+    }
+
+    /**
+     * Create a new NTriplesParser
+     *
+     * @param in
+     *            UTF-8 encoded input
+     * @param quads
+     *            whether graph labels are accepted
+     * @param context
+     *            context of statements without a graph label
+     */
+    public NTriplesParser(InputStream in, boolean quads, @Nullable UID context) {
+        this(new InputStreamReader(in, UTF8), quads, context);
+    }
+
+    /**
+     * Create a new NTriplesParser
+     *
+     * @param in
+     *            UTF-8 encoded input
+     * @param quads
+     *            whether graph labels are accepted
+     * @param context
+     *            context of statements without a graph label
+     * @param bnodePrefix
+     *            prefix of the blank node ids, an empty prefix keeps the
+     *            labels of the document
+     */
+    public NTriplesParser(InputStream in, boolean quads, @Nullable UID context, String bnodePrefix) {
+        this(new InputStreamReader(in, UTF8), quads, context, bnodePrefix);
+    }
+
+    public NTriplesParser(Reader reader, boolean quads, @Nullable UID context) {
+        this(reader, quads, context, "b" + UUID.randomUUID().toString().replace("-", "") + "_");
+    }
+
+    public NTriplesParser(Reader reader, boolean quads, @Nullable UID context, String bnodePrefix) {
+        this.reader = reader;
+        this.quads = quads;
+        this.context = context;
+        this.bnodePrefix = bnodePrefix;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = parseStatement();
+        }
+        return next != null;
+    }
+
+    @Override
+    public STMT next() {
+        if (hasNext()) {
+            STMT rv = next;
+            next = null;
+            return rv;
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    /**
+     * Parse the next statements into the given array
+     *
+     * @param batch
+     * @return amount of parsed statements, 0 at the end of the input
+     */
+    public int read(STMT[] batch) {
+        int count = 0;
+        while (count < batch.length && hasNext()) {
+            batch[count++] = next;
+            next = null;
+        }
+        return count;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Nullable
+    private STMT parseStatement() {
+        int c = skipLines();
+        if (c == EOF) {
+            return null;
+        }
+        ID subject;
+        if (c == '<') {
+            subject = parseURI();
+        } else if (c == '_') {
+            subject = parseBNode();
+        } else {
+            throw error("Expected subject, got " + describe(c));
+        }
+
+        c = skipSpace();
+        if (c != '<') {
+            throw error("Expected predicate, got " + describe(c));
+        }
+        UID predicate = parsePredicate();
+
+        c = skipSpace();
+        NODE object;
+        if (c == '<') {
+            object = parseURI();
+        } else if (c == '_') {
+            object = parseBNode();
+        } else if (c == '"') {
+            object = parseLiteral();
+        } else {
+            throw error("Expected object, got " + describe(c));
+        }
+
+        c = skipSpace();
+        UID graph = context;
+        if (quads && c == '<') {
+            graph = parseURI();
+            c = skipSpace();
+        } else if (quads && c == '_') {
+            throw error("Blank node graph labels are not supported");
+        }
+        if (c != '.') {
+            throw error("Expected '.', got " + describe(c));
+        }
+        c = skipSpace();
+        if (c == '#') {
+            c = skipComment();
+        }
+        if (c != '\n' && c != '\r' && c != EOF) {
+            throw error("Expected end of line, got " + describe(c));
+        }
+        if (c == '\n') {
+            line++;
+        }
+        return new STMT(subject, predicate, object, graph);
+    }
+
+    private UID parseURI() {
+        readURI();
+        return new UID(token.toString());
+    }
+
+    private UID parsePredicate() {
+        readURI();
+        if (lastPredicate == null || !equals(lastPredicate.getId(), token)) {
+            lastPredicate = new UID(token.toString());
+        }
+        return lastPredicate;
+    }
+
+    private void readURI() {
+        token.setLength(0);
+        int c;
+        while ((c = read()) != '>') {
+            if (c == EOF || c == '\n' || c == '\r') {
+                throw error("Unterminated URI");
+            } else if (c == '\\') {
+                readEscape();
+            } else {
+                token.append((char) c);
+            }
+        }
+    }
+
+    private BID parseBNode() {
+        if (read() != ':') {
+            throw error("Expected ':' after '_'");
+        }
+        token.setLength(0);
+        int c;
+        while ((c = peek()) != EOF && isNameChar(c)) {
+            // a trailing '.' belongs to the statement
+            if (c == '.' && !isNameChar(peek(1))) {
+                break;
+            }
+            token.append((char) read());
+        }
+        if (token.length() == 0) {
+            throw error("Empty blank node label");
+        }
+        return new BID(bnodePrefix + token);
+    }
+
+    private LIT parseLiteral() {
+        token.setLength(0);
+        int c;
+        while ((c = read()) != '"') {
+            if (c == EOF || c == '\n' || c == '\r') {
+                throw error("Unterminated literal");
+            } else if (c == '\\') {
+                readEscape();
+            } else {
+                token.append((char) c);
+            }
+        }
+        String value = token.toString();
+        c = peek();
+        if (c == '@') {
+            read();
+            token.setLength(0);
+            while ((c = peek()) != EOF && (Character.isLetterOrDigit(c) || c == '-')) {
+                token.append((char) read());
+            }
+            if (token.length() == 0) {
+                throw error("Empty language tag");
+            }
+            return new LIT(value, token.toString());
+        } else if (c == '^') {
+            read();
+            if (read() != '^' || read() != '<') {
+                throw error("Expected datatype URI");
+            }
+            readURI();
+            if (lastDatatype == null || !equals(lastDatatype.getId(), token)) {
+                lastDatatype = new UID(token.toString());
+            }
+            return new LIT(value, lastDatatype);
+        } else {
+            return new LIT(value);
+        }
+    }
+
+    private void readEscape() {
+        int c = read();
+        switch (c) {
+        case 't':
+            token.append('\t');
+            break;
+        case 'b':
+            token.append('\b');
+            break;
+        case 'n':
+            token.append('\n');
+            break;
+        case 'r':
+            token.append('\r');
+            break;
+        case 'f':
+            token.append('\f');
+            break;
+        case '"':
+        case '\'':
+        case '\\':
+            token.append((char) c);
+            break;
+        case 'u':
+            token.append((char) readHex(4));
+            break;
+        case 'U':
+            token.appendCodePoint(readHex(8));
+            break;
+        default:
+            throw error("Illegal escape " + describe(c));
+        }
+    }
+
+    private int readHex(int length) {
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) {
+                throw error("Illegal hex escape");
+            }
+            value = (value << 4) | digit;
+        }
+        if (!Character.isValidCodePoint(value)) {
+            throw error("Illegal code point " + Integer.toHexString(value));
+        }
+        return value;
+    }
+
+    /**
+     * Skip whitespace, comments and empty lines
+     *
+     * @return the first character of the next statement or EOF
+     */
+    private int skipLines() {
+        while (true) {
+            int c = skipSpace();
+            if (c == '#') {
+                c = skipComment();
+            }
+            if (c == '\n') {
+                line++;
+            } else if (c != '\r') {
+                return c;
+            }
+        }
+    }
+
+    private int skipSpace() {
+        int c;
+        while ((c = read()) == ' ' || c == '\t') {
+            // skip
+        }
+        return c;
+    }
+
+    private int skipComment() {
+        int c;
+        while ((c = read()) != '\n' && c != '\r' && c != EOF) {
+            // skip
+        }
+        return c;
+    }
+
+    private int peek() {
+        return position < limit || fill(1) ? buffer[position] : EOF;
+    }
+
+    private int peek(int offset) {
+        return position + offset < limit || fill(offset + 1) ? buffer[position + offset] : EOF;
+    }
+
+    private int read() {
+        return position < limit || fill(1) ? buffer[position++] : EOF;
+    }
+
+    /**
+     * Move the unread characters to the start of the buffer and read until at
+     * least the given amount of characters is available
+     */
+    private boolean fill(int required) {
+        try {
+            int remaining = limit - position;
+            System.arraycopy(buffer, position, buffer, 0, remaining);
+            position = 0;
+            limit = remaining;
+            while (limit < required) {
+                int count = reader.read(buffer, limit, buffer.length - limit);
+                if (count < 0) {
+                    return false;
+                }
+                limit += count;
+            }
+            return true;
+        } catch (IOException e) {
+            throw new RepositoryException(e);
+        }
+    }
+
+    private RepositoryException error(String message) {
+        return new RepositoryException("Parse error on line " + line + " : " + message);
+    }
+
+    private static String describe(int c) {
+        return c == EOF ? "end of input" : "'" + (char) c + "'";
+    }
+
+    private static boolean equals(String str, StringBuilder builder) {
+        int length = str.length();
+        if (length != builder.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (str.charAt(i) != builder.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isNameChar(int c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':' || c == 0xB7;
+    }
+
+}
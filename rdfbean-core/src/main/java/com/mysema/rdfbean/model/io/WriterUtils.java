@@ -4,6 +4,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
 import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Map;
 
 import com.mysema.rdfbean.Namespaces;
@@ -20,14 +21,28 @@ public final class WriterUtils {
     }
 
     public static RDFWriter createWriter(Format format, OutputStream out, Map<String, String> prefixes) {
+        if (format == Format.NTRIPLES) {
+            return new BufferedNTriplesWriter(out);
+        } else if (format == Format.NQUADS) {
+            return new NQuadsWriter(out);
+        }
         try {
-            String encoding = format == Format.NTRIPLES ? "US-ASCII" : "UTF-8";
-            return createWriter(format, new OutputStreamWriter(out, encoding), prefixes);
+            return createWriter(format, new OutputStreamWriter(out, "UTF-8"), prefixes);
         } catch (UnsupportedEncodingException e) {
             throw new IllegalStateException(e);
         }
     }
 
+    public static RDFWriter createWriter(Format format, WritableByteChannel channel) {
+        if (format == Format.NTRIPLES) {
+            return new BufferedNTriplesWriter(channel);
+        } else if (format == Format.NQUADS) {
+            return new NQuadsWriter(channel);
+        } else {
+            throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+
     public static RDFWriter createWriter(Format format, Writer writer) {
         return createWriter(format, writer, Namespaces.DEFAULT);
     }
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.security.ProtectionDomain;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.primitives.Primitives;
+
+/**
+ * AccessorFactory generates {@link PropertyAccessor} classes for fields and
+ * getter/setter pairs
+ *
+ * <p>
+ * The accessor classes are defined in the class loader and package of the
+ * declaring class, so non-private members can be accessed without reflection.
+ * Null is returned for members which can't be accessed this way, e.g. private
+ * and final fields, and callers should use reflection instead.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public class AccessorFactory implements Opcodes {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessorFactory.class);
+
+    private static final String ACCESSOR = Type.getInternalName(PropertyAccessor.class);
+
+    private static final String OBJECT = Type.getInternalName(Object.class);
+
+    private static final AtomicInteger counter = new AtomicInteger();
+
+    private static final ConcurrentMap<Object, PropertyAccessor> accessors = new MapMaker().weakValues().makeMap();
+
+    @Nullable
+    private static final Method defineClass;
+
+    static {
+        Method method;
+        try {
+            method = ClassLoader.class.getDeclaredMethod("defineClass",
+                    String.class, byte[].class, int.class, int.class, ProtectionDomain.class);
+            method.setAccessible(true);
+        } catch (Exception e) {
+            logger.debug(e.getMessage(), e);
+            method = null;
+        }
+        defineClass = method;
+    }
+
+    /**
+     * Create an accessor for the given field
+     *
+     * @param field
+     * @return accessor or null, if the field can't be accessed directly
+     */
+    @Nullable
+    public PropertyAccessor createAccessor(Field field) {
+        int modifiers = field.getModifiers();
+        Class<?> owner = field.getDeclaringClass();
+        if (Modifier.isPrivate(modifiers) || Modifier.isFinal(modifiers) || Modifier.isStatic(modifiers)
+                || !isSupported(owner) || !isVisible(field.getType(), owner)) {
+            return null;
+        }
+        PropertyAccessor accessor = accessors.get(field);
+        if (accessor == null) {
+            String name = getAccessorName(owner);
+            ClassWriter cw = createClass(name);
+            String ownerName = Type.getInternalName(owner);
+            String desc = Type.getDescriptor(field.getType());
+
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "getValue", "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitTypeInsn(CHECKCAST, ownerName);
+            mv.visitFieldInsn(GETFIELD, ownerName, field.getName(), desc);
+            box(mv, field.getType());
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+
+            mv = cw.visitMethod(ACC_PUBLIC, "setValue", "(Ljava/lang/Object;Ljava/lang/Object;)V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitTypeInsn(CHECKCAST, ownerName);
+            mv.visitVarInsn(ALOAD, 2);
+            unbox(mv, field.getType());
+            mv.visitFieldInsn(PUTFIELD, ownerName, field.getName(), desc);
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+
+            accessor = define(owner, name, cw, field);
+        }
+        return accessor;
+    }
+
+    /**
+     * Create an accessor for the given getter and setter, which are invoked on
+     * the given declaring class
+     *
+     * @param owner
+     * @param getter
+     * @param setter
+     * @return accessor or null, if the methods can't be accessed directly
+     */
+    @Nullable
+    public PropertyAccessor createAccessor(Class<?> owner, Method getter, Method setter) {
+        if (!isInvocable(getter, owner) || !isInvocable(setter, owner)
+                || getter.getParameterTypes().length != 0 || setter.getParameterTypes().length != 1
+                || !isVisible(getter.getReturnType(), owner) || !isVisible(setter.getParameterTypes()[0], owner)) {
+            return null;
+        }
+        Object key = Arrays.asList(owner, getter, setter);
+        PropertyAccessor accessor = accessors.get(key);
+        if (accessor == null) {
+            String name = getAccessorName(owner);
+            ClassWriter cw = createClass(name);
+            String ownerName = Type.getInternalName(owner);
+            int invoke = owner.isInterface() ? INVOKEINTERFACE : INVOKEVIRTUAL;
+
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "getValue", "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitTypeInsn(CHECKCAST, ownerName);
+            mv.visitMethodInsn(invoke, ownerName, getter.getName(), Type.getMethodDescriptor(getter));
+            box(mv, getter.getReturnType());
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+
+            mv = cw.visitMethod(ACC_PUBLIC, "setValue", "(Ljava/lang/Object;Ljava/lang/Object;)V", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitTypeInsn(CHECKCAST, ownerName);
+            mv.visitVarInsn(ALOAD, 2);
+            unbox(mv, setter.getParameterTypes()[0]);
+            mv.visitMethodInsn(invoke, ownerName, setter.getName(), Type.getMethodDescriptor(setter));
+            // setters may return a value to allow method chaining
+            Class<?> returnType = setter.getReturnType();
+            if (long.class.equals(returnType) || double.class.equals(returnType)) {
+                mv.visitInsn(POP2);
+            } else if (!void.class.equals(returnType)) {
+                mv.visitInsn(POP);
+            }
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+
+            accessor = define(owner, name, cw, key);
+        }
+        return accessor;
+    }
+
+    private ClassWriter createClass(String name) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_5, ACC_PUBLIC + ACC_FINAL + ACC_SUPER + ACC_SYNTHETIC, name, null, OBJECT, new String[] { ACCESSOR });
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V");
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        return cw;
+    }
+
+    @Nullable
+    private PropertyAccessor define(Class<?> owner, String name, ClassWriter cw, Object key) {
+        cw.visitEnd();
+        byte[] bytes = cw.toByteArray();
+        try {
+            Class<?> clazz = (Class<?>) defineClass.invoke(owner.getClassLoader(),
+                    name.replace('/', '.'), bytes, 0, bytes.length, owner.getProtectionDomain());
+            PropertyAccessor accessor = (PropertyAccessor) clazz.newInstance();
+            PropertyAccessor existing = accessors.putIfAbsent(key, accessor);
+            return existing != null ? existing : accessor;
+        } catch (Exception e) {
+            logger.debug(e.getMessage(), e);
+            return null;
+        } catch (LinkageError e) {
+            // e.g. PropertyAccessor is not visible to the class loader of the owner
+            logger.debug(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static String getAccessorName(Class<?> owner) {
+        return Type.getInternalName(owner) + "$$Accessor" + counter.incrementAndGet();
+    }
+
+    private static boolean isSupported(Class<?> owner) {
+        return defineClass != null
+                && owner.getClassLoader() != null
+                && !owner.isArray()
+                && !owner.getName().startsWith("java.");
+    }
+
+    private static boolean isInvocable(Method method, Class<?> owner) {
+        int modifiers = method.getModifiers();
+        return isSupported(owner)
+                && !Modifier.isPrivate(modifiers)
+                && !Modifier.isStatic(modifiers)
+                && method.getDeclaringClass().isAssignableFrom(owner)
+                && (Modifier.isPublic(modifiers) || method.getDeclaringClass().equals(owner));
+    }
+
+    private static boolean isVisible(Class<?> type, Class<?> owner) {
+        while (type.isArray()) {
+            type = type.getComponentType();
+        }
+        if (type.isPrimitive() || Modifier.isPublic(type.getModifiers())) {
+            return true;
+        } else {
+            return type.getClassLoader() == owner.getClassLoader() && getPackageName(type).equals(getPackageName(owner));
+        }
+    }
+
+    private static String getPackageName(Class<?> clazz) {
+        String name = clazz.getName();
+        int index = name.lastIndexOf('.');
+        return index > -1 ? name.substring(0, index) : "";
+    }
+
+    private static void box(MethodVisitor mv, Class<?> type) {
+        if (type.isPrimitive()) {
+            Class<?> wrapper = Primitives.wrap(type);
+            mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(wrapper), "valueOf",
+                    "(" + Type.getDescriptor(type) + ")" + Type.getDescriptor(wrapper));
+        }
+    }
+
+    private static void unbox(MethodVisitor mv, Class<?> type) {
+        if (type.isPrimitive()) {
+            Class<?> wrapper = Primitives.wrap(type);
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(wrapper));
+            mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(wrapper), type.getName() + "Value",
+                    "()" + Type.getDescriptor(type));
+        } else if (!Object.class.equals(type)) {
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(type));
+        }
+    }
+
+}
@@ -9,6 +9,7 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
 import com.mysema.util.BeanMap;
@@ -22,6 +23,9 @@ public final class FieldProperty extends MappedProperty<Field> {
 
     private final Field field;
 
+    @Nullable
+    private PropertyAccessor accessor;
+
     public FieldProperty(Field field, MappedClass declaringClass) {
         this(field, field.getAnnotations(), declaringClass);
     }
@@ -47,11 +51,20 @@ public final class FieldProperty extends MappedProperty<Field> {
         return field.getGenericType();
     }
 
+    @Override
+    void initAccessor(AccessorFactory accessorFactory) {
+        accessor = accessorFactory.createAccessor(field);
+    }
+
     @Override
     public void setValue(BeanMap beanMap, Object value) {
         if (value == null && field.getType().isPrimitive()) {
             return;
         }
+        if (accessor != null) {
+            accessor.setValue(beanMap.getBean(), value);
+            return;
+        }
         try {
             field.set(beanMap.getBean(), value);
         } catch (IllegalAccessException e) {
@@ -61,6 +74,9 @@ public final class FieldProperty extends MappedProperty<Field> {
 
     @Override
     public Object getValue(BeanMap instance) {
+        if (accessor != null) {
+            return accessor.getValue(instance.getBean());
+        }
         try {
             return field.get(instance.getBean());
         } catch (Exception e) {
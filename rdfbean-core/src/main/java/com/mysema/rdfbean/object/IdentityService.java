@@ -5,6 +5,9 @@
  */
 package com.mysema.rdfbean.object;
 
+import java.util.Collection;
+import java.util.Map;
+
 import javax.annotation.Nullable;
 
 import com.mysema.rdfbean.model.ID;
@@ -35,4 +38,17 @@ public interface IdentityService {
     @Nullable
     ID getID(LID lid);
 
+    /**
+     * Get the IDs for the given local ids in one lookup
+     * 
+     * @param lids
+     * @return IDs by local id, local ids without ID are not included
+     */
+    Map<LID, ID> getIDs(Collection<LID> lids);
+
+    /**
+     * Store the local ids which have been created since the last flush
+     */
+    void flush();
+
 }
@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ForwardingCollection;
+import com.google.common.collect.ForwardingList;
+import com.google.common.collect.ForwardingSet;
+import com.google.common.collect.ForwardingSortedSet;
+import com.mysema.rdfbean.model.NODE;
+
+/**
+ * LazyValues provides lazy loading wrappers for reference properties
+ *
+ * <p>
+ * Collection properties of type Collection, List, Set and SortedSet are
+ * populated with forwarding collections and single references of interface
+ * type with dynamic proxies. The value is converted via the owning session on
+ * first access.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+final class LazyValues {
+
+    /**
+     * LazyValue is implemented by the lazy loading wrappers. It is public, since
+     * the proxies implementing it are defined in the class loaders of the
+     * referenced types.
+     */
+    public interface LazyValue {
+
+        Loader getLoader();
+
+    }
+
+    /**
+     * Loader holds the nodes of a property and converts them once
+     */
+    public static final class Loader {
+
+        private final Collection<? extends NODE> nodes;
+
+        @Nullable
+        private Supplier<?> supplier;
+
+        @Nullable
+        private Object value;
+
+        Loader(Collection<? extends NODE> nodes, Supplier<?> supplier) {
+            this.nodes = nodes;
+            this.supplier = supplier;
+        }
+
+        Object get() {
+            if (supplier != null) {
+                value = supplier.get();
+                supplier = null;
+            }
+            return value;
+        }
+
+        Collection<? extends NODE> getNodes() {
+            return nodes;
+        }
+
+        boolean isLoaded() {
+            return supplier == null;
+        }
+
+    }
+
+    /**
+     * Get whether the values of the given property can be loaded lazily
+     *
+     * @param property
+     * @return
+     */
+    static boolean isSupported(MappedProperty<?> property) {
+        Class<?> type = property.getType();
+        if (property.isCollection()) {
+            return Collection.class.equals(type)
+                    || List.class.equals(type)
+                    || Set.class.equals(type)
+                    || SortedSet.class.equals(type);
+        } else {
+            return type.isInterface() && !property.isMap();
+        }
+    }
+
+    /**
+     * Create a lazy loading wrapper
+     *
+     * @param type
+     * @param loader
+     * @return wrapper or null, if no proxy could be created for the type
+     */
+    @Nullable
+    static Object create(Class<?> type, Loader loader) {
+        if (Collection.class.equals(type)) {
+            return new LazyCollection(loader);
+        } else if (List.class.equals(type)) {
+            return new LazyList(loader);
+        } else if (Set.class.equals(type)) {
+            return new LazySet(loader);
+        } else if (SortedSet.class.equals(type)) {
+            return new LazySortedSet(loader);
+        } else {
+            try {
+                return Proxy.newProxyInstance(type.getClassLoader(),
+                        new Class<?>[] { type, LazyValue.class }, new LazyReference(loader));
+            } catch (IllegalArgumentException e) {
+                // LazyValue is not visible to the class loader of the type
+                return null;
+            } catch (LinkageError e) {
+                // the proxy class can't be linked, the value is loaded eagerly
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Get the node of a lazy reference which has not been loaded
+     *
+     * @param object
+     * @return node or null, if the object is not an unloaded lazy reference
+     */
+    @Nullable
+    static NODE getNode(Object object) {
+        if (object instanceof LazyValue && !(object instanceof Collection)) {
+            Loader loader = ((LazyValue) object).getLoader();
+            return loader.isLoaded() ? null : loader.getNodes().iterator().next();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Get the referenced bean of a lazy reference, loading it if necessary
+     *
+     * @param object
+     * @return
+     */
+    static Object unwrap(Object object) {
+        if (object instanceof LazyValue && !(object instanceof Collection)) {
+            Object value = ((LazyValue) object).getLoader().get();
+            return value != null ? value : object;
+        } else {
+            return object;
+        }
+    }
+
+    private static class LazyCollection extends ForwardingCollection<Object> implements LazyValue {
+
+        private final Loader loader;
+
+        LazyCollection(Loader loader) {
+            this.loader = loader;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected Collection<Object> delegate() {
+            return (Collection<Object>) loader.get();
+        }
+
+        @Override
+        public Loader getLoader() {
+            return loader;
+        }
+
+    }
+
+    private static class LazyList extends ForwardingList<Object> implements LazyValue {
+
+        private final Loader loader;
+
+        LazyList(Loader loader) {
+            this.loader = loader;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected List<Object> delegate() {
+            return (List<Object>) loader.get();
+        }
+
+        @Override
+        public Loader getLoader() {
+            return loader;
+        }
+
+    }
+
+    private static class LazySet extends ForwardingSet<Object> implements LazyValue {
+
+        private final Loader loader;
+
+        LazySet(Loader loader) {
+            this.loader = loader;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected Set<Object> delegate() {
+            return (Set<Object>) loader.get();
+        }
+
+        @Override
+        public Loader getLoader() {
+            return loader;
+        }
+
+    }
+
+    private static class LazySortedSet extends ForwardingSortedSet<Object> implements LazyValue {
+
+        private final Loader loader;
+
+        LazySortedSet(Loader loader) {
+            this.loader = loader;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        protected SortedSet<Object> delegate() {
+            return (SortedSet<Object>) loader.get();
+        }
+
+        @Override
+        public Loader getLoader() {
+            return loader;
+        }
+
+    }
+
+    private static class LazyReference implements InvocationHandler {
+
+        private final Loader loader;
+
+        LazyReference(Loader loader) {
+            this.loader = loader;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass().equals(LazyValue.class)) {
+                return loader;
+            } else if (method.getDeclaringClass().equals(Object.class)) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+            Object target = loader.get();
+            if (target == null) {
+                throw new SessionException("Reference to " + loader.getNodes() + " could not be loaded");
+            }
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("equals")) {
+                if (proxy == args[0]) {
+                    return true;
+                }
+                Object target = loader.get();
+                return target != null && target.equals(unwrap(args[0]));
+            } else if (method.getName().equals("hashCode")) {
+                Object target = loader.get();
+                return target != null ? target.hashCode() : System.identityHashCode(proxy);
+            } else {
+                Object target = loader.get();
+                return target != null ? target.toString() : "Reference to " + loader.getNodes();
+            }
+        }
+
+    }
+
+    private LazyValues() {
+    }
+
+}
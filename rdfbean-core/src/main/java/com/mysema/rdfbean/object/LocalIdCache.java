@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.LID;
+
+/**
+ * LocalIdCache caches the mappings between IDs and local ids across the
+ * sessions of a session factory
+ *
+ * <p>
+ * Local ids don't change once they have been stored, so the entries don't
+ * expire. Both directions are bounded in amount independently.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public final class LocalIdCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final Cache<ID, LID> lids;
+
+    private final Cache<LID, ID> ids;
+
+    public LocalIdCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public LocalIdCache(int maximumSize) {
+        lids = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        ids = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    @Nullable
+    public LID getLID(ID id) {
+        return lids.getIfPresent(id);
+    }
+
+    @Nullable
+    public ID getID(LID lid) {
+        return ids.getIfPresent(lid);
+    }
+
+    public void put(ID id, LID lid) {
+        lids.put(id, lid);
+        ids.put(lid, id);
+    }
+
+    /**
+     * Remove the mapping of the given ID, e.g. when its local id has been
+     * deleted
+     *
+     * @param id
+     */
+    public void invalidate(ID id) {
+        LID lid = lids.getIfPresent(id);
+        if (lid != null) {
+            ids.invalidate(lid);
+        }
+        lids.invalidate(id);
+    }
+
+    public void clear() {
+        lids.invalidateAll();
+        ids.invalidateAll();
+    }
+
+    public long size() {
+        return lids.size();
+    }
+
+}
@@ -38,6 +38,9 @@ public class MappedClassFactory {
 
     private final Map<Class<?>, MappedClass> mappedClasses = new LinkedHashMap<Class<?>, MappedClass>();
 
+    @Nullable
+    private AccessorFactory accessorFactory = new AccessorFactory();
+
     @Nullable
     private final String defaultNamespace;
 
@@ -124,6 +127,7 @@ public class MappedClassFactory {
                         throw new IllegalArgumentException(
                                 "Key must be type of com.mysema.rdfbean.model.UID");
                     } else {
+                        initAccessor(property);
                         mappedClass.addDynamicProperty(property);
                     }
                 }
@@ -192,9 +196,11 @@ public class MappedClassFactory {
     private MappedPath getMappedPath(MappedProperty<?> property, @Nullable List<MappedPredicate> path) {
         property.resolve(null);
         if (path != null) {
+            initAccessor(property);
             return new MappedPath(property, path, false);
         } else {
             if (property.isAnnotatedProperty()) {
+                initAccessor(property);
                 return new MappedPath(property, Collections.<MappedPredicate> emptyList(), false);
             } else {
                 return null;
@@ -308,9 +314,25 @@ public class MappedClassFactory {
         }
     }
 
+    private void initAccessor(MappedProperty<?> property) {
+        if (accessorFactory != null) {
+            property.initAccessor(accessorFactory);
+        }
+    }
+
     private boolean isProcessedClass(Class<?> clazz) {
         Package pack = clazz.getPackage();
         return pack == null || !pack.getName().startsWith("java");
     }
 
+    /**
+     * Set the factory for generated property accessors, null disables them
+     * and reflection is used instead
+     *
+     * @param accessorFactory
+     */
+    public void setAccessorFactory(@Nullable AccessorFactory accessorFactory) {
+        this.accessorFactory = accessorFactory;
+    }
+
 }
@@ -27,6 +27,8 @@ public final class MappedPath {
 
     private boolean inherited;
 
+    private boolean lazy;
+
     public MappedPath(MappedProperty<?> property,
             List<MappedPredicate> predicatePath,
             boolean inherited) {
@@ -43,6 +45,7 @@ public final class MappedPath {
                 this.ignoreInvalid = false;
             }
         }
+        this.lazy = predicatePath.size() > 0 && predicatePath.get(0).lazy();
         validate();
     }
 
@@ -70,6 +73,20 @@ public final class MappedPath {
         return ignoreInvalid;
     }
 
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Set whether the referenced beans of this path should be loaded on first
+     * access
+     *
+     * @param lazy
+     */
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
     public boolean isWildcard() {
         return isWildcard(mappedProperty.getType());
     }
@@ -113,6 +130,7 @@ public final class MappedPath {
                         + " with " + other);
             }
             this.predicatePath = other.predicatePath;
+            this.lazy = other.lazy;
         }
         this.inherited = this.inherited || other.inherited;
     }
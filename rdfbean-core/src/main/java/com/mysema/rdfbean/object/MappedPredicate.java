@@ -26,6 +26,8 @@ public final class MappedPredicate {
 
     private final boolean includeInferred;
 
+    private final boolean lazy;
+
     @Nullable
     private final UID context;
 
@@ -34,6 +36,7 @@ public final class MappedPredicate {
         this.inv = inv;
         this.ignoreInvalid = false;
         this.includeInferred = false;
+        this.lazy = false;
         this.context = null;
     }
 
@@ -42,6 +45,7 @@ public final class MappedPredicate {
         this.inv = predicate.inv();
         this.ignoreInvalid = predicate.ignoreInvalid();
         this.includeInferred = predicate.includeInferred();
+        this.lazy = predicate.lazy();
         if (predicate.context().isEmpty()) {
             this.context = null;
         } else {
@@ -61,6 +65,10 @@ public final class MappedPredicate {
         return includeInferred;
     }
 
+    public boolean lazy() {
+        return lazy;
+    }
+
     @Nullable
     public UID getContext() {
         return context;
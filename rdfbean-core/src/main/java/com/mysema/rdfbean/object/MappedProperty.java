@@ -330,6 +330,15 @@ public abstract class MappedProperty<M extends Member & AnnotatedElement> implem
 
     public abstract Object getValue(BeanMap instance);
 
+    /**
+     * Use a generated accessor instead of reflection, if the property supports
+     * it
+     *
+     * @param accessorFactory
+     */
+    void initAccessor(AccessorFactory accessorFactory) {
+    }
+
     @Nullable
     public UID getValuePredicate() {
         MapElements mapKey = getAnnotation(MapElements.class);
@@ -5,6 +5,9 @@
  */
 package com.mysema.rdfbean.object;
 
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
@@ -12,6 +15,7 @@ import java.lang.reflect.Type;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 
+import com.google.common.primitives.Primitives;
 import com.mysema.util.BeanMap;
 
 /**
@@ -56,6 +60,12 @@ public final class MethodProperty extends MappedProperty<Method> {
 
     private final Method method;
 
+    @Nullable
+    private PropertyAccessor accessor;
+
+    @Nullable
+    private Class<?> accessorType;
+
     public MethodProperty(Method method, MappedClass declaringClass) {
         this(method, method.getAnnotations(), declaringClass);
     }
@@ -96,14 +106,41 @@ public final class MethodProperty extends MappedProperty<Method> {
         return gtype;
     }
 
+    @Override
+    void initAccessor(AccessorFactory accessorFactory) {
+        Class<?> clazz = method.getDeclaringClass();
+        try {
+            for (PropertyDescriptor descriptor : Introspector.getBeanInfo(clazz).getPropertyDescriptors()) {
+                if (descriptor.getName().equals(getName())
+                        && descriptor.getReadMethod() != null
+                        && descriptor.getWriteMethod() != null) {
+                    accessor = accessorFactory.createAccessor(clazz, descriptor.getReadMethod(), descriptor.getWriteMethod());
+                    accessorType = descriptor.getWriteMethod().getParameterTypes()[0];
+                }
+            }
+        } catch (IntrospectionException e) {
+            // use BeanMap
+        }
+    }
+
     @Override
     public void setValue(BeanMap beanMap, Object value) {
-        beanMap.put(getName(), value);
+        // values which need conversion are handled by BeanMap
+        if (accessor != null
+                && (value != null ? Primitives.wrap(accessorType).isInstance(value) : !accessorType.isPrimitive())) {
+            accessor.setValue(beanMap.getBean(), value);
+        } else {
+            beanMap.put(getName(), value);
+        }
     }
 
     @Override
     public Object getValue(BeanMap instance) {
-        return instance.get(getName());
+        if (accessor != null) {
+            return accessor.getValue(instance.getBean());
+        } else {
+            return instance.get(getName());
+        }
     }
 
     @Override
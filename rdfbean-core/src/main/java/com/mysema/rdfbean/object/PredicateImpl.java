@@ -17,7 +17,7 @@ import com.mysema.rdfbean.model.UID;
 @SuppressWarnings("all")
 public class PredicateImpl implements Predicate {
 
-    private final boolean ignoreInvalid, includeInferred, inv;
+    private final boolean ignoreInvalid, includeInferred, inv, lazy;
 
     private final String context, ns, ln;
 
@@ -32,6 +32,7 @@ public class PredicateImpl implements Predicate {
         this.ignoreInvalid = false;
         this.includeInferred = false;
         this.inv = inv;
+        this.lazy = false;
     }
 
     @Override
@@ -54,6 +55,11 @@ public class PredicateImpl implements Predicate {
         return inv;
     }
 
+    @Override
+    public boolean lazy() {
+        return lazy;
+    }
+
     @Override
     public String ln() {
         return ln;
@@ -0,0 +1,28 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import javax.annotation.Nullable;
+
+/**
+ * PropertyAccessor provides direct access to a property of a bean
+ *
+ * <p>
+ * Implementations are generated by {@link AccessorFactory}, primitive values
+ * are boxed and unboxed by the accessor.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public interface PropertyAccessor {
+
+    @Nullable
+    Object getValue(Object bean);
+
+    void setValue(Object bean, @Nullable Object value);
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Multimap;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+
+/**
+ * SecondLevelCache caches the direct properties of subjects across the
+ * sessions of a session factory
+ *
+ * <p>
+ * Each entry holds all statements of one subject, keyed by predicate. The
+ * entries are immutable, bounded in amount and expire after a time to live.
+ * Sessions invalidate the subjects of the statements they update, so stale
+ * entries are limited to updates done outside of the sessions of the factory.
+ * </p>
+ *
+ * <p>
+ * Properties read before an invalidation are not cached, so a load which
+ * overlaps with an update can't restore the state before the update.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public final class SecondLevelCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_TTL_SECONDS = 300;
+
+    private final Cache<UID, Multimap<UID, STMT>> cache;
+
+    private final AtomicLong version = new AtomicLong();
+
+    public SecondLevelCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public SecondLevelCache(int maximumSize, long ttl, TimeUnit unit) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl, unit)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the cached properties of the given subject
+     *
+     * @param subject
+     * @return properties or null, if the subject is not cached
+     */
+    @Nullable
+    public Multimap<UID, STMT> get(ID subject) {
+        return subject.isURI() ? cache.getIfPresent(subject.asURI()) : null;
+    }
+
+    /**
+     * Get the current version of the cache, which changes on each
+     * invalidation
+     *
+     * @return
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Cache all direct properties of the given subject, blank nodes are not
+     * cached
+     *
+     * @param subject
+     * @param properties
+     * @param readVersion
+     *            version of the cache before the properties were read
+     */
+    public void put(ID subject, Multimap<UID, STMT> properties, long readVersion) {
+        if (subject.isURI() && version.get() == readVersion) {
+            cache.put(subject.asURI(), ImmutableListMultimap.copyOf(properties));
+            // invalidated during put
+            if (version.get() != readVersion) {
+                cache.invalidate(subject.asURI());
+            }
+        }
+    }
+
+    public void invalidate(ID subject) {
+        if (subject.isURI()) {
+            version.incrementAndGet();
+            cache.invalidate(subject.asURI());
+        }
+    }
+
+    public void invalidateAll(Collection<? extends ID> subjects) {
+        for (ID subject : subjects) {
+            invalidate(subject);
+        }
+    }
+
+    public void clear() {
+        version.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+}
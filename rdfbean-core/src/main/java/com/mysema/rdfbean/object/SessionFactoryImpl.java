@@ -9,9 +9,12 @@ import java.util.Collections;
 import java.util.Locale;
 import java.util.Map;
 
+import javax.annotation.Nullable;
+
 import com.mysema.rdfbean.model.RDFConnection;
 import com.mysema.rdfbean.model.Repository;
 import com.mysema.rdfbean.ontology.Ontology;
+import com.mysema.rdfbean.query.QueryPlanCache;
 
 /**
  * SessionFactoryImpl is the default implementation of the SessionFactory
@@ -35,6 +38,15 @@ public class SessionFactoryImpl implements SessionFactory {
 
     private SessionContext sessionContext;
 
+    @Nullable
+    private QueryPlanCache queryPlanCache;
+
+    @Nullable
+    private SecondLevelCache secondLevelCache;
+
+    @Nullable
+    private LocalIdCache localIdCache = new LocalIdCache();
+
     public SessionFactoryImpl() {
         this(Locale.getDefault());
     }
@@ -83,6 +95,9 @@ public class SessionFactoryImpl implements SessionFactory {
     public Session openSession() {
         RDFConnection connection = repository.openConnection();
         SessionImpl session = new SessionImpl(configuration, ontology, connection, getLocales());
+        session.setQueryPlanCache(queryPlanCache);
+        session.setSecondLevelCache(secondLevelCache);
+        session.setLocalIdCache(localIdCache);
         if (objectRepositories != null) {
             for (Map.Entry<String, ObjectRepository> entry : objectRepositories.entrySet()) {
                 session.addParent(entry.getKey(), entry.getValue());
@@ -94,6 +109,9 @@ public class SessionFactoryImpl implements SessionFactory {
     public void setConfiguration(Configuration configuration) {
         this.configuration = configuration;
         this.ontology = new ConfigurationOntology(configuration);
+        if (queryPlanCache != null) {
+            queryPlanCache.clear();
+        }
     }
 
     public void setLocale(Locale locale) {
@@ -110,6 +128,54 @@ public class SessionFactoryImpl implements SessionFactory {
 
     public void setRepository(Repository repository) {
         this.repository = repository;
+        if (localIdCache != null) {
+            localIdCache.clear();
+        }
+    }
+
+    @Nullable
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
+
+    /**
+     * Set the cache for query translations shared by the sessions, null to
+     * translate each query, which is the default
+     *
+     * @param queryPlanCache
+     */
+    public void setQueryPlanCache(@Nullable QueryPlanCache queryPlanCache) {
+        this.queryPlanCache = queryPlanCache;
+    }
+
+    @Nullable
+    public SecondLevelCache getSecondLevelCache() {
+        return secondLevelCache;
+    }
+
+    /**
+     * Set the cache for properties shared by the sessions, null to disable
+     * second level caching
+     *
+     * @param secondLevelCache
+     */
+    public void setSecondLevelCache(@Nullable SecondLevelCache secondLevelCache) {
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    @Nullable
+    public LocalIdCache getLocalIdCache() {
+        return localIdCache;
+    }
+
+    /**
+     * Set the cache for local ids shared by the sessions, null to look up
+     * each local id from the repository
+     *
+     * @param localIdCache
+     */
+    public void setLocalIdCache(@Nullable LocalIdCache localIdCache) {
+        this.localIdCache = localIdCache;
     }
 
     public final void setSessionContext(SessionContext sessionContext) {
@@ -5,23 +5,43 @@
  */
 package com.mysema.rdfbean.object;
 
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.annotation.Nullable;
 
+import com.google.common.collect.BiMap;
+import com.google.common.collect.HashBiMap;
 import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.rdfbean.CORE;
+import com.mysema.rdfbean.model.Blocks;
 import com.mysema.rdfbean.model.ID;
 import com.mysema.rdfbean.model.LID;
 import com.mysema.rdfbean.model.LIT;
 import com.mysema.rdfbean.model.NODE;
+import com.mysema.rdfbean.model.QNODE;
 import com.mysema.rdfbean.model.RDFConnection;
+import com.mysema.rdfbean.model.RDFQuery;
+import com.mysema.rdfbean.model.RDFQueryImpl;
 import com.mysema.rdfbean.model.STMT;
 import com.mysema.rdfbean.model.UID;
 
 /**
  * SessionIdentityService uses the Repository to store the local ids
  * 
+ * <p>
+ * New local ids are collected and written together on {@link #flush()}. All
+ * handed out local ids are written, even if other sessions have stored local
+ * ids for the same IDs meanwhile, so that they can still be resolved. Found and
+ * written mappings are shared via an optional {@link LocalIdCache}, in
+ * transactions only after commit.
+ * </p>
+ * 
  * @author tiwe
  * @version $Id$
  */
@@ -29,33 +49,158 @@ public class SessionIdentityService implements IdentityService {
 
     private final RDFConnection connection;
 
+    @Nullable
+    private final LocalIdCache cache;
+
+    private final BiMap<ID, LID> created = HashBiMap.create();
+
+    /**
+     * Mappings found or written in the current transaction
+     */
+    private final BiMap<ID, LID> uncommitted = HashBiMap.create();
+
+    private boolean inTransaction;
+
     public SessionIdentityService(RDFConnection connection) {
+        this(connection, null);
+    }
+
+    public SessionIdentityService(RDFConnection connection, @Nullable LocalIdCache cache) {
         this.connection = connection;
+        this.cache = cache;
     }
 
     @Override
     public ID getID(LID lid) {
-        STMT stmt = find(null, CORE.localId, new LIT(lid.getId()));
-        return stmt != null ? stmt.getSubject() : null;
+        ID id = created.inverse().get(lid);
+        if (id == null) {
+            id = uncommitted.inverse().get(lid);
+        }
+        if (id == null && cache != null) {
+            id = cache.getID(lid);
+        }
+        if (id == null) {
+            STMT stmt = find(null, CORE.localId, new LIT(lid.getId()));
+            if (stmt != null) {
+                id = stmt.getSubject();
+                cache(id, lid);
+            }
+        }
+        return id;
+    }
+
+    @Override
+    public Map<LID, ID> getIDs(Collection<LID> lids) {
+        Map<LID, ID> ids = new HashMap<LID, ID>(lids.size());
+        List<LIT> literals = new ArrayList<LIT>(lids.size());
+        for (LID lid : lids) {
+            ID id = created.inverse().get(lid);
+            if (id == null) {
+                id = uncommitted.inverse().get(lid);
+            }
+            if (id == null && cache != null) {
+                id = cache.getID(lid);
+            }
+            if (id != null) {
+                ids.put(lid, id);
+            } else {
+                literals.add(new LIT(lid.getId()));
+            }
+        }
+        if (literals.isEmpty()) {
+            return ids;
+        }
+        RDFQuery query = new RDFQueryImpl(connection);
+        query.where(Blocks.pattern(QNODE.s, CORE.localId, QNODE.o), QNODE.o.in(literals));
+        CloseableIterator<Map<String, NODE>> rows = query.select(QNODE.s, QNODE.o);
+        try {
+            while (rows.hasNext()) {
+                Map<String, NODE> row = rows.next();
+                LID lid = new LID(row.get(QNODE.o.getName()).getValue());
+                ID id = row.get(QNODE.s.getName()).asResource();
+                ids.put(lid, id);
+                cache(id, lid);
+            }
+        } finally {
+            rows.close();
+        }
+        return ids;
     }
 
     @Override
     public LID getLID(ID id) {
-        STMT stmt = find(id, CORE.localId, null);
-        String lid;
-        if (stmt != null) {
-            lid = stmt.getObject().getValue();
-        } else {
-            lid = String.valueOf(connection.getNextLocalId());
-            add(id, CORE.localId, new LIT(lid));
+        LID lid = created.get(id);
+        if (lid == null) {
+            lid = uncommitted.get(id);
+        }
+        if (lid == null && cache != null) {
+            lid = cache.getLID(id);
+        }
+        if (lid == null) {
+            STMT stmt = find(id, CORE.localId, null);
+            if (stmt != null) {
+                lid = new LID(stmt.getObject().getValue());
+                cache(id, lid);
+            } else {
+                lid = new LID(String.valueOf(connection.getNextLocalId()));
+                created.put(id, lid);
+            }
+        }
+        return lid;
+    }
+
+    @Override
+    public void flush() {
+        if (!created.isEmpty()) {
+            Set<STMT> stmts = new LinkedHashSet<STMT>(created.size());
+            for (Map.Entry<ID, LID> entry : created.entrySet()) {
+                stmts.add(new STMT(entry.getKey(), CORE.localId, new LIT(entry.getValue().getId())));
+            }
+            connection.update(null, stmts);
+            for (Map.Entry<ID, LID> entry : created.entrySet()) {
+                cache(entry.getKey(), entry.getValue());
+            }
+            created.clear();
         }
-        return new LID(lid);
     }
 
-    private void add(ID subject, UID predicate, NODE object) {
-        connection.update(
-                null,
-                Collections.singleton(new STMT(subject, predicate, object)));
+    /**
+     * Keep the mappings of the following lookups and writes until
+     * {@link #commit()}
+     */
+    public void begin() {
+        inTransaction = true;
+    }
+
+    /**
+     * Share the mappings of the committed transaction
+     */
+    public void commit() {
+        inTransaction = false;
+        if (cache != null) {
+            for (Map.Entry<ID, LID> entry : uncommitted.entrySet()) {
+                cache.put(entry.getKey(), entry.getValue());
+            }
+        }
+        uncommitted.clear();
+    }
+
+    /**
+     * Discard the mappings of the rolled back transaction and the local ids
+     * which have not been written
+     */
+    public void rollback() {
+        inTransaction = false;
+        uncommitted.clear();
+        created.clear();
+    }
+
+    private void cache(ID id, LID lid) {
+        if (inTransaction) {
+            uncommitted.forcePut(id, lid);
+        } else if (cache != null) {
+            cache.put(id, lid);
+        }
     }
 
     @Nullable
@@ -29,6 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Objects;
+import com.google.common.base.Supplier;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.mysema.commons.l10n.support.LocaleUtil;
@@ -58,6 +59,7 @@ import com.mysema.rdfbean.model.STMT;
 import com.mysema.rdfbean.model.UID;
 import com.mysema.rdfbean.ontology.Ontology;
 import com.mysema.rdfbean.query.BeanQueryImpl;
+import com.mysema.rdfbean.query.QueryPlanCache;
 import com.mysema.util.BeanMap;
 import com.mysema.util.MultimapFactory;
 
@@ -87,7 +89,7 @@ public final class SessionImpl implements Session {
 
     private FlushMode flushMode = FlushMode.ALWAYS;
 
-    private final IdentityService identityService;
+    private SessionIdentityService identityService;
 
     private Multimap<ID, Object> instanceCache;
 
@@ -103,6 +105,17 @@ public final class SessionImpl implements Session {
 
     private Map<Object, ID> resourceCache;
 
+    @Nullable
+    private QueryPlanCache queryPlanCache;
+
+    @Nullable
+    private SecondLevelCache secondLevelCache;
+
+    @Nullable
+    private LocalIdCache localIdCache;
+
+    private final Set<ID> dirtySubjects = new HashSet<ID>();
+
     @Nullable
     private Set<Object> seen;
 
@@ -168,7 +181,8 @@ public final class SessionImpl implements Session {
         if (transaction != null) {
             throw new IllegalStateException("Transaction exists already");
         }
-        transaction = connection.beginTransaction(readOnly, txTimeout, isolationLevel);
+        transaction = new CacheTransaction(connection.beginTransaction(readOnly, txTimeout, isolationLevel), readOnly);
+        identityService.begin();
         return transaction;
     }
 
@@ -192,13 +206,19 @@ public final class SessionImpl implements Session {
             if (!path.isConstructorParameter()) {
                 MappedProperty<?> property = path.getMappedProperty();
                 if (!property.isVirtual()) {
-                    Object convertedValue;
-                    try {
-                        convertedValue = getValue(path, getPathValue(path, subject, properties, context), context);
-                    } catch (InstantiationException e) {
-                        throw new SessionException(e);
-                    } catch (IllegalAccessException e) {
-                        throw new SessionException(e);
+                    Set<NODE> values = getPathValue(path, subject, properties, context);
+                    Object convertedValue = null;
+                    if (isLazy(path)) {
+                        convertedValue = getLazyValue(path, values, context);
+                    }
+                    if (convertedValue == null) {
+                        try {
+                            convertedValue = getValue(path, values, context);
+                        } catch (InstantiationException e) {
+                            throw new SessionException(e);
+                        } catch (IllegalAccessException e) {
+                            throw new SessionException(e);
+                        }
                     }
                     if (convertedValue != null) {
                         property.setValue(beanMap, convertedValue);
@@ -304,7 +324,15 @@ public final class SessionImpl implements Session {
 
     @Override
     public void close() {
-        connection.close();
+        try {
+            // local ids handed out outside of transactions are written like
+            // other changes without transaction, in transactions on commit
+            if (transaction == null) {
+                identityService.flush();
+            }
+        } finally {
+            connection.close();
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -553,7 +581,7 @@ public final class SessionImpl implements Session {
             }
 
             MappedClass mappedClass = configuration.getMappedClass(requiredClass);
-            Multimap<UID, STMT> direct = getProperties(subject, mappedClass, polymorphic);
+            Multimap<UID, STMT> direct = getCachedProperties(subject, mappedClass, polymorphic);
 
             if (!direct.isEmpty()) {
                 Multimap<UID, STMT> inverse = null;
@@ -1033,8 +1061,20 @@ public final class SessionImpl implements Session {
     }
 
     public void flush() {
+        identityService.flush();
         if (!removedStatements.isEmpty() || !addedStatements.isEmpty()) {
             connection.update(removedStatements, addedStatements);
+            if (secondLevelCache != null) {
+                invalidate(removedStatements);
+                invalidate(addedStatements);
+            }
+            if (localIdCache != null) {
+                for (STMT stmt : removedStatements) {
+                    if (stmt.getPredicate().equals(CORE.localId)) {
+                        localIdCache.invalidate(stmt.getSubject());
+                    }
+                }
+            }
         }
         removedStatements = new LinkedHashSet<STMT>();
         addedStatements = new LinkedHashSet<STMT>();
@@ -1042,7 +1082,7 @@ public final class SessionImpl implements Session {
 
     @Override
     public BeanQuery from(EntityPath<?>... expr) {
-        return new BeanQueryImpl(this, ontology, connection).from(expr);
+        return new BeanQueryImpl(this, ontology, connection, queryPlanCache).from(expr);
     }
 
     @Override
@@ -1083,11 +1123,7 @@ public final class SessionImpl implements Session {
             if (logger.isDebugEnabled()) {
                 logger.debug("query for " + clazz.getSimpleName() + " instance data");
             }
-            RDFQuery query = createQuery(mappedClass, null, polymorphic);
-            query.where(QNODE.s.in(ids));
-
-            CloseableIterator<STMT> stmts = query.construct(Blocks.SPOC);
-            Map<ID, Multimap<UID, STMT>> directProps = getPropertiesMap(stmts, false);
+            Map<ID, Multimap<UID, STMT>> directProps = getPropertiesMap(mappedClass, ids, polymorphic);
 
             // no results, return from cache
             if (directProps.isEmpty()) {
@@ -1132,11 +1168,17 @@ public final class SessionImpl implements Session {
 
     @Override
     public <T> List<T> getAll(Class<T> clazz, LID... subjects) {
+        Set<LID> lids = new HashSet<LID>(subjects.length);
+        for (LID subject : subjects) {
+            if (subject != null) {
+                lids.add(subject);
+            }
+        }
+        Map<LID, ID> lidToId = identityService.getIDs(lids);
         ID[] ids = new ID[subjects.length];
-        // TODO : bulk fetch
         for (int i = 0; i < ids.length; i++) {
             if (subjects[i] != null) {
-                ids[i] = identityService.getID(subjects[i]);
+                ids[i] = lidToId.get(subjects[i]);
             }
         }
         return getAll(clazz, ids);
@@ -1283,7 +1325,10 @@ public final class SessionImpl implements Session {
     public ID getId(Object instance) {
         if (instance instanceof LID) {
             return identityService.getID((LID) instance);
+        } else if (LazyValues.getNode(instance) != null) {
+            return LazyValues.getNode(instance).asResource();
         } else {
+            instance = LazyValues.unwrap(instance);
             MappedClass mappedClass = configuration.getMappedClass(getClass(assertMapped(instance)));
             if (instance.getClass().isEnum()) {
                 return new UID(mappedClass.getUID().ns(), ((Enum) instance).name());
@@ -1369,7 +1414,8 @@ public final class SessionImpl implements Session {
         if (instance != null) {
             put(subject, instance);
             if (bind) {
-                bind(mappedClass, subject, instance, properties);
+                // properties of subclasses are bound as well
+                bind(polymorphic ? resolveMappedClass(mappedClass, properties) : mappedClass, subject, instance, properties);
             }
         }
         return instance;
@@ -1427,6 +1473,48 @@ public final class SessionImpl implements Session {
         return properties;
     }
 
+    private Multimap<UID, STMT> getCachedProperties(ID subject, MappedClass mappedClass, boolean polymorphic) {
+        if (!isSecondLevelCacheEnabled() || !subject.isURI()) {
+            return getProperties(subject, mappedClass, polymorphic);
+        }
+        Multimap<UID, STMT> properties = getPropertiesMap(mappedClass, Collections.singleton(subject), polymorphic).get(subject);
+        return properties != null ? properties : MultimapFactory.<UID, STMT> create();
+    }
+
+    /**
+     * Get the direct properties of the given subjects, via the second level
+     * cache if it is enabled
+     */
+    private Map<ID, Multimap<UID, STMT>> getPropertiesMap(MappedClass mappedClass, Collection<ID> ids, boolean polymorphic) {
+        if (!isSecondLevelCacheEnabled()) {
+            RDFQuery query = createQuery(mappedClass, null, polymorphic);
+            query.where(QNODE.s.in(ids));
+            return getPropertiesMap(query.construct(Blocks.SPOC), false);
+        }
+        Map<ID, Multimap<UID, STMT>> propertiesMap = new HashMap<ID, Multimap<UID, STMT>>();
+        Set<ID> missing = new HashSet<ID>();
+        for (ID id : ids) {
+            Multimap<UID, STMT> properties = secondLevelCache.get(id);
+            if (properties != null) {
+                propertiesMap.put(id, properties);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            long version = secondLevelCache.getVersion();
+            // cached entries contain all properties
+            RDFQuery query = createQuery(mappedClass, null, true);
+            query.where(QNODE.s.in(missing));
+            Map<ID, Multimap<UID, STMT>> loaded = getPropertiesMap(query.construct(Blocks.SPOC), false);
+            for (Map.Entry<ID, Multimap<UID, STMT>> entry : loaded.entrySet()) {
+                secondLevelCache.put(entry.getKey(), entry.getValue(), version);
+            }
+            propertiesMap.putAll(loaded);
+        }
+        return propertiesMap;
+    }
+
     private Map<ID, Multimap<UID, STMT>> getPropertiesMap(CloseableIterator<STMT> stmts, boolean inv) {
         Map<ID, Multimap<UID, STMT>> propertiesMap = new HashMap<ID, Multimap<UID, STMT>>();
         try {
@@ -1491,6 +1579,27 @@ public final class SessionImpl implements Session {
         return convertedValue;
     }
 
+    @Nullable
+    private Object getLazyValue(final MappedPath path, final Set<NODE> values, final UID context) {
+        MappedProperty<?> property = path.getMappedProperty();
+        if (values.isEmpty() || (!property.isCollection() && values.size() > 1)) {
+            return null;
+        }
+        LazyValues.Loader loader = new LazyValues.Loader(values, new Supplier<Object>() {
+            @Override
+            public Object get() {
+                try {
+                    return getValue(path, values, context);
+                } catch (InstantiationException e) {
+                    throw new SessionException(e);
+                } catch (IllegalAccessException e) {
+                    throw new SessionException(e);
+                }
+            }
+        });
+        return LazyValues.create(property.getType(), loader);
+    }
+
     private boolean isContainer(ID node, UID context) {
         for (ID type : findTypes(node, context)) {
             if (CONTAINER_TYPES.contains(type)) {
@@ -1500,6 +1609,10 @@ public final class SessionImpl implements Session {
         return false;
     }
 
+    private boolean isLazy(MappedPath path) {
+        return path.isLazy() && path.isReference() && LazyValues.isSupported(path.getMappedProperty());
+    }
+
     private boolean isPolymorphic(MappedClass mappedClass) {
         return configuration.isPolymorphic(mappedClass.getJavaClass());
     }
@@ -1520,10 +1633,7 @@ public final class SessionImpl implements Session {
         if (logger.isDebugEnabled()) {
             logger.debug("query for " + clazz.getSimpleName() + " instance data");
         }
-        RDFQuery query = createQuery(mappedClass, null, polymorphic);
-        query.where(QNODE.s.in(ids));
-        CloseableIterator<STMT> stmts = query.construct(Blocks.SPOC);
-        Map<ID, Multimap<UID, STMT>> directProps = getPropertiesMap(stmts, false);
+        Map<ID, Multimap<UID, STMT>> directProps = getPropertiesMap(mappedClass, ids, polymorphic);
 
         if (directProps.isEmpty()) {
             return;
@@ -1553,7 +1663,7 @@ public final class SessionImpl implements Session {
     private void loadReferences(MappedClass mappedClass, Map<ID, Multimap<UID, STMT>> directProps, Set<ID> handled) {
         Map<UID, Class<?>> directToType = new HashMap<UID, Class<?>>();
         for (MappedPath mappedPath : mappedClass.getProperties()) {
-            if (mappedPath.isReference() && !mappedPath.getPredicatePath().isEmpty()) {
+            if (mappedPath.isReference() && !mappedPath.getPredicatePath().isEmpty() && !isLazy(mappedPath)) {
                 MappedProperty<?> property = mappedPath.getMappedProperty();
                 if (!property.isList()) {
                     Class<?> type = property.getType();
@@ -1705,6 +1815,49 @@ public final class SessionImpl implements Session {
         this.flushMode = flushMode;
     }
 
+    /**
+     * Set the cache for the translations of the queries of this session
+     *
+     * @param queryPlanCache
+     */
+    public void setQueryPlanCache(@Nullable QueryPlanCache queryPlanCache) {
+        this.queryPlanCache = queryPlanCache;
+    }
+
+    /**
+     * Set the cache for properties shared with other sessions, null to read
+     * properties only from the connection
+     *
+     * @param secondLevelCache
+     */
+    public void setSecondLevelCache(@Nullable SecondLevelCache secondLevelCache) {
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    public void setLocalIdCache(@Nullable LocalIdCache localIdCache) {
+        this.localIdCache = localIdCache;
+        this.identityService = new SessionIdentityService(connection, localIdCache);
+    }
+
+    /**
+     * The second level cache is bypassed in transactions, so that
+     * uncommitted changes are not shared
+     */
+    private boolean isSecondLevelCacheEnabled() {
+        return secondLevelCache != null && (transaction == null || !transaction.isActive());
+    }
+
+    private void invalidate(Collection<STMT> stmts) {
+        Set<ID> subjects = new HashSet<ID>();
+        for (STMT stmt : stmts) {
+            subjects.add(stmt.getSubject());
+        }
+        secondLevelCache.invalidateAll(subjects);
+        if (transaction != null && transaction.isActive()) {
+            dirtySubjects.addAll(subjects);
+        }
+    }
+
     private <T> void setId(MappedClass mappedClass, ID subject, BeanMap instance) {
         MappedProperty<?> idProperty = mappedClass.getIdProperty();
         if (idProperty != null && !mappedClass.isEnum() && !idProperty.isVirtual()) {
@@ -1835,11 +1988,19 @@ public final class SessionImpl implements Session {
                         }
 
                     } else if (property.isCollection()) {
-                        for (Object o : (Collection<?>) object) {
-                            NODE value = toRDFValue(o, context);
-                            if (value != null) {
+                        if (object instanceof LazyValues.LazyValue
+                                && !((LazyValues.LazyValue) object).getLoader().isLoaded()) {
+                            // unchanged values of the loaded statements
+                            for (NODE value : ((LazyValues.LazyValue) object).getLoader().getNodes()) {
                                 recordAddStatement(subject, predicate, value, context);
                             }
+                        } else {
+                            for (Object o : (Collection<?>) object) {
+                                NODE value = toRDFValue(o, context);
+                                if (value != null) {
+                                    recordAddStatement(subject, predicate, value, context);
+                                }
+                            }
                         }
 
                     } else if (property.isArray()) { // array, but not List or
@@ -1908,6 +2069,7 @@ public final class SessionImpl implements Session {
         if (instance instanceof ID) {
             return (ID) instance;
         }
+        instance = LazyValues.unwrap(instance);
         BeanMap beanMap = toBeanMap(Assert.notNull(instance, "instance"));
         Class<?> clazz = getClass(instance);
         MappedClass mappedClass = configuration.getMappedClass(clazz);
@@ -1987,6 +2149,11 @@ public final class SessionImpl implements Session {
         if (o instanceof NODE) {
             return (NODE) o;
         }
+        NODE node = LazyValues.getNode(o);
+        if (node != null) {
+            return node;
+        }
+        o = LazyValues.unwrap(o);
         Class<?> type = getClass(o);
         if (configuration.isMapped(type)) {
             return toRDF(o, context);
@@ -1997,4 +2164,73 @@ public final class SessionImpl implements Session {
         }
     }
 
+    /**
+     * CacheTransaction invalidates the subjects updated in the transaction
+     * again after commit and rollback, since other sessions may have cached
+     * them before the commit. Local ids of the transaction are written and
+     * shared on commit and discarded on rollback.
+     */
+    private final class CacheTransaction implements RDFBeanTransaction {
+
+        private final RDFBeanTransaction tx;
+
+        private final boolean readOnly;
+
+        CacheTransaction(RDFBeanTransaction tx, boolean readOnly) {
+            this.tx = tx;
+            this.readOnly = readOnly;
+        }
+
+        @Override
+        public void prepare() {
+            tx.prepare();
+        }
+
+        @Override
+        public void commit() {
+            try {
+                if (!readOnly) {
+                    identityService.flush();
+                }
+                tx.commit();
+                identityService.commit();
+            } finally {
+                invalidateDirtySubjects();
+            }
+        }
+
+        @Override
+        public boolean isActive() {
+            return tx.isActive();
+        }
+
+        @Override
+        public boolean isRollbackOnly() {
+            return tx.isRollbackOnly();
+        }
+
+        @Override
+        public void rollback() {
+            try {
+                tx.rollback();
+            } finally {
+                invalidateDirtySubjects();
+                identityService.rollback();
+            }
+        }
+
+        @Override
+        public void setRollbackOnly() {
+            tx.setRollbackOnly();
+        }
+
+        private void invalidateDirtySubjects() {
+            if (secondLevelCache != null) {
+                secondLevelCache.invalidateAll(dirtySubjects);
+            }
+            dirtySubjects.clear();
+        }
+
+    }
+
 }
@@ -56,13 +56,22 @@ public class BeanQueryImpl extends ProjectableQuery<BeanQueryImpl> implements
 
     private final RDFConnection connection;
 
+    @Nullable
+    private final QueryPlanCache planCache;
+
     public BeanQueryImpl(Session session, Ontology ontology, RDFConnection connection) {
+        this(session, ontology, connection, null);
+    }
+
+    public BeanQueryImpl(Session session, Ontology ontology, RDFConnection connection,
+            @Nullable QueryPlanCache planCache) {
         super(new QueryMixin<BeanQueryImpl>());
         queryMixin.setSelf(this);
         this.session = session;
         this.ontology = ontology;
         this.converterRegistry = session.getConfiguration().getConverterRegistry();
         this.connection = connection;
+        this.planCache = planCache;
     }
 
     @Override
@@ -111,7 +120,12 @@ public class BeanQueryImpl extends ProjectableQuery<BeanQueryImpl> implements
     }
 
     private TupleQuery createTupleQuery(boolean forCount) {
-        return createBuilder().createTupleQuery(forCount);
+        if (planCache != null) {
+            return planCache.createTupleQuery(connection, createBuilder(), queryMixin.getMetadata(),
+                    session.getCurrentLocale(), forCount);
+        } else {
+            return createBuilder().createTupleQuery(forCount);
+        }
     }
 
     @Override
@@ -11,6 +11,7 @@ import org.joda.time.DateTime;
 
 import com.google.common.base.Strings;
 import com.mysema.converters.DateTimeConverter;
+import com.mysema.util.PatternCache;
 
 /**
  * @author tiwe
@@ -45,8 +46,7 @@ public final class QueryFunctions {
     }
 
     public static boolean like(String str, String likeExpression) {
-        String regex = likeExpression.replace("%", ".*").replaceAll("_", ".");
-        return str.matches(regex);
+        return PatternCache.DEFAULT.getLike(likeExpression).matcher(str).matches();
     }
 
     public static int millisecond(String str) {
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.query;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.mysema.query.QueryMetadata;
+import com.mysema.query.types.Constant;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.ParamExpression;
+import com.mysema.rdfbean.model.QueryLanguage;
+import com.mysema.rdfbean.model.QueryOptions;
+import com.mysema.rdfbean.model.RDFConnection;
+import com.mysema.rdfbean.model.RDFQueryImpl;
+import com.mysema.rdfbean.model.TupleQuery;
+
+/**
+ * QueryPlanCache caches the translations of bean queries into RDF queries by
+ * query shape
+ *
+ * <p>
+ * The constants of a bean query whose translation depends only on their type
+ * are translated into parameters of the RDF query. A query with a known shape
+ * is executed by binding its constants and modifiers to a copy of the cached
+ * RDF query, without running {@link RDFQueryBuilder}. Constants which are
+ * consumed in the translation, such as collections of IN expressions and
+ * patterns of string operations, are part of the cache key. The positions of
+ * the parameter constants are remembered per shape, constants of a shape
+ * which hasn't been translated yet are all part of the key.
+ * </p>
+ *
+ * <p>
+ * The cache is thread-safe and is meant to be shared by the sessions of one
+ * session factory.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+public final class QueryPlanCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 256;
+
+    private static final class Key {
+
+        private final String shape;
+
+        private final boolean forCount;
+
+        private final Locale locale;
+
+        private final QueryOptions options;
+
+        private final List<Object> values;
+
+        Key(String shape, boolean forCount, Locale locale, QueryOptions options) {
+            this(shape, forCount, locale, options, Collections.emptyList());
+        }
+
+        private Key(String shape, boolean forCount, Locale locale, QueryOptions options, List<Object> values) {
+            this.shape = shape;
+            this.forCount = forCount;
+            this.locale = locale;
+            this.options = options;
+            this.values = values;
+        }
+
+        /**
+         * Create a key for the given fixed constant values
+         *
+         * @param constants
+         * @param lifted
+         *            positions of the parameter constants or null
+         * @return
+         */
+        Key withValues(List<Constant<?>> constants, @Nullable Set<Integer> lifted) {
+            Object[] fixed = new Object[constants.size()];
+            for (int i = 0; i < fixed.length; i++) {
+                if (lifted == null || !lifted.contains(i)) {
+                    fixed[i] = constants.get(i).getConstant();
+                }
+            }
+            return new Key(shape, forCount, locale, options, Arrays.asList(fixed));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * shape.hashCode() + values.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (obj instanceof Key) {
+                Key other = (Key) obj;
+                return shape.equals(other.shape) && forCount == other.forCount
+                        && Objects.equal(locale, other.locale) && options == other.options
+                        && values.equals(other.values);
+            } else {
+                return false;
+            }
+        }
+
+    }
+
+    /**
+     * Translated query with the parameters bound to constants
+     */
+    private static final class Plan {
+
+        private final QueryMetadata metadata;
+
+        private final Map<ParamExpression<?>, Integer> params;
+
+        Plan(QueryMetadata metadata, Map<ParamExpression<?>, Integer> params) {
+            this.metadata = metadata;
+            this.params = params;
+        }
+
+        Set<Integer> getLifted() {
+            return new HashSet<Integer>(params.values());
+        }
+
+        @SuppressWarnings("unchecked")
+        QueryMetadata bind(RDFQueryBuilder builder, List<Constant<?>> constants, QueryMetadata source, boolean forCount) {
+            QueryMetadata md = metadata.clone();
+            for (Map.Entry<ParamExpression<?>, Integer> entry : params.entrySet()) {
+                md.setParam((ParamExpression<Object>) entry.getKey(), builder.toNode(constants.get(entry.getValue())));
+            }
+            if (!forCount) {
+                md.setModifiers(source.getModifiers());
+            }
+            return md;
+        }
+
+    }
+
+    private final Cache<Key, Plan> cache;
+
+    /**
+     * Positions of the parameter constants by shape
+     */
+    private final Cache<Key, Set<Integer>> lifted;
+
+    public QueryPlanCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public QueryPlanCache(int maximumSize) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        lifted = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * Create a tuple query for the query of the given builder
+     *
+     * @param connection
+     * @param builder
+     * @param metadata
+     *            metadata of the bean query
+     * @param locale
+     *            locale of the session
+     * @param forCount
+     * @return
+     */
+    TupleQuery createTupleQuery(RDFConnection connection, RDFQueryBuilder builder, QueryMetadata metadata,
+            Locale locale, boolean forCount) {
+        QueryShape shape = new QueryShape(metadata);
+        List<Constant<?>> constants = shape.getConstants();
+        Key shapeKey = new Key(shape.getKey(), forCount, locale, connection.getQueryOptions());
+        Plan plan = cache.getIfPresent(shapeKey.withValues(constants, lifted.getIfPresent(shapeKey)));
+        QueryMetadata md;
+        if (plan != null) {
+            md = plan.bind(builder, constants, metadata, forCount);
+        } else {
+            builder.liftConstants(constants);
+            RDFQueryImpl query = builder.build(forCount);
+            List<Expression<?>> projection = builder.getProjection();
+            md = query.getTupleQueryMetadata(projection.toArray(new Expression<?>[projection.size()]));
+            plan = new Plan(md.clone(), builder.getLiftedParams());
+            Set<Integer> positions = plan.getLifted();
+            lifted.put(shapeKey, positions);
+            cache.put(shapeKey.withValues(constants, positions), plan);
+        }
+        return connection.createQuery(QueryLanguage.TUPLE, md);
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+        lifted.invalidateAll();
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.query;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.mysema.query.JoinExpression;
+import com.mysema.query.QueryFlag;
+import com.mysema.query.QueryMetadata;
+import com.mysema.query.types.Constant;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.FactoryExpression;
+import com.mysema.query.types.Operation;
+import com.mysema.query.types.OrderSpecifier;
+import com.mysema.query.types.ParamExpression;
+import com.mysema.query.types.Path;
+import com.mysema.query.types.SubQueryExpression;
+import com.mysema.query.types.TemplateExpression;
+import com.mysema.query.types.Visitor;
+
+/**
+ * QueryShape is the serialized form of a query with the constants replaced by
+ * positional placeholders
+ *
+ * <p>
+ * Queries which differ only in their constants and modifiers have the same
+ * shape. The constants are collected in the order of their placeholders.
+ * </p>
+ *
+ * @author tiwe
+ *
+ */
+final class QueryShape implements Visitor<Void, StringBuilder> {
+
+    private final List<Constant<?>> constants = new ArrayList<Constant<?>>();
+
+    private final Map<Constant<?>, Integer> indexes = new IdentityHashMap<Constant<?>, Integer>();
+
+    private final String key;
+
+    public QueryShape(QueryMetadata md) {
+        StringBuilder builder = new StringBuilder();
+        for (JoinExpression join : md.getJoins()) {
+            builder.append(join.getType()).append(' ');
+            handle(join.getTarget(), builder);
+            handle(join.getCondition(), builder);
+            builder.append(join.getFlags());
+        }
+        builder.append(" where ");
+        handle(md.getWhere(), builder);
+        builder.append(" group by ");
+        for (Expression<?> expr : md.getGroupBy()) {
+            handle(expr, builder);
+        }
+        builder.append(" having ");
+        handle(md.getHaving(), builder);
+        builder.append(" order by ");
+        for (OrderSpecifier<?> order : md.getOrderBy()) {
+            handle(order.getTarget(), builder);
+            builder.append(' ').append(order.getOrder()).append(' ').append(order.getNullHandling()).append(',');
+        }
+        builder.append(" select ");
+        for (Expression<?> expr : md.getProjection()) {
+            handle(expr, builder);
+        }
+        builder.append(md.isDistinct() ? " distinct" : "").append(md.isUnique() ? " unique" : "");
+        for (QueryFlag flag : md.getFlags()) {
+            builder.append(' ').append(flag.getPosition()).append(' ');
+            handle(flag.getFlag(), builder);
+        }
+        key = builder.toString();
+    }
+
+    private void handle(@Nullable Expression<?> expr, StringBuilder builder) {
+        if (expr != null) {
+            expr.accept(this, builder);
+        }
+        builder.append(',');
+    }
+
+    public List<Constant<?>> getConstants() {
+        return constants;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public Void visit(Constant<?> expr, StringBuilder builder) {
+        Integer index = indexes.get(expr);
+        if (index == null) {
+            index = constants.size();
+            indexes.put(expr, index);
+            constants.add(expr);
+        }
+        builder.append('?').append(index).append(':').append(expr.getConstant().getClass().getName());
+        return null;
+    }
+
+    @Override
+    public Void visit(FactoryExpression<?> expr, StringBuilder builder) {
+        builder.append(expr.getType().getName()).append('(');
+        for (Expression<?> arg : expr.getArgs()) {
+            handle(arg, builder);
+        }
+        builder.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visit(Operation<?> expr, StringBuilder builder) {
+        builder.append(expr.getOperator().getId()).append(':').append(expr.getType().getName()).append('(');
+        for (Expression<?> arg : expr.getArgs()) {
+            handle(arg, builder);
+        }
+        builder.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visit(ParamExpression<?> expr, StringBuilder builder) {
+        builder.append('$').append(expr.getName()).append(':').append(expr.getType().getName());
+        return null;
+    }
+
+    @Override
+    public Void visit(Path<?> expr, StringBuilder builder) {
+        builder.append(expr.getMetadata().getPathType()).append('(');
+        if (expr.getMetadata().getParent() != null) {
+            handle(expr.getMetadata().getParent(), builder);
+        }
+        builder.append(expr.getMetadata().getElement()).append(':').append(expr.getType().getName()).append(')');
+        return null;
+    }
+
+    @Override
+    public Void visit(SubQueryExpression<?> expr, StringBuilder builder) {
+        QueryShape shape = new QueryShape(expr.getMetadata());
+        // constants of subqueries are part of the key
+        builder.append('(').append(shape.getKey());
+        for (Constant<?> constant : shape.getConstants()) {
+            builder.append(',').append(constant.getConstant());
+        }
+        builder.append(')');
+        return null;
+    }
+
+    @Override
+    public Void visit(TemplateExpression<?> expr, StringBuilder builder) {
+        builder.append(expr.getTemplate()).append(':').append(expr.getType().getName()).append('(');
+        for (Object arg : expr.getArgs()) {
+            if (arg instanceof Expression<?>) {
+                handle((Expression<?>) arg, builder);
+            } else {
+                builder.append(arg).append(',');
+            }
+        }
+        builder.append(')');
+        return null;
+    }
+
+}
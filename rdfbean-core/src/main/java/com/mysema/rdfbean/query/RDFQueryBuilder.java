@@ -3,6 +3,7 @@ package com.mysema.rdfbean.query;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -121,6 +122,11 @@ public class RDFQueryBuilder implements Visitor<Object, Filters> {
 
     private Map<Path<?>, ParamExpression<?>> pathToKnown = new HashMap<Path<?>, ParamExpression<?>>();
 
+    @Nullable
+    private Map<Constant<?>, Integer> constantIndexes;
+
+    private final Map<ParamExpression<?>, Integer> liftedParams = new HashMap<ParamExpression<?>, Integer>();
+
     public RDFQueryBuilder(RDFConnection connection,
             Session session,
             Configuration configuration,
@@ -136,6 +142,35 @@ public class RDFQueryBuilder implements Visitor<Object, Filters> {
         this.projection = new ArrayList<Expression<?>>();
     }
 
+    /**
+     * Translate the given constants of the query into parameters, see
+     * {@link #getLiftedParams()}
+     *
+     * @param constants
+     */
+    void liftConstants(List<Constant<?>> constants) {
+        constantIndexes = new IdentityHashMap<Constant<?>, Integer>();
+        for (int i = 0; i < constants.size(); i++) {
+            if (!constantIndexes.containsKey(constants.get(i))) {
+                constantIndexes.put(constants.get(i), i);
+            }
+        }
+    }
+
+    /**
+     * Get the parameters of the built query with the indexes of the constants
+     * they are bound to
+     *
+     * @return
+     */
+    Map<ParamExpression<?>, Integer> getLiftedParams() {
+        return liftedParams;
+    }
+
+    List<Expression<?>> getProjection() {
+        return projection;
+    }
+
     @SuppressWarnings("unchecked")
     RDFQueryImpl build(boolean forCount) {
         RDFQueryImpl query = new RDFQueryImpl(connection);
@@ -326,6 +361,35 @@ public class RDFQueryBuilder implements Visitor<Object, Filters> {
     }
 
     public Expression<?> visit(Constant<?> constant, Filters filters) {
+        Integer index = constantIndexes != null ? constantIndexes.get(constant) : null;
+        if (index != null && isLiftable(constant.getConstant())) {
+            Param<NODE> param = var("_const_" + index);
+            params.put(param, toNode(constant));
+            liftedParams.put(param, index);
+            return param;
+        } else {
+            return convert(constant);
+        }
+    }
+
+    /**
+     * Get the node for the given constant
+     *
+     * @param constant
+     * @return
+     */
+    NODE toNode(Constant<?> constant) {
+        return (NODE) ((Constant<?>) convert(constant)).getConstant();
+    }
+
+    /**
+     * Constants are lifted if their translation depends only on their type
+     */
+    private static boolean isLiftable(Object value) {
+        return !(value instanceof Class<?> || value instanceof Collection<?> || value instanceof Map<?, ?>);
+    }
+
+    private Expression<?> convert(Constant<?> constant) {
         Object javaValue = constant.getConstant();
         ConverterRegistry converter = configuration.getConverterRegistry();
         if (List.class.isAssignableFrom(constant.getType()) && ((List<?>) constant.getConstant()).isEmpty()) {
@@ -423,8 +487,14 @@ public class RDFQueryBuilder implements Visitor<Object, Filters> {
 
                     if (expr.getArg(1) instanceof Constant) {
                         ParamExpression<?> lhs = (ParamExpression<?>) transform(expr.getArg(0), filters);
-                        Constant<?> rhs = (Constant<?>) transform(expr.getArg(1), filters);
-                        params.put(lhs, rhs.getConstant());
+                        Expression<?> rhs = transform(expr.getArg(1), filters);
+                        if (rhs instanceof Constant<?>) {
+                            params.put(lhs, ((Constant<?>) rhs).getConstant());
+                        } else {
+                            // lifted constant
+                            params.put(lhs, params.remove(rhs));
+                            liftedParams.put(lhs, liftedParams.remove(rhs));
+                        }
                         return null;
 
                     } else if (expr.getArg(1) instanceof Path) {
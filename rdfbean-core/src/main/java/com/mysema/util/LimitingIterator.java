@@ -8,15 +8,16 @@ package com.mysema.util;
 import java.util.Iterator;
 
 import com.mysema.commons.lang.Assert;
+import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.query.QueryModifiers;
 
 /**
  * LimitingIterator is and Iterator adapter which takes limit and offset into
- * account
+ * account. Closeable iterators are closed once the limit has been reached.
  * 
  * @author tiwe
  */
-public class LimitingIterator<E> implements Iterator<E> {
+public class LimitingIterator<E> implements CloseableIterator<E> {
 
     public static <T> Iterator<T> create(Iterator<T> iterator, QueryModifiers modifiers) {
         if (modifiers.isRestricting()) {
@@ -47,7 +48,12 @@ public class LimitingIterator<E> implements Iterator<E> {
 
     @Override
     public boolean hasNext() {
-        return original.hasNext() && counter < limit;
+        if (counter < limit) {
+            return original.hasNext();
+        } else {
+            close();
+            return false;
+        }
     }
 
     @Override
@@ -56,6 +62,13 @@ public class LimitingIterator<E> implements Iterator<E> {
         return original.next();
     }
 
+    @Override
+    public void close() {
+        if (original instanceof CloseableIterator<?>) {
+            ((CloseableIterator<?>) original).close();
+        }
+    }
+
     @Override
     public void remove() {
         throw new UnsupportedOperationException();
@@ -0,0 +1,176 @@
+package com.mysema.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+
+import com.google.common.base.Function;
+import com.google.common.base.Throwables;
+import com.mysema.commons.lang.CloseableIterator;
+
+/**
+ * ParallelIterator iterates the given sources concurrently on an executor and
+ * merges their elements in arrival order. The elements are converted on the
+ * producing threads, which allows mutable elements to be copied before they
+ * are handed over.
+ *
+ * <p>
+ * The elements are buffered in a bounded queue, producers block while the
+ * queue is full. Closing the iterator cancels the remaining producers.
+ * </p>
+ *
+ * @author tiwe
+ *
+ * @param <S> source element type
+ * @param <T> element type
+ */
+public final class ParallelIterator<S, T> implements CloseableIterator<T> {
+
+    /**
+     * Default capacity of the element queue
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private static final long OFFER_TIMEOUT = 100;
+
+    private static final Object END = new Object();
+
+    private static final class Failure {
+
+        private final Throwable throwable;
+
+        Failure(Throwable throwable) {
+            this.throwable = throwable;
+        }
+
+    }
+
+    private final BlockingQueue<Object> queue;
+
+    private final List<Future<?>> futures;
+
+    private volatile boolean closed;
+
+    private int running;
+
+    @Nullable
+    private T next;
+
+    public ParallelIterator(ExecutorService executor, List<? extends Iterable<S>> sources,
+            Function<? super S, ? extends T> transformer) {
+        this(executor, sources, transformer, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new ParallelIterator
+     *
+     * @param executor
+     * @param sources
+     * @param transformer
+     * @param capacity
+     *            maximum amount of buffered elements
+     */
+    public ParallelIterator(ExecutorService executor, List<? extends Iterable<S>> sources,
+            final Function<? super S, ? extends T> transformer, int capacity) {
+        queue = new ArrayBlockingQueue<Object>(capacity);
+        futures = new ArrayList<Future<?>>(sources.size());
+        running = sources.size();
+        for (final Iterable<S> source : sources) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (S element : source) {
+                            if (!offer(transformer.apply(element))) {
+                                return;
+                            }
+                        }
+                        offer(END);
+                    } catch (InterruptedException e) {
+                        // closed
+                    } catch (Throwable e) {
+                        try {
+                            offer(new Failure(e));
+                        } catch (InterruptedException e2) {
+                            // closed
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Wait for free space in the queue until the iterator is closed
+     *
+     * @param element
+     * @return false, if the iterator has been closed
+     * @throws InterruptedException
+     */
+    private boolean offer(Object element) throws InterruptedException {
+        while (!closed) {
+            if (queue.offer(element, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public boolean hasNext() {
+        while (next == null && running > 0) {
+            Object element;
+            try {
+                element = queue.take();
+            } catch (InterruptedException e) {
+                close();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            if (element == END) {
+                running--;
+            } else if (element instanceof Failure) {
+                close();
+                throw Throwables.propagate(((Failure) element).throwable);
+            } else {
+                next = (T) element;
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public T next() {
+        if (hasNext()) {
+            T rv = next;
+            next = null;
+            return rv;
+        } else {
+            throw new NoSuchElementException();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        running = 0;
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+        queue.clear();
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+}
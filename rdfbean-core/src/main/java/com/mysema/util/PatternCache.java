@@ -0,0 +1,136 @@
+package com.mysema.util;
+
+import java.util.regex.Pattern;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * PatternCache is a thread-safe, size bounded cache of compiled regular
+ * expression and LIKE patterns. The least recently used patterns are evicted
+ * when the maximum size is reached.
+ *
+ * @author tiwe
+ *
+ */
+public final class PatternCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+    /**
+     * Shared instance for patterns given in queries
+     */
+    public static final PatternCache DEFAULT = new PatternCache(DEFAULT_MAXIMUM_SIZE);
+
+    private static final int REGEX = 0, REGEX_IC = 1, LIKE = 2;
+
+    private static final class Key {
+
+        private final int type;
+
+        private final String pattern;
+
+        Key(int type, String pattern) {
+            this.type = type;
+            this.pattern = pattern;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type + pattern.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            } else if (obj instanceof Key) {
+                Key other = (Key) obj;
+                return type == other.type && pattern.equals(other.pattern);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("type", type).add("pattern", pattern).toString();
+        }
+
+    }
+
+    private final LoadingCache<Key, Pattern> cache;
+
+    public PatternCache(int maximumSize) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build(new CacheLoader<Key, Pattern>() {
+                    @Override
+                    public Pattern load(Key key) {
+                        if (key.type == LIKE) {
+                            return Pattern.compile(key.pattern.replace("%", ".*").replaceAll("_", "."));
+                        } else {
+                            return Pattern.compile(key.pattern, key.type == REGEX_IC ? Pattern.CASE_INSENSITIVE : 0);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Get the compiled form of the given regular expression
+     *
+     * @param regex
+     * @param caseInsensitive
+     * @return
+     */
+    public Pattern getRegex(String regex, boolean caseInsensitive) {
+        return get(new Key(caseInsensitive ? REGEX_IC : REGEX, regex));
+    }
+
+    /**
+     * Get the compiled form of the given LIKE expression, where % matches any
+     * sequence and _ a single character
+     *
+     * @param like
+     * @return
+     */
+    public Pattern getLike(String like) {
+        return get(new Key(LIKE, like));
+    }
+
+    private Pattern get(Key key) {
+        try {
+            return cache.getUnchecked(key);
+        } catch (UncheckedExecutionException e) {
+            // rethrow PatternSyntaxException as is
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+}
@@ -1,6 +1,11 @@
 package com.mysema.rdfbean.model;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -13,4 +18,28 @@ public class BindingsTest {
         assertEquals("{} {s=\"X\"}", bindings.toString());
     }
 
+    @Test
+    public void Slots() {
+        Bindings parent = new Bindings();
+        Bindings child = new Bindings(parent);
+        int s = child.getSlot("s");
+        assertEquals(s, parent.getSlot("s"));
+        parent.put("s", RDF.type);
+        child.put("o", RDFS.Class);
+        assertEquals(RDF.type, child.get(s));
+        assertEquals(RDFS.Class, child.get("o"));
+        assertNull(parent.get("o"));
+
+        Map<String, NODE> expected = new HashMap<String, NODE>();
+        expected.put("s", RDF.type);
+        assertEquals(expected, child.toMap(Arrays.asList("s", "p")));
+        expected.put("o", RDFS.Class);
+        assertEquals(expected, child.toMap());
+        assertEquals(expected, child.copy().toMap());
+
+        child.clear();
+        assertNull(child.get("o"));
+        assertEquals(RDF.type, child.get("s"));
+    }
+
 }
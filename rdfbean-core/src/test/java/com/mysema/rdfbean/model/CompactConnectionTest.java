@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.mysema.commons.lang.IteratorAdapter;
+
+public class CompactConnectionTest {
+
+    @Test
+    public void Update_with_nulls() {
+        RDFConnection conn = new CompactRepository().openConnection();
+        conn.update(Collections.<STMT> emptySet(), null);
+        conn.update(null, Collections.<STMT> emptySet());
+        conn.update(null, null);
+    }
+
+    @Test
+    public void Remove_With_Context() {
+        CompactConnection conn = new CompactRepository().openConnection();
+        STMT stmt1 = new STMT(RDF.type, RDF.type, RDF.type);
+        STMT stmt2 = new STMT(RDF.type, RDF.type, RDF.type, RDF.type);
+        conn.update(null, Arrays.asList(stmt1, stmt2));
+        conn.update(Collections.singleton(stmt2), null);
+
+        assertFalse(conn.exists(null, null, null, RDF.type, false));
+        assertTrue(conn.exists(RDF.type, RDF.type, RDF.type, null, false));
+    }
+
+    @Test
+    public void Query() {
+        CompactConnection conn = new CompactRepository().openConnection();
+        conn.addStatements(
+                new STMT(RDFS.Resource, RDF.type, RDFS.Class),
+                new STMT(RDFS.Resource, RDFS.label, new LIT("Resource")),
+                new STMT(RDFS.Class, RDF.type, RDFS.Class),
+                new STMT(RDFS.Class, RDFS.label, new LIT("Class")));
+
+        RDFQuery query = new RDFQueryImpl(conn);
+        query.where(
+                QNODE.s.a(RDFS.Class),
+                QNODE.s.has(RDFS.label, QNODE.o),
+                QNODE.o.eq(new LIT("Class")));
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query.select(QNODE.s));
+        assertEquals(1, rows.size());
+        assertEquals(RDFS.Class, rows.get(0).get("s"));
+    }
+
+}
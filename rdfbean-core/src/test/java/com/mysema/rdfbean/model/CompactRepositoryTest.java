@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+
+public class CompactRepositoryTest {
+
+    private final CompactRepository repository = new CompactRepository();
+
+    @Before
+    public void setUp() {
+        List<STMT> stmts = new ArrayList<STMT>();
+        stmts.add(new STMT(RDF.type, RDF.type, RDF.Property));
+        stmts.add(new STMT(RDF.type, RDFS.label, new LIT("type")));
+        stmts.add(new STMT(RDF.type, RDFS.label, new LIT("tyyppi", new Locale("fi"))));
+        stmts.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+        stmts.add(new STMT(RDFS.Resource, RDFS.label, new LIT("Resource")));
+        repository.add(stmts.toArray(new STMT[stmts.size()]));
+    }
+
+    @Test
+    public void Exists() {
+        assertTrue(repository.exists(null, null, null, null));
+        repository.remove(null, null, null, null);
+        assertFalse(repository.exists(null, null, null, null));
+    }
+
+    @Test
+    public void Export_Turtle() throws UnsupportedEncodingException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        repository.export(Format.TURTLE, null, baos);
+        String str = new String(baos.toByteArray(), "UTF-8");
+        assertTrue(str.contains("tyyppi"));
+    }
+
+    @Test
+    public void FindStatements() {
+        assertEquals(5, find(null, null, null, null).size());
+        assertEquals(3, find(RDF.type, null, null, null).size());
+        assertEquals(2, find(RDF.type, RDFS.label, null, null).size());
+        assertEquals(1, find(RDF.type, RDFS.label, new LIT("type"), null).size());
+        assertEquals(1, find(RDF.type, null, RDF.Property, null).size());
+        assertEquals(3, find(null, RDFS.label, null, null).size());
+        assertEquals(1, find(null, RDFS.label, new LIT("Resource"), null).size());
+        assertEquals(1, find(null, null, RDFS.Class, null).size());
+        assertEquals(0, find(null, null, RDFS.Datatype, null).size());
+        assertEquals(0, find(null, null, null, RDF.type).size());
+    }
+
+    @Test
+    public void FindStatements_with_Context() {
+        STMT stmt = new STMT(RDFS.Class, RDF.type, RDFS.Class, RDFS.Resource);
+        repository.add(stmt);
+        assertEquals(Arrays.asList(stmt), find(null, null, null, RDFS.Resource));
+        assertEquals(Arrays.asList(stmt), find(RDFS.Class, null, null, RDFS.Resource));
+        assertEquals(6, find(null, null, null, null).size());
+    }
+
+    @Test
+    public void FindStatements_Inferred() {
+        STMT stmt = new STMT(RDFS.Class, RDF.type, RDFS.Resource, null, false);
+        repository.add(stmt);
+        assertEquals(0, find(RDFS.Class, null, null, null).size());
+        CloseableIterator<STMT> stmts = repository.findStatements(RDFS.Class, null, null, null, true);
+        assertEquals(Arrays.asList(stmt), IteratorAdapter.asList(stmts));
+    }
+
+    @Test
+    public void Add_Duplicates() {
+        repository.add(new STMT(RDF.type, RDF.type, RDF.Property));
+        assertEquals(5, repository.size());
+    }
+
+    @Test
+    public void Remove_by_Subject() {
+        repository.remove(RDF.type, null, null, null);
+        assertTrue(exists(RDFS.Resource, null, null, null));
+        assertFalse(exists(RDF.type, null, null, null));
+        assertFalse(exists(null, null, RDF.Property, null));
+    }
+
+    @Test
+    public void Remove_by_Object() {
+        repository.remove(null, null, RDF.Property, null);
+        assertTrue(exists(RDFS.Resource, null, null, null));
+        assertTrue(exists(RDF.type, null, null, null));
+        assertFalse(exists(null, null, RDF.Property, null));
+    }
+
+    @Test
+    public void Remove_by_Predicate() {
+        repository.remove(null, RDF.type, null, null);
+        assertTrue(exists(RDFS.Resource, null, null, null));
+        assertTrue(exists(RDF.type, null, null, null));
+        assertFalse(exists(null, RDF.type, null, null));
+    }
+
+    @Test
+    public void Remove_by_Subject_and_Object() {
+        repository.remove(RDF.type, null, RDF.Property, null);
+        assertEquals(4, repository.size());
+        assertTrue(exists(RDF.type, RDFS.label, null, null));
+    }
+
+    @Test
+    public void Remove_all() {
+        repository.remove(null, null, null, null);
+        assertFalse(exists(RDFS.Resource, null, null, null));
+        assertFalse(exists(RDF.type, null, null, null));
+        assertFalse(exists(null, RDF.type, null, null));
+    }
+
+    @Test
+    public void RemoveStatements() {
+        repository.removeStatements(Arrays.asList(
+                new STMT(RDF.type, RDF.type, RDF.Property),
+                new STMT(RDF.type, RDF.type, RDF.Property, RDF.type),
+                new STMT(RDF.first, RDF.type, RDF.Property)));
+        assertEquals(4, repository.size());
+        assertFalse(exists(null, null, RDF.Property, null));
+    }
+
+    @Test
+    public void Iteration_during_Update() {
+        CloseableIterator<STMT> stmts = repository.findStatements(null, null, null, null, false);
+        repository.add(new STMT(RDFS.Class, RDF.type, RDFS.Class));
+        repository.remove(RDF.type, null, null, null);
+        assertEquals(5, IteratorAdapter.asList(stmts).size());
+        assertEquals(3, repository.size());
+    }
+
+    private List<STMT> find(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        return IteratorAdapter.asList(repository.findStatements(subject, predicate, object, context, false));
+    }
+
+    private boolean exists(@Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        CloseableIterator<STMT> stmts = repository.findStatements(subject, predicate, object, context, false);
+        boolean rv = stmts.hasNext();
+        stmts.close();
+        return rv;
+    }
+
+    @Test
+    public void Snapshot() {
+        File file = new File("target/compact.snapshot");
+        repository.add(new STMT(new BID("b1"), RDFS.label, new LIT("1", XSD.intType), RDF.type));
+        repository.getNextLocalId();
+        repository.writeSnapshot(file);
+
+        CompactRepository opened = CompactRepository.openSnapshot(file);
+        assertEquals(repository.size(), opened.size());
+        assertEquals(1, IteratorAdapter.asList(opened.findStatements(null, null, null, RDF.type, false)).size());
+        assertEquals(4, find(opened, null, RDFS.label, null, null).size());
+        assertTrue(opened.exists(new BID("b1"), null, new LIT("1", XSD.intType), null));
+        assertTrue(opened.exists(RDF.type, RDFS.label, new LIT("tyyppi", new Locale("fi")), null));
+        assertFalse(opened.exists(RDF.type, RDFS.label, new LIT("tyyppi"), null));
+        assertEquals(2, opened.getNextLocalId());
+
+        // updates are kept on the heap
+        opened.add(new STMT(RDFS.Class, RDFS.label, new LIT("Class")));
+        opened.remove(RDF.type, null, null, null);
+        assertEquals(4, opened.size());
+        assertTrue(opened.exists(RDFS.Class, RDFS.label, null, null));
+        assertEquals(6, CompactRepository.openSnapshot(file).size());
+    }
+
+    @Test
+    public void Snapshot_Empty() {
+        File file = new File("target/compact-empty.snapshot");
+        new CompactRepository().writeSnapshot(file);
+        assertEquals(0, CompactRepository.openSnapshot(file).size());
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void Snapshot_Invalid_File() {
+        CompactRepository.openSnapshot(new File("pom.xml"));
+    }
+
+    @Test
+    public void Estimate() {
+        assertEquals(5, repository.estimate(null, null, null, null));
+        assertEquals(3, repository.estimate(null, RDFS.label, null, null));
+        assertEquals(2, repository.estimate(RDF.type, RDFS.label, null, null));
+        assertEquals(1, repository.estimate(null, RDF.type, RDFS.Class, null));
+        assertEquals(0, repository.estimate(null, RDFS.comment, null, null));
+    }
+
+    @Test
+    public void Load_NTriples() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        repository.export(Format.NTRIPLES, null, baos);
+
+        CompactRepository loaded = new CompactRepository();
+        loaded.load(Format.NTRIPLES, new ByteArrayInputStream(baos.toByteArray()), RDFS.Resource, false);
+        assertEquals(5, loaded.size());
+        assertEquals(find(null, null, null, null).size(), find(loaded, null, null, null, RDFS.Resource).size());
+    }
+
+    private List<STMT> find(CompactRepository repo, @Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        return IteratorAdapter.asList(repo.findStatements(subject, predicate, object, context, false));
+    }
+
+}
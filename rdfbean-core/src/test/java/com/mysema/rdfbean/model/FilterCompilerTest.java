@@ -0,0 +1,74 @@
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.query.types.Constant;
+import com.mysema.query.types.ConstantImpl;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.Ops;
+import com.mysema.query.types.expr.BooleanOperation;
+import com.mysema.query.types.expr.StringOperation;
+
+public class FilterCompilerTest {
+
+    private final FilterCompiler compiler = new FilterCompiler();
+
+    private final QLIT label = new QLIT("label");
+
+    private final Bindings bindings = new Bindings();
+
+    @Before
+    public void setUp() {
+        bindings.put("label", new LIT("Hello World"));
+        bindings.put("s", RDF.type);
+    }
+
+    private static Constant<LIT> literal(String value) {
+        return new ConstantImpl<LIT>(LIT.class, new LIT(value));
+    }
+
+    private boolean matches(Expression<?> expr) {
+        return compiler.compilePredicate(expr, bindings).apply(bindings);
+    }
+
+    @Test
+    public void Eq_and_In() {
+        assertTrue(matches(QNODE.s.eq(RDF.type)));
+        assertFalse(matches(QNODE.s.ne(RDF.type)));
+        assertTrue(matches(QNODE.s.in(RDF.type, RDFS.label)));
+        assertFalse(matches(QNODE.s.in(RDF.first, RDFS.label)));
+        assertFalse(matches(QNODE.o.in(RDF.type, RDFS.label)));
+    }
+
+    @Test
+    public void String_Matching() {
+        assertTrue(matches(label.like("Hello%")));
+        assertFalse(matches(label.like("Hello")));
+        assertTrue(matches(label.eqIgnoreCase("hello world")));
+        assertTrue(matches(BooleanOperation.create(Ops.STARTS_WITH_IC, label, literal("hello"))));
+        assertTrue(matches(BooleanOperation.create(Ops.ENDS_WITH_IC, label, literal("WORLD"))));
+        assertTrue(matches(BooleanOperation.create(Ops.STRING_CONTAINS_IC, label, literal("O w"))));
+        assertFalse(matches(BooleanOperation.create(Ops.STRING_CONTAINS_IC, label, literal("x"))));
+        assertTrue(matches(label.matches("H.*d")));
+        assertFalse(matches(label.isEmpty()));
+    }
+
+    @Test
+    public void Compare() {
+        assertTrue(matches(label.lt(new LIT("Z"))));
+        assertFalse(matches(label.goe(new LIT("Z"))));
+        assertTrue(matches(label.isNotNull().and(QNODE.o.isNull())));
+    }
+
+    @Test
+    public void Value() {
+        Expression<?> lower = StringOperation.create(Ops.LOWER, label);
+        assertEquals(new LIT("hello world"), compiler.compileValue(lower, bindings).apply(bindings));
+    }
+
+}
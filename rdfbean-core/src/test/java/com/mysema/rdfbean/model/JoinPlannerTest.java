@@ -0,0 +1,74 @@
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class JoinPlannerTest {
+
+    private final CompactConnection connection = new CompactConnection(new CompactRepository());
+
+    private final QID x = new QID("x");
+
+    private final QLIT name = new QLIT("name");
+
+    private final PatternBlock type = Blocks.pattern(x, RDF.type, FOAF.Person);
+
+    private final PatternBlock mbox = Blocks.pattern(x, FOAF.mbox, new LIT("0@example.com"));
+
+    private final PatternBlock names = Blocks.pattern(x, FOAF.name, name);
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 100; i++) {
+            BID person = new BID();
+            connection.addStatements(
+                    new STMT(person, RDF.type, FOAF.Person),
+                    new STMT(person, FOAF.name, new LIT("Person " + i)),
+                    new STMT(person, FOAF.mbox, new LIT(i + "@example.com")));
+        }
+    }
+
+    private List<Block> order(CardinalityEstimator estimator, Block... blocks) {
+        QueryRDFVisitor visitor = new QueryRDFVisitor(connection);
+        return new JoinPlanner(estimator, visitor).order(Arrays.asList(blocks), null, new Bindings(),
+                Collections.<String, List<NODE>> emptyMap());
+    }
+
+    @Test
+    public void Selective_Pattern_First() {
+        assertEquals(Arrays.<Block> asList(mbox, type, names), order(connection, type, names, mbox));
+    }
+
+    @Test
+    public void Selective_Pattern_First_without_Statistics() {
+        assertEquals(Arrays.<Block> asList(mbox, type, names), order(null, type, names, mbox));
+    }
+
+    @Test
+    public void Connected_Patterns_First() {
+        QID y = new QID("y");
+        PatternBlock other = Blocks.pattern(y, FOAF.name, new QLIT("otherName"));
+        assertEquals(Arrays.<Block> asList(mbox, type, other), order(connection, type, other, mbox));
+    }
+
+    @Test
+    public void Other_Blocks_keep_Position() {
+        Block optional = Blocks.optional(names);
+        assertEquals(Arrays.<Block> asList(type, optional, mbox), order(connection, type, optional, mbox));
+    }
+
+    @Test
+    public void Query() {
+        RDFQuery query = new RDFQueryImpl(connection);
+        Map<String, NODE> row = query.where(type, names, mbox).selectSingle(name);
+        assertEquals(new LIT("Person 0"), row.get("name"));
+    }
+
+}
@@ -5,10 +5,16 @@
  */
 package com.mysema.rdfbean.model;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
+import java.math.BigDecimal;
 import java.util.Locale;
 
+import org.joda.time.Instant;
+
 import org.junit.Test;
 
 public class LITTest {
@@ -25,4 +31,30 @@ public class LITTest {
         assertNotNull(lit4.toString());
     }
 
+    @Test
+    public void GetKey() {
+        assertEquals(Long.valueOf(12), new LIT("12", XSD.intType).getKey());
+        assertEquals(Long.valueOf(12), new LIT("+12", XSD.integerType).getKey());
+        assertEquals(new BigDecimal("12345678901234567890"), new LIT("12345678901234567890", XSD.integerType).getKey());
+        assertEquals(new BigDecimal("1.50"), new LIT("1.50", XSD.decimalType).getKey());
+        assertEquals(Double.valueOf(1.5), new LIT("1.5", XSD.doubleType).getKey());
+        assertEquals(Double.POSITIVE_INFINITY, new LIT("INF", XSD.floatType).getKey());
+        assertEquals(new Instant(0), new LIT("1970-01-01", XSD.date).getKey());
+        assertEquals(new Instant(1000), new LIT("1970-01-01T02:00:01+02:00", XSD.dateTime).getKey());
+    }
+
+    @Test
+    public void GetKey_without_Key() {
+        assertNull(new LIT("12").getKey());
+        assertNull(new LIT("12", Locale.ENGLISH).getKey());
+        assertNull(new LIT("x", XSD.intType).getKey());
+        assertNull(new LIT("x", XSD.date).getKey());
+    }
+
+    @Test
+    public void GetKey_is_Cached() {
+        LIT lit = new LIT("1.5", XSD.decimalType);
+        assertSame(lit.getKey(), lit.getKey());
+    }
+
 }
@@ -1,13 +1,19 @@
 package com.mysema.rdfbean.model;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import org.junit.Test;
 
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+
 public class MiniConnectionTest {
 
     @Test
@@ -40,4 +46,78 @@ public class MiniConnectionTest {
 
     }
 
+    @Test
+    public void CopyOnWrite_Snapshot_Isolation() {
+        MiniRepository repository = new MiniRepository(16, true, true);
+        MiniConnection reader = repository.openConnection();
+        MiniConnection writer = repository.openConnection();
+        writer.addStatements(new STMT(RDF.type, RDF.type, RDF.Property));
+
+        assertTrue(writer.exists(RDF.type, null, null, null, false));
+        assertFalse(reader.exists(RDF.type, null, null, null, false));
+        reader.clear();
+        assertTrue(reader.exists(RDF.type, null, null, null, false));
+    }
+
+    @Test
+    public void CopyOnWrite_Iteration_during_Update() {
+        MiniRepository repository = new MiniRepository(16, true, true);
+        MiniConnection conn = repository.openConnection();
+        conn.addStatements(
+                new STMT(RDF.type, RDF.type, RDF.Property),
+                new STMT(RDF.type, RDFS.label, new LIT("type")));
+
+        CloseableIterator<STMT> stmts = conn.findStatements(RDF.type, null, null, null, false);
+        stmts.next();
+        conn.addStatements(new STMT(RDF.type, RDFS.comment, new LIT("comment")));
+        conn.remove(RDF.type, RDFS.label, null, null);
+        assertTrue(stmts.hasNext());
+        stmts.next();
+        assertFalse(stmts.hasNext());
+
+        assertEquals(2, IteratorAdapter.asList(conn.findStatements(RDF.type, null, null, null, false)).size());
+    }
+
+    @Test
+    public void CopyOnWrite_Concurrent_Readers() throws InterruptedException {
+        final MiniRepository repository = new MiniRepository(16, true, true);
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        Thread writer = new Thread() {
+            @Override
+            public void run() {
+                MiniConnection conn = repository.openConnection();
+                for (int i = 0; i < 1000; i++) {
+                    conn.update(null, Collections.singleton(new STMT(RDF.type, RDFS.label, new LIT(String.valueOf(i)))));
+                }
+            }
+        };
+        List<Thread> readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            readers.add(new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 200; j++) {
+                            MiniConnection conn = repository.openConnection();
+                            int count = IteratorAdapter.asList(conn.findStatements(RDF.type, RDFS.label, null, null, false)).size();
+                            int again = IteratorAdapter.asList(conn.findStatements(RDF.type, RDFS.label, null, null, false)).size();
+                            assertEquals(count, again);
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            });
+        }
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertEquals(Collections.emptyList(), errors);
+    }
+
 }
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.annotation.Nullable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+
+public class MiniRepositoryIndexTest {
+
+    private final MiniRepository repository = new MiniRepository();
+
+    private final MiniRepository indexed = new MiniRepository(16, true, true, true, false);
+
+    @Before
+    public void setUp() {
+        List<STMT> stmts = getStatements();
+        repository.add(stmts.toArray(new STMT[stmts.size()]));
+        indexed.add(stmts.toArray(new STMT[stmts.size()]));
+    }
+
+    private List<STMT> getStatements() {
+        List<STMT> stmts = new ArrayList<STMT>();
+        stmts.add(new STMT(RDF.type, RDF.type, RDF.Property));
+        stmts.add(new STMT(RDF.type, RDFS.label, new LIT("type")));
+        stmts.add(new STMT(RDF.type, RDFS.label, new LIT("tyyppi", new Locale("fi"))));
+        stmts.add(new STMT(RDFS.Resource, RDF.type, RDFS.Class));
+        stmts.add(new STMT(RDFS.Resource, RDFS.label, new LIT("Resource")));
+        stmts.add(new STMT(RDFS.Class, RDF.type, RDFS.Class, RDFS.Resource));
+        stmts.add(new STMT(RDFS.Class, RDFS.label, new LIT("Class"), RDFS.Resource));
+        return stmts;
+    }
+
+    @Test
+    public void Remove_by_Subject_and_Context() {
+        repository.remove(RDFS.Class, null, null, RDF.type);
+        assertTrue(find(repository, RDFS.Class, null, null, null).size() > 0);
+        repository.remove(RDFS.Class, null, null, RDFS.Resource);
+        assertFalse(find(repository, RDFS.Class, null, null, null).size() > 0);
+    }
+
+    @Test
+    public void FindStatements() {
+        for (MiniRepository repo : Arrays.asList(repository, indexed)) {
+            assertEquals(7, find(repo, null, null, null, null).size());
+            assertEquals(3, find(repo, null, RDF.type, null, null).size());
+            assertEquals(4, find(repo, null, RDFS.label, null, null).size());
+            assertEquals(0, find(repo, null, RDFS.comment, null, null).size());
+            assertEquals(2, find(repo, null, null, null, RDFS.Resource).size());
+            assertEquals(1, find(repo, null, RDFS.label, null, RDFS.Resource).size());
+            assertEquals(0, find(repo, null, null, null, RDF.type).size());
+        }
+    }
+
+    @Test
+    public void Remove_by_Predicate() {
+        indexed.remove(null, RDFS.label, null, null);
+        assertEquals(3, find(indexed, null, null, null, null).size());
+        assertEquals(0, find(indexed, null, RDFS.label, null, null).size());
+        assertEquals(1, find(indexed, null, null, null, RDFS.Resource).size());
+    }
+
+    @Test
+    public void Remove_by_Context() {
+        indexed.remove(null, null, null, RDFS.Resource);
+        assertEquals(5, find(indexed, null, null, null, null).size());
+        assertEquals(2, find(indexed, null, RDF.type, null, null).size());
+        assertEquals(0, find(indexed, null, null, null, RDFS.Resource).size());
+    }
+
+    @Test
+    public void CopyOnWrite() {
+        MiniRepository repo = new MiniRepository(16, true, true, true, true);
+        List<STMT> stmts = getStatements();
+        repo.add(stmts.toArray(new STMT[stmts.size()]));
+        CloseableIterator<STMT> labels = repo.findStatements(null, RDFS.label, null, null, false);
+        CloseableIterator<STMT> types = repo.findStatements(null, RDF.type, null, null, false);
+        repo.remove(null, RDFS.label, null, null);
+        repo.remove(null, null, null, RDFS.Resource);
+        repo.add(new STMT(RDFS.Literal, RDF.type, RDFS.Class));
+        assertEquals(4, IteratorAdapter.asList(labels).size());
+        assertEquals(3, IteratorAdapter.asList(types).size());
+        assertEquals(0, find(repo, null, RDFS.label, null, null).size());
+        assertEquals(0, find(repo, null, null, null, RDFS.Resource).size());
+        assertEquals(3, find(repo, null, RDF.type, null, null).size());
+        assertEquals(2, find(repo, null, null, RDFS.Class, null).size());
+    }
+
+    @Test
+    public void Estimate() {
+        assertEquals(4, indexed.estimate(null, RDFS.label, null, null));
+        assertEquals(2, indexed.estimate(null, null, null, RDFS.Resource));
+        assertEquals(2, indexed.estimate(null, null, RDFS.Class, null));
+        assertEquals(0, indexed.estimate(null, RDFS.comment, null, null));
+    }
+
+    private List<STMT> find(MiniRepository repo, @Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        return IteratorAdapter.asList(repo.findStatements(subject, predicate, object, context, false));
+    }
+
+}
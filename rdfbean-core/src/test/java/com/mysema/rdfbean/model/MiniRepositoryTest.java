@@ -1,9 +1,12 @@
 package com.mysema.rdfbean.model;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
@@ -15,6 +18,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.mysema.commons.lang.CloseableIterator;
+import com.mysema.commons.lang.IteratorAdapter;
 
 public class MiniRepositoryTest {
 
@@ -92,4 +96,64 @@ public class MiniRepositoryTest {
         stmts.close();
         return rv;
     }
+
+    private List<STMT> find(MiniRepository repo, @Nullable ID subject, @Nullable UID predicate, @Nullable NODE object, @Nullable UID context) {
+        return IteratorAdapter.asList(repo.findStatements(subject, predicate, object, context, false));
+    }
+
+    @Test
+    public void Snapshot() {
+        File file = new File("target/mini.snapshot");
+        repository.add(new STMT(RDFS.Class, RDF.type, RDFS.Class, RDFS.Resource));
+        repository.getNextLocalId();
+        repository.writeSnapshot(file);
+
+        MiniRepository loaded = new MiniRepository();
+        loaded.loadSnapshot(file);
+        assertEquals(6, find(loaded, null, null, null, null).size());
+        assertEquals(1, find(loaded, null, null, null, RDFS.Resource).size());
+        assertEquals(2, loaded.getNextLocalId());
+
+        CompactRepository opened = CompactRepository.openSnapshot(file);
+        assertEquals(6, opened.size());
+    }
+
+    @Test
+    public void Estimate() {
+        assertEquals(-1, repository.estimate(null, RDFS.label, null, null));
+        assertEquals(2, repository.estimate(RDF.type, RDFS.label, null, null));
+        assertEquals(1, repository.estimate(null, null, RDFS.Class, null));
+    }
+
+    @Test
+    public void Load_NTriples() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        repository.export(Format.NTRIPLES, null, baos);
+        UID context = new UID("http://example.com/context");
+
+        MiniRepository loaded = new MiniRepository();
+        loaded.load(Format.NTRIPLES, new ByteArrayInputStream(baos.toByteArray()), context, false);
+        assertEquals(5, find(loaded, null, null, null, context).size());
+        assertTrue(find(loaded, RDF.type, RDFS.label, null, context).contains(
+                new STMT(RDF.type, RDFS.label, new LIT("tyyppi", new Locale("fi")), context)));
+
+        // existing context is kept
+        loaded.load(Format.NTRIPLES, new ByteArrayInputStream("".getBytes()), context, false);
+        assertEquals(5, find(loaded, null, null, null, context).size());
+
+        // existing context is replaced
+        loaded.load(Format.NTRIPLES, new ByteArrayInputStream("".getBytes()), context, true);
+        assertEquals(0, find(loaded, null, null, null, context).size());
+    }
+
+    @Test
+    public void Load_NQuads() throws UnsupportedEncodingException {
+        String str = "<" + RDF.type.getId() + "> <" + RDFS.label.getId() + "> \"type\" <" + RDFS.Resource.getId() + "> .\n"
+                + "<" + RDF.type.getId() + "> <" + RDFS.label.getId() + "> \"tyyppi\"@fi .\n";
+        MiniRepository loaded = new MiniRepository();
+        loaded.load(Format.NQUADS, new ByteArrayInputStream(str.getBytes("UTF-8")), null, false);
+        assertEquals(1, find(loaded, null, null, null, RDFS.Resource).size());
+        assertEquals(2, find(loaded, null, null, null, null).size());
+    }
+
 }
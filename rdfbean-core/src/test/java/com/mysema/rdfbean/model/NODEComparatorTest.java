@@ -52,4 +52,39 @@ public class NODEComparatorTest {
         Collections.sort(nodes, comparator);
         assertEquals(Arrays.asList(lit1, lit2, lit3), nodes);
     }
+
+    @Test
+    public void Numeric() {
+        LIT lit1 = new LIT("-1", XSD.intType);
+        LIT lit2 = new LIT("9", XSD.intType);
+        LIT lit3 = new LIT("9.5", XSD.decimalType);
+        LIT lit4 = new LIT("12", XSD.longType);
+        LIT lit5 = new LIT("1.2E2", XSD.doubleType);
+        LIT lit6 = new LIT("INF", XSD.doubleType);
+        List<NODE> nodes = Arrays.<NODE> asList(lit6, lit4, lit2, lit5, lit1, lit3);
+        Collections.sort(nodes, comparator);
+        assertEquals(Arrays.asList(lit1, lit2, lit3, lit4, lit5, lit6), nodes);
+    }
+
+    @Test
+    public void Equal_Keys() {
+        LIT lit1 = new LIT("1", XSD.intType);
+        LIT lit2 = new LIT("01", XSD.intType);
+        LIT lit3 = new LIT("1.0", XSD.doubleType);
+        assertEquals(1, comparator.compare(lit1, lit2));
+        assertEquals(-1, comparator.compare(lit2, lit1));
+        assertEquals(-1, Integer.signum(comparator.compare(lit1, lit3)));
+    }
+
+    @Test
+    public void Categories() {
+        LIT number = new LIT("2", XSD.intType);
+        LIT date = new LIT("2010-01-01", XSD.date);
+        LIT dateTime = new LIT("2010-01-01T10:00:00Z", XSD.dateTime);
+        LIT string = new LIT("10");
+        List<NODE> nodes = Arrays.<NODE> asList(string, dateTime, date, number);
+        Collections.sort(nodes, comparator);
+        assertEquals(Arrays.asList(number, date, dateTime, string), nodes);
+    }
+
 }
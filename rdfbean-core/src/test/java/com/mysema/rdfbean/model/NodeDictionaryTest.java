@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class NodeDictionaryTest {
+
+    private final NodeDictionary dictionary = new NodeDictionary(4);
+
+    @Test
+    public void GetOrCreateId() {
+        int id = dictionary.getOrCreateId(RDF.type);
+        assertTrue(id > 0);
+        assertEquals(id, dictionary.getOrCreateId(RDF.type));
+        assertEquals(id, dictionary.getId(new UID(RDF.NS, "type")));
+        assertEquals(RDF.type, dictionary.getNode(id));
+    }
+
+    @Test
+    public void GetId_for_Unknown_Node() {
+        assertEquals(NodeDictionary.NONE, dictionary.getId(RDF.type));
+    }
+
+    @Test
+    public void Literals_are_Distinguished() {
+        int plain = dictionary.getOrCreateId(new LIT("x"));
+        int text = dictionary.getOrCreateId(new LIT("x", Locale.ENGLISH));
+        int typed = dictionary.getOrCreateId(new LIT("x", XSD.anyURI));
+        assertTrue(plain != text);
+        assertTrue(text != typed);
+        assertEquals(3, dictionary.size());
+    }
+
+    @Test
+    public void Growth() {
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i + 1, dictionary.getOrCreateId(new LIT(String.valueOf(i))));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i + 1, dictionary.getId(new LIT(String.valueOf(i))));
+        }
+        assertEquals(10000, dictionary.size());
+    }
+
+    @Test
+    public void Clear() {
+        dictionary.getOrCreateId(RDF.type);
+        dictionary.clear();
+        assertEquals(0, dictionary.size());
+        assertEquals(NodeDictionary.NONE, dictionary.getId(RDF.type));
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class QuadIndexTest {
+
+    private final QuadIndex index = new QuadIndex(QuadIndex.PREDICATE, QuadIndex.OBJECT, QuadIndex.SUBJECT);
+
+    @Test
+    public void Rows_are_Sorted_in_Key_Order() {
+        index.add(new int[] { 1, 3, 2, 0 });
+        index.add(new int[] { 2, 1, 5, 0 });
+        index.add(new int[] { 1, 1, 4, 0 });
+        assertArrayEquals(new int[] {
+                1, 4, 1, 0,
+                1, 5, 2, 0,
+                3, 2, 1, 0 }, toArray(index.getRows()));
+    }
+
+    @Test
+    public void Duplicates_are_Ignored() {
+        index.add(new int[] { 1, 2, 3, 0 });
+        index.add(new int[] { 1, 2, 3, 0 });
+        assertEquals(1, index.size());
+        index.add(new int[] { 1, 2, 3, 0 });
+        assertEquals(1, index.size());
+        index.add(new int[] { 1, 2, 3, 2 });
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    public void Remove() {
+        index.add(new int[] { 1, 2, 3, 0 });
+        index.add(new int[] { 4, 5, 6, 0 });
+        index.remove(new int[] { 1, 2, 3, 0 });
+        index.remove(new int[] { 7, 8, 9, 0 });
+        assertArrayEquals(new int[] { 5, 6, 4, 0 }, toArray(index.getRows()));
+    }
+
+    @Test
+    public void Add_after_Remove() {
+        index.add(new int[] { 1, 2, 3, 0 });
+        index.remove(new int[] { 1, 2, 3, 0 });
+        index.add(new int[] { 1, 2, 3, 0 });
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void Rows_are_not_Modified_after_Read() {
+        index.add(new int[] { 1, 2, 3, 0 });
+        IntBuffer rows = index.getRows();
+        index.add(new int[] { 4, 5, 6, 0 });
+        index.remove(new int[] { 1, 2, 3, 0 });
+        assertArrayEquals(new int[] { 2, 3, 1, 0 }, toArray(rows));
+    }
+
+    @Test
+    public void Bounds() {
+        for (int i = 1000; i > 0; i--) {
+            index.add(new int[] { i, i % 10, i % 7, 0 });
+        }
+        IntBuffer rows = index.getRows();
+        assertEquals(1000, rows.limit() / QuadIndex.ROW);
+        int from = QuadIndex.lowerBound(rows, new int[] { 3 });
+        int to = QuadIndex.upperBound(rows, new int[] { 3 });
+        assertEquals(100, to - from);
+        from = QuadIndex.lowerBound(rows, new int[] { 3, 5 });
+        to = QuadIndex.upperBound(rows, new int[] { 3, 5 });
+        assertEquals(14, to - from);
+        assertEquals(0, QuadIndex.lowerBound(rows, new int[0]));
+        assertEquals(1000, QuadIndex.upperBound(rows, new int[0]));
+    }
+
+    @Test
+    public void Merge_into_Buffer() {
+        QuadIndex buffered = new QuadIndex(QuadIndex.SUBJECT, QuadIndex.PREDICATE, QuadIndex.OBJECT,
+                IntBuffer.wrap(new int[] { 1, 2, 3, 0, 4, 5, 6, 0 }).asReadOnlyBuffer());
+        buffered.add(new int[] { 2, 3, 4, 0 });
+        buffered.remove(new int[] { 4, 5, 6, 0 });
+        assertArrayEquals(new int[] { 1, 2, 3, 0, 2, 3, 4, 0 }, toArray(buffered.getRows()));
+    }
+
+    @Test
+    public void Small_Updates_of_large_Index() {
+        Random random = new Random(1);
+        SortedSet<Long> expected = new TreeSet<Long>();
+        for (int i = 0; i < 20000; i++) {
+            int[] quad = { random.nextInt(100), random.nextInt(10), random.nextInt(100), 0 };
+            index.add(quad);
+            expected.add(toKey(quad));
+        }
+        assertEquals(expected.size(), index.size());
+        for (int i = 0; i < 5000; i++) {
+            int[] quad = { random.nextInt(100), random.nextInt(10), random.nextInt(100), 0 };
+            if (random.nextBoolean()) {
+                index.remove(quad);
+                expected.remove(toKey(quad));
+            } else {
+                index.add(quad);
+                expected.add(toKey(quad));
+            }
+            if (i % 100 == 0) {
+                assertEquals(new ArrayList<Long>(expected), toKeys(index.getCursor(new int[0])));
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        assertEquals(new ArrayList<Long>(expected), toKeys(index.getCursor(new int[0])));
+        assertEquals(expected.size() * QuadIndex.ROW, index.getRows().limit());
+    }
+
+    @Test
+    public void Cursor_is_not_Modified_after_Update() {
+        index.add(new int[] { 1, 2, 3, 0 });
+        index.add(new int[] { 4, 5, 6, 0 });
+        QuadIndex.Cursor cursor = index.getCursor(new int[] { 2 });
+        index.remove(new int[] { 1, 2, 3, 0 });
+        index.add(new int[] { 7, 2, 8, 0 });
+        assertEquals(1, cursor.size());
+        assertEquals(1, index.getCursor(new int[] { 2 }).size());
+        int[] row = new int[QuadIndex.ROW];
+        assertTrue(cursor.next(row));
+        assertArrayEquals(new int[] { 2, 3, 1, 0 }, row);
+    }
+
+    // keys in the PREDICATE, OBJECT, SUBJECT order of the index
+    private static long toKey(int[] quad) {
+        return (quad[1] * 1000l + quad[2]) * 1000l + quad[0];
+    }
+
+    private static List<Long> toKeys(QuadIndex.Cursor cursor) {
+        List<Long> keys = new ArrayList<Long>();
+        int[] row = new int[QuadIndex.ROW];
+        while (cursor.next(row)) {
+            keys.add((row[0] * 1000l + row[1]) * 1000l + row[2]);
+        }
+        assertEquals(keys.size(), cursor.size());
+        return keys;
+    }
+
+    private static int[] toArray(IntBuffer buffer) {
+        int[] ints = new int[buffer.limit()];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = buffer.get(i);
+        }
+        return ints;
+    }
+
+}
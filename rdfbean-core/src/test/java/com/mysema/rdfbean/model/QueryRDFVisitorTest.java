@@ -2,15 +2,34 @@ package com.mysema.rdfbean.model;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.query.types.Expression;
+import com.mysema.query.types.Ops;
+import com.mysema.query.types.Order;
+import com.mysema.query.types.OrderSpecifier;
+import com.mysema.query.types.expr.NumberOperation;
+import com.mysema.query.types.expr.Wildcard;
+import com.mysema.rdfbean.TEST;
 
 public class QueryRDFVisitorTest {
 
@@ -59,4 +78,396 @@ public class QueryRDFVisitorTest {
         assertEquals(RDF.type, row.get("p"));
     }
 
+    @Test
+    public void Join() {
+        for (int i = 0; i < 50; i++) {
+            ID resource = new BID();
+            connection.addStatements(
+                    new STMT(resource, RDF.type, RDFS.Resource),
+                    new STMT(resource, RDFS.label, new LIT("label" + i)));
+        }
+        connection.addStatements(new STMT(new BID(), RDFS.label, new LIT("untyped")));
+        GroupBlock block = (GroupBlock) Blocks.group(
+                Blocks.pattern(QNODE.s, RDF.type, RDFS.Resource),
+                Blocks.pattern(QNODE.s, RDFS.label, QNODE.o));
+
+        List<Map<String, NODE>> rows = join(new QueryRDFVisitor(connection), block);
+        assertEquals(51, rows.size());
+        Set<Map<String, NODE>> expected = new HashSet<Map<String, NODE>>(rows);
+        assertEquals(51, expected.size());
+        assertEquals(expected, new HashSet<Map<String, NODE>>(join(new QueryRDFVisitor(connection, 0), block)));
+        assertEquals(expected, new HashSet<Map<String, NODE>>(join(new QueryRDFVisitor(connection, 10), block)));
+    }
+
+    @Test
+    public void Join_builds_Hash_Table_once() {
+        final List<UID> scans = new ArrayList<UID>();
+        MiniConnection connection = new MiniConnection(new MiniRepository()) {
+            @Override
+            public CloseableIterator<STMT> findStatements(ID subject, UID predicate, NODE object, UID context,
+                    boolean includeInferred) {
+                if (subject == null) {
+                    scans.add(predicate);
+                }
+                return super.findStatements(subject, predicate, object, context, includeInferred);
+            }
+        };
+        for (int i = 0; i < 50; i++) {
+            ID resource = new BID();
+            connection.addStatements(
+                    new STMT(resource, RDF.type, RDFS.Resource),
+                    new STMT(resource, RDFS.label, new LIT("label" + i)));
+        }
+        GroupBlock block = (GroupBlock) Blocks.group(
+                Blocks.pattern(QNODE.s, RDF.type, RDFS.Resource),
+                Blocks.pattern(QNODE.s, RDFS.label, QNODE.o));
+        Iterable<Bindings> iterable = new QueryRDFVisitor(connection).visit(block, new Bindings(new Bindings())).getFirst();
+        assertEquals(50, IteratorAdapter.asList(iterable.iterator()).size());
+        assertEquals(50, IteratorAdapter.asList(iterable.iterator()).size());
+        assertEquals(Arrays.asList(RDF.type, RDFS.label, RDF.type), scans);
+    }
+
+    @Test
+    public void Join_checks_Hash_Join_Limit_by_Estimate() {
+        final List<UID> scans = new ArrayList<UID>();
+        MiniConnection connection = new MiniConnection(new MiniRepository(1024, true, true, false, false)) {
+            @Override
+            public CloseableIterator<STMT> findStatements(ID subject, UID predicate, NODE object, UID context,
+                    boolean includeInferred) {
+                if (subject == null) {
+                    scans.add(predicate);
+                }
+                return super.findStatements(subject, predicate, object, context, includeInferred);
+            }
+        };
+        for (int i = 0; i < 50; i++) {
+            ID resource = new BID();
+            connection.addStatements(
+                    new STMT(resource, RDF.type, RDFS.Resource),
+                    new STMT(resource, RDFS.label, new LIT("label" + i)));
+        }
+        GroupBlock block = (GroupBlock) Blocks.group(
+                Blocks.pattern(QNODE.s, RDF.type, RDFS.Resource),
+                Blocks.pattern(QNODE.s, RDFS.label, QNODE.o));
+        assertEquals(50, join(new QueryRDFVisitor(connection, 10), block).size());
+        assertEquals(Arrays.asList(RDF.type), scans);
+    }
+
+    @Test
+    public void In_Filter() {
+        final List<ID> probes = new ArrayList<ID>();
+        MiniConnection connection = new MiniConnection(new MiniRepository()) {
+            @Override
+            public CloseableIterator<STMT> findStatements(ID subject, UID predicate, NODE object, UID context,
+                    boolean includeInferred) {
+                probes.add(subject);
+                return super.findStatements(subject, predicate, object, context, includeInferred);
+            }
+        };
+        List<ID> ids = new ArrayList<ID>();
+        for (int i = 0; i < 20; i++) {
+            ID resource = new BID();
+            connection.addStatements(
+                    new STMT(resource, RDF.type, RDFS.Resource),
+                    new STMT(resource, RDFS.label, new LIT("label" + i)));
+            ids.add(resource);
+        }
+        List<ID> selected = Arrays.asList(ids.get(3), ids.get(7), new BID());
+        GroupBlock block = (GroupBlock) Blocks.filter(Blocks.SPO, QNODE.s.in(selected));
+        List<Map<String, NODE>> rows = join(new QueryRDFVisitor(connection), block);
+        assertEquals(4, rows.size());
+        assertEquals(selected, probes);
+        for (Map<String, NODE> row : rows) {
+            assertTrue(selected.contains(row.get("s")));
+        }
+    }
+
+    @Test
+    public void Eq_and_In_Filter() {
+        for (int i = 0; i < 20; i++) {
+            connection.addStatements(new STMT(new BID(), RDFS.label, new LIT("label" + i)));
+        }
+        GroupBlock block = (GroupBlock) Blocks.filter(Blocks.SPO,
+                QNODE.o.eq(new LIT("label5")),
+                QNODE.p.in(RDFS.label, RDF.type));
+        List<Map<String, NODE>> rows = join(visitor, block);
+        assertEquals(1, rows.size());
+        assertEquals(RDFS.label, rows.get(0).get("p"));
+
+        block = (GroupBlock) Blocks.filter(Blocks.SPO, QNODE.o.eq(new LIT("label5")), QNODE.p.eq(RDF.type));
+        assertEquals(0, join(visitor, block).size());
+    }
+
+    private List<Map<String, NODE>> join(QueryRDFVisitor visitor, GroupBlock block) {
+        Iterator<Bindings> iterator = visitor.visit(block, new Bindings(new Bindings())).getFirst().iterator();
+        List<Map<String, NODE>> rows = new ArrayList<Map<String, NODE>>();
+        while (iterator.hasNext()) {
+            rows.add(iterator.next().toMap());
+        }
+        return rows;
+    }
+
+    @Test
+    public void OrderBy() {
+        QLIT label = new QLIT("label");
+        for (int i = 0; i < 10; i++) {
+            connection.addStatements(new STMT(new BID(), RDFS.label, new LIT("label" + ((i * 7) % 10))));
+        }
+        RDFQuery query = new RDFQueryImpl(connection).where(Blocks.pattern(QNODE.s, RDFS.label, label));
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query.orderBy(label.asc()).select(label));
+        assertEquals(11, rows.size());
+        assertEquals(new LIT("id"), rows.get(0).get("label"));
+        assertEquals(new LIT("label0"), rows.get(1).get("label"));
+        assertEquals(new LIT("label9"), rows.get(10).get("label"));
+    }
+
+    @Test
+    public void OrderBy_with_Limit_and_Offset() {
+        QLIT label = new QLIT("label");
+        for (int i = 0; i < 100; i++) {
+            connection.addStatements(new STMT(new BID(), RDFS.label, new LIT("label" + (1000 + (i * 37) % 100))));
+        }
+        RDFQuery query = new RDFQueryImpl(connection).where(Blocks.pattern(QNODE.s, RDFS.label, label));
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query.orderBy(label.desc()).limit(5).offset(2).select(label));
+        assertEquals(5, rows.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(new LIT("label" + (1097 - i)), rows.get(i).get("label"));
+        }
+    }
+
+    @Test
+    public void Distinct() {
+        for (int i = 0; i < 20; i++) {
+            connection.addStatements(new STMT(new BID(), RDFS.label, new LIT("label" + (i % 5))));
+        }
+        QLIT label = new QLIT("label");
+        RDFQuery query = new RDFQueryImpl(connection).where(Blocks.pattern(QNODE.s, RDFS.label, label));
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query.selectDistinct(label));
+        assertEquals(6, rows.size());
+    }
+
+    @Test
+    public void Distinct_with_Spill() {
+        MiniRepository repository = new MiniRepository();
+        repository.setDistinctLimit(3);
+        MiniConnection conn = repository.openConnection();
+        for (int i = 0; i < 100; i++) {
+            conn.addStatements(new STMT(new BID(), RDFS.label, new LIT("label" + (i * 7 % 10))));
+        }
+        QLIT label = new QLIT("label");
+        RDFQuery query = new RDFQueryImpl(conn).where(Blocks.pattern(QNODE.s, RDFS.label, label));
+        Set<NODE> labels = new HashSet<NODE>();
+        for (Map<String, NODE> row : IteratorAdapter.asList(query.selectDistinct(label))) {
+            assertTrue(labels.add(row.get("label")));
+        }
+        assertEquals(10, labels.size());
+
+        query = new RDFQueryImpl(conn).where(Blocks.pattern(QNODE.s, RDFS.label, label));
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query.distinct().orderBy(label.asc()).limit(4).select(label));
+        assertEquals(4, rows.size());
+        assertEquals(new LIT("label3"), rows.get(3).get("label"));
+    }
+
+    @Test
+    public void Distinct_deletes_Runs_on_Close() {
+        MiniRepository repository = new MiniRepository();
+        repository.setDistinctLimit(3);
+        MiniConnection conn = repository.openConnection();
+        for (int i = 0; i < 100; i++) {
+            conn.addStatements(new STMT(new BID(), RDFS.label, new LIT("label" + (i * 7 % 10))));
+        }
+        QLIT label = new QLIT("label");
+        int runs = countRuns();
+        RDFQuery query = new RDFQueryImpl(conn).where(Blocks.pattern(QNODE.s, RDFS.label, label));
+        CloseableIterator<Map<String, NODE>> iterator = query.distinct().select(label);
+        for (int i = 0; i < 5; i++) {
+            iterator.next();
+        }
+        assertTrue(countRuns() > runs);
+        iterator.close();
+        assertEquals(runs, countRuns());
+
+        query = new RDFQueryImpl(conn).where(Blocks.pattern(QNODE.s, RDFS.label, label));
+        iterator = query.distinct().limit(5).select(label);
+        assertEquals(5, IteratorAdapter.asList(iterator).size());
+        assertEquals(runs, countRuns());
+    }
+
+    private static int countRuns() {
+        String[] files = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("distinct") && name.endsWith(".run");
+            }
+        });
+        return files.length;
+    }
+
+    @Test(expected = QueryCancelledException.class)
+    public void Cancelled() {
+        CancellationToken token = new CancellationToken();
+        token.cancel();
+        new RDFQueryImpl(connection).where(Blocks.SPO).cancellation(token).selectAll();
+    }
+
+    @Test
+    public void Timeout() {
+        for (int i = 0; i < 1000; i++) {
+            connection.addStatements(new STMT(new BID(), RDFS.label, new LIT(String.valueOf(i))));
+        }
+        // cross product of a billion rows without matches
+        RDFQuery query = new RDFQueryImpl(connection).where(
+                Blocks.pattern(new QID("s1"), RDFS.label, new QNODE<NODE>(NODE.class, "o1")),
+                Blocks.pattern(new QID("s2"), RDFS.label, new QNODE<NODE>(NODE.class, "o2")),
+                Blocks.pattern(new QID("s3"), RDFS.label, new QNODE<NODE>(NODE.class, "o3")),
+                new QNODE<NODE>(NODE.class, "o1").isNull());
+        CloseableIterator<Map<String, NODE>> rows = query.timeout(50, TimeUnit.MILLISECONDS).selectAll();
+        long start = System.currentTimeMillis();
+        try {
+            rows.hasNext();
+            fail("Expected QueryCancelledException");
+        } catch (QueryCancelledException e) {
+            assertTrue(System.currentTimeMillis() - start < 10000);
+        } finally {
+            rows.close();
+        }
+    }
+
+    @Test
+    public void Count() {
+        for (int i = 0; i < 10; i++) {
+            connection.addStatements(new STMT(new BID(), RDFS.label, new LIT("label" + (i % 3))));
+        }
+        QLIT label = new QLIT("label");
+        RDFQueryImpl query = new RDFQueryImpl(connection);
+        query.where(Blocks.pattern(QNODE.s, RDFS.label, label));
+        Expression<Long> countDistinct = NumberOperation.create(Long.class, Ops.AggOps.COUNT_DISTINCT_AGG, label);
+        Map<String, NODE> row = query.selectSingle(Wildcard.count, countDistinct);
+        assertEquals(new LIT("11", XSD.longType), row.get(Wildcard.count.toString()));
+        assertEquals(new LIT("4", XSD.longType), row.get(countDistinct.toString()));
+
+        query = new RDFQueryImpl(connection);
+        query.where(Blocks.union(
+                Blocks.pattern(QNODE.s, RDFS.label, label),
+                Blocks.pattern(QNODE.s, RDFS.label, label)));
+        row = query.selectSingle(Wildcard.count, Wildcard.countDistinct);
+        assertEquals(new LIT("22", XSD.longType), row.get(Wildcard.count.toString()));
+        assertEquals(new LIT("11", XSD.longType), row.get(Wildcard.countDistinct.toString()));
+
+        query = new RDFQueryImpl(connection);
+        query.where(Blocks.pattern(QNODE.s, RDFS.label, new LIT("none")));
+        assertEquals("0", query.selectSingle(Wildcard.count).get(Wildcard.count.toString()).getValue());
+    }
+
+    @Test
+    public void Group_By() {
+        QNODE<ID> type = new QNODE<ID>(ID.class, "type");
+        QLIT value = new QLIT("value");
+        UID number = new UID(TEST.NS, "number");
+        for (int i = 1; i <= 6; i++) {
+            BID subject = new BID();
+            connection.addStatements(
+                    new STMT(subject, RDF.type, i % 2 == 0 ? RDFS.Class : RDF.Property),
+                    new STMT(subject, number, new LIT(String.valueOf(i), XSD.intType)));
+        }
+        Expression<Long> count = NumberOperation.create(Long.class, Ops.AggOps.COUNT_AGG, value);
+        Expression<Integer> sum = NumberOperation.create(Integer.class, Ops.AggOps.SUM_AGG, value);
+        Expression<Integer> avg = NumberOperation.create(Integer.class, Ops.AggOps.AVG_AGG, value);
+        Expression<Integer> max = NumberOperation.create(Integer.class, Ops.AggOps.MAX_AGG, value);
+
+        RDFQueryImpl query = new RDFQueryImpl(connection);
+        query.where(
+                Blocks.pattern(QNODE.s, RDF.type, type),
+                Blocks.pattern(QNODE.s, number, value));
+        query.groupBy(type).orderBy(new OrderSpecifier<Integer>(Order.DESC, max));
+        List<Map<String, NODE>> rows = IteratorAdapter.asList(query.select(type, count, sum, avg, max));
+        assertEquals(2, rows.size());
+        assertEquals(RDFS.Class, rows.get(0).get("type"));
+        assertEquals(new LIT("3", XSD.longType), rows.get(0).get(count.toString()));
+        assertEquals(new LIT("12", XSD.integerType), rows.get(0).get(sum.toString()));
+        assertEquals(new LIT("4", XSD.decimalType), rows.get(0).get(avg.toString()));
+        assertEquals(new LIT("6", XSD.intType), rows.get(0).get(max.toString()));
+        assertEquals(RDF.Property, rows.get(1).get("type"));
+        assertEquals(new LIT("9", XSD.integerType), rows.get(1).get(sum.toString()));
+
+        query = new RDFQueryImpl(connection);
+        query.where(
+                Blocks.pattern(QNODE.s, RDF.type, type),
+                Blocks.pattern(QNODE.s, number, value));
+        query.groupBy(type).having(NumberOperation.create(Integer.class, Ops.AggOps.MAX_AGG, value).lt(6));
+        rows = IteratorAdapter.asList(query.select(type));
+        assertEquals(1, rows.size());
+        assertEquals(RDF.Property, rows.get(0).get("type"));
+    }
+
+    @Test
+    public void Parallel() throws InterruptedException {
+        MiniRepository repository = new MiniRepository();
+        for (int i = 0; i < 200; i++) {
+            ID resource = new BID();
+            repository.add(
+                    new STMT(resource, RDF.type, i % 2 == 0 ? RDFS.Resource : RDFS.Class),
+                    new STMT(resource, RDFS.label, new LIT("label" + i)));
+        }
+        QLIT label = new QLIT("label");
+        Block[] where = {
+                Blocks.pattern(QNODE.s, RDFS.label, label),
+                Blocks.pattern(QNODE.s, RDF.type, QNODE.o),
+                Blocks.union(
+                        Blocks.pattern(QNODE.s, RDF.type, RDFS.Resource),
+                        Blocks.pattern(QNODE.s, RDF.type, RDFS.Class)) };
+        List<Set<Map<String, NODE>>> expected = new ArrayList<Set<Map<String, NODE>>>();
+        for (Block block : where) {
+            expected.add(new HashSet<Map<String, NODE>>(IteratorAdapter.asList(
+                    new RDFQueryImpl(repository.openConnection()).where(block).select(QNODE.s, label, QNODE.o))));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            repository.setQueryExecutor(executor);
+            for (int i = 0; i < where.length; i++) {
+                List<Map<String, NODE>> rows = IteratorAdapter.asList(
+                        new RDFQueryImpl(repository.openConnection()).where(where[i]).select(QNODE.s, label, QNODE.o));
+                assertEquals(expected.get(i).size(), rows.size());
+                assertEquals(expected.get(i), new HashSet<Map<String, NODE>>(rows));
+            }
+            RDFQuery query = new RDFQueryImpl(repository.openConnection())
+                    .where(Blocks.pattern(QNODE.s, RDFS.label, label), Blocks.pattern(QNODE.s, RDF.type, RDFS.Class));
+            assertEquals(100, IteratorAdapter.asList(query.select(label)).size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void Parallel_Union_followed_by_Pattern() {
+        MiniRepository repository = new MiniRepository();
+        for (int i = 0; i < 20; i++) {
+            ID resource = new BID();
+            repository.add(
+                    new STMT(resource, RDF.type, i % 2 == 0 ? RDFS.Resource : RDFS.Class),
+                    new STMT(resource, RDFS.label, new LIT("label" + i)));
+        }
+        QLIT label = new QLIT("label");
+        Block[] where = {
+                Blocks.union(
+                        Blocks.pattern(QNODE.s, RDF.type, RDFS.Resource),
+                        Blocks.pattern(QNODE.s, RDF.type, RDFS.Class)),
+                Blocks.pattern(QNODE.s, RDFS.label, label) };
+        Set<Map<String, NODE>> expected = new HashSet<Map<String, NODE>>(IteratorAdapter.asList(
+                new RDFQueryImpl(repository.openConnection()).where(where).select(QNODE.s, label)));
+        assertEquals(20, expected.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            repository.setQueryExecutor(executor);
+            List<Map<String, NODE>> rows = IteratorAdapter.asList(
+                    new RDFQueryImpl(repository.openConnection()).where(where).select(QNODE.s, label));
+            assertEquals(20, rows.size());
+            assertEquals(expected, new HashSet<Map<String, NODE>>(rows));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+
+public class TermDictionaryTest {
+
+    @Test
+    public void GetUID() {
+        UID uid = TermDictionary.getUID(TEST.NS + "a");
+        assertSame(uid, TermDictionary.getUID(TEST.NS + "a"));
+        assertSame(uid, TermDictionary.getUID(TEST.NS, "a"));
+        assertSame(uid, TermDictionary.getUID(new UID(TEST.NS, "a")));
+        assertEquals(TEST.NS, uid.ns());
+        assertEquals("a", uid.ln());
+    }
+
+    @Test
+    public void Equals_by_Interned_Id() {
+        UID uid1 = new UID(new StringBuilder(TEST.NS).append("b").toString());
+        UID uid2 = new UID(TEST.NS, "b");
+        assertSame(uid1.getId(), uid2.getId());
+        assertEquals(uid1, uid2);
+    }
+
+    @Test
+    public void GetId() {
+        UID uid = new UID(TEST.NS, "c");
+        int id = TermDictionary.getId(uid);
+        assertTrue(id > 0);
+        assertEquals(id, TermDictionary.getId(new UID(TEST.NS, "c")));
+        assertEquals(uid, TermDictionary.getUID(id));
+        assertTrue(TermDictionary.getId(new UID(TEST.NS, "d")) != id);
+        assertNull(TermDictionary.getUID(0));
+        assertNull(TermDictionary.getUID(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void Serialization() throws IOException, ClassNotFoundException {
+        UID uid = TermDictionary.getUID(TEST.NS, "e");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(uid);
+        out.close();
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertSame(uid, in.readObject());
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TrieMapTest {
+
+    private static final class Key {
+
+        private final int value;
+
+        Key(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int hashCode() {
+            return value % 7;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).value == value;
+        }
+
+    }
+
+    @Test
+    public void Put_Get_and_Remove() {
+        TrieMap<Integer, String> map = new TrieMap<Integer, String>();
+        Map<Integer, String> expected = new HashMap<Integer, String>();
+        Random random = new Random(1);
+        for (int i = 0; i < 50000; i++) {
+            Integer key = random.nextInt(5000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, "v" + i), map.put(key, "v" + i));
+            }
+        }
+        assertEquals(expected, toMap(map));
+        assertEquals(expected.size(), map.size());
+    }
+
+    @Test
+    public void Colliding_Keys() {
+        TrieMap<Key, Integer> map = new TrieMap<Key, Integer>();
+        for (int i = 0; i < 100; i++) {
+            map.put(new Key(i), i);
+        }
+        assertEquals(100, map.size());
+        assertEquals(Integer.valueOf(50), map.get(new Key(50)));
+        for (int i = 0; i < 100; i += 2) {
+            assertEquals(Integer.valueOf(i), map.remove(new Key(i)));
+        }
+        assertEquals(50, map.size());
+        assertNull(map.get(new Key(50)));
+        assertEquals(Integer.valueOf(51), map.get(new Key(51)));
+    }
+
+    @Test
+    public void Copies_are_Isolated() {
+        TrieMap<Integer, String> map = new TrieMap<Integer, String>();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, "a");
+        }
+        Map<Integer, String> before = toMap(map);
+        TrieMap<Integer, String> copy = map.copy();
+        copy.put(1, "b");
+        copy.put(1000, "b");
+        copy.remove(2);
+        map.put(3, "c");
+        assertEquals("a", map.get(1));
+        assertNull(map.get(1000));
+        assertEquals("a", map.get(2));
+        assertEquals("a", copy.get(3));
+        assertEquals(1000, map.size());
+        assertEquals(1000, copy.size());
+        before.put(3, "c");
+        assertEquals(before, toMap(map));
+    }
+
+    private static <K, V> Map<K, V> toMap(TrieMap<K, V> trie) {
+        Map<K, V> map = new HashMap<K, V>();
+        for (Map.Entry<K, V> entry : trie) {
+            map.put(entry.getKey(), entry.getValue());
+        }
+        return map;
+    }
+
+}
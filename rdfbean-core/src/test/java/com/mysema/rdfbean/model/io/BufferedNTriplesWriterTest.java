@@ -0,0 +1,124 @@
+package com.mysema.rdfbean.model.io;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.DC;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.RDFS;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.model.XSD;
+
+public class BufferedNTriplesWriterTest {
+
+    private static final UID context = new UID(TEST.NS, "context");
+
+    private static List<STMT> getStatements() {
+        UID uid = new UID("http://www.w3.org/2001/08/rdf-test/");
+        BID bid = new BID("a");
+        return Arrays.asList(
+                new STMT(uid, DC.creator, new LIT("Dave Beckett")),
+                new STMT(uid, DC.creator, new LIT("Jan Grant")),
+                new STMT(uid, DC.publisher, bid),
+                new STMT(bid, DC.title, new LIT("World Wide Web Consortium", Locale.ENGLISH)),
+                new STMT(bid, DC.source, new UID("http://www.w3.org/")),
+                new STMT(uid, RDF.type, RDFS.Resource),
+                new STMT(uid, RDFS.label, new LIT("\t\"\\")),
+                new STMT(uid, RDFS.label, new LIT("&\n&\r\u0001")),
+                new STMT(uid, RDFS.label, new LIT("\u00e4\u20ac\ud83d\ude00", new Locale("fi"))),
+                new STMT(uid, RDF.value, new LIT("1", XSD.intType)),
+                new STMT(new UID(TEST.NS, "\u00e4"), RDF.value, new LIT("2", XSD.intType), context));
+    }
+
+    private static String write(List<STMT> stmts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFWriter writer = new BufferedNTriplesWriter(Channels.newChannel(out));
+        writer.begin();
+        for (STMT stmt : stmts) {
+            writer.handle(stmt);
+        }
+        writer.end();
+        try {
+            return out.toString("US-ASCII");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String writeNTriples(List<STMT> stmts) {
+        StringWriter w = new StringWriter();
+        RDFWriter writer = new NTriplesWriter(w);
+        writer.begin();
+        for (STMT stmt : stmts) {
+            writer.handle(stmt);
+        }
+        writer.end();
+        return w.toString();
+    }
+
+    @Test
+    public void Same_Output_as_NTriplesWriter() {
+        assertEquals(writeNTriples(getStatements()), write(getStatements()));
+    }
+
+    @Test
+    public void Buffer_Overflow() throws Exception {
+        List<STMT> stmts = new ArrayList<STMT>();
+        StringBuilder label = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            label.append(i % 10 == 0 ? '\u00e4' : 'x');
+        }
+        for (int i = 0; i < 2000; i++) {
+            stmts.add(new STMT(new UID(TEST.NS, "r" + i), new UID(TEST.NS, "p" + (i % 1500)), new LIT(label.substring(i))));
+        }
+        assertEquals(writeNTriples(stmts), write(stmts));
+
+        // N-Triples output is ASCII
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer w = new OutputStreamWriter(out, "US-ASCII");
+        w.write(write(stmts));
+        w.close();
+        NTriplesParser parser = new NTriplesParser(new ByteArrayInputStream(out.toByteArray()), false, null, "");
+        STMT[] batch = new STMT[stmts.size()];
+        assertEquals(stmts.size(), parser.read(batch));
+        assertEquals(new HashSet<STMT>(stmts), new HashSet<STMT>(Arrays.asList(batch)));
+    }
+
+    @Test
+    public void NQuads() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        RDFWriter writer = new NQuadsWriter(out);
+        writer.begin();
+        List<STMT> stmts = getStatements();
+        for (STMT stmt : stmts) {
+            writer.handle(stmt);
+        }
+        writer.end();
+        String str = out.toString("US-ASCII");
+        assertEquals(stmts.size(), str.split("\n").length);
+        assertEquals(1, str.split("<" + context.getId() + "> \\.\n", -1).length - 1);
+
+        NTriplesParser parser = new NTriplesParser(new ByteArrayInputStream(out.toByteArray()), true, null, "");
+        STMT[] batch = new STMT[stmts.size() + 1];
+        assertEquals(stmts.size(), parser.read(batch));
+        assertEquals(new HashSet<STMT>(stmts), new HashSet<STMT>(Arrays.asList(batch).subList(0, stmts.size())));
+    }
+
+}
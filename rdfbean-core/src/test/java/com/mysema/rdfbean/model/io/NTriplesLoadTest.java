@@ -0,0 +1,72 @@
+package com.mysema.rdfbean.model.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.mysema.rdfbean.model.CompactRepository;
+import com.mysema.rdfbean.model.Format;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.MiniRepository;
+import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.RDFS;
+import com.mysema.rdfbean.model.Repository;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.model.XSD;
+
+public class NTriplesLoadTest {
+
+    private static final int SIZE = 1000000;
+
+    private static final String NS = "http://example.com/resource/";
+
+    @Test
+    @Ignore
+    public void Load() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer w = new OutputStreamWriter(baos, "US-ASCII");
+        RDFWriter writer = new NTriplesWriter(w);
+        writer.begin();
+        for (int i = 0; i < SIZE / 4; i++) {
+            UID resource = new UID(NS, "r" + i);
+            writer.handle(new STMT(resource, RDF.type, new UID(NS, "Type" + (i % 100))));
+            writer.handle(new STMT(resource, RDFS.label, new LIT("Resource " + i, "en")));
+            writer.handle(new STMT(resource, RDF.value, new LIT(String.valueOf(i), XSD.intType)));
+            writer.handle(new STMT(resource, RDFS.seeAlso, new UID(NS, "r" + (i + 1))));
+        }
+        writer.end();
+        byte[] bytes = baos.toByteArray();
+        System.err.println(SIZE + " statements, " + (bytes.length / 1024 / 1024) + " MB");
+
+        for (int i = 0; i < 3; i++) {
+            long start = System.currentTimeMillis();
+            NTriplesParser parser = new NTriplesParser(new ByteArrayInputStream(bytes));
+            STMT[] batch = new STMT[10000];
+            int count = 0, read;
+            while ((read = parser.read(batch)) > 0) {
+                count += read;
+            }
+            report("parse", count, start);
+
+            load("MiniRepository", new MiniRepository(), bytes);
+            load("CompactRepository", new CompactRepository(), bytes);
+        }
+    }
+
+    private void load(String name, Repository repository, byte[] bytes) {
+        long start = System.currentTimeMillis();
+        repository.load(Format.NTRIPLES, new ByteArrayInputStream(bytes), null, false);
+        report(name + ".load", SIZE, start);
+    }
+
+    private void report(String label, int count, long start) {
+        long duration = Math.max(System.currentTimeMillis() - start, 1);
+        System.err.println(label + " : " + duration + " ms, " + (count * 1000l / duration) + " statements/s");
+    }
+
+}
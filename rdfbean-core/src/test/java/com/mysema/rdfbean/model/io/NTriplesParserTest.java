@@ -0,0 +1,147 @@
+package com.mysema.rdfbean.model.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.RDFS;
+import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.model.XSD;
+
+public class NTriplesParserTest {
+
+    private static final UID CONTEXT = new UID("http://example.com/context");
+
+    private static List<STMT> parse(String str, boolean quads) {
+        NTriplesParser parser = new NTriplesParser(new StringReader(str), quads, null, "");
+        List<STMT> stmts = new ArrayList<STMT>();
+        while (parser.hasNext()) {
+            stmts.add(parser.next());
+        }
+        parser.close();
+        return stmts;
+    }
+
+    @Test
+    public void Parse() {
+        List<STMT> stmts = parse(
+                "# comment\n" +
+                "<http://www.w3.org/2001/08/rdf-test/> <http://purl.org/dc/elements/1.1/creator> \"Dave Beckett\" .\n" +
+                "\n" +
+                "<http://www.w3.org/2001/08/rdf-test/> <http://purl.org/dc/elements/1.1/publisher> _:a .\r\n" +
+                "_:a <http://purl.org/dc/elements/1.1/title> \"World Wide Web Consortium\"@en . # comment\n" +
+                "_:a\t<http://purl.org/dc/elements/1.1/source>\t<http://www.w3.org/>.", false);
+        UID test = new UID("http://www.w3.org/2001/08/rdf-test/");
+        assertEquals(Arrays.asList(
+                new STMT(test, new UID("http://purl.org/dc/elements/1.1/creator"), new LIT("Dave Beckett")),
+                new STMT(test, new UID("http://purl.org/dc/elements/1.1/publisher"), new BID("a")),
+                new STMT(new BID("a"), new UID("http://purl.org/dc/elements/1.1/title"), new LIT("World Wide Web Consortium", "en")),
+                new STMT(new BID("a"), new UID("http://purl.org/dc/elements/1.1/source"), new UID("http://www.w3.org/"))),
+                stmts);
+    }
+
+    @Test
+    public void Parse_Typed_Literal() {
+        STMT stmt = parse("_:a <" + RDF.value.getId() + "> \"1\"^^<" + XSD.intType.getId() + "> .", false).get(0);
+        assertEquals(new LIT("1", XSD.intType), stmt.getObject());
+    }
+
+    @Test
+    public void Parse_Escapes() {
+        STMT stmt = parse("_:a <" + RDF.value.getId() + "> \"a\\tb\\n\\\"c\\\\\\u00E4\\U0001D11E\" .", false).get(0);
+        assertEquals("a\tb\n\"c\\ä𝄞", stmt.getObject().getValue());
+    }
+
+    @Test
+    public void Parse_Blank_Node_with_Dot() {
+        STMT stmt = parse("_:a.b <" + RDF.value.getId() + "> _:c.", false).get(0);
+        assertEquals(new BID("a.b"), stmt.getSubject());
+        assertEquals(new BID("c"), stmt.getObject());
+    }
+
+    @Test
+    public void Blank_Nodes_are_Scoped_to_Document() {
+        String str = "_:a <" + RDF.value.getId() + "> _:b .\n_:b <" + RDF.value.getId() + "> _:a .";
+        STMT[] first = new STMT[2], second = new STMT[2];
+        new NTriplesParser(new StringReader(str), false, null).read(first);
+        new NTriplesParser(new StringReader(str), false, null).read(second);
+        assertEquals(first[0].getSubject(), first[1].getObject());
+        assertEquals(first[0].getObject(), first[1].getSubject());
+        assertFalse(first[0].getSubject().equals(first[0].getObject()));
+        assertFalse(first[0].getSubject().equals(second[0].getSubject()));
+        assertFalse(first[0].getSubject().equals(new BID("a")));
+    }
+
+    @Test
+    public void Parse_Quads() {
+        List<STMT> stmts = parse(
+                "_:a <" + RDF.type.getId() + "> <" + RDFS.Resource.getId() + "> <" + CONTEXT.getId() + "> .\n" +
+                "_:a <" + RDF.type.getId() + "> <" + RDFS.Class.getId() + "> .\n", true);
+        assertEquals(CONTEXT, stmts.get(0).getContext());
+        assertNull(stmts.get(1).getContext());
+    }
+
+    @Test
+    public void Default_Context() {
+        NTriplesParser parser = new NTriplesParser(new StringReader("_:a <" + RDF.type.getId() + "> <" + RDFS.Resource.getId() + "> ."), false, CONTEXT);
+        assertEquals(CONTEXT, parser.next().getContext());
+        assertFalse(parser.hasNext());
+    }
+
+    @Test
+    public void Read_Batches() {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < 25; i++) {
+            str.append("_:a <" + RDF.value.getId() + "> \"" + i + "\" .\n");
+        }
+        NTriplesParser parser = new NTriplesParser(new StringReader(str.toString()), false, null);
+        STMT[] batch = new STMT[10];
+        assertEquals(10, parser.read(batch));
+        assertEquals(10, parser.read(batch));
+        assertEquals(5, parser.read(batch));
+        assertEquals(new LIT("24"), batch[4].getObject());
+        assertEquals(0, parser.read(batch));
+    }
+
+    @Test
+    public void Roundtrip() {
+        List<STMT> stmts = Arrays.asList(
+                new STMT(new BID(), RDF.value, new LIT("a \"quoted\"\nvalue with ä")),
+                new STMT(new UID("http://example.com/a"), RDFS.label, new LIT("label", "fi")),
+                new STMT(new UID("http://example.com/a"), RDF.value, new LIT("1.5", XSD.doubleType)));
+        StringWriter w = new StringWriter();
+        RDFWriter writer = new NTriplesWriter(w);
+        writer.begin();
+        for (STMT stmt : stmts) {
+            writer.handle(stmt);
+        }
+        writer.end();
+        assertEquals(stmts, parse(w.toString(), false));
+    }
+
+    @Test
+    public void Parse_Error() {
+        try {
+            parse("_:a <" + RDF.value.getId() + "> \"value\"\n_:b", false);
+        } catch (RepositoryException e) {
+            assertTrue(e.getMessage().contains("line 1"));
+            return;
+        }
+        throw new AssertionError("Expected RepositoryException");
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.mysema.rdfbean.model.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.RDFS;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.model.XSD;
+
+public class NTriplesWriteTest {
+
+    private static final int SIZE = 1000000;
+
+    private static final String NS = "http://example.com/resource/";
+
+    private static final OutputStream NULL = new OutputStream() {
+        @Override
+        public void write(int b) throws IOException {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+        }
+    };
+
+    @Test
+    @Ignore
+    public void Write() throws Exception {
+        STMT[] stmts = new STMT[SIZE];
+        for (int i = 0; i < SIZE / 4; i++) {
+            UID resource = new UID(NS, "r" + i);
+            stmts[4 * i] = new STMT(resource, RDF.type, new UID(NS, "Type" + (i % 100)));
+            stmts[4 * i + 1] = new STMT(resource, RDFS.label, new LIT("Resource \"" + i + "\"", "en"));
+            stmts[4 * i + 2] = new STMT(resource, RDF.value, new LIT(String.valueOf(i), XSD.intType));
+            stmts[4 * i + 3] = new STMT(resource, RDFS.seeAlso, new UID(NS, "r" + (i + 1)));
+        }
+
+        for (int i = 0; i < 5; i++) {
+            write("NTriplesWriter", new NTriplesWriter(new OutputStreamWriter(NULL, "US-ASCII")), stmts);
+            write("BufferedNTriplesWriter", new BufferedNTriplesWriter(NULL), stmts);
+        }
+    }
+
+    private void write(String name, RDFWriter writer, STMT[] stmts) {
+        long start = System.currentTimeMillis();
+        writer.begin();
+        for (STMT stmt : stmts) {
+            writer.handle(stmt);
+        }
+        writer.end();
+        long duration = Math.max(System.currentTimeMillis() - start, 1);
+        System.err.println(name + " : " + duration + " ms, " + (SIZE * 1000l / duration) + " statements/s");
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.annotations.Predicate;
+import com.mysema.util.BeanMap;
+
+public class AccessorFactoryTest {
+
+    @ClassMapping
+    public static class Bean {
+
+        @Predicate
+        String text;
+
+        @Predicate
+        int number;
+
+        @Predicate
+        private String privateText;
+
+        final String finalText = "";
+
+        private long value;
+
+        @Predicate
+        public long getValue() {
+            return value;
+        }
+
+        public void setValue(long value) {
+            this.value = value;
+        }
+
+        public Bean withValue(long value) {
+            this.value = value;
+            return this;
+        }
+
+    }
+
+    private final AccessorFactory accessorFactory = new AccessorFactory();
+
+    @Test
+    public void Field_Access() throws Exception {
+        Bean bean = new Bean();
+        PropertyAccessor text = accessorFactory.createAccessor(Bean.class.getDeclaredField("text"));
+        PropertyAccessor number = accessorFactory.createAccessor(Bean.class.getDeclaredField("number"));
+        text.setValue(bean, "abc");
+        number.setValue(bean, 5);
+        assertEquals("abc", bean.text);
+        assertEquals(5, bean.number);
+        assertEquals("abc", text.getValue(bean));
+        assertEquals(Integer.valueOf(5), number.getValue(bean));
+    }
+
+    @Test
+    public void Method_Access() throws Exception {
+        Bean bean = new Bean();
+        PropertyAccessor value = accessorFactory.createAccessor(Bean.class,
+                Bean.class.getMethod("getValue"), Bean.class.getMethod("setValue", long.class));
+        value.setValue(bean, 3l);
+        assertEquals(3l, bean.value);
+        assertEquals(Long.valueOf(3l), value.getValue(bean));
+    }
+
+    @Test
+    public void Method_Access_with_Chaining() throws Exception {
+        Bean bean = new Bean();
+        PropertyAccessor value = accessorFactory.createAccessor(Bean.class,
+                Bean.class.getMethod("getValue"), Bean.class.getMethod("withValue", long.class));
+        value.setValue(bean, 4l);
+        assertEquals(4l, bean.value);
+    }
+
+    @Test
+    public void Accessors_are_Shared() throws Exception {
+        assertSame(accessorFactory.createAccessor(Bean.class.getDeclaredField("text")),
+                new AccessorFactory().createAccessor(Bean.class.getDeclaredField("text")));
+    }
+
+    @Test
+    public void Private_and_Final_Fields_are_not_Supported() throws Exception {
+        assertNull(accessorFactory.createAccessor(Bean.class.getDeclaredField("privateText")));
+        assertNull(accessorFactory.createAccessor(Bean.class.getDeclaredField("finalText")));
+    }
+
+    @Test
+    public void MappedClass_Properties() {
+        MappedClassFactory mappedClassFactory = new MappedClassFactory(TEST.NS);
+        MappedClass mappedClass = mappedClassFactory.getMappedClass(Bean.class);
+        Bean bean = new Bean();
+        BeanMap beanMap = new BeanMap(bean);
+        for (MappedPath path : mappedClass.getProperties()) {
+            MappedProperty<?> property = path.getMappedProperty();
+            if (property.getName().equals("value")) {
+                property.setValue(beanMap, 7l);
+            } else if (property.getName().equals("number")) {
+                property.setValue(beanMap, null);
+                property.setValue(beanMap, 2);
+            } else {
+                property.setValue(beanMap, property.getName());
+            }
+        }
+        assertEquals("text", bean.text);
+        assertEquals("privateText", bean.privateText);
+        assertEquals(2, bean.number);
+        assertEquals(7l, bean.value);
+        for (MappedPath path : mappedClass.getProperties()) {
+            assertNotNull(path.getMappedProperty().getValue(beanMap));
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.annotations.Predicate;
+import com.mysema.util.BeanMap;
+
+public class AccessorPerformanceTest {
+
+    private static final int SIZE = 1000000;
+
+    @ClassMapping
+    public static class Entity {
+
+        @Predicate
+        String text;
+
+        @Predicate
+        int number;
+
+        @Predicate
+        Long revision;
+
+        private String label;
+
+        @Predicate
+        public String getLabel() {
+            return label;
+        }
+
+        public void setLabel(String label) {
+            this.label = label;
+        }
+
+    }
+
+    @Test
+    @Ignore
+    public void Bind_and_Save() {
+        MappedClassFactory reflective = new MappedClassFactory(TEST.NS);
+        reflective.setAccessorFactory(null);
+        List<MappedProperty<?>> reflectiveProperties = getProperties(reflective);
+        List<MappedProperty<?>> generatedProperties = getProperties(new MappedClassFactory(TEST.NS));
+
+        Object[] values = { "text", Integer.valueOf(1), Long.valueOf(2l), "label" };
+        for (int i = 0; i < 5; i++) {
+            bind("reflective", reflectiveProperties, values);
+            bind("generated", generatedProperties, values);
+            save("reflective", reflectiveProperties);
+            save("generated", generatedProperties);
+        }
+    }
+
+    private List<MappedProperty<?>> getProperties(MappedClassFactory mappedClassFactory) {
+        List<MappedProperty<?>> properties = new ArrayList<MappedProperty<?>>();
+        for (String name : new String[] { "text", "number", "revision", "label" }) {
+            properties.add(mappedClassFactory.getMappedClass(Entity.class).getMappedPath(name).getMappedProperty());
+        }
+        return properties;
+    }
+
+    private void bind(String name, List<MappedProperty<?>> properties, Object[] values) {
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < SIZE; i++) {
+            BeanMap beanMap = new BeanMap(new Entity());
+            for (int j = 0; j < values.length; j++) {
+                properties.get(j).setValue(beanMap, values[j]);
+            }
+        }
+        report("bind " + name, start);
+    }
+
+    private void save(String name, List<MappedProperty<?>> properties) {
+        Entity entity = new Entity();
+        entity.text = "text";
+        entity.label = "label";
+        BeanMap beanMap = new BeanMap(entity);
+        long start = System.currentTimeMillis();
+        int count = 0;
+        for (int i = 0; i < SIZE; i++) {
+            for (MappedProperty<?> property : properties) {
+                if (property.getValue(beanMap) != null) {
+                    count++;
+                }
+            }
+        }
+        report("save " + name + " (" + count + ")", start);
+    }
+
+    private void report(String name, long start) {
+        long duration = Math.max(System.currentTimeMillis() - start, 1);
+        System.err.println(name + " : " + duration + " ms, " + (SIZE * 1000l / duration) + " beans/s");
+    }
+
+}
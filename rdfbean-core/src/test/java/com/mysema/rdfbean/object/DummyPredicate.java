@@ -39,6 +39,11 @@ public class DummyPredicate implements Predicate {
         return false;
     }
 
+    @Override
+    public boolean lazy() {
+        return false;
+    }
+
     @Override
     public String ln() {
         return uid.ln();
@@ -7,12 +7,22 @@ package com.mysema.rdfbean.object;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.rdfbean.CORE;
 import com.mysema.rdfbean.model.BID;
+import com.mysema.rdfbean.model.ID;
 import com.mysema.rdfbean.model.LID;
+import com.mysema.rdfbean.model.LIT;
 import com.mysema.rdfbean.model.MiniConnection;
 import com.mysema.rdfbean.model.MiniRepository;
 import com.mysema.rdfbean.model.RDF;
@@ -20,12 +30,16 @@ import com.mysema.rdfbean.model.RDFConnection;
 
 public class IdentityServiceTest {
 
+    private MiniRepository repository;
+
+    private RDFConnection connection;
+
     private IdentityService identityService;
 
     @Before
     public void setUp() {
-        MiniRepository repository = new MiniRepository();
-        RDFConnection connection = new MiniConnection(repository);
+        repository = new MiniRepository();
+        connection = new MiniConnection(repository);
         identityService = new SessionIdentityService(connection);
     }
 
@@ -68,6 +82,96 @@ public class IdentityServiceTest {
         assertEquals(lid, identityService.getLID(id));
     }
 
+    @Test
+    public void IDs() {
+        BID id = new BID();
+        LID lid1 = identityService.getLID(RDF.type);
+        LID lid2 = identityService.getLID(id);
+        Map<LID, ID> ids = identityService.getIDs(Arrays.asList(lid1, lid2, new LID("-1")));
+        assertEquals(2, ids.size());
+        assertEquals(RDF.type, ids.get(lid1));
+        assertEquals(id, ids.get(lid2));
+        assertTrue(identityService.getIDs(Collections.<LID> emptyList()).isEmpty());
+    }
+
+    @Test
+    public void LocalIds_are_Written_on_Flush() {
+        LID lid = identityService.getLID(RDF.type);
+        assertFalse(connection.exists(RDF.type, CORE.localId, null, null, false));
+        assertEquals(RDF.type, identityService.getID(lid));
+        assertEquals(RDF.type, identityService.getIDs(Arrays.asList(lid)).get(lid));
+
+        identityService.flush();
+        assertTrue(connection.exists(RDF.type, CORE.localId, new LIT(lid.getId()), null, false));
+        assertEquals(lid, new SessionIdentityService(connection).getLID(RDF.type));
+    }
+
+    @Test
+    public void LocalIdCache() {
+        LocalIdCache cache = new LocalIdCache();
+        IdentityService first = new SessionIdentityService(connection, cache);
+        LID lid = first.getLID(RDF.type);
+        assertNull(cache.getLID(RDF.type));
+        first.flush();
+        assertEquals(lid, cache.getLID(RDF.type));
+        assertEquals(RDF.type, cache.getID(lid));
+
+        // resolved from the cache without a lookup
+        repository.removeStatements(IteratorAdapter.asList(repository.findStatements(RDF.type, CORE.localId, null, null, false)));
+        IdentityService second = new SessionIdentityService(new MiniConnection(repository), cache);
+        assertEquals(lid, second.getLID(RDF.type));
+        assertEquals(RDF.type, second.getID(lid));
+
+        cache.invalidate(RDF.type);
+        assertNull(cache.getID(lid));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void Handed_out_LocalIds_are_kept_on_Flush() {
+        IdentityService first = new SessionIdentityService(connection, new LocalIdCache());
+        IdentityService second = new SessionIdentityService(new MiniConnection(repository));
+        LID firstLid = first.getLID(RDF.type);
+        LID secondLid = second.getLID(RDF.type);
+        assertFalse(firstLid.equals(secondLid));
+        second.flush();
+        first.flush();
+        assertEquals(2, IteratorAdapter.asList(repository.findStatements(RDF.type, CORE.localId, null, null, false)).size());
+        IdentityService other = new SessionIdentityService(new MiniConnection(repository));
+        assertEquals(RDF.type, other.getID(firstLid));
+        assertEquals(RDF.type, other.getID(secondLid));
+        assertEquals(RDF.type, first.getID(secondLid));
+        assertEquals(RDF.type, second.getID(firstLid));
+    }
+
+    @Test
+    public void LocalIds_are_Shared_after_Commit() {
+        LocalIdCache cache = new LocalIdCache();
+        SessionIdentityService service = new SessionIdentityService(connection, cache);
+        service.begin();
+        LID lid = service.getLID(RDF.type);
+        service.flush();
+        assertNull(cache.getLID(RDF.type));
+        assertEquals(lid, service.getLID(RDF.type));
+        assertEquals(RDF.type, service.getID(lid));
+        service.commit();
+        assertEquals(lid, cache.getLID(RDF.type));
+    }
+
+    @Test
+    public void LocalIds_are_Discarded_on_Rollback() {
+        LocalIdCache cache = new LocalIdCache();
+        cache.put(RDF.li, new LID("1"));
+        SessionIdentityService service = new SessionIdentityService(connection, cache);
+        service.begin();
+        service.getLID(RDF.type);
+        service.rollback();
+        service.flush();
+        assertFalse(connection.exists(RDF.type, CORE.localId, null, null, false));
+        assertNull(cache.getLID(RDF.type));
+        assertEquals(new LID("1"), cache.getLID(RDF.li));
+    }
+
     // @Test(expected=IllegalArgumentException.class)
     // public void getID(){
     // identityService.getID(new LID(String.valueOf(Long.MAX_VALUE)));
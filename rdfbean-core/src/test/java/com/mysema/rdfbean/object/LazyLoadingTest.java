@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.annotations.ClassMapping;
+import com.mysema.rdfbean.annotations.Id;
+import com.mysema.rdfbean.annotations.Predicate;
+import com.mysema.rdfbean.model.ID;
+import com.mysema.rdfbean.model.MiniRepository;
+
+public class LazyLoadingTest {
+
+    @ClassMapping
+    public interface Person {
+
+        String getName();
+
+    }
+
+    @ClassMapping
+    public static class Employee implements Person {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+    }
+
+    @ClassMapping
+    public static class Company {
+
+        @Id
+        ID id;
+
+        @Predicate
+        String name;
+
+        @Predicate(lazy = true)
+        Set<Employee> employees;
+
+        @Predicate(lazy = true)
+        Person ceo;
+
+    }
+
+    private DefaultConfiguration configuration;
+
+    private Session session;
+
+    private ID companyId, ceoId;
+
+    @Before
+    public void setUp() {
+        configuration = new DefaultConfiguration(TEST.NS, Person.class, Employee.class, Company.class);
+        session = SessionUtil.openSession(new MiniRepository(), Collections.<Locale> emptyList(), configuration);
+
+        Company company = new Company();
+        company.name = "Company";
+        company.employees = new HashSet<Employee>();
+        for (int i = 0; i < 3; i++) {
+            Employee employee = new Employee();
+            employee.name = "Employee " + i;
+            company.employees.add(employee);
+            company.ceo = employee;
+        }
+        session.save(company);
+        session.clear();
+        companyId = company.id;
+        ceoId = ((Employee) company.ceo).id;
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        session.close();
+    }
+
+    @Test
+    public void Collections_are_Loaded_on_Access() {
+        Company company = session.get(Company.class, companyId);
+        assertFalse(isLoaded(company.employees));
+        assertEquals(3, company.employees.size());
+        assertTrue(isLoaded(company.employees));
+        assertTrue(company.employees.contains(session.get(Employee.class, ceoId)));
+    }
+
+    @Test
+    public void References_are_Loaded_on_Access() {
+        Company company = session.get(Company.class, companyId);
+        assertFalse(isLoaded(company.ceo));
+        assertEquals(ceoId, session.getId(company.ceo));
+        assertFalse(isLoaded(company.ceo));
+        assertEquals("Employee 2", company.ceo.getName());
+        assertTrue(isLoaded(company.ceo));
+    }
+
+    @Test
+    public void References_equal_their_Target() {
+        Company company = session.get(Company.class, companyId);
+        assertTrue(company.ceo.equals(company.ceo));
+        assertFalse(isLoaded(company.ceo));
+
+        Employee ceo = session.get(Employee.class, ceoId);
+        assertTrue(company.ceo.equals(ceo));
+        assertEquals(ceo.hashCode(), company.ceo.hashCode());
+        assertEquals(ceo.toString(), company.ceo.toString());
+        assertFalse(company.ceo.equals(session.get(Company.class, companyId)));
+    }
+
+    @Test
+    public void Save_without_Loading() {
+        Company company = session.get(Company.class, companyId);
+        company.name = "Company 2";
+        session.save(company);
+        assertFalse(isLoaded(company.employees));
+        assertFalse(isLoaded(company.ceo));
+        session.clear();
+
+        company = session.get(Company.class, companyId);
+        assertEquals("Company 2", company.name);
+        assertEquals(3, company.employees.size());
+        assertEquals("Employee 2", company.ceo.getName());
+    }
+
+    @Test
+    public void Save_Loaded() {
+        Company company = session.get(Company.class, companyId);
+        company.employees.remove(session.get(Employee.class, ceoId));
+        session.save(company);
+        session.clear();
+
+        company = session.get(Company.class, companyId);
+        assertEquals(2, company.employees.size());
+    }
+
+    @Test
+    public void Eager_Path() {
+        configuration.getMappedClass(Company.class).getMappedPath("employees").setLazy(false);
+        Company company = session.get(Company.class, companyId);
+        assertFalse(company.employees instanceof LazyValues.LazyValue);
+        assertFalse(isLoaded(company.ceo));
+    }
+
+    private static boolean isLoaded(Object value) {
+        return ((LazyValues.LazyValue) value).getLoader().isLoaded();
+    }
+
+}
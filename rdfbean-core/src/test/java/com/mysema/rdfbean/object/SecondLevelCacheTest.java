@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.object;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.domains.EntityDomain;
+import com.mysema.rdfbean.model.LIT;
+import com.mysema.rdfbean.model.MiniRepository;
+import com.mysema.rdfbean.model.STMT;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.util.MultimapFactory;
+
+public class SecondLevelCacheTest implements EntityDomain {
+
+    private static final UID property = new UID(TEST.NS, "property");
+
+    private final UID e1 = new UID(TEST.NS, "e1"), e2 = new UID(TEST.NS, "e2");
+
+    private MiniRepository repository;
+
+    private SessionFactoryImpl sessionFactory;
+
+    private SecondLevelCache cache;
+
+    @Before
+    public void setUp() {
+        repository = new MiniRepository();
+        cache = new SecondLevelCache(100, 1, TimeUnit.HOURS);
+        sessionFactory = new SessionFactoryImpl();
+        sessionFactory.setRepository(repository);
+        sessionFactory.setConfiguration(new DefaultConfiguration(TEST.NS, Entity.class));
+        sessionFactory.setSecondLevelCache(cache);
+        sessionFactory.initialize();
+
+        Session session = sessionFactory.openSession();
+        for (UID id : new UID[] { e1, e2 }) {
+            Entity entity = new Entity();
+            entity.id = id;
+            entity.property = id.ln();
+            session.save(entity);
+        }
+        session.close();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        sessionFactory.close();
+    }
+
+    private Entity get(UID id) {
+        Session session = sessionFactory.openSession();
+        try {
+            return session.get(Entity.class, id);
+        } finally {
+            session.close();
+        }
+    }
+
+    private void updateBackend(UID id, String value) {
+        repository.remove(id, property, null, null);
+        repository.add(new STMT(id, property, new LIT(value)));
+    }
+
+    @Test
+    public void Get_from_Cache() {
+        assertEquals("e1", get(e1).property);
+        assertEquals(1, cache.size());
+
+        // changes outside of sessions are not visible
+        updateBackend(e1, "x");
+        assertEquals("e1", get(e1).property);
+        assertEquals(1, cache.getStats().hitCount());
+    }
+
+    @Test
+    public void Invalidate_on_Flush() {
+        assertEquals("e1", get(e1).property);
+
+        Session session = sessionFactory.openSession();
+        Entity entity = session.get(Entity.class, e1);
+        entity.property = "y";
+        session.save(entity);
+        session.close();
+        assertEquals(0, cache.size());
+
+        assertEquals("y", get(e1).property);
+    }
+
+    @Test
+    public void GetAll() {
+        assertEquals("e1", get(e1).property);
+        updateBackend(e1, "x");
+        updateBackend(e2, "z");
+
+        Session session = sessionFactory.openSession();
+        List<Entity> entities = session.getAll(Entity.class, e1, e2, new UID(TEST.NS, "e3"));
+        session.close();
+        assertEquals("e1", entities.get(0).property);
+        assertEquals("z", entities.get(1).property);
+        assertNull(entities.get(2));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void Stale_Load_is_not_Cached() {
+        long version = cache.getVersion();
+        cache.invalidate(e1);
+        cache.put(e1, MultimapFactory.<UID, STMT> create(), version);
+        assertEquals(0, cache.size());
+    }
+
+}
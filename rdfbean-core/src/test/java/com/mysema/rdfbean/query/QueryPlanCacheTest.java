@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2010 Mysema Ltd.
+ * All rights reserved.
+ *
+ */
+package com.mysema.rdfbean.query;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.mysema.rdfbean.TEST;
+import com.mysema.rdfbean.domains.EntityDomain;
+import com.mysema.rdfbean.model.MiniRepository;
+import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.object.DefaultConfiguration;
+import com.mysema.rdfbean.object.Session;
+import com.mysema.rdfbean.object.SessionFactoryImpl;
+
+public class QueryPlanCacheTest implements EntityDomain {
+
+    private static final QEntity entity = QEntity.entity;
+
+    private SessionFactoryImpl sessionFactory;
+
+    private Session session;
+
+    @Before
+    public void setUp() {
+        sessionFactory = new SessionFactoryImpl();
+        sessionFactory.setQueryPlanCache(new QueryPlanCache());
+        sessionFactory.setRepository(new MiniRepository());
+        sessionFactory.setConfiguration(new DefaultConfiguration(TEST.NS, Entity.class));
+        sessionFactory.initialize();
+
+        session = sessionFactory.openSession();
+        for (int i = 0; i < 5; i++) {
+            Entity e = new Entity();
+            e.id = new UID(TEST.NS, "e" + i);
+            e.property = "p" + i;
+            e.revision = i;
+            session.save(e);
+        }
+        session.clear();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        session.close();
+        sessionFactory.close();
+    }
+
+    @Test
+    public void Same_Shape_with_different_Constants() {
+        QueryPlanCache cache = sessionFactory.getQueryPlanCache();
+        assertEquals(1, session.from(entity).where(entity.property.eq("p1")).list(entity).size());
+        assertEquals(0, cache.getHitCount());
+
+        for (int i = 0; i < 5; i++) {
+            List<Entity> entities = session.from(entity).where(entity.property.eq("p" + i)).list(entity);
+            assertEquals(1, entities.size());
+            assertEquals("p" + i, entities.get(0).property);
+        }
+        assertEquals(5, cache.getHitCount());
+        assertEquals(1, cache.size());
+        assertEquals(0, session.from(entity).where(entity.property.eq("p5")).count());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void Ranges_and_Modifiers() {
+        assertEquals(Arrays.asList("p3", "p4"),
+                session.from(entity).where(entity.revision.gt(2l)).orderBy(entity.property.asc()).list(entity.property));
+        assertEquals(Arrays.asList("p2"),
+                session.from(entity).where(entity.revision.gt(1l)).orderBy(entity.property.asc()).limit(1).list(entity.property));
+        assertEquals(Arrays.asList("p1", "p2"),
+                session.from(entity).where(entity.revision.gt(0l)).orderBy(entity.property.asc()).limit(2).list(entity.property));
+        assertEquals(2, sessionFactory.getQueryPlanCache().getHitCount());
+    }
+
+    @Test
+    public void In_Collections_are_part_of_Key() {
+        QueryPlanCache cache = sessionFactory.getQueryPlanCache();
+        for (int i = 0; i < 2; i++) {
+            assertEquals(2, session.from(entity).where(entity.property.in("p1", "p2")).list(entity).size());
+            assertEquals(1, session.from(entity).where(entity.property.in("p3", "p9")).list(entity).size());
+        }
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void Disabled() {
+        sessionFactory.setQueryPlanCache(null);
+        Session session = sessionFactory.openSession();
+        try {
+            assertEquals(1, session.from(entity).where(entity.property.eq("p2")).list(entity).size());
+        } finally {
+            session.close();
+        }
+    }
+
+}
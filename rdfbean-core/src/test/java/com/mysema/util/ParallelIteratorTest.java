@@ -0,0 +1,125 @@
+package com.mysema.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Function;
+import com.google.common.base.Functions;
+import com.google.common.collect.AbstractIterator;
+import com.mysema.commons.lang.IteratorAdapter;
+import com.mysema.query.QueryModifiers;
+
+public class ParallelIteratorTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void Merge() {
+        List<List<Integer>> sources = new ArrayList<List<Integer>>();
+        for (int i = 0; i < 4; i++) {
+            List<Integer> source = new ArrayList<Integer>();
+            for (int j = 0; j < 100; j++) {
+                source.add(i * 100 + j);
+            }
+            sources.add(source);
+        }
+        List<String> strs = IteratorAdapter.asList(new ParallelIterator<Integer, String>(executor, sources,
+                Functions.toStringFunction()));
+        assertEquals(400, strs.size());
+        List<Integer> ints = new ArrayList<Integer>();
+        for (String str : strs) {
+            ints.add(Integer.valueOf(str));
+        }
+        Collections.sort(ints);
+        for (int i = 0; i < 400; i++) {
+            assertEquals(i, ints.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void Bounded_Queue() throws InterruptedException {
+        AtomicInteger produced = new AtomicInteger();
+        ParallelIterator<Integer, Integer> iterator = new ParallelIterator<Integer, Integer>(executor,
+                Collections.singletonList(new Counter(produced)), Functions.<Integer> identity(), 10);
+        assertEquals(0, iterator.next().intValue());
+        Thread.sleep(200);
+        assertTrue(produced.get() <= 12);
+        iterator.close();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void Limit_closes_Producers() throws InterruptedException {
+        AtomicInteger produced = new AtomicInteger();
+        Iterator<Integer> iterator = LimitingIterator.create(new ParallelIterator<Integer, Integer>(executor,
+                Arrays.asList(new Counter(produced), new Counter(produced)), Functions.<Integer> identity(), 10),
+                new QueryModifiers(5l, null));
+        assertEquals(5, IteratorAdapter.asList(iterator).size());
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void Failure() {
+        List<Integer> source = Arrays.asList(1, 2, 3);
+        Iterator<Integer> iterator = new ParallelIterator<Integer, Integer>(executor, Arrays.asList(source, source),
+                new Function<Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer input) {
+                        if (input == 3) {
+                            throw new IllegalArgumentException();
+                        }
+                        return input;
+                    }
+                });
+        while (iterator.hasNext()) {
+            iterator.next();
+        }
+    }
+
+    /**
+     * Endless source of integers
+     */
+    private static class Counter implements Iterable<Integer> {
+
+        private final AtomicInteger produced;
+
+        Counter(AtomicInteger produced) {
+            this.produced = produced;
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new AbstractIterator<Integer>() {
+                private int next;
+
+                @Override
+                protected Integer computeNext() {
+                    produced.incrementAndGet();
+                    return next++;
+                }
+            };
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package com.mysema.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.PatternSyntaxException;
+
+import org.junit.Test;
+
+public class PatternCacheTest {
+
+    private final PatternCache cache = new PatternCache(2);
+
+    @Test
+    public void Hits_and_Misses() {
+        assertSame(cache.getRegex("a.*", false), cache.getRegex("a.*", false));
+        assertTrue(cache.getRegex("a.*", true).matcher("ABC").matches());
+        assertTrue(cache.getLike("a.%").matcher("abc").matches());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void Size_is_Bounded() {
+        for (int i = 0; i < 10; i++) {
+            cache.getRegex("a" + i, false);
+        }
+        assertTrue(cache.size() <= 2);
+        assertFalse(cache.getLike("a_").matcher("abc").matches());
+    }
+
+    @Test(expected = PatternSyntaxException.class)
+    public void Invalid_Pattern() {
+        cache.getRegex("(", false);
+    }
+
+}
@@ -18,6 +18,7 @@ import com.mysema.rdfbean.model.NODE;
 import com.mysema.rdfbean.model.NodeType;
 import com.mysema.rdfbean.model.Nodes;
 import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.TermDictionary;
 import com.mysema.rdfbean.model.UID;
 import com.mysema.rdfbean.model.XSD;
 
@@ -63,7 +64,7 @@ public class JenaDialect extends AbstractDialect<Node, Node, Node, Node, Node, Q
     @Override
     public ID getID(Node resource) {
         if (resource.isURI()) {
-            return new UID(resource.getURI());
+            return getUID(resource);
         } else {
             return new BID(resource.getBlankNodeLabel());
         }
@@ -139,7 +140,7 @@ public class JenaDialect extends AbstractDialect<Node, Node, Node, Node, Node, Q
 
     @Override
     public UID getUID(Node resource) {
-        return new UID(resource.getURI());
+        return TermDictionary.getUID(resource.getURI());
     }
 
     @Override
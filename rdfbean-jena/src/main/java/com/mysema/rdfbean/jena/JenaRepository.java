@@ -3,6 +3,7 @@ package com.mysema.rdfbean.jena;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.Map;
 
 import com.hp.hpl.jena.n3.N3TurtleJenaWriter;
@@ -16,14 +17,18 @@ import com.hp.hpl.jena.rdf.model.impl.NTripleWriter;
 import com.hp.hpl.jena.sparql.core.DatasetGraph;
 import com.hp.hpl.jena.xmloutput.impl.Basic;
 import com.mysema.commons.lang.Assert;
+import com.mysema.commons.lang.CloseableIterator;
 import com.mysema.rdfbean.Namespaces;
 import com.mysema.rdfbean.model.Format;
 import com.mysema.rdfbean.model.RDFConnectionCallback;
 import com.mysema.rdfbean.model.RDFConnection;
 import com.mysema.rdfbean.model.Repository;
 import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.STMT;
 import com.mysema.rdfbean.model.UID;
+import com.mysema.rdfbean.model.io.NTriplesParser;
 import com.mysema.rdfbean.model.io.RDFSource;
+import com.mysema.rdfbean.model.io.WriterUtils;
 
 /**
  * @author tiwe
@@ -31,6 +36,8 @@ import com.mysema.rdfbean.model.io.RDFSource;
  */
 public class JenaRepository implements Repository {
 
+    private static final int BATCH_SIZE = 10000;
+
     protected final DatasetGraph graph;
 
     protected final Dataset dataset;
@@ -86,6 +93,10 @@ public class JenaRepository implements Repository {
 
     @Override
     public void export(Format format, Map<String, String> ns2prefix, UID context, OutputStream os) {
+        if (format == Format.NQUADS) {
+            exportQuads(context, os);
+            return;
+        }
         RDFWriter writer;
         if (format == Format.RDFXML) {
             Basic w = new Basic();
@@ -110,6 +121,26 @@ public class JenaRepository implements Repository {
 
     }
 
+    private void exportQuads(UID context, OutputStream os) {
+        // Jena has no N-Quads writer for datasets
+        com.mysema.rdfbean.model.io.RDFWriter writer = WriterUtils.createWriter(Format.NQUADS, os);
+        RDFConnection connection = openConnection();
+        try {
+            CloseableIterator<STMT> stmts = connection.findStatements(null, null, null, context, false);
+            try {
+                writer.begin();
+                while (stmts.hasNext()) {
+                    writer.handle(stmts.next());
+                }
+                writer.end();
+            } finally {
+                stmts.close();
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
     @Override
     public void export(Format format, UID context, OutputStream os) {
         export(format, Namespaces.DEFAULT, context, os);
@@ -133,6 +164,10 @@ public class JenaRepository implements Repository {
 
     @Override
     public void load(Format format, InputStream is, UID context, boolean replace) {
+        if (format == Format.NQUADS) {
+            loadQuads(is, context);
+            return;
+        }
         RDFReader reader;
         if (format == Format.RDFXML) {
             reader = new JenaReader();
@@ -146,6 +181,22 @@ public class JenaRepository implements Repository {
         reader.read(model, is, context != null ? context.getId() : null);
     }
 
+    private void loadQuads(InputStream is, UID context) {
+        // Jena has no N-Quads reader for datasets
+        NTriplesParser parser = new NTriplesParser(is, true, context);
+        RDFConnection connection = openConnection();
+        try {
+            STMT[] batch = new STMT[BATCH_SIZE];
+            int count;
+            while ((count = parser.read(batch)) > 0) {
+                connection.update(null, Arrays.asList(batch).subList(0, count));
+            }
+        } finally {
+            connection.close();
+            parser.close();
+        }
+    }
+
     @Override
     public RDFConnection openConnection() {
         return new JenaConnection(graph, dataset, dialect);
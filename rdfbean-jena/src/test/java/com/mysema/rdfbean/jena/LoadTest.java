@@ -17,6 +17,7 @@ import com.mysema.rdfbean.model.Addition;
 import com.mysema.rdfbean.model.BID;
 import com.mysema.rdfbean.model.CountOperation;
 import com.mysema.rdfbean.model.Format;
+import com.mysema.rdfbean.model.LIT;
 import com.mysema.rdfbean.model.RDFConnectionCallback;
 import com.mysema.rdfbean.model.RDF;
 import com.mysema.rdfbean.model.RDFS;
@@ -89,6 +90,23 @@ public class LoadTest {
         assertEquals(count1 + 1, repository.execute(countOp).longValue());
     }
 
+    @Test
+    public void Export_and_Load_NQuads() {
+        UID context = new UID(TEST.NS);
+        repository.execute(new Addition(
+                new STMT(new BID(), RDF.type, RDFS.Resource, context),
+                new STMT(RDF.type, RDFS.label, new LIT("type"), context)));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        repository.export(Format.NQUADS, context, baos);
+
+        MemoryRepository repository2 = new MemoryRepository();
+        repository2.addGraph(context);
+        repository2.initialize();
+        repository2.load(Format.NQUADS, new ByteArrayInputStream(baos.toByteArray()), null, false);
+        assertEquals(2, repository2.execute(countOp).longValue());
+        repository2.close();
+    }
+
     @Test
     public void Load_withoutContext() {
         InputStream is = getClass().getResourceAsStream("/test.ttl");
@@ -432,10 +432,9 @@ public class RDBConnection implements RDFConnection {
             datatypeId = getId(literal.getDatatype());
             if (literal.getLang() != null) {
                 langId = getLangId(literal.getLang());
-            } else if (Constants.integerTypes.contains(literal.getDatatype())) {
-                floatVal = Double.valueOf(literal.getValue());
-            } else if (Constants.decimalTypes.contains(literal.getDatatype())) {
-                floatVal = Double.valueOf(literal.getValue());
+            } else if (Constants.integerTypes.contains(literal.getDatatype())
+                    || Constants.decimalTypes.contains(literal.getDatatype())) {
+                floatVal = getDouble(literal);
             } else if (Constants.dateTypes.contains(literal.getDatatype())) {
                 datetimeVal = new Timestamp(context.convert(literal.getValue(), java.sql.Date.class).getTime());
                 floatVal = datetimeVal.getTime();
@@ -452,6 +451,15 @@ public class RDBConnection implements RDFConnection {
         return clause;
     }
 
+    private static double getDouble(LIT literal) {
+        Object key = literal.getKey();
+        if (key instanceof Number) {
+            return ((Number) key).doubleValue();
+        } else {
+            return Double.valueOf(literal.getValue());
+        }
+    }
+
     @Override
     public void remove(ID s, UID p, NODE o, UID c) {
         SQLDeleteClause delete = context.createDelete(statement);
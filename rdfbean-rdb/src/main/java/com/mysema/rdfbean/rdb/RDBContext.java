@@ -32,6 +32,7 @@ import com.mysema.rdfbean.model.LIT;
 import com.mysema.rdfbean.model.NODE;
 import com.mysema.rdfbean.model.RDFBeanTransaction;
 import com.mysema.rdfbean.model.RepositoryException;
+import com.mysema.rdfbean.model.TermDictionary;
 import com.mysema.rdfbean.model.UID;
 import com.mysema.rdfbean.rdb.support.SortableQueryMetadata;
 import com.mysema.rdfbean.xsd.ConverterRegistry;
@@ -140,7 +141,7 @@ public final class RDBContext implements Closeable {
 
     public ID getID(String lex) {
         if (lex.contains(":")) {
-            return new UID(lex);
+            return TermDictionary.getUID(lex);
         } else {
             return new BID(lex);
         }
@@ -364,7 +364,11 @@ public class RDBRDFVisitor implements RDFVisitor<Object, QueryMetadata> {
     }
 
     private Expression<?> visitPathOrParam(Expression<?> expr, String exprToString, QueryMetadata context) {
-        if (asLiteral) {
+        if (expr instanceof ParamExpression<?> && !exprToMapped.containsKey(expr)
+                && context.getParams().containsKey(expr)) {
+            // parameters which are not bound in patterns are used as constants
+            return visit(new ConstantImpl<Object>(context.getParams().get(expr)), context);
+        } else if (asLiteral) {
             if (exprToSymbol.containsKey(expr)) {
                 return exprToSymbol.get(expr);
             } else {
@@ -28,6 +28,7 @@ import com.mysema.rdfbean.model.LIT;
 import com.mysema.rdfbean.model.NODE;
 import com.mysema.rdfbean.model.NodeType;
 import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.TermDictionary;
 import com.mysema.rdfbean.model.UID;
 import com.mysema.rdfbean.model.XSD;
 
@@ -43,8 +44,6 @@ public class SesameDialect extends AbstractDialect<Value, Resource, BNode, URI,
 
     private final Map<Literal, LIT> literalCache = new HashMap<Literal, LIT>(1024);
 
-    private final Map<URI, UID> uriCache = new HashMap<URI, UID>(1024);
-
     private final ValueFactory vf;
 
     public SesameDialect(ValueFactory vf) {
@@ -53,7 +52,6 @@ public class SesameDialect extends AbstractDialect<Value, Resource, BNode, URI,
     }
 
     public void clear() {
-        uriCache.clear();
         bnodeCache.clear();
         literalCache.clear();
     }
@@ -174,12 +172,7 @@ public class SesameDialect extends AbstractDialect<Value, Resource, BNode, URI,
 
     @Override
     public UID getUID(URI uri) {
-        UID uid = uriCache.get(uri);
-        if (uid == null) {
-            uid = new UID(uri.getNamespace(), uri.getLocalName());
-            uriCache.put((URI) uri, uid);
-        }
-        return uid;
+        return TermDictionary.getUID(uri.getNamespace(), uri.getLocalName());
     }
 
     @Override
@@ -7,7 +7,10 @@ package com.mysema.rdfbean.rdb;
 
 import static com.mysema.query.alias.Alias.$;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.List;
 import java.util.UUID;
 
 import org.junit.Before;
@@ -60,6 +63,17 @@ public class RDBBeanQueryTest extends AbstractRDBTest implements UserDepartmentC
         }
     }
 
+    @Test
+    public void FromUser_where_userName_ne_constant() {
+        for (int i = 0; i < users.length; i++) {
+            List<String> names = session.from($(u))
+                    .where($(u.getUserName()).ne(users[i].getUserName()))
+                    .list($(u.getUserName()));
+            assertFalse(names.contains(users[i].getUserName()));
+            assertTrue(names.contains(users[(i + 1) % users.length].getUserName()));
+        }
+    }
+
     @Test
     public void FromUser_where_userName_startsWith_constant() {
         for (int i = 0; i < users.length; i++) {
@@ -26,6 +26,8 @@ public final class FormatHelper {
             return RDFFormat.N3;
         case NTRIPLES:
             return RDFFormat.NTRIPLES;
+        case NQUADS:
+            return RDFFormat.NQUADS;
         case RDFXML:
             return RDFFormat.RDFXML;
         case TRIG:
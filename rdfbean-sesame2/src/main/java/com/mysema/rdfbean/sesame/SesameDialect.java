@@ -29,6 +29,7 @@ import com.mysema.rdfbean.model.LIT;
 import com.mysema.rdfbean.model.NODE;
 import com.mysema.rdfbean.model.NodeType;
 import com.mysema.rdfbean.model.RDF;
+import com.mysema.rdfbean.model.TermDictionary;
 import com.mysema.rdfbean.model.UID;
 import com.mysema.rdfbean.model.XSD;
 
@@ -46,8 +47,6 @@ public class SesameDialect extends AbstractDialect<Value, Resource, BNode, URI,
 
     private final Map<Literal, LIT> litCache = new HashMap<Literal, LIT>(CACHE_SIZE);
 
-    private final Map<URI, UID> uidCache = new HashMap<URI, UID>(CACHE_SIZE);
-
     private final Map<BID, BNode> bnodeCache = new MapMaker().initialCapacity(CACHE_SIZE).softValues().makeMap();
 
     private final Map<LIT, Literal> literalCache = new MapMaker().initialCapacity(CACHE_SIZE).softValues().makeMap();
@@ -62,7 +61,6 @@ public class SesameDialect extends AbstractDialect<Value, Resource, BNode, URI,
     }
 
     public void clear() {
-        uidCache.clear();
         bidCache.clear();
         litCache.clear();
 
@@ -199,12 +197,7 @@ public class SesameDialect extends AbstractDialect<Value, Resource, BNode, URI,
 
     @Override
     public UID getUID(URI uri) {
-        UID uid = uidCache.get(uri);
-        if (uid == null) {
-            uid = new UID(uri.getNamespace(), uri.getLocalName());
-            uidCache.put(uri, uid);
-        }
-        return uid;
+        return TermDictionary.getUID(uri.getNamespace(), uri.getLocalName());
     }
 
     @Override
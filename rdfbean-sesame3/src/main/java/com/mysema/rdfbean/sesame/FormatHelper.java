@@ -34,6 +34,9 @@ final class FormatHelper {
             return RDFFormat.TRIG;
         case TURTLE:
             return RDFFormat.TURTLE;
+        case NQUADS:
+            // not supported by Sesame 3
+            break;
         }
         throw new IllegalArgumentException("Unsupported format : " + format);
     }